@@ -0,0 +1,63 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara el análisis de expresiones por la cadena E, R, U, V con el ascenso
+ * de precedencia de {@link Parser#setExpresionesCompactas}, sobre un programa
+ * hecho casi solo de expresiones, construyendo el árbol de objetos. Con
+ * {@code -prof gc} se ve la memoria reservada por análisis.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar ExpressionBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xss64m")
+public class ExpressionBenchmark {
+	@Param({ "false", "true" })
+	public boolean compacto;
+
+	private TokenBuffer tokens;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("let int a;\nlet int b;\nlet boolean c;\n");
+		for (int i = 0; sb.length() < 1 << 20; i++) {
+			sb.append("a = a + b + ").append(i).append(" + (b + 1);\n")
+					.append("c = a == b && b + 1 == ").append(i).append(" && (c == true);\n")
+					.append("write a + b + ").append(i % 7).append(";\n");
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		tokens = new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+	}
+
+	@Benchmark
+	public ASTNode analizar() {
+		Parser parser = new Parser(tokens.stream(), new ErrorManager(), new RuleLog());
+		parser.setExpresionesCompactas(compacto);
+		return parser.parseAST();
+	}
+}
@@ -0,0 +1,74 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiempo de una ejecución completa de los programas de {@link VmBenchmark}
+ * en la {@link VirtualMachine} o como clase de la JVM ({@link JvmCompiler}),
+ * cargada una sola vez.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar JvmBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JvmBenchmark {
+	@Param({ "enteros", "llamadas", "reales" })
+	public String programa;
+
+	@Param({ "vm", "jvm" })
+	public String backend;
+
+	private Bytecode bytecode;
+	private Class<?> clase;
+
+	@Setup
+	public void setup() {
+		String fuente = programa.equals("enteros") ? VmBenchmark.ENTEROS
+				: programa.equals("llamadas") ? VmBenchmark.LLAMADAS : VmBenchmark.REALES;
+		byte[] bytes = fuente.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		ErrorManager errores = new ErrorManager();
+		TokenBuffer tokens = new Lexer(source, errores).tokenizeToBuffer();
+		ASTNode ast = new Parser(tokens.stream(), errores, new RuleLog()).parseAST();
+		if (errores.hayErrores())
+			throw new IllegalStateException(errores.getErroresString());
+		if (backend.equals("vm"))
+			bytecode = BytecodeCompiler.compilar(ast);
+		else
+			clase = JvmCompiler.cargar("Programa", JvmCompiler.compilar(ast, "Programa"));
+	}
+
+	@Benchmark
+	public void ejecutar() throws IOException {
+		if (clase != null)
+			JvmCompiler.ejecutar(clase, new StringReader(""), Writer.nullWriter());
+		else
+			new VirtualMachine(bytecode, new StringReader(""), Writer.nullWriter()).ejecutar();
+	}
+}
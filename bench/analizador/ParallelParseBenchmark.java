@@ -0,0 +1,84 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara el análisis secuencial (sin análisis semántico) con el de
+ * {@link Parser#enParalelo} sobre un programa de miles de funciones, con un
+ * pool de {@code hilos} hilos. Los tokens se generan una sola vez.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar ParallelParseBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xss64m")
+public class ParallelParseBenchmark {
+	@Param({ "1", "2", "4", "8" })
+	public int hilos;
+
+	private TokenBuffer tokens;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("let int total;\n");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("function int f").append(i).append(" (int a, int b) {\n")
+					.append("\tlet int c;\n")
+					.append("\tlet boolean d;\n")
+					.append("\tc = a + b + ").append(i).append(";\n")
+					.append("\td = a == b && c == a;\n")
+					.append("\tfor (c = 0; d; c = c + 1) {\n")
+					.append("\t\tif (d) write c + a;\n")
+					.append("\t\ttotal = total + c;\n")
+					.append("\t}\n")
+					.append(i > 0 ? "\treturn f" + (i - 1) + "(c, b + 1);\n" : "\treturn c;\n")
+					.append("}\n");
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		tokens = new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+		pool = new ForkJoinPool(hilos);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public ASTNode secuencial() {
+		Parser parser = new Parser(tokens.stream(), new ErrorManager(), new RuleLog());
+		parser.setSemantica(false);
+		return parser.parseAST();
+	}
+
+	@Benchmark
+	public ASTNode paralelo() {
+		return Parser.enParalelo(tokens, new ErrorManager(), new RuleLog(), pool).parseAST();
+	}
+}
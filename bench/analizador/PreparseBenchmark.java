@@ -0,0 +1,72 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiempo hasta tener la tabla de símbolos global de un programa hecho casi
+ * solo de funciones, analizando entero o con {@link Parser#setPreanalisis},
+ * en modo validación para no medir la construcción del árbol.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar PreparseBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xss64m")
+public class PreparseBenchmark {
+	@Param({ "false", "true" })
+	public boolean preanalisis;
+
+	private TokenBuffer tokens;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("let int total;\n");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("function int f").append(i).append(" (int a, int b) {\n")
+					.append("\tlet int c;\n")
+					.append("\tlet boolean d;\n")
+					.append("\tc = a + b + ").append(i).append(";\n")
+					.append("\td = a == b && c == a;\n")
+					.append("\tfor (c = 0; d; c = c + 1) {\n")
+					.append("\t\tif (d) write c + a;\n")
+					.append("\t\ttotal = total + c;\n")
+					.append("\t}\n")
+					.append(i > 0 ? "\treturn f" + (i - 1) + "(c, b + 1);\n" : "\treturn c;\n")
+					.append("}\n");
+		}
+		sb.append("total = f4999(1, 2);\n");
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		tokens = new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+	}
+
+	@Benchmark
+	public SymbolTable tablaGlobal() {
+		Parser parser = Parser.validador(tokens.stream(), new ErrorManager(), new RuleLog());
+		parser.setPreanalisis(preanalisis);
+		parser.parseAST();
+		return parser.getTS();
+	}
+}
@@ -0,0 +1,78 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara el análisis léxico con el salto vectorial de rachas
+ * ({@link VectorByteRuns}) y con el bucle escalar de la tabla, sobre fuentes
+ * con mucho espacio en blanco, muchos comentarios o identificadores largos.
+ * La implementación se elige al arrancar la JVM, así que cada variante se
+ * mide en su propio fork.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar ScanBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScanBenchmark {
+	@Param({ "espacios", "comentarios", "identificadores" })
+	public String fuente;
+
+	private ByteBuffer source;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 4 << 20; i++) {
+			switch (fuente) {
+				case "espacios":
+					sb.append(" ".repeat(4 * (i % 12))).append("let int x").append(i).append(" = ").append(i)
+							.append(";\n\n").append("\t".repeat(i % 8)).append('\n');
+					break;
+				case "comentarios":
+					sb.append("// comentario de la linea ").append(i).append(", con texto de relleno hasta el final\n")
+							.append("x").append(i).append(" = x").append(i).append(" + 1; // y otro al final\n");
+					break;
+				default:
+					sb.append("nombreDeVariableBastanteLargo_").append(i).append(" = otroIdentificadorMuyLargo_")
+							.append(i).append(" + 1234567890;\n");
+					break;
+			}
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+	public TokenBuffer vectorial() {
+		return new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = { "-Danalizador.simd=false" })
+	public TokenBuffer escalar() {
+		return new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+	}
+}
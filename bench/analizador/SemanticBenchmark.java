@@ -0,0 +1,82 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide el {@link SemanticAnalyzer} sobre un programa de miles de funciones
+ * con un pool de {@code hilos} hilos, para ver cómo escala la segunda fase con
+ * los núcleos. El árbol se construye una sola vez, sin análisis semántico.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar SemanticBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xss64m")
+public class SemanticBenchmark {
+	@Param({ "1", "2", "4", "8" })
+	public int hilos;
+
+	private ASTNode arbol;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("let int total;\n");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("function int f").append(i).append(" (int a, int b) {\n")
+					.append("\tlet int c;\n")
+					.append("\tlet boolean d;\n")
+					.append("\tc = a + b + ").append(i).append(";\n")
+					.append("\td = a == b && c == a;\n")
+					.append("\tfor (c = 0; d; c = c + 1) {\n")
+					.append("\t\tif (d) write c + a;\n")
+					.append("\t\ttotal = total + c;\n")
+					.append("\t}\n")
+					.append(i > 0 ? "\treturn f" + (i - 1) + "(c, b + 1);\n" : "\treturn c;\n")
+					.append("}\n");
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		TokenBuffer tokens = new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+		Parser parser = new Parser(tokens.stream(), new ErrorManager(), new RuleLog());
+		parser.setSemantica(false);
+		arbol = parser.parseAST();
+		pool = new ForkJoinPool(hilos);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public SemanticAnalyzer analizar() {
+		SemanticAnalyzer analizador = new SemanticAnalyzer(new ErrorManager());
+		analizador.analizar(arbol, pool);
+		return analizador;
+	}
+}
@@ -0,0 +1,83 @@
+package analizador;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import analizador.SymbolTable.Category;
+import analizador.SymbolTable.SymbolInfo;
+import analizador.SymbolTable.Type;
+
+/**
+ * Coste de resolver 1000 nombres globales desde {@code profundidad} ámbitos
+ * anidados, cada uno con sus propias variables: con una sola búsqueda
+ * ({@link SymbolTable#buscar}) o con las tres consultas de tipo, categoría y
+ * parámetros por uso.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar SymbolTableBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SymbolTableBenchmark {
+	private static final int NOMBRES = 1000;
+
+	@Param({ "1", "8", "64" })
+	public int profundidad;
+
+	private final SymbolTable ts = new SymbolTable();
+
+	@Setup
+	public void setup() {
+		ts.init();
+		for (int id = 1; id <= NOMBRES; id++)
+			ts.anadirVar(id, "g" + id, Type.ENTERO);
+		for (int nivel = 1; nivel < profundidad; nivel++) {
+			ts.entrarAmbito();
+			for (int i = 0; i < 16; i++)
+				ts.anadirVar(NOMBRES + nivel * 16 + i, "l" + i, Type.REAL);
+		}
+	}
+
+	@Benchmark
+	public int unaBusqueda() {
+		int ok = 0;
+		for (int id = 1; id <= NOMBRES; id++) {
+			SymbolInfo info = ts.buscar(id);
+			if (SymbolTable.tipo(info) == Type.ENTERO && SymbolTable.categoria(info) == Category.VARIABLE
+					&& SymbolTable.params(info) != null)
+				ok++;
+		}
+		return ok;
+	}
+
+	@Benchmark
+	public int tresBusquedas() {
+		int ok = 0;
+		for (int id = 1; id <= NOMBRES; id++) {
+			List<Type> params = ts.buscarParams(id);
+			if (ts.buscarTipo(id) == Type.ENTERO && ts.buscarCategoria(id) == Category.VARIABLE && params != null)
+				ok++;
+		}
+		return ok;
+	}
+}
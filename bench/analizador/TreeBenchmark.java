@@ -0,0 +1,85 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara el árbol de objetos {@link ASTNode} con el árbol plano
+ * {@link FlatAST}: análisis completo de un programa con expresiones y
+ * funciones construyendo cada árbol (la arena se reutiliza entre
+ * iteraciones) y volcado con {@code toDotFile()}; {@code toIndentedString()}
+ * no sirve aquí porque la sangría crece con cada sentencia de la lista P.
+ * Para ver también la memoria reservada, añadir {@code -prof gc}.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar TreeBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xss64m")
+public class TreeBenchmark {
+	private TokenBuffer tokens;
+	private final FlatAST arena = new FlatAST();
+	private ASTNode objetos;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1 << 20; i++) {
+			sb.append("function int f").append(i).append(" (int a, int b) {\n")
+					.append("\tlet int c;\n")
+					.append("\tc = a + b + ").append(i).append(";\n")
+					.append("\tif (a == b && c == a) write c;\n")
+					.append("\treturn c + (a + 1);\n")
+					.append("}\n")
+					.append("let int x").append(i).append(";\n")
+					.append("x").append(i).append(" = f").append(i).append("(").append(i).append(", 2);\n");
+		}
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		tokens = new Lexer(source, new ErrorManager()).tokenizeToBuffer();
+		objetos = objetos();
+		arena();
+	}
+
+	@Benchmark
+	public ASTNode objetos() {
+		return new Parser(tokens.stream(), new ErrorManager(), new RuleLog()).parseAST();
+	}
+
+	@Benchmark
+	public FlatAST arena() {
+		arena.clear();
+		Parser.enArena(tokens.stream(), new ErrorManager(), new RuleLog(), arena).parseAST();
+		return arena;
+	}
+
+	@Benchmark
+	public String objetosDot() {
+		return objetos.toDotFile();
+	}
+
+	@Benchmark
+	public String arenaDot() {
+		return arena.toDotFile();
+	}
+}
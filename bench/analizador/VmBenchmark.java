@@ -0,0 +1,133 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operaciones de bytecode por segundo de la {@link VirtualMachine} en
+ * programas de bucles: sumas de int en dos bucles anidados, llamadas a
+ * funciones dentro de un bucle y floats con {@code /=} y comparaciones de
+ * cadenas. El contador "instrucciones" da las operaciones ejecutadas por
+ * segundo; la puntuación principal, las ejecuciones completas del programa.
+ *
+ * Compilar y ejecutar (bench/pom.xml reúne JMH, src y src-vector):
+ *
+ * <pre>
+ * mvn -B -f bench/pom.xml package
+ * java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar VmBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class VmBenchmark {
+	// Sin operador de resta ni '<': los bucles acaban con un boolean
+	static final String ENTEROS = "let int i;\n"
+			+ "let int j;\n"
+			+ "let int total;\n"
+			+ "let boolean seguir;\n"
+			+ "let boolean dentro;\n"
+			+ "seguir = true;\n"
+			+ "for (i = 0; seguir; i = i + 1) {\n"
+			+ "\tdentro = true;\n"
+			+ "\tfor (j = 0; dentro; j = j + 1) {\n"
+			+ "\t\ttotal = total + j + i;\n"
+			+ "\t\tif (j == 300) dentro = false;\n"
+			+ "\t}\n"
+			+ "\tif (i == 300) seguir = false;\n"
+			+ "}\n"
+			+ "write total;\n";
+
+	static final String LLAMADAS = "let int total;\n"
+			+ "let int i;\n"
+			+ "let boolean seguir;\n"
+			+ "function int suma(int a, int b) {\n"
+			+ "\tlet int c;\n"
+			+ "\tc = a + b;\n"
+			+ "\treturn c;\n"
+			+ "}\n"
+			+ "function boolean fin(int n) {\n"
+			+ "\treturn n == 30000;\n"
+			+ "}\n"
+			+ "seguir = true;\n"
+			+ "for (i = 0; seguir; i = i + 1) {\n"
+			+ "\ttotal = suma(total, i);\n"
+			+ "\tif (fin(i)) seguir = false;\n"
+			+ "}\n"
+			+ "write total;\n";
+
+	static final String REALES = "let float x;\n"
+			+ "let int i;\n"
+			+ "let string s;\n"
+			+ "let boolean seguir;\n"
+			+ "let int iguales;\n"
+			+ "seguir = true;\n"
+			+ "s = 'abc';\n"
+			+ "for (i = 0; seguir; i = i + 1) {\n"
+			+ "\tx = x + 3.5;\n"
+			+ "\tx /= 1.5;\n"
+			+ "\tif (s == 'abc' && x == x) iguales = iguales + 1;\n"
+			+ "\tif (i == 30000) seguir = false;\n"
+			+ "}\n"
+			+ "write x;\n"
+			+ "write iguales;\n";
+
+	@Param({ "enteros", "llamadas", "reales" })
+	public String programa;
+
+	private Bytecode bytecode;
+
+	/** Operaciones de bytecode ejecutadas, que JMH da por segundo. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Contador {
+		public long instrucciones;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			instrucciones = 0;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		String fuente = programa.equals("enteros") ? ENTEROS : programa.equals("llamadas") ? LLAMADAS : REALES;
+		byte[] bytes = fuente.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		ErrorManager errores = new ErrorManager();
+		TokenBuffer tokens = new Lexer(source, errores).tokenizeToBuffer();
+		ASTNode ast = new Parser(tokens.stream(), errores, new RuleLog()).parseAST();
+		if (errores.hayErrores())
+			throw new IllegalStateException(errores.getErroresString());
+		bytecode = BytecodeCompiler.compilar(ast);
+	}
+
+	@Benchmark
+	public long ejecutar(Contador contador) throws IOException {
+		VirtualMachine vm = new VirtualMachine(bytecode, new StringReader(""), Writer.nullWriter());
+		vm.ejecutar();
+		contador.instrucciones += vm.getInstrucciones();
+		return vm.getInstrucciones();
+	}
+}
@@ -14,13 +14,28 @@ else
     exit 1
 fi
 
+# El salto vectorial del analizador léxico (src-vector) necesita el módulo
+# jdk.incubator.vector, que la JVM anuncia con un aviso en cada ejecución, así
+# que solo se usa con SIMD=1 ./run.sh; si no, el léxico usa su bucle escalar.
+# Si src-vector no compila, se muestran los errores y se sigue sin él.
+rm -f bin/analizador/VectorByteRuns.class
+if [ "$SIMD" = "1" ]; then
+    if javac --add-modules jdk.incubator.vector -encoding UTF-8 -d bin -cp bin src-vector/analizador/*.java; then
+        JAVA_OPTS="--add-modules jdk.incubator.vector $JAVA_OPTS"
+    else
+        rm -f bin/analizador/VectorByteRuns.class
+        echo "No se ha podido compilar src-vector: el léxico usa su bucle escalar."
+    fi
+fi
+
 # Ejecutar
 if [ -z "$1" ]; then
     # Si no se pasa argumento, usar el fichero de prueba por defecto
     ARCHIVO="programa.javascript"
 else
     ARCHIVO="$1"
+    shift
 fi
 
 echo "Ejecutando Procesador con: $ARCHIVO"
-java -cp bin analizador.Main "$ARCHIVO"
+java $JAVA_OPTS -cp bin analizador.Main "$ARCHIVO" "$@"
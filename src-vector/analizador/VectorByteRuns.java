@@ -0,0 +1,117 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ByteRuns} con la API de vectores: clasifica de 16 a 64 bytes por
+ * instrucción (según el ancho preferido del hardware) y localiza el primero
+ * que rompe la racha. El final de la entrada se recorre byte a byte. Está en
+ * un directorio de fuentes propio y solo se carga por reflexión desde
+ * {@link ByteRuns}, así que el resto del analizador no depende del módulo
+ * jdk.incubator.vector ni para compilar ni para ejecutarse.
+ */
+final class VectorByteRuns extends ByteRuns {
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+	private VectorByteRuns() {
+	}
+
+	/** @return instancia, o null si el hardware no tiene vectores de 16 bytes. */
+	static ByteRuns create() {
+		return LANES >= 16 ? new VectorByteRuns() : null;
+	}
+
+	@Override
+	int blanksEnd(ByteBuffer src, int from, int to) {
+		int p = from;
+		while (p + LANES <= to) {
+			ByteVector v = ByteVector.fromByteBuffer(SPECIES, src, p, ORDER);
+			// '\t', 0x0B, '\f', '\r' (sin '\n'), 0x1C-0x1F y ' '
+			VectorMask<Byte> blank = v.compare(VectorOperators.GE, (byte) 0x09)
+					.and(v.compare(VectorOperators.LE, (byte) 0x0D))
+					.and(v.compare(VectorOperators.NE, (byte) '\n'))
+					.or(v.compare(VectorOperators.GE, (byte) 0x1C).and(v.compare(VectorOperators.LE, (byte) ' ')));
+			int stop = blank.not().firstTrue();
+			if (stop < LANES)
+				return p + stop;
+			p += LANES;
+		}
+		while (p < to && isBlank(src.get(p)))
+			p++;
+		return p;
+	}
+
+	@Override
+	int commentEnd(ByteBuffer src, int from, int to) {
+		int p = from;
+		while (p + LANES <= to) {
+			ByteVector v = ByteVector.fromByteBuffer(SPECIES, src, p, ORDER);
+			VectorMask<Byte> stop = v.compare(VectorOperators.EQ, (byte) '\n')
+					.or(v.compare(VectorOperators.LT, (byte) 0));
+			int first = stop.firstTrue();
+			if (first < LANES)
+				return p + first;
+			p += LANES;
+		}
+		byte b;
+		while (p < to && (b = src.get(p)) != '\n' && b >= 0)
+			p++;
+		return p;
+	}
+
+	@Override
+	int wordEnd(ByteBuffer src, int from, int to) {
+		int p = from;
+		while (p + LANES <= to) {
+			ByteVector v = ByteVector.fromByteBuffer(SPECIES, src, p, ORDER);
+			// Con el bit 0x20 activado, 'A'-'Z' pasa a 'a'-'z'
+			ByteVector lower = v.or((byte) 0x20);
+			VectorMask<Byte> word = lower.compare(VectorOperators.GE, (byte) 'a')
+					.and(lower.compare(VectorOperators.LE, (byte) 'z'))
+					.or(v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9')))
+					.or(v.compare(VectorOperators.EQ, (byte) '_'));
+			int stop = word.not().firstTrue();
+			if (stop < LANES)
+				return p + stop;
+			p += LANES;
+		}
+		while (p < to && isWord(src.get(p)))
+			p++;
+		return p;
+	}
+
+	@Override
+	int digitsEnd(ByteBuffer src, int from, int to) {
+		int p = from;
+		while (p + LANES <= to) {
+			ByteVector v = ByteVector.fromByteBuffer(SPECIES, src, p, ORDER);
+			VectorMask<Byte> digit = v.compare(VectorOperators.GE, (byte) '0')
+					.and(v.compare(VectorOperators.LE, (byte) '9'));
+			int stop = digit.not().firstTrue();
+			if (stop < LANES)
+				return p + stop;
+			p += LANES;
+		}
+		byte b;
+		while (p < to && (b = src.get(p)) >= '0' && b <= '9')
+			p++;
+		return p;
+	}
+
+	private static boolean isBlank(byte b) {
+		return (b >= 0x09 && b <= 0x0D && b != '\n') || (b >= 0x1C && b <= ' ');
+	}
+
+	private static boolean isWord(byte b) {
+		int lower = b | 0x20;
+		return (lower >= 'a' && lower <= 'z') || (b >= '0' && b <= '9') || b == '_';
+	}
+}
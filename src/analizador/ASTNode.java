@@ -10,6 +10,10 @@ public class ASTNode {
 	private final List<ASTNode> children = new ArrayList<>();
 	private Type semanticType;
 	private List<Type> listaTipos;
+	private int linea; // id: la de su token; B, S, S2, V1: la del último token
+	private String lexema; // literales entero, real y cadena
+	private int clave; // id: clave del símbolo en la SymbolTable
+	private SymbolSnapshot.Simbolo simbolo; // id: símbolo al que se refiere
 
 	public ASTNode(String label) {
 		this.label = label;
@@ -35,6 +39,56 @@ public class ASTNode {
 		this.semanticType = semanticType;
 	}
 
+	/**
+	 * @return línea del nodo: la del token en las hojas de identificador y la
+	 *         del último token analizado en B, S, S2 y V1, que es donde el
+	 *         parser informa de sus errores; 0 en el resto.
+	 */
+	public int getLinea() {
+		return linea;
+	}
+
+	public void setLinea(int linea) {
+		this.linea = linea;
+	}
+
+	/** @return lexema de una hoja de literal entero, real o cadena; null en el resto. */
+	public String getLexema() {
+		return lexema;
+	}
+
+	public void setLexema(String lexema) {
+		this.lexema = lexema;
+	}
+
+	/**
+	 * @return clave del identificador en la {@link SymbolTable} en las hojas
+	 *         de id: el id del {@link Interner} o, si la recuperación de errores
+	 *         dejó otro token en su lugar, una clave negativa propia de su
+	 *         lexema; 0 en el resto.
+	 */
+	public int getClave() {
+		return clave;
+	}
+
+	public void setClave(int clave) {
+		this.clave = clave;
+	}
+
+	/**
+	 * @return en las hojas de id, el símbolo que declara o al que se refiere,
+	 *         tal como lo resolvió el análisis semántico (el del parser o el
+	 *         {@link SemanticAnalyzer}); es el mismo objeto en la declaración y
+	 *         en todos sus usos. null si no se resolvió.
+	 */
+	public SymbolSnapshot.Simbolo getSimbolo() {
+		return simbolo;
+	}
+
+	public void setSimbolo(SymbolSnapshot.Simbolo simbolo) {
+		this.simbolo = simbolo;
+	}
+
 	public List<Type> getListaTipos() {
 		return listaTipos;
 	}
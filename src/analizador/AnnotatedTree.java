@@ -0,0 +1,127 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Type;
+
+/**
+ * Lectura del árbol anotado por el análisis semántico, común a los
+ * generadores de código ({@link BytecodeCompiler}, {@link JvmCompiler} e
+ * {@link IRGenerator}). El análisis ya ha resuelto cada id a su símbolo
+ * ({@link ASTNode#getSimbolo()}) y dado tipo a cada expresión, y los
+ * generadores solo se usan con programas sin errores, así que no vuelven a
+ * comprobar nada: lo que aquí falla es un árbol sin analizar o incompleto, y
+ * lanza IllegalArgumentException.
+ */
+final class AnnotatedTree {
+
+	private AnnotatedTree() {
+	}
+
+	/** @return símbolo que declara o al que se refiere una hoja de id. */
+	static Simbolo simbolo(ASTNode id) {
+		Simbolo simbolo = id.getSimbolo();
+		if (simbolo == null)
+			throw new IllegalArgumentException(
+					"Línea " + id.getLinea() + ": '" + id.getLabel() + "' sin resolver; ¿tiene el árbol errores?");
+		return simbolo;
+	}
+
+	/**
+	 * @return lo que un generador asoció al símbolo de una hoja de id al
+	 *         declararlo: su variable o su función.
+	 */
+	static <T> T destino(Map<Simbolo, T> destinos, ASTNode id) {
+		T destino = destinos.get(simbolo(id));
+		if (destino == null)
+			throw new IllegalArgumentException(
+					"Línea " + id.getLinea() + ": '" + simbolo(id).lexeme + "' se usa antes de su declaración en el árbol");
+		return destino;
+	}
+
+	/** @return tipo de una expresión: E, R, U, V o un nodo de una expresión compacta. */
+	static Type tipo(ASTNode expresion) {
+		Type tipo = expresion.getSemanticType();
+		if (tipo == null || tipo == Type.ERROR)
+			throw new IllegalArgumentException("Expresión '" + expresion.getLabel() + "' sin tipo; ¿tiene el árbol errores?");
+		return tipo;
+	}
+
+	/** F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha: falta el cuerpo tras el preanálisis. */
+	static void requerirCuerpo(ASTNode f) {
+		if (hijos(f) < 6) {
+			ASTNode id = hijo(f, 2);
+			throw new IllegalArgumentException("Línea " + id.getLinea() + ": la función '" + simbolo(id).lexeme
+					+ "' no tiene el cuerpo analizado");
+		}
+	}
+
+	/** Z -> T id K, K -> coma T id K: hojas de id de los parámetros, en orden. */
+	static List<ASTNode> parametros(ASTNode z) {
+		List<ASTNode> ids = new ArrayList<>();
+		if (hijos(z) > 0) {
+			ids.add(hijo(z, 1));
+			for (ASTNode k = hijo(z, 2); hijos(k) > 0; k = hijo(k, 3))
+				ids.add(hijo(k, 2));
+		}
+		return ids;
+	}
+
+	/** L -> E Q, Q -> coma E Q: expresiones de los argumentos, en orden. */
+	static List<ASTNode> argumentos(ASTNode l) {
+		List<ASTNode> args = new ArrayList<>();
+		if (hijos(l) > 0) {
+			args.add(hijo(l, 0));
+			for (ASTNode q = hijo(l, 1); hijos(q) > 0; q = hijo(q, 2))
+				args.add(hijo(q, 1));
+		}
+		return args;
+	}
+
+	/** Operandos de una cadena X -> Y X1, X1 -> op Y X1 del árbol completo. */
+	static List<ASTNode> operandos(ASTNode x) {
+		List<ASTNode> operandos = new ArrayList<>();
+		operandos.add(hijo(x, 0));
+		for (ASTNode x1 = hijo(x, 1); hijos(x1) > 0; x1 = hijo(x1, 2))
+			operandos.add(hijo(x1, 1));
+		return operandos;
+	}
+
+	/** Operandos de una cadena compacta, que cuelga por la izquierda. */
+	static List<ASTNode> compactos(ASTNode op) {
+		List<ASTNode> operandos = new ArrayList<>();
+		ASTNode izquierdo = op;
+		while (izquierdo.getLabel().equals(op.getLabel())) {
+			operandos.add(hijo(izquierdo, 1));
+			izquierdo = hijo(izquierdo, 0);
+		}
+		operandos.add(izquierdo);
+		Collections.reverse(operandos);
+		return operandos;
+	}
+
+	/** W -> igual | asigDiv: true si es '/='. */
+	static boolean division(ASTNode w) {
+		return hijo(w, 0).getLabel().equals("asigDiv");
+	}
+
+	/** @return lexema de una hoja de literal entero, real o cadena. */
+	static String lexema(ASTNode literal) {
+		if (literal.getLexema() == null)
+			throw new IllegalArgumentException("Literal '" + literal.getLabel() + "' sin valor en el árbol");
+		return literal.getLexema();
+	}
+
+	static ASTNode hijo(ASTNode node, int i) {
+		if (i >= node.getChildren().size())
+			throw new IllegalArgumentException("Árbol incompleto en '" + node.getLabel() + "'");
+		return node.getChildren().get(i);
+	}
+
+	static int hijos(ASTNode node) {
+		return node.getChildren().size();
+	}
+}
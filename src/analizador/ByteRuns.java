@@ -0,0 +1,67 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Búsqueda del final de rachas de bytes de una misma clase: espacios, cuerpo
+ * de un comentario, identificador o dígitos. El {@link Lexer} la usa para
+ * saltar esas rachas de golpe en lugar de byte a byte.
+ *
+ * La única implementación, {@code VectorByteRuns}, usa el módulo
+ * jdk.incubator.vector y está aparte, en src-vector, para que el resto se
+ * compile sin él (run.sh solo la compila con SIMD=1). Se elige al
+ * arrancar: solo si está en el classpath, el módulo se ha añadido
+ * ({@code --add-modules jdk.incubator.vector}), el hardware ofrece vectores de
+ * al menos 16 bytes y no se ha desactivado con {@code -Danalizador.simd=false}.
+ * En otro caso {@link #VECTOR} es null y el analizador sigue con su bucle
+ * escalar.
+ */
+abstract class ByteRuns {
+	/** Implementación vectorial, o null si no está disponible. */
+	static final ByteRuns VECTOR = load();
+
+	private static ByteRuns load() {
+		if (!Boolean.parseBoolean(System.getProperty("analizador.simd", "true")))
+			return null;
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return null;
+		try {
+			return (ByteRuns) Class.forName("analizador.VectorByteRuns").getDeclaredMethod("create").invoke(null);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return fin de la racha que el autómata recorrería sin salir de
+	 *         {@code state} empezando en {@code from}; {@code from} si el estado
+	 *         no tiene racha que saltar.
+	 */
+	final int end(int state, ByteBuffer src, int from, int to) {
+		switch (state) {
+			case ScannerTable.S_START:
+				return blanksEnd(src, from, to);
+			case ScannerTable.S_COMMENT:
+				return commentEnd(src, from, to);
+			case ScannerTable.S_ID:
+				return wordEnd(src, from, to);
+			case ScannerTable.S_INT:
+			case ScannerTable.S_REAL:
+				return digitsEnd(src, from, to);
+			default:
+				return from;
+		}
+	}
+
+	/** @return primer byte que no es espacio en blanco ASCII o es '\n'. */
+	abstract int blanksEnd(ByteBuffer src, int from, int to);
+
+	/** @return primer '\n' o byte no ASCII. */
+	abstract int commentEnd(ByteBuffer src, int from, int to);
+
+	/** @return primer byte que no es letra ASCII, dígito ni '_'. */
+	abstract int wordEnd(ByteBuffer src, int from, int to);
+
+	/** @return primer byte que no es un dígito. */
+	abstract int digitsEnd(ByteBuffer src, int from, int to);
+}
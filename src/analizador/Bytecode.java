@@ -0,0 +1,146 @@
+package analizador;
+
+/**
+ * Programa compilado por {@link BytecodeCompiler} para la
+ * {@link VirtualMachine}: un array de enteros con los códigos de operación,
+ * cada uno seguido de su operando si lo tiene, el pool de constantes de
+ * cadena y la tabla de funciones. El código global empieza en la posición 0 y
+ * acaba en {@link #HALT}; el de cada función, en su {@link Funcion#entrada}.
+ *
+ * La máquina tiene dos pilas: la numérica, donde int y boolean van tal cual y
+ * float como sus bits ({@link Float#floatToRawIntBits}), y la de cadenas. Las
+ * variables globales y las locales de cada marco se reparten igual, así que
+ * cada operación dice en su nombre sobre qué pila trabaja: I para int y
+ * boolean, F para float y S para string. Los int del lenguaje son de 16
+ * bits: IADD e IDIV dejan el resultado reducido a short.
+ */
+public final class Bytecode {
+	static final int HALT = 0;
+	static final int ICONST = 1; // valor
+	static final int FCONST = 2; // bits del float
+	static final int SCONST = 3; // índice en el pool
+	static final int ILOAD = 4; // hueco del marco
+	static final int ISTORE = 5;
+	static final int SLOAD = 6;
+	static final int SSTORE = 7;
+	static final int GILOAD = 8; // hueco global
+	static final int GISTORE = 9;
+	static final int GSLOAD = 10;
+	static final int GSSTORE = 11;
+	static final int IADD = 12;
+	static final int FADD = 13;
+	static final int IDIV = 14;
+	static final int FDIV = 15;
+	// a b -> a == b
+	static final int IEQ = 16;
+	static final int FEQ = 17;
+	static final int SEQ = 18;
+	// Cadenas de ==: primero acumulado x -> primero (acumulado && primero == x)
+	static final int IEQC = 19;
+	static final int FEQC = 20;
+	static final int SEQC = 21;
+	static final int NIP = 22; // a b -> b
+	static final int POP = 23;
+	static final int SPOP = 24;
+	static final int JMP = 25; // destino
+	static final int JMPF = 26; // destino; salta si la cima es false y la quita
+	static final int JFK = 27; // destino; salta si la cima es false sin quitarla (&&)
+	static final int CALL = 28; // índice de la función
+	static final int RET = 29; // devuelve la cima numérica
+	static final int SRET = 30; // devuelve la cima de cadenas
+	static final int WRITEI = 31;
+	static final int WRITEF = 32;
+	static final int WRITEB = 33;
+	static final int WRITES = 34;
+	static final int READI = 35;
+	static final int READF = 36;
+	static final int READB = 37;
+	static final int READS = 38;
+
+	private static final String[] NOMBRES = { "HALT", "ICONST", "FCONST", "SCONST", "ILOAD", "ISTORE", "SLOAD",
+			"SSTORE", "GILOAD", "GISTORE", "GSLOAD", "GSSTORE", "IADD", "FADD", "IDIV", "FDIV", "IEQ", "FEQ", "SEQ",
+			"IEQC", "FEQC", "SEQC", "NIP", "POP", "SPOP", "JMP", "JMPF", "JFK", "CALL", "RET", "SRET", "WRITEI",
+			"WRITEF", "WRITEB", "WRITES", "READI", "READF", "READB", "READS" };
+
+	/** @return true si la operación lleva un operando detrás. */
+	static boolean tieneOperando(int op) {
+		return (op >= ICONST && op <= GSSTORE) || (op >= JMP && op <= CALL);
+	}
+
+	/** Función compilada: dónde empieza y cuánto ocupa su marco en cada pila. */
+	public static final class Funcion {
+		public final String nombre;
+		public final int entrada;
+		public final int paramsNum;
+		public final int paramsCad;
+		public final int localesNum; // incluidos los parámetros
+		public final int localesCad;
+		public final int pilaNum; // profundidad máxima sobre los locales
+		public final int pilaCad;
+
+		Funcion(String nombre, int entrada, int paramsNum, int paramsCad, int localesNum, int localesCad, int pilaNum,
+				int pilaCad) {
+			this.nombre = nombre;
+			this.entrada = entrada;
+			this.paramsNum = paramsNum;
+			this.paramsCad = paramsCad;
+			this.localesNum = localesNum;
+			this.localesCad = localesCad;
+			this.pilaNum = pilaNum;
+			this.pilaCad = pilaCad;
+		}
+	}
+
+	final int[] codigo;
+	final String[] constantes;
+	final Funcion[] funciones;
+	final int globalesNum;
+	final int globalesCad;
+	final int pilaNum; // profundidad máxima del código global
+	final int pilaCad;
+
+	Bytecode(int[] codigo, String[] constantes, Funcion[] funciones, int globalesNum, int globalesCad, int pilaNum,
+			int pilaCad) {
+		this.codigo = codigo;
+		this.constantes = constantes;
+		this.funciones = funciones;
+		this.globalesNum = globalesNum;
+		this.globalesCad = globalesCad;
+		this.pilaNum = pilaNum;
+		this.pilaCad = pilaCad;
+	}
+
+	/** @return tamaño del código en enteros. */
+	public int size() {
+		return codigo.length;
+	}
+
+	/** Listado del código, una operación por línea, con las entradas de las funciones. */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int pc = 0; pc < codigo.length;) {
+			for (Funcion f : funciones) {
+				if (f.entrada == pc)
+					sb.append(f.nombre).append(":\n");
+			}
+			int op = codigo[pc];
+			sb.append(String.format("%6d  %s", pc, NOMBRES[op]));
+			if (tieneOperando(op)) {
+				int arg = codigo[pc + 1];
+				sb.append(' ').append(arg);
+				if (op == FCONST)
+					sb.append(" (").append(Float.intBitsToFloat(arg)).append(')');
+				else if (op == SCONST)
+					sb.append(" ('").append(constantes[arg]).append("')");
+				else if (op == CALL)
+					sb.append(" (").append(funciones[arg].nombre).append(')');
+				pc += 2;
+			} else {
+				pc++;
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,457 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Type;
+
+import static analizador.AnnotatedTree.*;
+import static analizador.Bytecode.*;
+
+/**
+ * Compila a {@link Bytecode} el árbol de {@link Parser#parseAST()}, completo
+ * o con expresiones compactas, en una sola pasada en el orden del programa.
+ * Los nombres y los tipos son los que el análisis semántico anotó en el árbol
+ * (ver {@link AnnotatedTree}): cada símbolo declarado recibe su hueco al
+ * llegar a su declaración y sus usos lo encuentran por el símbolo anotado.
+ * Solo se compilan programas sin errores; un árbol sin analizar o incompleto,
+ * como el de {@link Parser#setPreanalisis}, lanza IllegalArgumentException.
+ *
+ * Las variables sin asignar valen 0, 0.0, false o '' y un return fuera de las
+ * funciones termina el programa. Los int son de 16 bits, como el mayor
+ * literal (32767): las sumas desbordan dando la vuelta en -32768 y
+ * -32768 / -1 vale -32768.
+ */
+public final class BytecodeCompiler {
+
+	private static final class Variable {
+		final Type tipo;
+		final boolean global;
+		final int hueco;
+
+		Variable(Type tipo, boolean global, int hueco) {
+			this.tipo = tipo;
+			this.global = global;
+			this.hueco = hueco;
+		}
+	}
+
+	// Efecto de cada operación en la pila numérica y en la de cadenas; el de
+	// CALL depende de la función
+	private static final int[] EFECTO_NUM = new int[READS + 1];
+	private static final int[] EFECTO_CAD = new int[READS + 1];
+
+	static {
+		for (int op : new int[] { ICONST, FCONST, ILOAD, GILOAD, READI, READF, READB })
+			EFECTO_NUM[op] = 1;
+		for (int op : new int[] { ISTORE, GISTORE, IADD, FADD, IDIV, FDIV, IEQ, FEQ, IEQC, FEQC, NIP, POP, JMPF, JFK,
+				RET, WRITEI, WRITEF, WRITEB })
+			EFECTO_NUM[op] = -1;
+		for (int op : new int[] { SCONST, SLOAD, GSLOAD, READS })
+			EFECTO_CAD[op] = 1;
+		for (int op : new int[] { SSTORE, GSSTORE, SEQC, SPOP, SRET, WRITES })
+			EFECTO_CAD[op] = -1;
+		EFECTO_NUM[SEQ] = 1;
+		EFECTO_CAD[SEQ] = -2;
+	}
+
+	// Hueco de cada variable e índice de cada función, por su símbolo
+	private final Map<Simbolo, Variable> variables = new IdentityHashMap<>();
+	private final Map<Simbolo, Integer> indicesFuncion = new IdentityHashMap<>();
+	private Simbolo actual; // función que se compila; null fuera de las funciones
+	private int globalesNum = 0;
+	private int globalesCad = 0;
+	private int localesNum;
+	private int localesCad;
+
+	private int[] codigo = new int[256];
+	private int size = 0;
+	private final List<String> constantes = new ArrayList<>();
+	private final Map<String, Integer> indices = new HashMap<>();
+	private final List<Bytecode.Funcion> funciones = new ArrayList<>();
+
+	// Profundidad de las pilas en el punto actual del código y máxima
+	private int pilaNum = 0;
+	private int pilaCad = 0;
+	private int maxNum = 0;
+	private int maxCad = 0;
+
+	private BytecodeCompiler() {
+	}
+
+	/**
+	 * Compila el programa que cuelga de {@code raiz} (el nodo P1).
+	 *
+	 * @throws IllegalArgumentException si el árbol no está analizado o está incompleto
+	 */
+	public static Bytecode compilar(ASTNode raiz) {
+		return new BytecodeCompiler().programa(raiz);
+	}
+
+	private Bytecode programa(ASTNode raiz) {
+		for (ASTNode p = hijo(raiz, 0); hijos(p) > 0; p = hijo(p, 1)) {
+			ASTNode item = hijo(p, 0);
+			if (item.getLabel().equals("F"))
+				funcion(item);
+			else
+				sentencia(item);
+		}
+		emitir(HALT);
+		return new Bytecode(Arrays.copyOf(codigo, size), constantes.toArray(new String[0]),
+				funciones.toArray(new Bytecode.Funcion[0]), globalesNum, globalesCad, maxNum, maxCad);
+	}
+
+	/** F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha */
+	private void funcion(ASTNode f) {
+		requerirCuerpo(f);
+		Simbolo funcion = simbolo(hijo(f, 2));
+		int indice = funciones.size();
+		funciones.add(null);
+		indicesFuncion.put(funcion, indice); // visible en su propio cuerpo
+
+		// Los parámetros ocupan los primeros huecos, en orden
+		localesNum = 0;
+		localesCad = 0;
+		for (ASTNode id : parametros(hijo(f, 3)))
+			declararLocal(simbolo(id));
+		int paramsNum = localesNum;
+		int paramsCad = localesCad;
+
+		// El código de la función queda dentro del global: se salta
+		int salto = saltar(JMP);
+		int entrada = size;
+		int[] pilas = { pilaNum, pilaCad, maxNum, maxCad };
+		pilaNum = pilaCad = maxNum = maxCad = 0;
+		actual = funcion;
+		lista(hijo(f, 4));
+		retorno(hijo(hijo(f, 5), 0));
+		funciones.set(indice, new Bytecode.Funcion(funcion.lexeme, entrada, paramsNum, paramsCad, localesNum,
+				localesCad, maxNum, maxCad));
+		actual = null;
+		pilaNum = pilas[0];
+		pilaCad = pilas[1];
+		maxNum = pilas[2];
+		maxCad = pilas[3];
+		fijar(salto);
+	}
+
+	private void declararLocal(Simbolo simbolo) {
+		Type tipo = simbolo.type;
+		variables.put(simbolo, new Variable(tipo, false, tipo == Type.CADENA ? localesCad++ : localesNum++));
+	}
+
+	/** C -> B C */
+	private void lista(ASTNode c) {
+		for (; hijos(c) > 0; c = hijo(c, 1))
+			sentencia(hijo(c, 0));
+	}
+
+	/** B: let, if, for o S. */
+	private void sentencia(ASTNode b) {
+		String primero = hijo(b, 0).getLabel();
+		if (primero.equals("PRlet")) {
+			Simbolo simbolo = simbolo(hijo(b, 2));
+			Type tipo = simbolo.type;
+			if (actual != null)
+				declararLocal(simbolo);
+			else
+				variables.put(simbolo, new Variable(tipo, true, tipo == Type.CADENA ? globalesCad++ : globalesNum++));
+		} else if (primero.equals("PRif")) {
+			expresion(hijo(b, 1));
+			int salto = saltar(JMPF);
+			s(hijo(b, 2));
+			fijar(salto);
+		} else if (primero.equals("PRfor")) {
+			f1(hijo(b, 1));
+			int condicion = size;
+			expresion(hijo(b, 2));
+			int salida = saltar(JMPF);
+			lista(hijo(b, 4));
+			f1(hijo(b, 3));
+			emitir(JMP, condicion);
+			fijar(salida);
+		} else {
+			s(hijo(b, 0));
+		}
+	}
+
+	/** F1 -> id W E | lambda */
+	private void f1(ASTNode f1) {
+		if (hijos(f1) > 0)
+			asignacion(hijo(f1, 0), hijo(f1, 1), hijo(f1, 2));
+	}
+
+	/** S -> id S2 | PRwrite E | PRread id | S1 */
+	private void s(ASTNode s) {
+		ASTNode primero = hijo(s, 0);
+		switch (primero.getLabel()) {
+			case "PRwrite": {
+				Type tipo = expresion(hijo(s, 1));
+				emitir(tipo == Type.ENTERO ? WRITEI
+						: tipo == Type.REAL ? WRITEF : tipo == Type.BOOLEAN ? WRITEB : WRITES);
+				break;
+			}
+			case "PRread": {
+				Variable v = destino(variables, hijo(s, 1));
+				emitir(v.tipo == Type.ENTERO ? READI
+						: v.tipo == Type.REAL ? READF : v.tipo == Type.BOOLEAN ? READB : READS);
+				guardar(v);
+				break;
+			}
+			case "S1":
+				retorno(primero);
+				break;
+			default: {
+				// S2 -> W E puntoComa | parenIzq L parenDcha puntoComa
+				ASTNode s2 = hijo(s, 1);
+				if (hijo(s2, 0).getLabel().equals("W")) {
+					asignacion(primero, hijo(s2, 0), hijo(s2, 1));
+				} else {
+					Type tipo = llamada(primero, hijo(s2, 1));
+					emitir(tipo == Type.CADENA ? SPOP : POP);
+				}
+				break;
+			}
+		}
+	}
+
+	/** id W E, con W -> igual | asigDiv */
+	private void asignacion(ASTNode id, ASTNode w, ASTNode e) {
+		Variable v = destino(variables, id);
+		boolean div = division(w);
+		if (div)
+			cargar(v);
+		expresion(e);
+		if (div)
+			emitir(v.tipo == Type.ENTERO ? IDIV : FDIV);
+		guardar(v);
+	}
+
+	/** S1 -> PRreturn X, X -> E | lambda */
+	private void retorno(ASTNode s1) {
+		ASTNode x = hijo(s1, 1);
+		if (actual == null) {
+			// Fuera de las funciones termina el programa
+			if (hijos(x) > 0)
+				expresion(hijo(x, 0));
+			emitir(HALT);
+			return;
+		}
+		expresion(hijo(x, 0));
+		emitir(actual.type == Type.CADENA ? SRET : RET);
+	}
+
+	/**
+	 * Código de una expresión: un nodo E o un nodo de una expresión compacta.
+	 *
+	 * @return su tipo
+	 */
+	private Type expresion(ASTNode e) {
+		switch (e.getLabel()) {
+			case "E":
+				y(operandos(e), this::r);
+				break;
+			case "opAnd":
+				y(compactos(e), this::expresion);
+				break;
+			case "opIgual":
+				igual(compactos(e), this::expresion);
+				break;
+			case "opSuma":
+				suma(compactos(e), this::expresion);
+				break;
+			case "parentesis":
+				expresion(hijo(e, 0));
+				break;
+			default:
+				operando(e);
+				break;
+		}
+		return tipo(e);
+	}
+
+	private Type r(ASTNode r) {
+		igual(operandos(r), this::u);
+		return tipo(r);
+	}
+
+	private Type u(ASTNode u) {
+		suma(operandos(u), this::v);
+		return tipo(u);
+	}
+
+	/** V -> id V1 | parenIzq E parenDcha | literal */
+	private Type v(ASTNode v) {
+		ASTNode primero = hijo(v, 0);
+		if (primero.getLabel().equals("parenIzq")) {
+			expresion(hijo(v, 1));
+		} else if (hijos(v) == 2) {
+			ASTNode v1 = hijo(v, 1);
+			if (hijos(v1) > 0)
+				llamada(primero, hijo(v1, 1));
+			else
+				cargar(destino(variables, primero));
+		} else {
+			operando(primero);
+		}
+		return tipo(v);
+	}
+
+	/** a && b && ...: en cuanto uno es false se salta al final con él en la cima. */
+	private void y(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		compilar.apply(operandos.get(0));
+		int[] saltos = new int[operandos.size() - 1];
+		for (int i = 1; i < operandos.size(); i++) {
+			saltos[i - 1] = saltar(JFK);
+			compilar.apply(operandos.get(i));
+		}
+		for (int salto : saltos)
+			fijar(salto);
+	}
+
+	/**
+	 * a == b == ...: true si todos son iguales. Con más de dos operandos el
+	 * primero se queda en la pila con un acumulado encima.
+	 */
+	private void igual(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		Type tipo = compilar.apply(operandos.get(0));
+		if (operandos.size() == 1)
+			return;
+		boolean cadena = operandos.size() > 2;
+		if (cadena)
+			emitir(ICONST, 1);
+		for (int i = 1; i < operandos.size(); i++) {
+			compilar.apply(operandos.get(i));
+			if (tipo == Type.CADENA)
+				emitir(cadena ? SEQC : SEQ);
+			else if (tipo == Type.REAL)
+				emitir(cadena ? FEQC : FEQ);
+			else
+				emitir(cadena ? IEQC : IEQ);
+		}
+		if (cadena)
+			emitir(tipo == Type.CADENA ? SPOP : NIP);
+	}
+
+	/** a + b + ...: int o float, todos del mismo tipo. */
+	private void suma(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		Type tipo = compilar.apply(operandos.get(0));
+		for (int i = 1; i < operandos.size(); i++) {
+			compilar.apply(operandos.get(i));
+			emitir(tipo == Type.ENTERO ? IADD : FADD);
+		}
+	}
+
+	/** Hoja de literal o de id (con L si es una llamada) de ambos árboles. */
+	private void operando(ASTNode hoja) {
+		switch (hoja.getLabel()) {
+			case "entero":
+				emitir(ICONST, Integer.parseInt(lexema(hoja)));
+				break;
+			case "real":
+				emitir(FCONST, Float.floatToRawIntBits(Float.parseFloat(lexema(hoja))));
+				break;
+			case "cadena":
+				emitir(SCONST, constante(lexema(hoja)));
+				break;
+			case "true":
+				emitir(ICONST, 1);
+				break;
+			case "false":
+				emitir(ICONST, 0);
+				break;
+			default:
+				if (hijos(hoja) > 0)
+					llamada(hoja, hijo(hoja, 0));
+				else
+					cargar(destino(variables, hoja));
+				break;
+		}
+	}
+
+	/**
+	 * Llamada con los argumentos de L -> E Q, Q -> coma E Q.
+	 *
+	 * @return tipo de retorno de la función
+	 */
+	private Type llamada(ASTNode id, ASTNode l) {
+		int indice = destino(indicesFuncion, id);
+		Simbolo funcion = simbolo(id);
+		for (ASTNode arg : argumentos(l))
+			expresion(arg);
+		int argsCad = 0;
+		for (Type param : funcion.params) {
+			if (param == Type.CADENA)
+				argsCad++;
+		}
+		int argsNum = funcion.params.size() - argsCad;
+		emitir(CALL, indice);
+		boolean cadena = funcion.type == Type.CADENA;
+		apilar((cadena ? 0 : 1) - argsNum, (cadena ? 1 : 0) - argsCad);
+		return funcion.type;
+	}
+
+	private void cargar(Variable v) {
+		if (v.tipo == Type.CADENA)
+			emitir(v.global ? GSLOAD : SLOAD, v.hueco);
+		else
+			emitir(v.global ? GILOAD : ILOAD, v.hueco);
+	}
+
+	private void guardar(Variable v) {
+		if (v.tipo == Type.CADENA)
+			emitir(v.global ? GSSTORE : SSTORE, v.hueco);
+		else
+			emitir(v.global ? GISTORE : ISTORE, v.hueco);
+	}
+
+	private int constante(String valor) {
+		return indices.computeIfAbsent(valor, k -> {
+			constantes.add(k);
+			return constantes.size() - 1;
+		});
+	}
+
+	/*
+	 * Emisión.
+	 */
+
+	private void emitir(int op) {
+		agregar(op);
+		apilar(EFECTO_NUM[op], EFECTO_CAD[op]);
+	}
+
+	private void emitir(int op, int operando) {
+		emitir(op);
+		agregar(operando);
+	}
+
+	private void agregar(int valor) {
+		if (size == codigo.length)
+			codigo = Arrays.copyOf(codigo, size * 2);
+		codigo[size++] = valor;
+	}
+
+	private void apilar(int num, int cad) {
+		pilaNum += num;
+		pilaCad += cad;
+		maxNum = Math.max(maxNum, pilaNum);
+		maxCad = Math.max(maxCad, pilaCad);
+	}
+
+	/** Emite un salto con el destino pendiente de {@link #fijar}. */
+	private int saltar(int op) {
+		emitir(op, 0);
+		return size - 1;
+	}
+
+	/** Hace que el salto pendiente vaya a la posición actual. */
+	private void fijar(int hueco) {
+		codigo[hueco] = size;
+	}
+}
@@ -0,0 +1,417 @@
+package analizador;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escribe un fichero .class con campos y métodos estáticos, sin más
+ * dependencias que el JDK. Usa la versión 49 del formato (Java 5): la JVM la
+ * verifica por inferencia de tipos, así que no hace falta calcular los marcos
+ * de StackMapTable, y sigue compilando los métodos calientes con C1 y C2.
+ *
+ * El código de cada método se genera con un {@link Codigo}, que lleva la
+ * cuenta de la profundidad máxima de la pila y del número de locales.
+ */
+final class ClassFileWriter {
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int VERSION = 49;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	// Códigos de operación que se generan
+	static final int ICONST_0 = 0x03;
+	static final int FCONST_0 = 0x0b;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int FLOAD = 0x17;
+	static final int ALOAD = 0x19;
+	static final int ISTORE = 0x36;
+	static final int FSTORE = 0x38;
+	static final int ASTORE = 0x3a;
+	static final int POP = 0x57;
+	static final int DUP = 0x59;
+	static final int IADD = 0x60;
+	static final int FADD = 0x62;
+	static final int IDIV = 0x6c;
+	static final int FDIV = 0x6e;
+	static final int IAND = 0x7e;
+	static final int I2S = 0x93;
+	static final int FCMPL = 0x95;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int IF_ICMPNE = 0xa0;
+	static final int GOTO = 0xa7;
+	static final int IRETURN = 0xac;
+	static final int FRETURN = 0xae;
+	static final int ARETURN = 0xb0;
+	static final int RETURN = 0xb1;
+	static final int GETSTATIC = 0xb2;
+	static final int PUTSTATIC = 0xb3;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+
+	// Efecto en la pila de las operaciones sin referencias al pool
+	private static final int[] EFECTO = new int[256];
+
+	static {
+		for (int op : new int[] { ICONST_0 - 1, ICONST_0, ICONST_0 + 1, ICONST_0 + 2, ICONST_0 + 3, ICONST_0 + 4,
+				ICONST_0 + 5, FCONST_0, FCONST_0 + 1, FCONST_0 + 2, BIPUSH, SIPUSH, LDC, LDC_W, ILOAD, FLOAD, ALOAD,
+				DUP })
+			EFECTO[op] = 1;
+		for (int op : new int[] { ISTORE, FSTORE, ASTORE, POP, IADD, FADD, IDIV, FDIV, IAND, FCMPL, IFEQ, IFNE,
+				IRETURN, FRETURN, ARETURN })
+			EFECTO[op] = -1;
+		EFECTO[IF_ICMPNE] = -2;
+	}
+
+	private final String nombre;
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private int entradasPool = 1; // la 0 no se usa
+	private final Map<String, Integer> indices = new HashMap<>();
+	private final ByteArrayOutputStream miembros = new ByteArrayOutputStream();
+	private final List<byte[]> campos = new ArrayList<>();
+	private final List<byte[]> metodos = new ArrayList<>();
+
+	/** @param nombre nombre interno de la clase, con '/' entre paquetes */
+	ClassFileWriter(String nombre) {
+		this.nombre = nombre;
+	}
+
+	/*
+	 * Pool de constantes. Cada entrada se añade una sola vez.
+	 */
+
+	private int entrada(String clave, int etiqueta, Escritura valor) {
+		Integer indice = indices.get(clave);
+		if (indice != null)
+			return indice;
+		try {
+			poolOut.writeByte(etiqueta);
+			valor.escribir(poolOut);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (entradasPool == 0xffff)
+			throw new IllegalArgumentException("Demasiadas constantes para un fichero .class");
+		indices.put(clave, entradasPool);
+		return entradasPool++;
+	}
+
+	private interface Escritura {
+		void escribir(DataOutputStream out) throws IOException;
+	}
+
+	int utf8(String texto) {
+		return entrada("U" + texto, 1, out -> out.writeUTF(texto));
+	}
+
+	int entero(int valor) {
+		return entrada("I" + valor, 3, out -> out.writeInt(valor));
+	}
+
+	int real(float valor) {
+		int bits = Float.floatToRawIntBits(valor);
+		return entrada("F" + bits, 4, out -> out.writeInt(bits));
+	}
+
+	int clase(String interno) {
+		int nombre = utf8(interno);
+		return entrada("C" + interno, 7, out -> out.writeShort(nombre));
+	}
+
+	int cadena(String texto) {
+		int valor = utf8(texto);
+		return entrada("S" + texto, 8, out -> out.writeShort(valor));
+	}
+
+	private int nombreYTipo(String nombre, String descriptor) {
+		int n = utf8(nombre);
+		int d = utf8(descriptor);
+		return entrada("N" + nombre + " " + descriptor, 12, out -> {
+			out.writeShort(n);
+			out.writeShort(d);
+		});
+	}
+
+	private int referencia(int etiqueta, String clase, String nombre, String descriptor) {
+		int c = clase(clase);
+		int nt = nombreYTipo(nombre, descriptor);
+		return entrada(etiqueta + clase + "." + nombre + " " + descriptor, etiqueta, out -> {
+			out.writeShort(c);
+			out.writeShort(nt);
+		});
+	}
+
+	/*
+	 * Miembros.
+	 */
+
+	void campo(int acceso, String nombre, String descriptor) {
+		campos.add(miembro(acceso, nombre, descriptor, null));
+	}
+
+	/** Añade un método con el código de {@code codigo}, ya completo. */
+	void metodo(int acceso, String nombre, String descriptor, Codigo codigo) {
+		if (codigo.size > 0xffff)
+			throw new IllegalArgumentException("El método " + nombre + " pasa de 64 KB de código");
+		metodos.add(miembro(acceso, nombre, descriptor, codigo));
+	}
+
+	private byte[] miembro(int acceso, String nombre, String descriptor, Codigo codigo) {
+		miembros.reset();
+		DataOutputStream out = new DataOutputStream(miembros);
+		try {
+			out.writeShort(acceso);
+			out.writeShort(utf8(nombre));
+			out.writeShort(utf8(descriptor));
+			if (codigo == null) {
+				out.writeShort(0);
+			} else {
+				out.writeShort(1);
+				out.writeShort(utf8("Code"));
+				out.writeInt(12 + codigo.size);
+				out.writeShort(codigo.maxPila);
+				out.writeShort(codigo.maxLocales);
+				out.writeInt(codigo.size);
+				out.write(codigo.bytes, 0, codigo.size);
+				out.writeShort(0); // excepciones
+				out.writeShort(0); // atributos
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return miembros.toByteArray();
+	}
+
+	/** @return el fichero .class completo. */
+	byte[] toByteArray() {
+		int esta = clase(nombre);
+		int padre = clase("java/lang/Object");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(entradasPool);
+			pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(esta);
+			out.writeShort(padre);
+			out.writeShort(0); // interfaces
+			out.writeShort(campos.size());
+			for (byte[] campo : campos)
+				out.write(campo);
+			out.writeShort(metodos.size());
+			for (byte[] metodo : metodos)
+				out.write(metodo);
+			out.writeShort(0); // atributos
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Destino de saltos; los saltos anteriores a {@link Codigo#marcar} se corrigen al marcarlo. */
+	static final class Etiqueta {
+		private int posicion = -1;
+		private int profundidad = -1; // de la pila al saltar aquí
+		private final List<Integer> pendientes = new ArrayList<>();
+	}
+
+	/** Código de un método, con la profundidad de la pila en cada punto. */
+	final class Codigo {
+		private byte[] bytes = new byte[64];
+		private int size = 0;
+		private int profundidad = 0;
+		private int maxPila = 0;
+		private int maxLocales;
+		private boolean alcanzable = true;
+
+		/** @param locales huecos que ocupan los parámetros */
+		Codigo(int locales) {
+			this.maxLocales = locales;
+		}
+
+		/** @return número de huecos de locales usados hasta ahora. */
+		int locales() {
+			return maxLocales;
+		}
+
+		/** @return un hueco de local nuevo. */
+		int nuevoLocal() {
+			return maxLocales++;
+		}
+
+		/** Operación sin operandos. */
+		void op(int op) {
+			u1(op);
+			apilar(EFECTO[op]);
+			if (op >= IRETURN && op <= RETURN)
+				alcanzable = false;
+		}
+
+		void entero(int valor) {
+			if (valor >= -1 && valor <= 5) {
+				op(ICONST_0 + valor);
+			} else if (valor == (byte) valor) {
+				u1(BIPUSH);
+				u1(valor);
+				apilar(1);
+			} else if (valor == (short) valor) {
+				u1(SIPUSH);
+				u2(valor);
+				apilar(1);
+			} else {
+				ldc(ClassFileWriter.this.entero(valor));
+			}
+		}
+
+		void real(float valor) {
+			if (Float.floatToRawIntBits(valor) == 0 || valor == 1f || valor == 2f)
+				op(FCONST_0 + (int) valor);
+			else
+				ldc(ClassFileWriter.this.real(valor));
+		}
+
+		void cadena(String valor) {
+			ldc(ClassFileWriter.this.cadena(valor));
+		}
+
+		private void ldc(int indice) {
+			if (indice <= 0xff) {
+				u1(LDC);
+				u1(indice);
+			} else {
+				u1(LDC_W);
+				u2(indice);
+			}
+			apilar(1);
+		}
+
+		/** ILOAD, FLOAD, ALOAD, ISTORE, FSTORE o ASTORE de un hueco. */
+		void local(int op, int hueco) {
+			if (hueco <= 3) {
+				// ILOAD_0 a ALOAD_3 e ISTORE_0 a ASTORE_3
+				u1((op < ISTORE ? 0x1a + (op - ILOAD) * 4 : 0x3b + (op - ISTORE) * 4) + hueco);
+			} else if (hueco > 0xff) {
+				u1(WIDE);
+				u1(op);
+				u2(hueco);
+			} else {
+				u1(op);
+				u1(hueco);
+			}
+			apilar(EFECTO[op]);
+		}
+
+		/** GETSTATIC o PUTSTATIC. */
+		void campo(int op, String clase, String nombre, String descriptor) {
+			u1(op);
+			u2(referencia(9, clase, nombre, descriptor));
+			apilar(op == GETSTATIC ? 1 : -1);
+		}
+
+		/** INVOKESTATIC o INVOKEVIRTUAL. */
+		void invocar(int op, String clase, String nombre, String descriptor) {
+			u1(op);
+			u2(referencia(10, clase, nombre, descriptor));
+			int efecto = descriptor.endsWith(")V") ? 0 : 1;
+			efecto -= argumentos(descriptor) + (op == INVOKEVIRTUAL ? 1 : 0);
+			apilar(efecto);
+		}
+
+		/** Salto condicional o GOTO a {@code destino}. */
+		void saltar(int op, Etiqueta destino) {
+			apilar(EFECTO[op]);
+			if (destino.profundidad < 0)
+				destino.profundidad = profundidad;
+			int origen = size;
+			u1(op);
+			if (destino.posicion >= 0) {
+				u2(desplazamiento(origen, destino.posicion));
+			} else {
+				destino.pendientes.add(origen);
+				u2(0);
+			}
+			if (op == GOTO)
+				alcanzable = false;
+		}
+
+		/** Coloca la etiqueta en la posición actual. */
+		void marcar(Etiqueta etiqueta) {
+			etiqueta.posicion = size;
+			for (int origen : etiqueta.pendientes) {
+				int d = desplazamiento(origen, size);
+				bytes[origen + 1] = (byte) (d >> 8);
+				bytes[origen + 2] = (byte) d;
+			}
+			etiqueta.pendientes.clear();
+			if (!alcanzable && etiqueta.profundidad >= 0)
+				profundidad = etiqueta.profundidad;
+			alcanzable = true;
+		}
+
+		/** Pone {@code prologo} delante de este código, que ya no tiene saltos pendientes. */
+		void anteponer(Codigo prologo) {
+			byte[] todo = Arrays.copyOf(prologo.bytes, prologo.size + size);
+			System.arraycopy(bytes, 0, todo, prologo.size, size);
+			bytes = todo;
+			size = todo.length;
+			maxPila = Math.max(maxPila, prologo.maxPila);
+			maxLocales = Math.max(maxLocales, prologo.maxLocales);
+		}
+
+		private int desplazamiento(int origen, int destino) {
+			int d = destino - origen;
+			if (d != (short) d)
+				throw new IllegalArgumentException("Salto demasiado largo en el código generado");
+			return d;
+		}
+
+		private void apilar(int efecto) {
+			profundidad += efecto;
+			maxPila = Math.max(maxPila, profundidad);
+		}
+
+		private void u1(int valor) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, size * 2);
+			bytes[size++] = (byte) valor;
+		}
+
+		private void u2(int valor) {
+			u1(valor >> 8);
+			u1(valor);
+		}
+	}
+
+	/** @return huecos de pila de los argumentos de un descriptor de método. */
+	private static int argumentos(String descriptor) {
+		int n = 0;
+		for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+			char c = descriptor.charAt(i);
+			if (c == 'L')
+				i = descriptor.indexOf(';', i);
+			else if (c == '[')
+				continue;
+			n += (c == 'J' || c == 'D') ? 2 : 1;
+		}
+		return n;
+	}
+}
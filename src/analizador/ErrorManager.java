@@ -1,15 +1,26 @@
 package analizador;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 public class ErrorManager {
 	private final List<String> errores = new ArrayList<>();
+	private final List<Integer> lineas = new ArrayList<>();
 	private boolean hayErrores = false;
 
 	public void agregarError(String tipo, int linea, String mensaje) {
 		hayErrores = true;
 		errores.add("[ERROR " + tipo + " - Línea " + linea + "]: " + mensaje);
+		lineas.add(linea);
+	}
+
+	/** Añade, en orden, los errores de otro gestor. */
+	public void agregarTodos(ErrorManager otro) {
+		hayErrores |= otro.hayErrores;
+		errores.addAll(otro.errores);
+		lineas.addAll(otro.lineas);
 	}
 
 	public boolean hayErrores() {
@@ -28,8 +39,31 @@ public class ErrorManager {
 		return sb.toString();
 	}
 
+	/**
+	 * Ordena los errores por línea, conservando el orden en que se registraron
+	 * los de una misma línea. Sirve para mezclar errores de pasadas distintas
+	 * (por ejemplo los sintácticos y los del {@link SemanticAnalyzer}).
+	 */
+	public void ordenarPorLinea() {
+		Integer[] orden = new Integer[errores.size()];
+		for (int i = 0; i < orden.length; i++)
+			orden[i] = i;
+		Arrays.sort(orden, Comparator.comparingInt(lineas::get));
+		List<String> errs = new ArrayList<>(orden.length);
+		List<Integer> lins = new ArrayList<>(orden.length);
+		for (int i : orden) {
+			errs.add(errores.get(i));
+			lins.add(lineas.get(i));
+		}
+		errores.clear();
+		errores.addAll(errs);
+		lineas.clear();
+		lineas.addAll(lins);
+	}
+
 	public void limpiar() {
 		errores.clear();
+		lineas.clear();
 		hayErrores = false;
 	}
 }
@@ -0,0 +1,279 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import analizador.SymbolTable.Type;
+
+/**
+ * Árbol sintáctico plano: en lugar de un {@link ASTNode} con su lista de hijos
+ * por nodo, guarda tipo de nodo, padre, primer hijo, siguiente hermano, token
+ * y tipo semántico en arrays paralelos de enteros. Un nodo es su índice en los
+ * arrays y -1 indica que no hay nodo. Los nodos pueden crearse sueltos y
+ * colgarse después, así que su orden en los arrays no tiene por qué ser el
+ * del recorrido.
+ *
+ * Es un almacén reutilizable: {@link #clear()} lo vacía conservando la
+ * capacidad, así que analizar muchos programas seguidos con la misma arena no
+ * vuelve a reservar memoria para el árbol. Los recorridos ({@link #accept},
+ * {@link #toDotFile()}, {@link #toIndentedString()}) usan una pila propia y no
+ * dependen de la profundidad del árbol.
+ *
+ * Las hojas de identificador tienen tipo "id" y guardan su token; su etiqueta
+ * "id(lexema)" solo se forma cuando se pide. Las listas de tipos (Z, K, L, Q)
+ * van aparte, porque solo las tienen unos pocos nodos.
+ */
+public final class FlatAST {
+	private static final Type[] TYPES = Type.values();
+	private static final String ID = "id";
+
+	// Tipos de nodo: se numeran al aparecer la etiqueta por primera vez
+	private final List<String> etiquetas = new ArrayList<>();
+	private final Map<String, Integer> codigos = new HashMap<>();
+	private final int idKind = kind(ID);
+
+	private int[] kinds;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] lastChildren; // para añadir hijos en O(1)
+	private int[] nextSiblings;
+	private int[] tokenIndex; // posición en tokens, o -1
+	private byte[] types; // ordinal + 1; 0 = sin tipo
+	private int size = 0;
+	private Token[] tokens = new Token[64];
+	private int tokenCount = 0;
+	private final Map<Integer, List<Type>> listas = new HashMap<>();
+
+	/** Recorrido en profundidad de un {@link FlatAST}. */
+	public interface Visitor {
+		/**
+		 * Se llama al llegar a un nodo, antes que a sus hijos.
+		 *
+		 * @return false para no visitar sus hijos.
+		 */
+		boolean enter(FlatAST ast, int node, int depth);
+
+		/** Se llama tras visitar los hijos del nodo (o saltarlos). */
+		default void leave(FlatAST ast, int node, int depth) {
+		}
+	}
+
+	public FlatAST() {
+		this(1024);
+	}
+
+	/** @param capacity número estimado de nodos. */
+	public FlatAST(int capacity) {
+		capacity = Math.max(16, capacity);
+		kinds = new int[capacity];
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		lastChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		tokenIndex = new int[capacity];
+		types = new byte[capacity];
+	}
+
+	/** Vacía el árbol conservando la memoria reservada. */
+	public void clear() {
+		Arrays.fill(tokens, 0, tokenCount, null);
+		size = 0;
+		tokenCount = 0;
+		listas.clear();
+	}
+
+	/** @return código del tipo de nodo con esa etiqueta, que se da de alta si no existía. */
+	public int kind(String label) {
+		Integer code = codigos.get(label);
+		if (code == null) {
+			code = etiquetas.size();
+			etiquetas.add(label);
+			codigos.put(label, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Añade un nodo como último hijo de {@code parent} (o sin padre si es -1).
+	 *
+	 * @return el nodo creado.
+	 */
+	public int add(int parent, int kind) {
+		if (size == kinds.length)
+			grow();
+		int node = size++;
+		kinds[node] = kind;
+		parents[node] = parent;
+		firstChildren[node] = -1;
+		lastChildren[node] = -1;
+		nextSiblings[node] = -1;
+		tokenIndex[node] = -1;
+		types[node] = 0;
+		if (parent >= 0)
+			addChild(parent, node);
+		return node;
+	}
+
+	/** Cuelga como último hijo de {@code parent} un nodo creado sin padre. */
+	public void addChild(int parent, int child) {
+		parents[child] = parent;
+		if (lastChildren[parent] < 0)
+			firstChildren[parent] = child;
+		else
+			nextSiblings[lastChildren[parent]] = child;
+		lastChildren[parent] = child;
+	}
+
+	/** Añade como último hijo de {@code parent} la hoja de un identificador. */
+	public int addId(int parent, Token token) {
+		int node = add(parent, idKind);
+		if (tokenCount == tokens.length)
+			tokens = Arrays.copyOf(tokens, tokenCount * 2);
+		tokens[tokenCount] = token;
+		tokenIndex[node] = tokenCount++;
+		return node;
+	}
+
+	private void grow() {
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		lastChildren = Arrays.copyOf(lastChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		tokenIndex = Arrays.copyOf(tokenIndex, capacity);
+		types = Arrays.copyOf(types, capacity);
+	}
+
+	/** @return número de nodos. */
+	public int size() {
+		return size;
+	}
+
+	/** @return raíz del árbol (el primer nodo añadido), o -1 si está vacío. */
+	public int root() {
+		return size > 0 ? 0 : -1;
+	}
+
+	public int kind(int node) {
+		return kinds[node];
+	}
+
+	/** @return etiqueta del tipo de nodo. */
+	public String kindLabel(int kind) {
+		return etiquetas.get(kind);
+	}
+
+	/** @return etiqueta del nodo, igual que la de {@link ASTNode}. */
+	public String label(int node) {
+		if (kinds[node] == idKind)
+			return "id(" + tokens[tokenIndex[node]].getLexeme() + ")";
+		return etiquetas.get(kinds[node]);
+	}
+
+	public int parent(int node) {
+		return parents[node];
+	}
+
+	public int firstChild(int node) {
+		return firstChildren[node];
+	}
+
+	public int nextSibling(int node) {
+		return nextSiblings[node];
+	}
+
+	/** @return token de una hoja de identificador, o null. */
+	public Token token(int node) {
+		int index = tokenIndex[node];
+		return index >= 0 ? tokens[index] : null;
+	}
+
+	public Type getSemanticType(int node) {
+		int type = types[node];
+		return type == 0 ? null : TYPES[type - 1];
+	}
+
+	public void setSemanticType(int node, Type type) {
+		types[node] = (byte) (type == null ? 0 : type.ordinal() + 1);
+	}
+
+	public List<Type> getListaTipos(int node) {
+		return listas.get(node);
+	}
+
+	public void setListaTipos(int node, List<Type> listaTipos) {
+		listas.put(node, listaTipos);
+	}
+
+	/**
+	 * Recorre en profundidad el subárbol de {@code node}, con los hijos en
+	 * orden.
+	 */
+	public void accept(int node, Visitor visitor) {
+		if (node < 0)
+			return;
+		int[] stack = new int[64]; // nodo en curso de cada nivel
+		int depth = 0;
+		stack[0] = node;
+		boolean down = visitor.enter(this, node, 0);
+		while (depth >= 0) {
+			int current = stack[depth];
+			int next = down ? firstChildren[current] : -1;
+			if (next < 0) {
+				// Sin hijos por visitar: se sale del nodo y se pasa al hermano
+				visitor.leave(this, current, depth);
+				if (depth == 0)
+					break;
+				next = nextSiblings[current];
+				if (next < 0) {
+					depth--;
+					down = false;
+					continue;
+				}
+				stack[depth] = next;
+			} else {
+				if (++depth == stack.length)
+					stack = Arrays.copyOf(stack, depth * 2);
+				stack[depth] = next;
+			}
+			down = visitor.enter(this, next, depth);
+		}
+	}
+
+	/** Mismo formato que {@link ASTNode#toDotFile()}. */
+	public String toDotFile() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("digraph AST {\n");
+		int[] ids = new int[size]; // número de cada nodo en el fichero, en preorden
+		int[] next = { 0 };
+		accept(root(), new Visitor() {
+			@Override
+			public boolean enter(FlatAST ast, int node, int depth) {
+				ids[node] = next[0]++;
+				sb.append("n").append(ids[node]).append(" [label=\"").append(label(node)).append("\"];\n");
+				return true;
+			}
+
+			@Override
+			public void leave(FlatAST ast, int node, int depth) {
+				if (parents[node] >= 0)
+					sb.append("n").append(ids[parents[node]]).append(" -> n").append(ids[node]).append(";\n");
+			}
+		});
+		sb.append("}");
+		return sb.toString();
+	}
+
+	/** Mismo formato que {@link ASTNode#toIndentedString()}. */
+	public String toIndentedString() {
+		StringBuilder sb = new StringBuilder();
+		accept(root(), (ast, node, depth) -> {
+			sb.append("  ".repeat(depth)).append(label(node)).append("\n");
+			return true;
+		});
+		return sb.toString();
+	}
+}
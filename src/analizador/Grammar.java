@@ -0,0 +1,276 @@
+package analizador;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gramática leída de gramatica.txt (el mismo formato que usa VASt) con sus
+ * conjuntos FIRST y FOLLOW. Las producciones se numeran desde 1 en el orden
+ * del fichero, que es la numeración de parse.txt.
+ *
+ * Los terminales se identifican con el {@link TokenKind} de igual nombre, así
+ * que los conjuntos son máscaras de bits como los del {@link Parser}. En la
+ * parte derecha de una producción un terminal se guarda como el ordinal de su
+ * tipo y un no terminal {@code n} como {@code -(n + 1)}.
+ */
+public final class Grammar {
+	private final String[] nonTerminals;
+	private final int axiom;
+	private final int[] lhs; // no terminal de cada producción (índice 0 sin usar)
+	private final int[][] rhs;
+	private final boolean[] nullable;
+	private final long[] first;
+	private final long[] follow;
+
+	private Grammar(String[] nonTerminals, int axiom, int[] lhs, int[][] rhs) {
+		this.nonTerminals = nonTerminals;
+		this.axiom = axiom;
+		this.lhs = lhs;
+		this.rhs = rhs;
+		int n = nonTerminals.length;
+		this.nullable = new boolean[n];
+		this.first = new long[n];
+		this.follow = new long[n];
+		computeFirst();
+		computeFollow();
+	}
+
+	/** Lee la gramática de un fichero. */
+	public static Grammar load(Path path) throws IOException {
+		return parse(Files.readString(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Analiza el texto de una gramática con las secciones Terminales,
+	 * NoTerminales, Axioma y Producciones.
+	 *
+	 * @throws IllegalArgumentException si la gramática está mal formada o usa un
+	 *                                  terminal que no es un {@link TokenKind}.
+	 */
+	public static Grammar parse(String text) {
+		Map<String, TokenKind> terminals = new HashMap<>();
+		for (TokenKind kind : TokenKind.values())
+			terminals.put(kind.getNombre(), kind);
+
+		String[] nonTerminals = null;
+		String axiomName = null;
+		List<String[]> productions = new ArrayList<>();
+		boolean inProductions = false;
+		for (String raw : text.split("\n")) {
+			String line = raw.strip();
+			if (line.isEmpty())
+				continue;
+			if (line.startsWith("NoTerminales")) {
+				nonTerminals = setContents(line);
+			} else if (line.startsWith("Terminales")) {
+				for (String name : setContents(line)) {
+					if (!isLambda(name) && !terminals.containsKey(name))
+						throw new IllegalArgumentException("Terminal sin tipo de token: " + name);
+				}
+			} else if (line.startsWith("Axioma")) {
+				axiomName = line.substring(line.indexOf('=') + 1).strip();
+			} else if (line.startsWith("Producciones")) {
+				inProductions = true;
+			} else if (inProductions && line.equals("}")) {
+				inProductions = false;
+			} else if (inProductions) {
+				productions.add(line.split("\\s+"));
+			}
+		}
+		if (nonTerminals == null || axiomName == null || productions.isEmpty())
+			throw new IllegalArgumentException("Faltan secciones en la gramática");
+
+		Map<String, Integer> ntIndex = new HashMap<>();
+		for (int i = 0; i < nonTerminals.length; i++)
+			ntIndex.put(nonTerminals[i], i);
+		Integer axiom = ntIndex.get(axiomName);
+		if (axiom == null)
+			throw new IllegalArgumentException("Axioma desconocido: " + axiomName);
+
+		int count = productions.size();
+		int[] lhs = new int[count + 1];
+		int[][] rhs = new int[count + 1][];
+		rhs[0] = new int[0];
+		for (int p = 1; p <= count; p++) {
+			String[] parts = productions.get(p - 1);
+			Integer left = ntIndex.get(parts[0]);
+			if (left == null || parts.length < 2 || !parts[1].equals("->"))
+				throw new IllegalArgumentException("Producción mal formada: " + String.join(" ", parts));
+			lhs[p] = left;
+			int[] symbols = new int[parts.length - 2];
+			int size = 0;
+			for (int i = 2; i < parts.length; i++) {
+				String name = parts[i];
+				if (isLambda(name))
+					continue;
+				Integer nt = ntIndex.get(name);
+				TokenKind kind = terminals.get(name);
+				if (nt != null)
+					symbols[size++] = -(nt + 1);
+				else if (kind != null)
+					symbols[size++] = kind.ordinal();
+				else
+					throw new IllegalArgumentException("Símbolo desconocido en la producción " + p + ": " + name);
+			}
+			rhs[p] = Arrays.copyOf(symbols, size);
+		}
+		return new Grammar(nonTerminals, axiom, lhs, rhs);
+	}
+
+	private static String[] setContents(String line) {
+		int open = line.indexOf('{');
+		int close = line.lastIndexOf('}');
+		if (open < 0 || close < open)
+			throw new IllegalArgumentException("Conjunto mal formado: " + line);
+		String body = line.substring(open + 1, close).strip();
+		return body.isEmpty() ? new String[0] : body.split("\\s+");
+	}
+
+	private static boolean isLambda(String name) {
+		return name.equals("lambda") || name.equals("λ");
+	}
+
+	/** Punto fijo de anulables y FIRST de cada no terminal. */
+	private void computeFirst() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int p = 1; p < rhs.length; p++) {
+				int a = lhs[p];
+				long f = first[a] | firstOf(rhs[p], 0);
+				if (f != first[a]) {
+					first[a] = f;
+					changed = true;
+				}
+				if (!nullable[a] && nullableFrom(rhs[p], 0)) {
+					nullable[a] = true;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/** Punto fijo de FOLLOW; el axioma va seguido de finFich. */
+	private void computeFollow() {
+		follow[axiom] = TokenKind.FIN_FICH.bit();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int p = 1; p < rhs.length; p++) {
+				int[] symbols = rhs[p];
+				for (int i = 0; i < symbols.length; i++) {
+					if (symbols[i] >= 0)
+						continue;
+					int b = -symbols[i] - 1;
+					long f = follow[b] | firstOf(symbols, i + 1);
+					if (nullableFrom(symbols, i + 1))
+						f |= follow[lhs[p]];
+					if (f != follow[b]) {
+						follow[b] = f;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	/** @return FIRST de la cadena de símbolos que empieza en {@code from}. */
+	long firstOf(int[] symbols, int from) {
+		long f = 0;
+		for (int i = from; i < symbols.length; i++) {
+			int s = symbols[i];
+			if (s >= 0)
+				return f | (1L << s);
+			f |= first[-s - 1];
+			if (!nullable[-s - 1])
+				return f;
+		}
+		return f;
+	}
+
+	/** @return true si la cadena que empieza en {@code from} deriva lambda. */
+	boolean nullableFrom(int[] symbols, int from) {
+		for (int i = from; i < symbols.length; i++) {
+			if (symbols[i] >= 0 || !nullable[-symbols[i] - 1])
+				return false;
+		}
+		return true;
+	}
+
+	/** @return número de no terminales. */
+	public int nonTerminalCount() {
+		return nonTerminals.length;
+	}
+
+	/** @return nombre del no terminal {@code nt}. */
+	public String nonTerminal(int nt) {
+		return nonTerminals[nt];
+	}
+
+	/** @return índice del axioma. */
+	public int axiom() {
+		return axiom;
+	}
+
+	/** @return número de producciones; van de 1 a productionCount(). */
+	public int productionCount() {
+		return rhs.length - 1;
+	}
+
+	/** @return no terminal de la parte izquierda de la producción. */
+	public int lhs(int production) {
+		return lhs[production];
+	}
+
+	/** @return parte derecha de la producción (no se debe modificar). */
+	int[] rhs(int production) {
+		return rhs[production];
+	}
+
+	/** @return true si el no terminal deriva lambda. */
+	public boolean nullable(int nt) {
+		return nullable[nt];
+	}
+
+	/** @return FIRST del no terminal como máscara de {@link TokenKind}. */
+	public long first(int nt) {
+		return first[nt];
+	}
+
+	/** @return FOLLOW del no terminal como máscara de {@link TokenKind}. */
+	public long follow(int nt) {
+		return follow[nt];
+	}
+
+	/** @return producción en el formato de gramatica.txt. */
+	public String production(int p) {
+		StringBuilder sb = new StringBuilder(nonTerminals[lhs[p]]).append(" ->");
+		if (rhs[p].length == 0)
+			sb.append(" lambda");
+		for (int s : rhs[p])
+			sb.append(' ').append(symbolName(s));
+		return sb.toString();
+	}
+
+	/** @return nombre de un símbolo de una parte derecha. */
+	String symbolName(int symbol) {
+		return symbol >= 0 ? TokenKind.values()[symbol].getNombre() : nonTerminals[-symbol - 1];
+	}
+
+	/** @return los terminales de la máscara, con sus nombres de la gramática. */
+	static String setToString(long set) {
+		StringBuilder sb = new StringBuilder("{");
+		for (TokenKind kind : TokenKind.values()) {
+			if (kind.in(set))
+				sb.append(' ').append(kind.getNombre());
+		}
+		return sb.append(" }").toString();
+	}
+}
@@ -0,0 +1,378 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import analizador.Quad.Op;
+import analizador.Quad.Operando;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Type;
+import analizador.ThreeAddressCode.Procedimiento;
+
+import static analizador.AnnotatedTree.*;
+
+/**
+ * Genera el {@link ThreeAddressCode} del árbol de {@link Parser#parseAST()},
+ * completo o con expresiones compactas. Acepta los mismos árboles y con la
+ * misma semántica que {@link BytecodeCompiler}: símbolos y tipos anotados por
+ * el análisis semántico, y un árbol sin analizar o incompleto lanza
+ * IllegalArgumentException.
+ *
+ * Las variables se usan directamente como operandos. Solo se copia a un
+ * temporal una global que se lee antes de evaluar una llamada de la misma
+ * expresión, porque la llamada podría cambiarla. Una función redeclarada es
+ * otro procedimiento, con "$2", "$3"... tras el nombre.
+ */
+public final class IRGenerator {
+
+	// Operando de cada variable y procedimiento de cada función, por su símbolo
+	private final Map<Simbolo, Operando> variables = new IdentityHashMap<>();
+	private final Map<Simbolo, String> funciones = new IdentityHashMap<>();
+	private final List<Operando> variablesGlobales = new ArrayList<>();
+	private final List<Procedimiento> procedimientos = new ArrayList<>();
+	private final Set<String> nombres = new HashSet<>();
+	private final Map<ASTNode, Boolean> conLlamada = new IdentityHashMap<>();
+	private List<Operando> lets; // null fuera de las funciones
+	private List<Quad> codigo;
+	private int temporales = 0;
+	private int etiquetas = 0;
+
+	private IRGenerator() {
+	}
+
+	/**
+	 * Genera el código del programa que cuelga de {@code raiz} (el nodo P1).
+	 *
+	 * @throws IllegalArgumentException si el árbol no está analizado o está incompleto
+	 */
+	public static ThreeAddressCode generar(ASTNode raiz) {
+		return new IRGenerator().programa(raiz);
+	}
+
+	private ThreeAddressCode programa(ASTNode raiz) {
+		List<Quad> principal = new ArrayList<>();
+		codigo = principal;
+		for (ASTNode p = hijo(raiz, 0); hijos(p) > 0; p = hijo(p, 1)) {
+			ASTNode item = hijo(p, 0);
+			if (item.getLabel().equals("F")) {
+				funcion(item);
+				codigo = principal;
+			} else {
+				sentencia(item);
+			}
+		}
+		principal.add(Quad.fin());
+		procedimientos.add(new Procedimiento(null, Type.VOID, List.of(), List.of(), principal));
+		return new ThreeAddressCode(variablesGlobales, procedimientos);
+	}
+
+	/** F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha */
+	private void funcion(ASTNode f) {
+		requerirCuerpo(f);
+		Simbolo funcion = simbolo(hijo(f, 2));
+		String procedimiento = funcion.lexeme;
+		for (int i = 2; !nombres.add(procedimiento); i++)
+			procedimiento = funcion.lexeme + "$" + i;
+		funciones.put(funcion, procedimiento); // visible en su propio cuerpo
+
+		// Z -> T id K, K -> coma T id K
+		List<Operando> params = new ArrayList<>();
+		for (ASTNode id : parametros(hijo(f, 3)))
+			params.add(declarar(simbolo(id), false));
+
+		codigo = new ArrayList<>();
+		lets = new ArrayList<>();
+		lista(hijo(f, 4));
+		retorno(hijo(hijo(f, 5), 0));
+		procedimientos.add(new Procedimiento(procedimiento, funcion.type, params, lets, codigo));
+		lets = null;
+	}
+
+	private Operando declarar(Simbolo simbolo, boolean global) {
+		Operando v = Operando.variable(simbolo.lexeme, simbolo.type, global);
+		variables.put(simbolo, v);
+		return v;
+	}
+
+	/** C -> B C */
+	private void lista(ASTNode c) {
+		for (; hijos(c) > 0; c = hijo(c, 1))
+			sentencia(hijo(c, 0));
+	}
+
+	/** B: let, if, for o S. */
+	private void sentencia(ASTNode b) {
+		String primero = hijo(b, 0).getLabel();
+		if (primero.equals("PRlet")) {
+			Simbolo simbolo = simbolo(hijo(b, 2));
+			if (lets != null)
+				lets.add(declarar(simbolo, false));
+			else
+				variablesGlobales.add(declarar(simbolo, true));
+		} else if (primero.equals("PRif")) {
+			Operando condicion = expresion(hijo(b, 1));
+			String fin = etiqueta();
+			codigo.add(Quad.siFalso(condicion, fin));
+			s(hijo(b, 2));
+			codigo.add(Quad.etiqueta(fin));
+		} else if (primero.equals("PRfor")) {
+			f1(hijo(b, 1));
+			String inicio = etiqueta();
+			String fin = etiqueta();
+			codigo.add(Quad.etiqueta(inicio));
+			Operando condicion = expresion(hijo(b, 2));
+			codigo.add(Quad.siFalso(condicion, fin));
+			lista(hijo(b, 4));
+			f1(hijo(b, 3));
+			codigo.add(Quad.salto(inicio));
+			codigo.add(Quad.etiqueta(fin));
+		} else {
+			s(hijo(b, 0));
+		}
+	}
+
+	/** F1 -> id W E | lambda */
+	private void f1(ASTNode f1) {
+		if (hijos(f1) > 0)
+			asignacion(hijo(f1, 0), hijo(f1, 1), hijo(f1, 2));
+	}
+
+	/** S -> id S2 | PRwrite E | PRread id | S1 */
+	private void s(ASTNode s) {
+		ASTNode primero = hijo(s, 0);
+		switch (primero.getLabel()) {
+			case "PRwrite":
+				codigo.add(Quad.uso(Op.ESCRIBIR, expresion(hijo(s, 1))));
+				break;
+			case "PRread":
+				codigo.add(Quad.leer(destino(variables, hijo(s, 1))));
+				break;
+			case "S1":
+				retorno(primero);
+				break;
+			default: {
+				// S2 -> W E puntoComa | parenIzq L parenDcha puntoComa
+				ASTNode s2 = hijo(s, 1);
+				if (hijo(s2, 0).getLabel().equals("W"))
+					asignacion(primero, hijo(s2, 0), hijo(s2, 1));
+				else
+					llamada(primero, hijo(s2, 1), false);
+				break;
+			}
+		}
+	}
+
+	/** id W E, con W -> igual | asigDiv */
+	private void asignacion(ASTNode id, ASTNode w, ASTNode e) {
+		Operando v = destino(variables, id);
+		if (division(w)) {
+			Operando dividendo = estable(v, tieneLlamada(e));
+			codigo.add(Quad.operacion(Op.DIVISION, v, dividendo, expresion(e)));
+		} else {
+			asignar(v, expresion(e));
+		}
+	}
+
+	/** v = valor; si valor es el temporal de la última instrucción, esta pasa a asignar v. */
+	private void asignar(Operando v, Operando valor) {
+		if (valor.clase == Operando.Clase.TEMPORAL && !codigo.isEmpty()) {
+			Quad ultima = codigo.get(codigo.size() - 1);
+			if (valor.equals(ultima.res) && (ultima.esOperacion() || ultima.op == Op.LLAMADA)) {
+				codigo.set(codigo.size() - 1, ultima.conResultado(v));
+				return;
+			}
+		}
+		codigo.add(Quad.copia(v, valor));
+	}
+
+	/** S1 -> PRreturn X, X -> E | lambda */
+	private void retorno(ASTNode s1) {
+		ASTNode x = hijo(s1, 1);
+		if (lets == null) {
+			// Fuera de las funciones termina el programa
+			if (hijos(x) > 0)
+				expresion(hijo(x, 0));
+			codigo.add(Quad.fin());
+			return;
+		}
+		codigo.add(Quad.uso(Op.RETORNO, expresion(hijo(x, 0))));
+	}
+
+	/** Operando con el valor de una expresión: un nodo E o un nodo de una expresión compacta. */
+	private Operando expresion(ASTNode e) {
+		switch (e.getLabel()) {
+			case "E":
+				return y(operandos(e), this::r);
+			case "opAnd":
+				return y(compactos(e), this::expresion);
+			case "opIgual":
+				return igual(compactos(e), this::expresion);
+			case "opSuma":
+				return suma(compactos(e), this::expresion);
+			case "parentesis":
+				return expresion(hijo(e, 0));
+			default:
+				return operando(e);
+		}
+	}
+
+	private Operando r(ASTNode r) {
+		return igual(operandos(r), this::u);
+	}
+
+	private Operando u(ASTNode u) {
+		return suma(operandos(u), this::v);
+	}
+
+	/** V -> id V1 | parenIzq E parenDcha | literal */
+	private Operando v(ASTNode v) {
+		ASTNode primero = hijo(v, 0);
+		if (primero.getLabel().equals("parenIzq"))
+			return expresion(hijo(v, 1));
+		if (hijos(v) == 2) {
+			ASTNode v1 = hijo(v, 1);
+			if (hijos(v1) > 0)
+				return llamada(primero, hijo(v1, 1), true);
+			return destino(variables, primero);
+		}
+		return operando(primero);
+	}
+
+	/** a && b && ...: r toma cada valor y en cuanto es false se salta al final. */
+	private Operando y(List<ASTNode> operandos, Function<ASTNode, Operando> generar) {
+		Operando valor = generar.apply(operandos.get(0));
+		if (operandos.size() == 1)
+			return valor;
+		Operando r = temporal(Type.BOOLEAN);
+		String fin = etiqueta();
+		codigo.add(Quad.copia(r, valor));
+		for (int i = 1; i < operandos.size(); i++) {
+			codigo.add(Quad.siFalso(r, fin));
+			codigo.add(Quad.copia(r, generar.apply(operandos.get(i))));
+		}
+		codigo.add(Quad.etiqueta(fin));
+		return r;
+	}
+
+	/** a == b == ...: true si todos son iguales al primero. */
+	private Operando igual(List<ASTNode> operandos, Function<ASTNode, Operando> generar) {
+		Operando primero = generar.apply(operandos.get(0));
+		if (operandos.size() == 1)
+			return primero;
+		primero = estable(primero, tieneLlamada(operandos.subList(1, operandos.size())));
+		Operando acumulado = null;
+		for (int i = 1; i < operandos.size(); i++) {
+			Operando siguiente = generar.apply(operandos.get(i));
+			Operando igual = temporal(Type.BOOLEAN);
+			codigo.add(Quad.operacion(Op.IGUAL, igual, primero, siguiente));
+			if (acumulado == null) {
+				acumulado = igual;
+			} else {
+				Operando y = temporal(Type.BOOLEAN);
+				codigo.add(Quad.operacion(Op.Y, y, acumulado, igual));
+				acumulado = y;
+			}
+		}
+		return acumulado;
+	}
+
+	/** a + b + ...: int o float, todos del mismo tipo. */
+	private Operando suma(List<ASTNode> operandos, Function<ASTNode, Operando> generar) {
+		Operando valor = generar.apply(operandos.get(0));
+		for (int i = 1; i < operandos.size(); i++) {
+			valor = estable(valor, tieneLlamada(operandos.get(i)));
+			Operando siguiente = generar.apply(operandos.get(i));
+			Operando suma = temporal(valor.tipo);
+			codigo.add(Quad.operacion(Op.SUMA, suma, valor, siguiente));
+			valor = suma;
+		}
+		return valor;
+	}
+
+	/** Hoja de literal o de id (con L si es una llamada) de ambos árboles. */
+	private Operando operando(ASTNode hoja) {
+		switch (hoja.getLabel()) {
+			case "entero":
+				return Operando.constante(Type.ENTERO, Integer.parseInt(lexema(hoja)));
+			case "real":
+				return Operando.constante(Type.REAL, Float.parseFloat(lexema(hoja)));
+			case "cadena":
+				return Operando.constante(Type.CADENA, lexema(hoja));
+			case "true":
+				return Operando.constante(Type.BOOLEAN, true);
+			case "false":
+				return Operando.constante(Type.BOOLEAN, false);
+			default:
+				if (hijos(hoja) > 0)
+					return llamada(hoja, hijo(hoja, 0), true);
+				return destino(variables, hoja);
+		}
+	}
+
+	/**
+	 * Llamada con los argumentos de L -> E Q, Q -> coma E Q: se evalúan todos
+	 * y después van los param.
+	 *
+	 * @return temporal con el resultado, o null si {@code valor} es false
+	 */
+	private Operando llamada(ASTNode id, ASTNode l, boolean valor) {
+		String procedimiento = destino(funciones, id);
+		List<ASTNode> expresiones = argumentos(l);
+		boolean[] llamadaDetras = new boolean[expresiones.size()];
+		for (int i = expresiones.size() - 2; i >= 0; i--)
+			llamadaDetras[i] = llamadaDetras[i + 1] || tieneLlamada(expresiones.get(i + 1));
+		List<Operando> args = new ArrayList<>();
+		for (int i = 0; i < expresiones.size(); i++)
+			args.add(estable(expresion(expresiones.get(i)), llamadaDetras[i]));
+		for (Operando arg : args)
+			codigo.add(Quad.uso(Op.PARAM, arg));
+		Operando res = valor ? temporal(simbolo(id).type) : null;
+		codigo.add(Quad.llamada(res, procedimiento, args.size()));
+		return res;
+	}
+
+	/** @return {@code v} o, si es una global y detrás hay una llamada, un temporal con su valor. */
+	private Operando estable(Operando v, boolean llamadaDetras) {
+		if (!v.esGlobal() || !llamadaDetras)
+			return v;
+		Operando t = temporal(v.tipo);
+		codigo.add(Quad.copia(t, v));
+		return t;
+	}
+
+	private boolean tieneLlamada(List<ASTNode> nodos) {
+		for (ASTNode nodo : nodos) {
+			if (tieneLlamada(nodo))
+				return true;
+		}
+		return false;
+	}
+
+	/** @return true si la expresión contiene alguna llamada (V1 o id compacto con argumentos). */
+	private boolean tieneLlamada(ASTNode nodo) {
+		String label = nodo.getLabel();
+		if (hijos(nodo) > 0 && (label.equals("V1") || label.startsWith("id(")))
+			return true;
+		if (hijos(nodo) == 0)
+			return false;
+		// Una llamada anidada se mira desde cada nivel de llamadas que la contiene
+		Boolean llamada = conLlamada.get(nodo);
+		if (llamada == null) {
+			llamada = tieneLlamada(nodo.getChildren());
+			conLlamada.put(nodo, llamada);
+		}
+		return llamada;
+	}
+
+	private Operando temporal(Type tipo) {
+		return Operando.temporal(++temporales, tipo);
+	}
+
+	private String etiqueta() {
+		return "L" + (++etiquetas);
+	}
+}
@@ -0,0 +1,504 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import analizador.PassManager.Pass;
+import analizador.Quad.Op;
+import analizador.Quad.Operando;
+import analizador.SymbolTable.Type;
+import analizador.ThreeAddressCode.Procedimiento;
+
+/**
+ * Pasadas de optimización del {@link PassManager}. Cada una trabaja sobre un
+ * procedimiento y no cambia lo que escribe ni lo que lee el programa, ni
+ * los errores que da: una división entera solo se pliega o se elimina si el
+ * divisor es una constante distinta de cero.
+ *
+ * La propagación de copias y las subexpresiones comunes son locales a los
+ * bloques básicos: lo que saben se olvida en cada etiqueta. Una llamada
+ * puede cambiar las variables globales, así que olvida lo que dependa de
+ * ellas, y el código muerto nunca elimina una asignación a una global.
+ */
+final class IRPasses {
+
+	private IRPasses() {
+	}
+
+	/** Calcula las operaciones y los if_false con operandos constantes. */
+	static final class PlegadoConstantes implements Pass {
+		@Override
+		public String nombre() {
+			return "plegado de constantes";
+		}
+
+		@Override
+		public boolean ejecutar(Procedimiento p) {
+			boolean cambios = false;
+			List<Quad> codigo = new ArrayList<>(p.codigo.size());
+			for (Quad q : p.codigo) {
+				if (q.op == Op.SI_FALSO && q.a.esConstante()) {
+					// if_false true no salta nunca; if_false false siempre
+					if (!(Boolean) q.a.valor)
+						codigo.add(Quad.salto(q.etiqueta));
+					cambios = true;
+					continue;
+				}
+				if (q.esOperacion() && q.op != Op.COPIA) {
+					Operando valor = q.a.esConstante() && q.b.esConstante() ? plegar(q) : simplificar(q);
+					if (valor != null) {
+						codigo.add(Quad.copia(q.res, valor));
+						cambios = true;
+						continue;
+					}
+				}
+				codigo.add(q);
+			}
+			p.codigo = codigo;
+			return cambios;
+		}
+
+		/** @return constante con el valor de {@code q}, o null si hay que dejar la operación */
+		private static Operando plegar(Quad q) {
+			Object a = q.a.valor;
+			Object b = q.b.valor;
+			Object valor;
+			switch (q.op) {
+				case SUMA:
+					valor = q.res.tipo == Type.ENTERO ? (Object) (int) (short) ((Integer) a + (Integer) b) : (Float) a + (Float) b;
+					break;
+				case DIVISION:
+					if (q.res.tipo == Type.ENTERO) {
+						if ((Integer) b == 0)
+							return null;
+						valor = (int) (short) ((Integer) a / (Integer) b);
+					} else {
+						valor = (Float) a / (Float) b;
+					}
+					break;
+				case IGUAL:
+					// Como la VM: los float con ==, que distingue NaN y no el signo del cero
+					valor = q.a.tipo == Type.REAL ? (Object) ((float) (Float) a == (float) (Float) b) : a.equals(b);
+					break;
+				default:
+					valor = (Boolean) a && (Boolean) b;
+					break;
+			}
+			return Operando.constante(q.res.tipo, valor);
+		}
+
+		/**
+		 * x + 0 y 0 + x enteros, x / 1, x && true, x && false, x && x,
+		 * x == true y x == x salvo en float, porque NaN == NaN es false. La
+		 * suma de float tampoco, porque -0.0 + 0.0 es 0.0.
+		 *
+		 * @return operando con el valor de {@code q}, o null si no se simplifica
+		 */
+		private static Operando simplificar(Quad q) {
+			switch (q.op) {
+				case SUMA:
+					if (q.res.tipo != Type.ENTERO)
+						return null;
+					return es(q.b, 0) ? q.a : es(q.a, 0) ? q.b : null;
+				case DIVISION:
+					return es(q.b, 1) || es(q.b, 1f) ? q.a : null;
+				case IGUAL:
+					if (q.a.equals(q.b) && q.a.tipo != Type.REAL)
+						return Operando.constante(Type.BOOLEAN, true);
+					return es(q.b, true) ? q.a : es(q.a, true) ? q.b : null;
+				default:
+					if (es(q.a, false) || es(q.b, false))
+						return Operando.constante(Type.BOOLEAN, false);
+					return es(q.b, true) || q.a.equals(q.b) ? q.a : es(q.a, true) ? q.b : null;
+			}
+		}
+
+		private static boolean es(Operando x, Object valor) {
+			return x.esConstante() && x.valor.equals(valor);
+		}
+	}
+
+	/** Sustituye los usos de x tras x = y por y, y elimina las copias x = x. */
+	static final class PropagacionCopias implements Pass {
+		@Override
+		public String nombre() {
+			return "propagación de copias";
+		}
+
+		@Override
+		public boolean ejecutar(Procedimiento p) {
+			boolean cambios = false;
+			Hechos<Operando> copias = new Hechos<>();
+			List<Quad> codigo = new ArrayList<>(p.codigo.size());
+			for (Quad q : p.codigo) {
+				if (q.op == Op.ETIQUETA)
+					copias.clear();
+				Operando a = sustituir(copias, q.a);
+				Operando b = sustituir(copias, q.b);
+				if (a != q.a || b != q.b) {
+					q = q.conOperandos(a, b);
+					cambios = true;
+				}
+				if (q.op == Op.COPIA && q.res.equals(q.a)) {
+					cambios = true;
+					continue;
+				}
+				codigo.add(q);
+				if (q.res != null)
+					copias.olvidar(q.res);
+				if (q.op == Op.LLAMADA)
+					copias.olvidarGlobales();
+				else if (q.op == Op.COPIA)
+					copias.put(q.res, q.a, q.res, q.a);
+			}
+			p.codigo = codigo;
+			return cambios;
+		}
+
+		private static Operando sustituir(Hechos<Operando> copias, Operando x) {
+			if (x == null)
+				return null;
+			Operando y = copias.get(x);
+			return y != null ? y : x;
+		}
+	}
+
+	/** Cambia por una copia la operación que repite otra anterior del bloque con los mismos operandos. */
+	static final class SubexpresionesComunes implements Pass {
+		@Override
+		public String nombre() {
+			return "subexpresiones comunes";
+		}
+
+		/** Operación y operandos; salvo en la división, en cualquier orden. */
+		private static final class Expresion {
+			final Op op;
+			final Operando a;
+			final Operando b;
+
+			Expresion(Quad q) {
+				op = q.op;
+				a = q.a;
+				b = q.b;
+			}
+
+			boolean usa(Operando x) {
+				return a.equals(x) || b.equals(x);
+			}
+
+			@Override
+			public boolean equals(Object o) {
+				if (!(o instanceof Expresion))
+					return false;
+				Expresion otra = (Expresion) o;
+				if (op != otra.op)
+					return false;
+				return a.equals(otra.a) && b.equals(otra.b)
+						|| op != Op.DIVISION && a.equals(otra.b) && b.equals(otra.a);
+			}
+
+			@Override
+			public int hashCode() {
+				return op.hashCode() * 31 + (op == Op.DIVISION ? a.hashCode() * 31 : a.hashCode()) + b.hashCode();
+			}
+		}
+
+		@Override
+		public boolean ejecutar(Procedimiento p) {
+			boolean cambios = false;
+			Hechos<Expresion> disponibles = new Hechos<>();
+			List<Quad> codigo = new ArrayList<>(p.codigo.size());
+			for (Quad q : p.codigo) {
+				if (q.op == Op.ETIQUETA)
+					disponibles.clear();
+				Expresion e = null;
+				if (q.esOperacion() && q.op != Op.COPIA) {
+					e = new Expresion(q);
+					Operando anterior = disponibles.get(e);
+					if (anterior != null) {
+						q = Quad.copia(q.res, anterior);
+						e = null;
+						cambios = true;
+					}
+				}
+				codigo.add(q);
+				if (q.res != null)
+					disponibles.olvidar(q.res);
+				if (q.op == Op.LLAMADA)
+					disponibles.olvidarGlobales();
+				if (e != null && !e.usa(q.res))
+					disponibles.put(e, q.res, q.res, e.a, e.b);
+			}
+			p.codigo = codigo;
+			return cambios;
+		}
+	}
+
+	/**
+	 * Elimina el código inalcanzable, los saltos a la instrucción siguiente,
+	 * las etiquetas a las que no salta nadie y las asignaciones sin efectos
+	 * a temporales y locales que no se leen después. Una llamada cuyo valor
+	 * no se lee se queda, sin resultado.
+	 */
+	static final class EliminacionCodigoMuerto implements Pass {
+		@Override
+		public String nombre() {
+			return "eliminación de código muerto";
+		}
+
+		@Override
+		public boolean ejecutar(Procedimiento p) {
+			boolean cambios = inalcanzable(p);
+			cambios |= saltos(p);
+			cambios |= asignaciones(p);
+			return cambios;
+		}
+
+		private static boolean inalcanzable(Procedimiento p) {
+			List<Quad> codigo = p.codigo;
+			Map<String, Integer> etiquetas = etiquetas(codigo);
+			boolean[] alcanzable = new boolean[codigo.size()];
+			List<Integer> pendientes = new ArrayList<>();
+			pendientes.add(0);
+			while (!pendientes.isEmpty()) {
+				int i = pendientes.remove(pendientes.size() - 1);
+				if (i >= codigo.size() || alcanzable[i])
+					continue;
+				alcanzable[i] = true;
+				for (int s : sucesores(codigo, etiquetas, i))
+					pendientes.add(s);
+			}
+			List<Quad> vivo = new ArrayList<>(codigo.size());
+			for (int i = 0; i < codigo.size(); i++) {
+				if (alcanzable[i])
+					vivo.add(codigo.get(i));
+			}
+			p.codigo = vivo;
+			return vivo.size() != codigo.size();
+		}
+
+		/** Quita los saltos a la etiqueta siguiente y las etiquetas sin saltos. */
+		private static boolean saltos(Procedimiento p) {
+			List<Quad> codigo = new ArrayList<>(p.codigo.size());
+			Set<String> destinos = new HashSet<>();
+			for (int i = 0; i < p.codigo.size(); i++) {
+				Quad q = p.codigo.get(i);
+				if (q.op == Op.SALTO || q.op == Op.SI_FALSO) {
+					if (saltaASiguiente(p.codigo, i))
+						continue;
+					destinos.add(q.etiqueta);
+				}
+				codigo.add(q);
+			}
+			codigo.removeIf(q -> q.op == Op.ETIQUETA && !destinos.contains(q.etiqueta));
+			boolean cambios = codigo.size() != p.codigo.size();
+			p.codigo = codigo;
+			return cambios;
+		}
+
+		/** @return true si el salto i-ésimo va a una de las etiquetas que le siguen. */
+		private static boolean saltaASiguiente(List<Quad> codigo, int i) {
+			for (int j = i + 1; j < codigo.size() && codigo.get(j).op == Op.ETIQUETA; j++) {
+				if (codigo.get(j).etiqueta.equals(codigo.get(i).etiqueta))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Análisis de variables vivas hacia atrás: primero a la salida de cada
+		 * bloque básico, iterando sobre el grafo de flujo, y después
+		 * instrucción a instrucción dentro de cada bloque.
+		 */
+		private static boolean asignaciones(Procedimiento p) {
+			List<Quad> codigo = p.codigo;
+			int n = codigo.size();
+			Map<String, Integer> etiquetas = etiquetas(codigo);
+			// Un bloque empieza en cada etiqueta y tras cada salto, return o fin
+			List<Integer> inicios = new ArrayList<>();
+			int[] bloque = new int[n];
+			for (int i = 0; i < n; i++) {
+				if (i == 0 || codigo.get(i).op == Op.ETIQUETA || terminaBloque(codigo.get(i - 1)))
+					inicios.add(i);
+				bloque[i] = inicios.size() - 1;
+			}
+			int m = inicios.size();
+			inicios.add(n);
+
+			// Variables leídas antes de asignarse y variables asignadas en cada bloque
+			List<Set<Operando>> entrada = new ArrayList<>(m);
+			List<Set<Operando>> asignadas = new ArrayList<>(m);
+			List<Set<Operando>> salida = new ArrayList<>(m);
+			for (int b = 0; b < m; b++) {
+				Set<Operando> usos = new HashSet<>();
+				Set<Operando> defs = new HashSet<>();
+				for (int i = inicios.get(b); i < inicios.get(b + 1); i++) {
+					Quad q = codigo.get(i);
+					for (Operando x : new Operando[] { q.a, q.b }) {
+						if (x != null && !x.esConstante() && !defs.contains(x))
+							usos.add(x);
+					}
+					if (q.res != null)
+						defs.add(q.res);
+				}
+				entrada.add(usos);
+				asignadas.add(defs);
+				salida.add(new HashSet<>());
+			}
+			boolean cambios = true;
+			while (cambios) {
+				cambios = false;
+				for (int b = m - 1; b >= 0; b--) {
+					Set<Operando> vivas = salida.get(b);
+					boolean crece = false;
+					for (int s : sucesores(codigo, etiquetas, inicios.get(b + 1) - 1)) {
+						if (s < n)
+							crece |= vivas.addAll(entrada.get(bloque[s]));
+					}
+					if (!crece)
+						continue;
+					for (Operando x : vivas) {
+						if (!asignadas.get(b).contains(x))
+							cambios |= entrada.get(b).add(x);
+					}
+				}
+			}
+
+			boolean eliminadas = false;
+			Quad[] vivo = new Quad[n];
+			for (int b = 0; b < m; b++) {
+				Set<Operando> vivas = new HashSet<>(salida.get(b));
+				for (int i = inicios.get(b + 1) - 1; i >= inicios.get(b); i--) {
+					Quad q = codigo.get(i);
+					if (q.res != null && !q.res.esGlobal() && !vivas.contains(q.res)) {
+						if (sinEfectos(q)) {
+							eliminadas = true;
+							continue;
+						}
+						if (q.op == Op.LLAMADA) {
+							q = q.conResultado(null);
+							eliminadas = true;
+						}
+					}
+					vivo[i] = q;
+					if (q.res != null)
+						vivas.remove(q.res);
+					for (Operando x : new Operando[] { q.a, q.b }) {
+						if (x != null && !x.esConstante())
+							vivas.add(x);
+					}
+				}
+			}
+			List<Quad> resultado = new ArrayList<>(n);
+			for (Quad q : vivo) {
+				if (q != null)
+					resultado.add(q);
+			}
+			p.codigo = resultado;
+			return eliminadas;
+		}
+
+		private static boolean terminaBloque(Quad q) {
+			return q.op == Op.SALTO || q.op == Op.SI_FALSO || q.op == Op.RETORNO || q.op == Op.FIN;
+		}
+
+		/** @return true si quitar {@code q} solo deja sin asignar su resultado. */
+		private static boolean sinEfectos(Quad q) {
+			if (!q.esOperacion())
+				return false;
+			if (q.op == Op.DIVISION && q.res.tipo == Type.ENTERO)
+				return q.b.esConstante() && (Integer) q.b.valor != 0;
+			return true;
+		}
+	}
+
+	/**
+	 * Lo que se sabe en un punto de un bloque (copias o expresiones ya
+	 * calculadas), con el operando que guarda cada valor. Cada hecho está
+	 * indexado por los operandos de los que depende, para olvidarlo cuando
+	 * uno cambia sin recorrer los demás.
+	 */
+	private static final class Hechos<K> {
+		private static final class Hecho<K> {
+			final K clave;
+			final Operando valor;
+
+			Hecho(K clave, Operando valor) {
+				this.clave = clave;
+				this.valor = valor;
+			}
+		}
+
+		private final Map<K, Hecho<K>> hechos = new HashMap<>();
+		private final Map<Operando, List<Hecho<K>>> dependientes = new HashMap<>();
+		private final Set<Operando> globales = new HashSet<>();
+
+		Operando get(K clave) {
+			Hecho<K> hecho = hechos.get(clave);
+			return hecho != null ? hecho.valor : null;
+		}
+
+		/** Guarda que {@code valor} tiene lo de {@code clave} mientras no cambie ninguno de {@code operandos}. */
+		void put(K clave, Operando valor, Operando... operandos) {
+			Hecho<K> hecho = new Hecho<>(clave, valor);
+			hechos.put(clave, hecho);
+			for (Operando x : operandos) {
+				if (x.esConstante())
+					continue;
+				dependientes.computeIfAbsent(x, k -> new ArrayList<>()).add(hecho);
+				if (x.esGlobal())
+					globales.add(x);
+			}
+		}
+
+		/** Olvida lo que depende de {@code x}, que acaba de cambiar. */
+		void olvidar(Operando x) {
+			List<Hecho<K>> lista = dependientes.remove(x);
+			if (lista == null)
+				return;
+			for (Hecho<K> hecho : lista)
+				hechos.remove(hecho.clave, hecho);
+		}
+
+		/** Olvida lo que depende de alguna global, tras una llamada. */
+		void olvidarGlobales() {
+			for (Operando g : globales)
+				olvidar(g);
+			globales.clear();
+		}
+
+		void clear() {
+			hechos.clear();
+			dependientes.clear();
+			globales.clear();
+		}
+	}
+
+	private static Map<String, Integer> etiquetas(List<Quad> codigo) {
+		Map<String, Integer> etiquetas = new HashMap<>();
+		for (int i = 0; i < codigo.size(); i++) {
+			if (codigo.get(i).op == Op.ETIQUETA)
+				etiquetas.put(codigo.get(i).etiqueta, i);
+		}
+		return etiquetas;
+	}
+
+	/** @return instrucciones que pueden seguir a la i-ésima; size() si se sale del código */
+	private static int[] sucesores(List<Quad> codigo, Map<String, Integer> etiquetas, int i) {
+		Quad q = codigo.get(i);
+		switch (q.op) {
+			case SALTO:
+				return new int[] { etiquetas.get(q.etiqueta) };
+			case SI_FALSO:
+				return new int[] { i + 1, etiquetas.get(q.etiqueta) };
+			case RETORNO:
+			case FIN:
+				return new int[0];
+			default:
+				return new int[] { i + 1 };
+		}
+	}
+}
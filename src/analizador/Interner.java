@@ -0,0 +1,136 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tabla de nombres compartida por el analizador léxico, los tokens y la tabla
+ * de símbolos. Cada identificador distinto recibe un entero denso (1, 2, 3...)
+ * en orden de aparición, que es también su posición en tokens.txt. Los nombres
+ * se buscan por sus bytes UTF-8 directamente sobre el fuente: solo se crea un
+ * String la primera vez que aparece cada uno.
+ */
+public class Interner {
+	private int[] slots = new int[256]; // id que ocupa cada hueco (0 = libre)
+	private int[] hashes = new int[256]; // hash del nombre de cada hueco
+	private byte[] pool = new byte[1024]; // bytes UTF-8 de todos los nombres, seguidos
+	private int poolSize = 0;
+	private int[] offsets = new int[128]; // inicio de cada nombre en pool, por id
+	private int[] lengths = new int[128];
+	private String[] names = new String[128];
+	private int size = 0;
+
+	/**
+	 * Devuelve el id del nombre que ocupa los bytes indicados del fuente,
+	 * añadiéndolo si es nuevo.
+	 *
+	 * @param source fuente UTF-8.
+	 * @param start  primer byte del nombre.
+	 * @param len    longitud en bytes.
+	 * @return id del nombre, a partir de 1.
+	 */
+	public int intern(ByteBuffer source, int start, int len) {
+		return intern(source, start, len, null);
+	}
+
+	/** @param name nombre ya decodificado, o null para extraerlo del fuente. */
+	private int intern(ByteBuffer source, int start, int len, String name) {
+		int hash = 0;
+		for (int i = 0; i < len; i++)
+			hash = 31 * hash + source.get(start + i);
+		int mask = slots.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		int id;
+		while ((id = slots[slot]) != 0) {
+			if (hashes[slot] == hash && equalsAt(id, source, start, len))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+		id = add(source, start, len, name);
+		slots[slot] = id;
+		hashes[slot] = hash;
+		if (size * 2 > slots.length)
+			rehash();
+		return id;
+	}
+
+	/** @return id del nombre, añadiéndolo si es nuevo. */
+	public int intern(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * Añade los nombres de otra tabla en el orden de sus ids, como si se
+	 * hubieran encontrado a continuación de los de esta.
+	 *
+	 * @return traducción de ids: para cada id de {@code other}, su id aquí.
+	 */
+	public int[] merge(Interner other) {
+		int[] ids = new int[other.size + 1];
+		ByteBuffer otherPool = ByteBuffer.wrap(other.pool);
+		for (int id = 1; id <= other.size; id++)
+			ids[id] = intern(otherPool, other.offsets[id], other.lengths[id], other.names[id]);
+		return ids;
+	}
+
+	/** @return nombre con el id indicado. */
+	public String name(int id) {
+		return names[id];
+	}
+
+	/** @return número de nombres distintos; los ids van de 1 a size(). */
+	public int size() {
+		return size;
+	}
+
+	/** Copia el nombre al pool y le asigna el siguiente id. */
+	private int add(ByteBuffer source, int start, int len, String name) {
+		int id = ++size;
+		if (id == names.length) {
+			offsets = Arrays.copyOf(offsets, id * 2);
+			lengths = Arrays.copyOf(lengths, id * 2);
+			names = Arrays.copyOf(names, id * 2);
+		}
+		if (poolSize + len > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + len));
+		source.get(start, pool, poolSize, len);
+		offsets[id] = poolSize;
+		lengths[id] = len;
+		names[id] = name != null ? name : Lexer.slice(source, start, start + len);
+		poolSize += len;
+		return id;
+	}
+
+	/** @return true si el nombre {@code id} tiene exactamente esos bytes. */
+	private boolean equalsAt(int id, ByteBuffer source, int start, int len) {
+		if (lengths[id] != len)
+			return false;
+		int offset = offsets[id];
+		for (int i = 0; i < len; i++) {
+			if (pool[offset + i] != source.get(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	/** Duplica la tabla de huecos. */
+	private void rehash() {
+		int[] oldSlots = slots;
+		int[] oldHashes = hashes;
+		slots = new int[oldSlots.length * 2];
+		hashes = new int[oldSlots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < oldSlots.length; i++) {
+			if (oldSlots[i] == 0)
+				continue;
+			int hash = oldHashes[i];
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = oldSlots[i];
+			hashes[slot] = hash;
+		}
+	}
+}
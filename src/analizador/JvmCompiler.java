@@ -0,0 +1,544 @@
+package analizador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import analizador.ClassFileWriter.Codigo;
+import analizador.ClassFileWriter.Etiqueta;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Type;
+
+import static analizador.AnnotatedTree.*;
+import static analizador.ClassFileWriter.*;
+
+/**
+ * Compila el árbol de {@link Parser#parseAST()} a una clase de la JVM, que se
+ * carga en el propio proceso con un ClassLoader nuevo ({@link #cargar}), así
+ * que los bucles calientes acaban compilados por C2. Las variables globales
+ * son campos estáticos del tipo de Java de su {@link Type} (int, float,
+ * boolean y String), cada función un método estático con sus parámetros y su
+ * retorno, y las sentencias globales el método
+ * {@code public static void ejecutar(BufferedReader, Writer)}, que pone las
+ * globales a su valor inicial antes de empezar. Los int del lenguaje son de
+ * 16 bits: cada IADD e IDIV va seguido de I2S.
+ *
+ * Acepta los mismos árboles y con la misma semántica que
+ * {@link BytecodeCompiler}: símbolos y tipos anotados por el análisis
+ * semántico, variables sin asignar a 0, 0.0, false o '' y un return fuera de
+ * las funciones que termina el programa. Un árbol sin analizar o incompleto
+ * lanza IllegalArgumentException.
+ */
+public final class JvmCompiler {
+	private static final String ENTRADA = "$entrada";
+	private static final String SALIDA = "$salida";
+	private static final String LECTOR = "Ljava/io/BufferedReader;";
+	private static final String ESCRITOR = "Ljava/io/Writer;";
+	private static final String CADENA = "Ljava/lang/String;";
+	private static final String PROGRAM_IO = "analizador/ProgramIO";
+
+	private static final class Variable {
+		final Type tipo;
+		final String campo; // null si es local
+		final int hueco;
+
+		Variable(Type tipo, String campo, int hueco) {
+			this.tipo = tipo;
+			this.campo = campo;
+			this.hueco = hueco;
+		}
+	}
+
+	private static final class Funcion {
+		final String metodo;
+		final String descriptor;
+
+		Funcion(String metodo, String descriptor) {
+			this.metodo = metodo;
+			this.descriptor = descriptor;
+		}
+	}
+
+	private final String clase;
+	private final ClassFileWriter cf;
+	// Campo o local de cada variable y método de cada función, por su símbolo
+	private final Map<Simbolo, Variable> variables = new IdentityHashMap<>();
+	private final Map<Simbolo, Funcion> funciones = new IdentityHashMap<>();
+	private final List<Variable> camposGlobales = new ArrayList<>();
+	private final Set<String> metodos = new HashSet<>();
+	private List<Variable> letsLocales; // null fuera de las funciones
+	private Simbolo actual;
+	private Codigo codigo;
+
+	private JvmCompiler(String clase) {
+		this.clase = clase;
+		this.cf = new ClassFileWriter(clase);
+	}
+
+	/**
+	 * Compila el programa que cuelga de {@code raiz} (el nodo P1).
+	 *
+	 * @param clase nombre de la clase, sin paquete
+	 * @return el fichero .class
+	 * @throws IllegalArgumentException si el árbol no está analizado o está incompleto
+	 */
+	public static byte[] compilar(ASTNode raiz, String clase) {
+		return new JvmCompiler(clase).programa(raiz);
+	}
+
+	/** Carga la clase de {@link #compilar} con un ClassLoader propio. */
+	public static Class<?> cargar(String clase, byte[] bytes) {
+		return new Cargador(JvmCompiler.class.getClassLoader()).definir(clase, bytes);
+	}
+
+	/**
+	 * Ejecuta el programa de una clase de {@link #cargar} y vacía la salida al
+	 * terminar. La división entera por cero y una recursión que agota la pila
+	 * lanzan IllegalStateException, como en la {@link VirtualMachine}.
+	 */
+	public static void ejecutar(Class<?> programa, Reader entrada, Writer salida) throws IOException {
+		MethodHandle ejecutar;
+		try {
+			ejecutar = MethodHandles.publicLookup().findStatic(programa, "ejecutar",
+					MethodType.methodType(void.class, BufferedReader.class, Writer.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("La clase " + programa.getName() + " no es un programa compilado", e);
+		}
+		BufferedReader lector = entrada instanceof BufferedReader ? (BufferedReader) entrada
+				: new BufferedReader(entrada);
+		try {
+			ejecutar.invokeExact(lector, salida);
+		} catch (ArithmeticException e) {
+			throw new IllegalStateException("División entera por cero");
+		} catch (StackOverflowError e) {
+			throw new IllegalStateException("Demasiadas llamadas anidadas");
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		} finally {
+			salida.flush();
+		}
+	}
+
+	/** ClassLoader de una sola clase; ve las de este paquete, como {@link ProgramIO}. */
+	private static final class Cargador extends ClassLoader {
+		Cargador(ClassLoader padre) {
+			super(padre);
+		}
+
+		Class<?> definir(String nombre, byte[] bytes) {
+			return defineClass(nombre, bytes, 0, bytes.length);
+		}
+	}
+
+	private byte[] programa(ASTNode raiz) {
+		Codigo principal = cf.new Codigo(2);
+		codigo = principal;
+		for (ASTNode p = hijo(raiz, 0); hijos(p) > 0; p = hijo(p, 1)) {
+			ASTNode item = hijo(p, 0);
+			if (item.getLabel().equals("F")) {
+				funcion(item);
+				codigo = principal;
+			} else {
+				sentencia(item);
+			}
+		}
+		codigo.op(RETURN);
+
+		// Las globales se inicializan en cada ejecución
+		Codigo prologo = cf.new Codigo(2);
+		prologo.local(ALOAD, 0);
+		prologo.campo(PUTSTATIC, clase, ENTRADA, LECTOR);
+		prologo.local(ALOAD, 1);
+		prologo.campo(PUTSTATIC, clase, SALIDA, ESCRITOR);
+		for (Variable v : camposGlobales) {
+			valorInicial(prologo, v.tipo);
+			prologo.campo(PUTSTATIC, clase, v.campo, descriptor(v.tipo));
+		}
+		principal.anteponer(prologo);
+
+		cf.campo(ACC_STATIC, ENTRADA, LECTOR);
+		cf.campo(ACC_STATIC, SALIDA, ESCRITOR);
+		for (Variable v : camposGlobales)
+			cf.campo(ACC_PUBLIC | ACC_STATIC, v.campo, descriptor(v.tipo));
+		cf.metodo(ACC_PUBLIC | ACC_STATIC, "ejecutar", "(" + LECTOR + ESCRITOR + ")V", principal);
+		return cf.toByteArray();
+	}
+
+	/** F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha */
+	private void funcion(ASTNode f) {
+		requerirCuerpo(f);
+		Simbolo funcion = simbolo(hijo(f, 2));
+		// Una función redeclarada es otro método
+		String metodo = funcion.lexeme;
+		for (int i = 2; !metodos.add(metodo); i++)
+			metodo = funcion.lexeme + "$" + i;
+
+		// Z -> T id K, K -> coma T id K: un hueco por parámetro, en orden
+		List<ASTNode> params = parametros(hijo(f, 3));
+		StringBuilder descriptor = new StringBuilder("(");
+		for (int i = 0; i < params.size(); i++) {
+			Simbolo param = simbolo(params.get(i));
+			variables.put(param, new Variable(param.type, null, i));
+			descriptor.append(descriptor(param.type));
+		}
+		descriptor.append(')').append(descriptor(funcion.type));
+		funciones.put(funcion, new Funcion(metodo, descriptor.toString())); // visible en su propio cuerpo
+
+		codigo = cf.new Codigo(params.size());
+		letsLocales = new ArrayList<>();
+		actual = funcion;
+		lista(hijo(f, 4));
+		retorno(hijo(hijo(f, 5), 0));
+
+		// Los locales de los let empiezan a su valor inicial
+		Codigo prologo = cf.new Codigo(0);
+		for (Variable v : letsLocales) {
+			valorInicial(prologo, v.tipo);
+			prologo.local(almacenar(v.tipo), v.hueco);
+		}
+		codigo.anteponer(prologo);
+		cf.metodo(ACC_STATIC, metodo, descriptor.toString(), codigo);
+		actual = null;
+		letsLocales = null;
+	}
+
+	/** C -> B C */
+	private void lista(ASTNode c) {
+		for (; hijos(c) > 0; c = hijo(c, 1))
+			sentencia(hijo(c, 0));
+	}
+
+	/** B: let, if, for o S. */
+	private void sentencia(ASTNode b) {
+		String primero = hijo(b, 0).getLabel();
+		if (primero.equals("PRlet")) {
+			Simbolo simbolo = simbolo(hijo(b, 2));
+			Variable v;
+			if (actual != null) {
+				v = new Variable(simbolo.type, null, codigo.nuevoLocal());
+				letsLocales.add(v);
+			} else {
+				v = new Variable(simbolo.type, simbolo.lexeme, -1);
+				camposGlobales.add(v);
+			}
+			variables.put(simbolo, v);
+		} else if (primero.equals("PRif")) {
+			expresion(hijo(b, 1));
+			Etiqueta fin = new Etiqueta();
+			codigo.saltar(IFEQ, fin);
+			s(hijo(b, 2));
+			codigo.marcar(fin);
+		} else if (primero.equals("PRfor")) {
+			f1(hijo(b, 1));
+			Etiqueta condicion = new Etiqueta();
+			Etiqueta salida = new Etiqueta();
+			codigo.marcar(condicion);
+			expresion(hijo(b, 2));
+			codigo.saltar(IFEQ, salida);
+			lista(hijo(b, 4));
+			f1(hijo(b, 3));
+			codigo.saltar(GOTO, condicion);
+			codigo.marcar(salida);
+		} else {
+			s(hijo(b, 0));
+		}
+	}
+
+	/** F1 -> id W E | lambda */
+	private void f1(ASTNode f1) {
+		if (hijos(f1) > 0)
+			asignacion(hijo(f1, 0), hijo(f1, 1), hijo(f1, 2));
+	}
+
+	/** S -> id S2 | PRwrite E | PRread id | S1 */
+	private void s(ASTNode s) {
+		ASTNode primero = hijo(s, 0);
+		switch (primero.getLabel()) {
+			case "PRwrite": {
+				codigo.campo(GETSTATIC, clase, SALIDA, ESCRITOR);
+				Type tipo = expresion(hijo(s, 1));
+				codigo.invocar(INVOKESTATIC, PROGRAM_IO, "escribir", "(" + ESCRITOR + descriptor(tipo) + ")V");
+				break;
+			}
+			case "PRread": {
+				Variable v = destino(variables, hijo(s, 1));
+				String metodo = v.tipo == Type.ENTERO ? "leerEntero"
+						: v.tipo == Type.REAL ? "leerReal" : v.tipo == Type.BOOLEAN ? "leerBooleano" : "leerCadena";
+				codigo.campo(GETSTATIC, clase, ENTRADA, LECTOR);
+				codigo.campo(GETSTATIC, clase, SALIDA, ESCRITOR);
+				codigo.invocar(INVOKESTATIC, PROGRAM_IO, metodo, "(" + LECTOR + ESCRITOR + ")" + descriptor(v.tipo));
+				guardar(v);
+				break;
+			}
+			case "S1":
+				retorno(primero);
+				break;
+			default: {
+				// S2 -> W E puntoComa | parenIzq L parenDcha puntoComa
+				ASTNode s2 = hijo(s, 1);
+				if (hijo(s2, 0).getLabel().equals("W")) {
+					asignacion(primero, hijo(s2, 0), hijo(s2, 1));
+				} else {
+					llamada(primero, hijo(s2, 1));
+					codigo.op(POP);
+				}
+				break;
+			}
+		}
+	}
+
+	/** id W E, con W -> igual | asigDiv */
+	private void asignacion(ASTNode id, ASTNode w, ASTNode e) {
+		Variable v = destino(variables, id);
+		boolean div = division(w);
+		if (div)
+			cargar(v);
+		expresion(e);
+		if (div && v.tipo == Type.ENTERO) {
+			codigo.op(IDIV);
+			codigo.op(I2S);
+		} else if (div) {
+			codigo.op(FDIV);
+		}
+		guardar(v);
+	}
+
+	/** S1 -> PRreturn X, X -> E | lambda */
+	private void retorno(ASTNode s1) {
+		ASTNode x = hijo(s1, 1);
+		if (actual == null) {
+			// Fuera de las funciones termina el programa
+			if (hijos(x) > 0) {
+				expresion(hijo(x, 0));
+				codigo.op(POP);
+			}
+			codigo.op(RETURN);
+			return;
+		}
+		expresion(hijo(x, 0));
+		Type tipo = actual.type;
+		codigo.op(tipo == Type.CADENA ? ARETURN : tipo == Type.REAL ? FRETURN : IRETURN);
+	}
+
+	/**
+	 * Código de una expresión: un nodo E o un nodo de una expresión compacta.
+	 *
+	 * @return su tipo
+	 */
+	private Type expresion(ASTNode e) {
+		switch (e.getLabel()) {
+			case "E":
+				y(operandos(e), this::r);
+				break;
+			case "opAnd":
+				y(compactos(e), this::expresion);
+				break;
+			case "opIgual":
+				igual(compactos(e), this::expresion);
+				break;
+			case "opSuma":
+				suma(compactos(e), this::expresion);
+				break;
+			case "parentesis":
+				expresion(hijo(e, 0));
+				break;
+			default:
+				operando(e);
+				break;
+		}
+		return tipo(e);
+	}
+
+	private Type r(ASTNode r) {
+		igual(operandos(r), this::u);
+		return tipo(r);
+	}
+
+	private Type u(ASTNode u) {
+		suma(operandos(u), this::v);
+		return tipo(u);
+	}
+
+	/** V -> id V1 | parenIzq E parenDcha | literal */
+	private Type v(ASTNode v) {
+		ASTNode primero = hijo(v, 0);
+		if (primero.getLabel().equals("parenIzq")) {
+			expresion(hijo(v, 1));
+		} else if (hijos(v) == 2) {
+			ASTNode v1 = hijo(v, 1);
+			if (hijos(v1) > 0)
+				llamada(primero, hijo(v1, 1));
+			else
+				cargar(destino(variables, primero));
+		} else {
+			operando(primero);
+		}
+		return tipo(v);
+	}
+
+	/** a && b && ...: en cuanto uno es false se salta al final con él en la cima. */
+	private void y(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		compilar.apply(operandos.get(0));
+		if (operandos.size() == 1)
+			return;
+		Etiqueta fin = new Etiqueta();
+		for (int i = 1; i < operandos.size(); i++) {
+			codigo.op(DUP);
+			codigo.saltar(IFEQ, fin);
+			codigo.op(POP);
+			compilar.apply(operandos.get(i));
+		}
+		codigo.marcar(fin);
+	}
+
+	/**
+	 * a == b == ...: true si todos son iguales. Con más de dos operandos el
+	 * primero se guarda en un local y se compara con cada uno de los demás.
+	 */
+	private void igual(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		Type tipo = compilar.apply(operandos.get(0));
+		if (operandos.size() == 1)
+			return;
+		int primero = -1;
+		if (operandos.size() > 2) {
+			primero = codigo.nuevoLocal();
+			codigo.local(almacenar(tipo), primero);
+		}
+		for (int i = 1; i < operandos.size(); i++) {
+			if (primero >= 0)
+				codigo.local(cargar(tipo), primero);
+			compilar.apply(operandos.get(i));
+			comparar(tipo);
+			if (i > 1)
+				codigo.op(IAND);
+		}
+	}
+
+	/** Cambia los dos valores de la cima por 1 si son iguales o 0 si no. */
+	private void comparar(Type tipo) {
+		if (tipo == Type.CADENA) {
+			codigo.invocar(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+			return;
+		}
+		Etiqueta distintos = new Etiqueta();
+		Etiqueta fin = new Etiqueta();
+		if (tipo == Type.REAL) {
+			codigo.op(FCMPL);
+			codigo.saltar(IFNE, distintos);
+		} else {
+			codigo.saltar(IF_ICMPNE, distintos);
+		}
+		codigo.entero(1);
+		codigo.saltar(GOTO, fin);
+		codigo.marcar(distintos);
+		codigo.entero(0);
+		codigo.marcar(fin);
+	}
+
+	/** a + b + ...: int o float, todos del mismo tipo. */
+	private void suma(List<ASTNode> operandos, Function<ASTNode, Type> compilar) {
+		Type tipo = compilar.apply(operandos.get(0));
+		for (int i = 1; i < operandos.size(); i++) {
+			compilar.apply(operandos.get(i));
+			if (tipo == Type.ENTERO) {
+				codigo.op(IADD);
+				codigo.op(I2S);
+			} else {
+				codigo.op(FADD);
+			}
+		}
+	}
+
+	/** Hoja de literal o de id (con L si es una llamada) de ambos árboles. */
+	private void operando(ASTNode hoja) {
+		switch (hoja.getLabel()) {
+			case "entero":
+				codigo.entero(Integer.parseInt(lexema(hoja)));
+				break;
+			case "real":
+				codigo.real(Float.parseFloat(lexema(hoja)));
+				break;
+			case "cadena":
+				codigo.cadena(lexema(hoja));
+				break;
+			case "true":
+				codigo.entero(1);
+				break;
+			case "false":
+				codigo.entero(0);
+				break;
+			default:
+				if (hijos(hoja) > 0)
+					llamada(hoja, hijo(hoja, 0));
+				else
+					cargar(destino(variables, hoja));
+				break;
+		}
+	}
+
+	/** Llamada con los argumentos de L -> E Q, Q -> coma E Q. */
+	private void llamada(ASTNode id, ASTNode l) {
+		Funcion funcion = destino(funciones, id);
+		for (ASTNode arg : argumentos(l))
+			expresion(arg);
+		codigo.invocar(INVOKESTATIC, clase, funcion.metodo, funcion.descriptor);
+	}
+
+	private void cargar(Variable v) {
+		if (v.campo != null)
+			codigo.campo(GETSTATIC, clase, v.campo, descriptor(v.tipo));
+		else
+			codigo.local(cargar(v.tipo), v.hueco);
+	}
+
+	private void guardar(Variable v) {
+		if (v.campo != null)
+			codigo.campo(PUTSTATIC, clase, v.campo, descriptor(v.tipo));
+		else
+			codigo.local(almacenar(v.tipo), v.hueco);
+	}
+
+	private static void valorInicial(Codigo codigo, Type tipo) {
+		if (tipo == Type.CADENA)
+			codigo.cadena("");
+		else if (tipo == Type.REAL)
+			codigo.real(0f);
+		else
+			codigo.entero(0);
+	}
+
+	private static int cargar(Type tipo) {
+		return tipo == Type.CADENA ? ALOAD : tipo == Type.REAL ? FLOAD : ILOAD;
+	}
+
+	private static int almacenar(Type tipo) {
+		return tipo == Type.CADENA ? ASTORE : tipo == Type.REAL ? FSTORE : ISTORE;
+	}
+
+	private static String descriptor(Type tipo) {
+		switch (tipo) {
+			case ENTERO:
+				return "I";
+			case REAL:
+				return "F";
+			case BOOLEAN:
+				return "Z";
+			case CADENA:
+				return CADENA;
+			default:
+				throw new IllegalArgumentException("Tipo sin representación en la JVM: " + tipo);
+		}
+	}
+}
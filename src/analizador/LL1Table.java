@@ -0,0 +1,131 @@
+package analizador;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tabla de análisis LL(1) generada a partir de una {@link Grammar}: una
+ * matriz densa de producciones indexada por no terminal y tipo de token, de
+ * modo que elegir producción es un único acceso a un array.
+ *
+ * Si dos producciones compiten por una celda se anota el conflicto y gana la
+ * que llega a la celda por FOLLOW, es decir, el no terminal deriva lambda y
+ * cede el token a quien lo sigue. Es lo que hace el {@link Parser} con el
+ * {@code return} al final del cuerpo de una función, que {@code C} deja para
+ * {@code F2}.
+ *
+ * Para el resto de tokens cada no terminal tiene una producción por defecto,
+ * que reproduce la recuperación del {@link Parser}: la lambda si es anulable
+ * o la única que tenga; si no tiene ninguna de las dos, es un error.
+ */
+public final class LL1Table {
+	private static final int KINDS = TokenKind.values().length;
+
+	private final Grammar grammar;
+	private final int[] cells; // producción por (no terminal * KINDS + tipo); 0 = vacía
+	private final int[] defaults;
+	private final List<String> conflicts = new ArrayList<>();
+
+	/** Construye la tabla y anota los conflictos LL(1) de la gramática. */
+	public LL1Table(Grammar grammar) {
+		this.grammar = grammar;
+		int n = grammar.nonTerminalCount();
+		this.cells = new int[n * KINDS];
+		this.defaults = new int[n];
+		boolean[] viaFollow = new boolean[cells.length];
+		int[] productions = new int[n];
+		for (int p = 1; p <= grammar.productionCount(); p++) {
+			int a = grammar.lhs(p);
+			int[] rhs = grammar.rhs(p);
+			if (++productions[a] == 1 || grammar.nullableFrom(rhs, 0))
+				defaults[a] = p;
+			long predict = grammar.firstOf(rhs, 0);
+			long byFollow = grammar.nullableFrom(rhs, 0) ? grammar.follow(a) : 0;
+			for (TokenKind kind : TokenKind.values()) {
+				boolean first = kind.in(predict);
+				boolean follow = kind.in(byFollow);
+				if (first || follow)
+					set(a, kind, p, follow && !first, viaFollow);
+			}
+		}
+		for (int a = 0; a < n; a++) {
+			if (productions[a] > 1 && !grammar.nullable(a))
+				defaults[a] = 0;
+		}
+	}
+
+	private void set(int a, TokenKind kind, int p, boolean follow, boolean[] viaFollow) {
+		int cell = a * KINDS + kind.ordinal();
+		int old = cells[cell];
+		if (old == 0) {
+			cells[cell] = p;
+			viaFollow[cell] = follow;
+			return;
+		}
+		conflicts.add("Conflicto en " + grammar.nonTerminal(a) + " con " + kind.getNombre() + ": " + old + " ("
+				+ grammar.production(old) + ") y " + p + " (" + grammar.production(p) + ")");
+		if (follow && !viaFollow[cell]) {
+			cells[cell] = p;
+			viaFollow[cell] = true;
+		}
+	}
+
+	/** @return producción de la celda, o 0 si está vacía. */
+	public int entry(int nt, TokenKind kind) {
+		return cells[nt * KINDS + kind.ordinal()];
+	}
+
+	/**
+	 * @return producción a aplicar al ver {@code kind} en {@code nt}: la de la
+	 *         celda o, si está vacía, la de por defecto; 0 si es un error.
+	 */
+	int predict(int nt, int kind) {
+		int p = cells[nt * KINDS + kind];
+		return p != 0 ? p : defaults[nt];
+	}
+
+	/** @return gramática de la que sale la tabla. */
+	public Grammar grammar() {
+		return grammar;
+	}
+
+	/** @return descripción de cada conflicto LL(1), en orden de detección. */
+	public List<String> conflicts() {
+		return Collections.unmodifiableList(conflicts);
+	}
+
+	/** @return informe con FIRST, FOLLOW, conflictos y celdas de la tabla. */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int a = 0; a < grammar.nonTerminalCount(); a++) {
+			sb.append(grammar.nonTerminal(a)).append(grammar.nullable(a) ? " (anulable)" : "").append('\n');
+			sb.append("  FIRST  = ").append(Grammar.setToString(grammar.first(a))).append('\n');
+			sb.append("  FOLLOW = ").append(Grammar.setToString(grammar.follow(a))).append('\n');
+			sb.append("  tabla  =");
+			for (TokenKind kind : TokenKind.values()) {
+				int p = entry(a, kind);
+				if (p != 0)
+					sb.append(' ').append(kind.getNombre()).append(':').append(p);
+			}
+			sb.append('\n');
+		}
+		sb.append(conflicts.isEmpty() ? "La gramática es LL(1)\n" : "Conflictos LL(1):\n");
+		for (String conflict : conflicts)
+			sb.append("  ").append(conflict).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Genera la tabla de una gramática e imprime el informe.
+	 * Uso: {@code java analizador.LL1Table [gramatica.txt]}
+	 */
+	public static void main(String[] args) throws IOException {
+		Path path = Paths.get(args.length > 0 ? args[0] : "gramatica.txt");
+		System.out.print(new LL1Table(Grammar.load(path)));
+	}
+}
@@ -1,43 +1,73 @@
 package analizador;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.function.Consumer;
 
 /**
- * Analizador léxico que devuelve tokens con tipos en texto
- * directamente alineados con la gramática del analizador sintáctico.
+ * Analizador léxico que devuelve tokens cuyos tipos ({@link TokenKind})
+ * están directamente alineados con los terminales de la gramática.
+ *
+ * Trabaja directamente sobre los bytes UTF-8 del fuente (normalmente un
+ * fichero proyectado en memoria): los caracteres ASCII se leen tal cual y
+ * solo se decodifican las secuencias multibyte y los lexemas que las
+ * contienen.
  */
-public class Lexer {
-
-	private final String input; // Código fuente de entrada
-	private final List<Token> tokens = new ArrayList<>(); // Lista de tokens generados
-	private final LinkedHashMap<String, Integer> symbolTable = new LinkedHashMap<>(); // Tabla de símbolos con
-																						// posiciones
-	private int pos = 0; // Posición actual en la cadena
+public class Lexer implements TokenStream {
+
+	/** Capacidad del buffer circular de lectura adelantada (potencia de 2). */
+	private static final int LOOKAHEAD = 8;
+
+	private final ByteBuffer input; // Código fuente de entrada (UTF-8)
+	private final int length; // Longitud del fuente en bytes
+	private final List<Token> tokens = new ArrayList<>(); // Lista de tokens generados (modo lista)
+	private final Token[] ring = new Token[LOOKAHEAD]; // Tokens leídos por adelantado
+	private int ringHead = 0; // Posición del siguiente token a devolver
+	private int ringCount = 0; // Tokens pendientes en el buffer
+	private Token emitted; // Último token reconocido por scanToken()
+	private boolean produced; // Si el último paso del autómata ha emitido un token
+	private Token lastConsumed; // Último token devuelto por nextToken()
+	private TokenBuffer buffer; // Destino de los tokens en modo buffer compacto
+	private Token eof; // Token finFich, una vez alcanzado
+	private Consumer<Token> listener; // Observador opcional de cada token reconocido
+	private final Interner interner; // Nombres de identificador -> posición en la tabla de símbolos
+	private int pos = 0; // Posición actual (en bytes)
 	private int line = 1; // Línea actual
 	private int column = 1; // Columna actual
 	private int tokenStartColumn = 1; // Columna donde comienza el token
+	private int tokenStart = 0; // Byte donde comienza el token
+	private int openString = -1; // Cadena que sigue abierta al final del tramo (-1 si no hay)
+	private int openStringLine; // Línea y columna donde empieza esa cadena
+	private int openStringColumn;
+
+	/** Salto vectorial de rachas, o null para recorrerlas con la tabla byte a byte. */
+	private static final ByteRuns RUNS = ByteRuns.VECTOR;
 
-	/** Palabras reservadas del lenguaje -> tipo de token resultante */
-	private static final Map<String, String> keywords = new HashMap<>();
+	/** Lexema fijo de cada palabra reservada, indexado por tipo de token. */
+	private static final String[] KEYWORD_TEXT = new String[TokenKind.values().length];
 
 	static {
-		keywords.put("boolean", "PRboolean");
-		keywords.put("float", "PRfloat");
-		keywords.put("for", "PRfor");
-		keywords.put("function", "PRfun");
-		keywords.put("if", "PRif");
-		keywords.put("int", "PRint");
-		keywords.put("let", "PRlet");
-		keywords.put("read", "PRread");
-		keywords.put("return", "PRreturn");
-		keywords.put("string", "PRstring");
-		keywords.put("true", "true");
-		keywords.put("false", "false");
-		keywords.put("write", "PRwrite");
+		KEYWORD_TEXT[TokenKind.PR_BOOLEAN.ordinal()] = "boolean";
+		KEYWORD_TEXT[TokenKind.PR_FLOAT.ordinal()] = "float";
+		KEYWORD_TEXT[TokenKind.PR_FOR.ordinal()] = "for";
+		KEYWORD_TEXT[TokenKind.PR_FUN.ordinal()] = "function";
+		KEYWORD_TEXT[TokenKind.PR_IF.ordinal()] = "if";
+		KEYWORD_TEXT[TokenKind.PR_INT.ordinal()] = "int";
+		KEYWORD_TEXT[TokenKind.PR_LET.ordinal()] = "let";
+		KEYWORD_TEXT[TokenKind.PR_READ.ordinal()] = "read";
+		KEYWORD_TEXT[TokenKind.PR_RETURN.ordinal()] = "return";
+		KEYWORD_TEXT[TokenKind.PR_STRING.ordinal()] = "string";
+		KEYWORD_TEXT[TokenKind.TRUE.ordinal()] = "true";
+		KEYWORD_TEXT[TokenKind.FALSE.ordinal()] = "false";
+		KEYWORD_TEXT[TokenKind.PR_WRITE.ordinal()] = "write";
 	}
 
 	private final ErrorManager errorManager; // Gestor de errores
@@ -49,8 +79,79 @@ public class Lexer {
 	 * @param errorManager gestor donde se registrarán los errores léxicos.
 	 */
 	public Lexer(String input, ErrorManager errorManager) {
+		this(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)), errorManager);
+	}
+
+	/**
+	 * Constructor sobre un buffer de bytes codificados en UTF-8.
+	 * 
+	 * @param input        bytes del fuente, desde la posición 0 hasta su límite.
+	 * @param errorManager gestor donde se registrarán los errores léxicos.
+	 */
+	public Lexer(ByteBuffer input, ErrorManager errorManager) {
+		this(input, errorManager, new Interner());
+	}
+
+	/**
+	 * Constructor que numera los identificadores con una tabla de nombres
+	 * compartida, de modo que los ids de los tokens coinciden con los de otros
+	 * componentes que usen el mismo {@link Interner}.
+	 * 
+	 * @param input        bytes del fuente, desde la posición 0 hasta su límite.
+	 * @param errorManager gestor donde se registrarán los errores léxicos.
+	 * @param interner     tabla de nombres donde se registran los identificadores.
+	 */
+	public Lexer(ByteBuffer input, ErrorManager errorManager, Interner interner) {
+		this(input, errorManager, interner, 0, input.limit(), 1, 1);
+	}
+
+	/**
+	 * Constructor que analiza solo el tramo [{@code from}, {@code to}) del
+	 * fuente, empezando en la línea y columna indicadas. Las posiciones de los
+	 * tokens siguen siendo absolutas. Lo usa {@link ParallelLexer}.
+	 */
+	Lexer(ByteBuffer input, ErrorManager errorManager, Interner interner, int from, int to, int line, int column) {
 		this.input = input;
+		this.length = to;
 		this.errorManager = errorManager;
+		this.interner = interner;
+		this.pos = from;
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * Crea un analizador que lee el fichero proyectado en memoria, sin cargarlo
+	 * ni decodificarlo entero en el heap.
+	 * 
+	 * @param file         fichero fuente codificado en UTF-8.
+	 * @param errorManager gestor donde se registrarán los errores léxicos.
+	 * @throws IOException si no se puede abrir o supera los 2 GB.
+	 */
+	public static Lexer fromFile(Path file, ErrorManager errorManager) throws IOException {
+		return new Lexer(mapFile(file), errorManager);
+	}
+
+	/**
+	 * Proyecta un fichero en memoria en modo solo lectura.
+	 * 
+	 * @throws IOException si no se puede abrir o supera los 2 GB.
+	 */
+	public static ByteBuffer mapFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Fichero demasiado grande (máximo 2 GB): " + file);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	/**
+	 * Registra un observador que recibe cada token en el orden en que se
+	 * reconoce (incluido finFich), útil para volcar tokens.txt en modo flujo.
+	 */
+	public void setTokenListener(Consumer<Token> listener) {
+		this.listener = listener;
 	}
 
 	/**
@@ -59,93 +160,405 @@ public class Lexer {
 	 * @return lista de tokens encontrados en el código fuente.
 	 */
 	public List<Token> tokenize() {
-		while (pos < input.length()) {
-			char current = peek();
+		Token token;
+		do {
+			token = nextToken();
+			tokens.add(token);
+		} while (!token.is(TokenKind.FIN_FICH));
+		return tokens;
+	}
 
-			if (current == '\n') {
-				line++;
-				column = 1;
-				advance();
-			} else if (Character.isWhitespace(current)) {
-				advance();
-			} else if (Character.isLetter(current) || current == '_') {
-				tokenStartColumn = column;
-				lexIdentifierOrKeyword();
-			} else if (Character.isDigit(current)) {
-				tokenStartColumn = column;
-				lexNumber();
-			} else {
-				tokenStartColumn = column;
-				switch (current) {
-					case '+':
-						advance();
-						addToken("opSuma", "+");
-						break;
-
-					case '=':
-						advance();
-						if (match('='))
-							addToken("opIgual", "==");
-						else
-							addToken("igual", "=");
-						break;
-
-					case '&':
-						advance();
-						if (match('&'))
-							addToken("opAnd", "&&");
-						else
-							error("Símbolo no permitido '&'");
-						break;
-
-					case '/':
-						advance();
-						if (match('=')) {
-							addToken("asigDiv", "/=");
-						} else if (match('/')) {
-							skipLineComment(); // Comentario de línea
-						} else {
-							error("Símbolo no permitido '/'");
-						}
-						break;
-
-					case ',':
-						advance();
-						addToken("coma", ",");
-						break;
-					case ';':
-						advance();
-						addToken("puntoComa", ";");
-						break;
-					case '(':
-						advance();
-						addToken("parenIzq", "(");
-						break;
-					case ')':
-						advance();
-						addToken("parenDcha", ")");
-						break;
-					case '{':
-						advance();
-						addToken("llaveIzq", "{");
-						break;
-					case '}':
-						advance();
-						addToken("llaveDcha", "}");
-						break;
-					case '\'':
-						lexString();
-						break;
-					default:
-						error("Símbolo no reconocido: '" + current + "'");
-						advance();
-						break;
+	/**
+	 * Analiza todo el texto de entrada guardando los tokens en un
+	 * {@link TokenBuffer}, sin crear un objeto ni un lexema por token.
+	 * 
+	 * @return buffer con los tokens encontrados, terminado en finFich.
+	 */
+	public TokenBuffer tokenizeToBuffer() {
+		TokenBuffer result = tokenizeRange();
+		result.reportErrors(errorManager);
+		return result;
+	}
+
+	/**
+	 * Actualiza los tokens de una versión anterior del fuente tras una edición.
+	 * Solo se vuelve a analizar desde el último token que termina antes de la
+	 * edición hasta que aparece un token idéntico a uno antiguo (misma posición
+	 * desplazada, tipo y columna); los tokens siguientes no se analizan, solo se
+	 * desplazan sus posiciones y líneas.
+	 * 
+	 * Este analizador debe estar recién creado sobre el fuente ya editado y con
+	 * el mismo {@link Interner} que produjo {@code previous}. Los ids de los
+	 * identificadores se conservan: un nombre nuevo recibe el siguiente id
+	 * libre, aunque en un análisis completo le correspondiera otro.
+	 * 
+	 * @param previous tokens del fuente anterior; se modifican en su sitio.
+	 * @param offset   byte donde empieza la edición.
+	 * @param removed  bytes del fuente anterior eliminados.
+	 * @param inserted bytes insertados en su lugar.
+	 * @return {@code previous}, ya actualizado. Los errores léxicos de todo el
+	 *         fuente se pasan de nuevo al gestor de errores.
+	 */
+	public TokenBuffer relex(TokenBuffer previous, int offset, int removed, int inserted) {
+		int delta = inserted - removed;
+		int index = previous.lastEndingBefore(offset);
+		if (index >= 0) {
+			pos = previous.rawStart(index);
+			line = previous.startLine(index);
+			column = previous.column(index);
+		} else {
+			index = 0;
+			pos = 0;
+			line = 1;
+			column = 1;
+		}
+		buffer = previous;
+		previous.beginRewrite(index, pos, input);
+		boolean synced = false;
+		while (!synced && scanNext()) {
+			int last = previous.firstOld() - 1;
+			int start = previous.rawStart(last);
+			// Los tokens antiguos que empiezan antes que el nuevo ya no existen
+			while (previous.hasOld() && previous.rawStart(last + 1) + delta < start)
+				previous.dropOld();
+			if (start >= offset + inserted && previous.hasOld() && previous.rawStart(last + 1) + delta == start
+					&& previous.kind(last + 1) == previous.kind(last)
+					&& previous.column(last + 1) == previous.column(last)) {
+				// Resincronizado: desde aquí los tokens antiguos valen, desplazados
+				int lineDelta = previous.line(last) - previous.line(last + 1);
+				previous.dropLast();
+				previous.endRewrite(start - delta, delta, lineDelta);
+				synced = true;
+			}
+		}
+		if (!synced) {
+			while (previous.hasOld())
+				previous.dropOld();
+			previous.add(TokenKind.FIN_FICH, pos, pos, line, column, 0);
+			previous.endRewrite(Integer.MAX_VALUE, delta, 0);
+		}
+		buffer = null;
+		previous.reportErrors(errorManager);
+		return previous;
+	}
+
+	/**
+	 * Aplica una edición de texto a un fuente UTF-8.
+	 * 
+	 * @param offset   byte donde empieza la edición.
+	 * @param removed  bytes eliminados.
+	 * @param inserted texto insertado en su lugar.
+	 * @return nuevo fuente; la edición ocupa {@code inserted} codificado en UTF-8.
+	 */
+	public static ByteBuffer applyEdit(ByteBuffer source, int offset, int removed, String inserted) {
+		byte[] text = inserted.getBytes(StandardCharsets.UTF_8);
+		int length = source.limit();
+		byte[] result = new byte[length - removed + text.length];
+		source.get(0, result, 0, offset);
+		System.arraycopy(text, 0, result, offset, text.length);
+		source.get(offset + removed, result, offset + text.length, length - offset - removed);
+		return ByteBuffer.wrap(result);
+	}
+
+	/**
+	 * Analiza hasta el final del tramo asignado. Los errores quedan en el
+	 * buffer, sin pasar al gestor, y solo se añade finFich si el tramo llega
+	 * al final del fuente.
+	 */
+	TokenBuffer tokenizeRange() {
+		// Estimación: en código típico hay un token cada 3-4 bytes
+		buffer = new TokenBuffer(input, (length - pos) / 3);
+		while (scanNext()) {
+			// cada paso deja su token en el buffer
+		}
+		if (length == input.limit())
+			buffer.add(TokenKind.FIN_FICH, pos, pos, line, column, 0);
+		TokenBuffer result = buffer;
+		buffer = null;
+		return result;
+	}
+
+	/** @return inicio de la cadena que sigue abierta al final del tramo, o -1. */
+	int openString() {
+		return openString;
+	}
+
+	int openStringLine() {
+		return openStringLine;
+	}
+
+	int openStringColumn() {
+		return openStringColumn;
+	}
+
+	/**
+	 * Consume el siguiente token de la entrada, analizándolo solo cuando se
+	 * pide. Al llegar al final se devuelve siempre el mismo token finFich.
+	 */
+	@Override
+	public Token nextToken() {
+		Token token = peek(0);
+		if (!token.is(TokenKind.FIN_FICH)) {
+			ringHead = (ringHead + 1) & (LOOKAHEAD - 1);
+			ringCount--;
+			lastConsumed = token;
+		}
+		return token;
+	}
+
+	@Override
+	public Token previous() {
+		return lastConsumed;
+	}
+
+	/**
+	 * Devuelve el token situado {@code k} posiciones por delante sin consumirlo,
+	 * leyendo de la entrada lo que falte en el buffer circular.
+	 * 
+	 * @param k distancia de lectura adelantada (0 es el siguiente token).
+	 */
+	@Override
+	public Token peek(int k) {
+		if (k < 0 || k >= LOOKAHEAD)
+			throw new IllegalArgumentException("Lectura adelantada fuera de rango: " + k);
+		while (ringCount <= k) {
+			boolean wasEof = eof != null;
+			Token token = scanToken();
+			ring[(ringHead + ringCount) & (LOOKAHEAD - 1)] = token;
+			ringCount++;
+			if (listener != null && !wasEof)
+				listener.accept(token);
+		}
+		return ring[(ringHead + k) & (LOOKAHEAD - 1)];
+	}
+
+	/**
+	 * Avanza por la entrada hasta reconocer un token completo. Los errores
+	 * léxicos se registran en el momento en que se encuentran.
+	 * 
+	 * @return token reconocido o finFich si se ha agotado la entrada.
+	 */
+	private Token scanToken() {
+		if (eof != null)
+			return eof;
+		if (scanNext())
+			return emitted;
+		eof = new Token(TokenKind.FIN_FICH, "", line, column, column, 0);
+		return eof;
+	}
+
+	/**
+	 * Avanza por la entrada hasta emitir un token o agotarla.
+	 * 
+	 * @return true si se ha emitido un token.
+	 */
+	private boolean scanNext() {
+		produced = false;
+		while (!produced && pos < length) {
+			scanFast();
+		}
+		return produced;
+	}
+
+	/**
+	 * Recorre el autómata de {@link ScannerTable} desde el estado inicial:
+	 * salta el espacio en blanco y reconoce como mucho un token, un comentario o
+	 * un error. Si aparece un byte no ASCII dentro del token, lo reanaliza desde
+	 * su inicio con {@link #scanSlow()}.
+	 */
+	private void scanFast() {
+		// Posición, línea y columna se llevan en locales dentro del bucle
+		int p = pos;
+		int ln = line;
+		int col = column;
+		int state = ScannerTable.S_START;
+		int start = p;
+		int startLine = ln;
+		int startCol = col;
+		while (true) {
+			int next;
+			// Bucle ajustado mientras el autómata permanezca en el mismo estado
+			// (espacios, comentarios, cuerpo de identificadores, números y cadenas)
+			while (true) {
+				if (RUNS != null) {
+					// Salta de golpe la racha; se detiene en el byte que la rompe
+					int end = RUNS.end(state, input, p, length);
+					col += end - p;
+					p = end;
+				}
+				if (p >= length) {
+					next = ScannerTable.nextAtEof(state);
+					break;
 				}
+				int b = input.get(p) & 0xFF;
+				next = ScannerTable.next(state, b);
+				if (next != state)
+					break;
+				if (b == '\n') {
+					ln++;
+					if (state == ScannerTable.S_START)
+						col = 1;
+				}
+				p++;
+				col++;
+			}
+			if (next < 0) {
+				if (next == ScannerTable.SLOW) {
+					if (state == ScannerTable.S_START) {
+						pos = p;
+						line = ln;
+						column = col;
+					} else {
+						pos = start;
+						line = startLine;
+						column = startCol;
+					}
+					scanSlow();
+					return;
+				}
+				break;
+			}
+			// Cambio de estado: los saltos de línea nunca llegan aquí, porque solo
+			// aparecen en transiciones de un estado a sí mismo
+			if (state == ScannerTable.S_START) {
+				start = p;
+				startLine = ln;
+				startCol = col;
 			}
+			p++;
+			col++;
+			state = next;
+		}
+		pos = p;
+		line = ln;
+		column = col;
+		tokenStartColumn = startCol;
+		tokenStart = start;
+
+		switch (state) {
+			case ScannerTable.S_START:
+			case ScannerTable.S_COMMENT:
+				break;
+			case ScannerTable.S_ID:
+				emitWord(start);
+				break;
+			case ScannerTable.S_INT:
+				emitNumber(start, false);
+				break;
+			case ScannerTable.S_REAL:
+				emitNumber(start, true);
+				break;
+			case ScannerTable.S_AMP:
+				error("Símbolo no permitido '&'");
+				break;
+			case ScannerTable.S_SLASH:
+				error("Símbolo no permitido '/'");
+				break;
+			case ScannerTable.S_STRING:
+				unclosedString(start, startLine, startCol);
+				break;
+			case ScannerTable.S_STRING_END:
+				addToken(TokenKind.CADENA, null);
+				break;
+			case ScannerTable.S_OTHER:
+				error("Símbolo no reconocido: '" + (char) input.get(start) + "'");
+				break;
+			default:
+				addToken(ScannerTable.acceptKind(state), ScannerTable.acceptText(state));
+				break;
 		}
+	}
 
-		tokens.add(new Token("finFich", "", line, column, column, null));
-		return tokens;
+	/**
+	 * Camino lento: analiza el carácter actual decodificando UTF-8. Se usa para
+	 * los tokens que contienen caracteres no ASCII.
+	 */
+	private void scanSlow() {
+		int current = peekChar();
+
+		if (current == '\n') {
+			line++;
+			column = 1;
+			advance();
+		} else if (Character.isWhitespace(current)) {
+			advance();
+		} else if (Character.isLetter(current) || current == '_') {
+			tokenStartColumn = column;
+			tokenStart = pos;
+			lexIdentifierOrKeyword();
+		} else if (Character.isDigit(current)) {
+			tokenStartColumn = column;
+			tokenStart = pos;
+			lexNumber();
+		} else {
+			tokenStartColumn = column;
+			tokenStart = pos;
+			switch (current) {
+				case '+':
+					advance();
+					addToken(TokenKind.OP_SUMA, "+");
+					break;
+
+				case '=':
+					advance();
+					if (match('='))
+						addToken(TokenKind.OP_IGUAL, "==");
+					else
+						addToken(TokenKind.IGUAL, "=");
+					break;
+
+				case '&':
+					advance();
+					if (match('&'))
+						addToken(TokenKind.OP_AND, "&&");
+					else
+						error("Símbolo no permitido '&'");
+					break;
+
+				case '/':
+					advance();
+					if (match('=')) {
+						addToken(TokenKind.ASIG_DIV, "/=");
+					} else if (match('/')) {
+						skipLineComment(); // Comentario de línea
+					} else {
+						error("Símbolo no permitido '/'");
+					}
+					break;
+
+				case ',':
+					advance();
+					addToken(TokenKind.COMA, ",");
+					break;
+				case ';':
+					advance();
+					addToken(TokenKind.PUNTO_COMA, ";");
+					break;
+				case '(':
+					advance();
+					addToken(TokenKind.PAREN_IZQ, "(");
+					break;
+				case ')':
+					advance();
+					addToken(TokenKind.PAREN_DCHA, ")");
+					break;
+				case '{':
+					advance();
+					addToken(TokenKind.LLAVE_IZQ, "{");
+					break;
+				case '}':
+					advance();
+					addToken(TokenKind.LLAVE_DCHA, "}");
+					break;
+				case '\'':
+					lexString();
+					break;
+				default:
+					error("Símbolo no reconocido: '" + new String(Character.toChars(current)) + "'");
+					advance();
+					break;
+			}
+		}
 	}
 
 	/**
@@ -154,18 +567,92 @@ public class Lexer {
 	 */
 	private void lexIdentifierOrKeyword() {
 		int start = pos;
-		while (pos < input.length() &&
-				(Character.isLetterOrDigit(peek()) || peek() == '_')) {
+		while (pos < length &&
+				(Character.isLetterOrDigit(peekChar()) || peekChar() == '_')) {
 			advance();
 		}
-		String lexeme = input.substring(start, pos);
-		String type = keywords.getOrDefault(lexeme, "id");
-		if ("id".equals(type)) {
-			int position = symbolTable.computeIfAbsent(lexeme, key -> symbolTable.size() + 1);
-			addToken(type, lexeme, position);
-		} else {
-			addToken(type, lexeme);
+		emitWord(start);
+	}
+
+	/**
+	 * Emite la palabra que empieza en {@code start} como id o palabra reservada.
+	 * Solo se crea un String la primera vez que aparece cada identificador.
+	 */
+	private void emitWord(int start) {
+		int len = pos - start;
+		TokenKind kind = keyword(input, start, len);
+		if (kind != TokenKind.ID) {
+			addToken(kind, KEYWORD_TEXT[kind.ordinal()]);
+			return;
 		}
+		int id = interner.intern(input, start, len);
+		addToken(kind, interner.name(id), id);
+	}
+
+	/**
+	 * Reconoce una palabra reservada directamente sobre los bytes del fuente,
+	 * eligiendo el candidato por longitud y primera letra.
+	 * 
+	 * @return tipo de la palabra reservada, o {@link TokenKind#ID} si no lo es.
+	 */
+	static TokenKind keyword(ByteBuffer source, int start, int len) {
+		byte first = source.get(start);
+		switch (len) {
+			case 2:
+				if (first == 'i' && source.get(start + 1) == 'f')
+					return TokenKind.PR_IF;
+				break;
+			case 3:
+				if (first == 'f' && matches(source, start, "for"))
+					return TokenKind.PR_FOR;
+				if (first == 'i' && matches(source, start, "int"))
+					return TokenKind.PR_INT;
+				if (first == 'l' && matches(source, start, "let"))
+					return TokenKind.PR_LET;
+				break;
+			case 4:
+				if (first == 'r' && matches(source, start, "read"))
+					return TokenKind.PR_READ;
+				if (first == 't' && matches(source, start, "true"))
+					return TokenKind.TRUE;
+				break;
+			case 5:
+				if (first == 'f') {
+					if (matches(source, start, "float"))
+						return TokenKind.PR_FLOAT;
+					if (matches(source, start, "false"))
+						return TokenKind.FALSE;
+				}
+				if (first == 'w' && matches(source, start, "write"))
+					return TokenKind.PR_WRITE;
+				break;
+			case 6:
+				if (first == 'r' && matches(source, start, "return"))
+					return TokenKind.PR_RETURN;
+				if (first == 's' && matches(source, start, "string"))
+					return TokenKind.PR_STRING;
+				break;
+			case 7:
+				if (first == 'b' && matches(source, start, "boolean"))
+					return TokenKind.PR_BOOLEAN;
+				break;
+			case 8:
+				if (first == 'f' && matches(source, start, "function"))
+					return TokenKind.PR_FUN;
+				break;
+			default:
+				break;
+		}
+		return TokenKind.ID;
+	}
+
+	/** @return true si los bytes desde {@code start} coinciden con la palabra ASCII. */
+	private static boolean matches(ByteBuffer source, int start, String word) {
+		for (int i = 1; i < word.length(); i++) {
+			if (source.get(start + i) != word.charAt(i))
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -177,30 +664,35 @@ public class Lexer {
 		int start = pos;
 		boolean isReal = false;
 
-		while (pos < input.length() && Character.isDigit(peek()))
+		while (pos < length && Character.isDigit(peekChar()))
 			advance();
 
-		if (peek() == '.') {
+		if (peekChar() == '.') {
 			isReal = true;
 			advance();
-			while (pos < input.length() && Character.isDigit(peek()))
+			while (pos < length && Character.isDigit(peekChar()))
 				advance();
 		}
 
-		String lexeme = input.substring(start, pos);
+		emitNumber(start, isReal);
+	}
+
+	/** Emite el número que empieza en {@code start}, comprobando su rango. */
+	private void emitNumber(int start, boolean isReal) {
+		String lexeme = slice(start, pos);
 		try {
 			if (isReal) {
 				double value = Double.parseDouble(lexeme);
 				if (value > 117549436.0)
 					error("Número real demasiado grande: " + lexeme);
 				else
-					addToken("real", lexeme);
+					addToken(TokenKind.REAL, lexeme);
 			} else {
 				int value = Integer.parseInt(lexeme);
 				if (value > 32767)
 					error("Número entero demasiado grande: " + lexeme);
 				else
-					addToken("entero", lexeme);
+					addToken(TokenKind.ENTERO, lexeme);
 			}
 		} catch (NumberFormatException e) {
 			error("Número inválido: " + lexeme);
@@ -212,19 +704,34 @@ public class Lexer {
 	 * Genera error si la cadena no se cierra.
 	 */
 	private void lexString() {
+		int startLine = line;
 		advance(); // Salta la comilla inicial
-		StringBuilder sb = new StringBuilder();
+		int start = pos;
 
-		while (pos < input.length() && peek() != '\'') {
-			if (peek() == '\n')
+		while (pos < length && peekChar() != '\'') {
+			if (peekChar() == '\n')
 				line++;
-			sb.append(peek());
 			advance();
 		}
 
-		if (peek() == '\'') {
+		if (peekChar() == '\'') {
 			advance();
-			addToken("cadena", sb.toString());
+			addToken(TokenKind.CADENA, null);
+		} else {
+			unclosedString(tokenStart, startLine, tokenStartColumn);
+		}
+	}
+
+	/**
+	 * Cadena sin cerrar al llegar al final del tramo. Si es el final del fuente
+	 * es un error; si no, la cadena continúa en el tramo siguiente y se anota
+	 * dónde empieza para reanalizarla desde ahí.
+	 */
+	private void unclosedString(int start, int startLine, int startColumn) {
+		if (length < input.limit()) {
+			openString = start;
+			openStringLine = startLine;
+			openStringColumn = startColumn;
 		} else {
 			error("Cadena no cerrada");
 		}
@@ -237,34 +744,51 @@ public class Lexer {
 	@SuppressWarnings("unused")
 	private void skipComment() {
 		advance(); // salta '*'
-		while (pos < input.length()) {
-			if (peek() == '*' && peek(1) == '/') {
+		while (pos < length) {
+			if (peekChar() == '*' && peekChar(1) == '/') {
 				advance();
 				advance();
 				break;
 			}
-			if (peek() == '\n')
+			if (peekChar() == '\n')
 				line++;
 			advance();
 		}
 	}
 
 	/**
-	 * Añade un nuevo token a la lista.
+	 * Registra el token recién reconocido.
 	 * 
-	 * @param type   tipo de token textual
-	 * @param lexeme texto original del token
+	 * @param kind   tipo de token
+	 * @param lexeme texto original del token, o null para extraerlo del fuente
+	 *               solo si hace falta
 	 */
-	private void addToken(String type, String lexeme) {
-		addToken(type, lexeme, null);
+	private void addToken(TokenKind kind, String lexeme) {
+		addToken(kind, lexeme, 0);
 	}
 
 	/**
-	 * Añade un token permitiendo indicar la posición en la tabla de símbolos.
+	 * Añade un token permitiendo indicar la posición en la tabla de símbolos (0
+	 * si no es un id).
+	 * El lexema ocupa desde {@code tokenStart} hasta la posición actual (sin las
+	 * comillas, en las cadenas).
 	 */
-	private void addToken(String type, String lexeme, Integer symbolIndex) {
+	private void addToken(TokenKind kind, String lexeme, int symbolIndex) {
+		produced = true;
+		int start = tokenStart;
+		int end = pos;
+		if (kind == TokenKind.CADENA) {
+			start++;
+			end--;
+		}
+		if (buffer != null) {
+			buffer.add(kind, start, end, line, tokenStartColumn, symbolIndex);
+			return;
+		}
+		if (lexeme == null)
+			lexeme = slice(start, end);
 		int endCol = tokenStartColumn + lexeme.length() - 1;
-		tokens.add(new Token(type, lexeme, line, tokenStartColumn, endCol, symbolIndex));
+		emitted = new Token(kind, lexeme, line, tokenStartColumn, endCol, symbolIndex);
 	}
 
 	/**
@@ -273,28 +797,105 @@ public class Lexer {
 	 * @param msg descripción del error.
 	 */
 	private void error(String msg) {
-		errorManager.agregarError("LÉXICO", line, msg);
+		if (buffer != null)
+			buffer.addError(tokenStart, line, msg);
+		else
+			errorManager.agregarError("LÉXICO", line, msg);
 	}
 
-	/** @return carácter actual sin avanzar el cursor. */
-	private char peek() {
-		return pos < input.length() ? input.charAt(pos) : '\0';
+	/**
+	 * @return carácter actual (punto de código) sin avanzar el cursor, o '\0'
+	 *         al final. Los bytes ASCII se devuelven sin decodificar.
+	 */
+	private int peekChar() {
+		if (pos >= length)
+			return '\0';
+		byte b = input.get(pos);
+		return b >= 0 ? b : decodeAt(pos);
 	}
 
 	/**
-	 * Lee un carácter adelantado sin mover la posición.
+	 * Lee un byte adelantado sin mover la posición. Solo es fiable para
+	 * buscar caracteres ASCII.
 	 * 
-	 * @param ahead cantidad de posiciones hacia adelante.
+	 * @param ahead cantidad de bytes hacia adelante.
 	 * @return carácter leído o '\0' si está fuera de rango.
 	 */
-	private char peek(int ahead) {
-		return (pos + ahead) < input.length() ? input.charAt(pos + ahead) : '\0';
+	private int peekChar(int ahead) {
+		return (pos + ahead) < length ? input.get(pos + ahead) & 0xFF : '\0';
 	}
 
-	/** Avanza una posición en el texto fuente. */
+	/** Avanza un carácter en el texto fuente. */
 	private void advance() {
-		pos++;
-		column++;
+		if (input.get(pos) >= 0) {
+			pos++;
+			column++;
+		} else {
+			// Las columnas cuentan unidades UTF-16, como si el fuente fuera un String
+			column += Character.charCount(decodeAt(pos));
+			pos += widthAt(pos);
+		}
+	}
+
+	/**
+	 * @return número de bytes de la secuencia UTF-8 que empieza en {@code p}, o 1
+	 *         si la secuencia está mal formada.
+	 */
+	private int widthAt(int p) {
+		int b0 = input.get(p) & 0xFF;
+		int n;
+		if (b0 < 0x80)
+			return 1;
+		else if ((b0 & 0xE0) == 0xC0)
+			n = 2;
+		else if ((b0 & 0xF0) == 0xE0)
+			n = 3;
+		else if ((b0 & 0xF8) == 0xF0)
+			n = 4;
+		else
+			return 1;
+		if (p + n > length)
+			return 1;
+		for (int i = 1; i < n; i++) {
+			if ((input.get(p + i) & 0xC0) != 0x80)
+				return 1;
+		}
+		return n;
+	}
+
+	/**
+	 * Decodifica el carácter no ASCII que empieza en {@code p}.
+	 * 
+	 * @return punto de código, o U+FFFD si la secuencia está mal formada.
+	 */
+	private int decodeAt(int p) {
+		int n = widthAt(p);
+		if (n == 1)
+			return 0xFFFD;
+		int cp = input.get(p) & (0x7F >> n);
+		for (int i = 1; i < n; i++) {
+			cp = (cp << 6) | (input.get(p + i) & 0x3F);
+		}
+		return cp;
+	}
+
+	/** @return texto del fuente entre dos posiciones. */
+	private String slice(int start, int end) {
+		return slice(input, start, end);
+	}
+
+	/**
+	 * Extrae el texto entre dos posiciones de un fuente UTF-8. Los tramos solo
+	 * ASCII se copian sin pasar por el decodificador.
+	 */
+	static String slice(ByteBuffer source, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		source.get(start, bytes);
+		for (byte b : bytes) {
+			if (b < 0)
+				return new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
 	}
 
 	/**
@@ -305,24 +906,35 @@ public class Lexer {
 	 * @return true si coincide, false si no.
 	 */
 	private boolean match(char expected) {
-		if (peek() == expected) {
+		if (peekChar() == expected) {
 			advance();
 			return true;
 		}
 		return false;
 	}
 
-	/** @return tabla de símbolos generada durante el análisis. */
+	/** @return tabla de nombres donde se han registrado los identificadores. */
+	public Interner getInterner() {
+		return interner;
+	}
+
+	/**
+	 * @return copia de la tabla de símbolos generada durante el análisis, en
+	 *         orden de aparición.
+	 */
 	public Map<String, Integer> getSymbolTable() {
-		return symbolTable;
+		Map<String, Integer> table = new LinkedHashMap<>();
+		for (int id = 1; id <= interner.size(); id++)
+			table.put(interner.name(id), id);
+		return table;
 	}
 
 	/** @return representación en texto de la tabla de símbolos. */
 	public String printSymbolTable() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Tabla de Símbolos:\n");
-		for (Map.Entry<String, Integer> entry : symbolTable.entrySet()) {
-			sb.append(entry.getKey()).append("|").append(entry.getValue()).append("\n");
+		for (int id = 1; id <= interner.size(); id++) {
+			sb.append(interner.name(id)).append("|").append(id).append("\n");
 		}
 		return sb.toString();
 	}
@@ -331,7 +943,7 @@ public class Lexer {
 	 * Omite comentarios de línea del tipo // hasta el salto de línea o EOF.
 	 */
 	private void skipLineComment() {
-		while (pos < input.length() && peek() != '\n') {
+		while (pos < length && peekChar() != '\n') {
 			advance();
 		}
 	}
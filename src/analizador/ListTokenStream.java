@@ -0,0 +1,34 @@
+package analizador;
+
+import java.util.List;
+
+/**
+ * Adaptador que expone como {@link TokenStream} una lista de tokens ya
+ * generada por {@link Lexer#tokenize()}.
+ */
+class ListTokenStream implements TokenStream {
+	private final List<Token> tokens;
+	private int current = 0;
+
+	ListTokenStream(List<Token> tokens) {
+		this.tokens = tokens;
+	}
+
+	@Override
+	public Token peek(int k) {
+		return tokens.get(Math.min(current + k, tokens.size() - 1));
+	}
+
+	@Override
+	public Token nextToken() {
+		Token token = tokens.get(current);
+		if (!token.is(TokenKind.FIN_FICH))
+			current++;
+		return token;
+	}
+
+	@Override
+	public Token previous() {
+		return tokens.get(current - 1);
+	}
+}
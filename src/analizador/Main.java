@@ -1,24 +1,123 @@
 package analizador;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Punto de entrada para probar el analizador sintáctico.
  * Lee el mismo programa de ejemplo que el léxico y genera
  * un fichero DOT del AST y un log de errores (si los hay).
+ *
+ * Opciones:
+ * --stream  el parser pide los tokens al léxico bajo demanda en lugar de
+ *           generar antes la lista completa; los errores léxicos aparecen
+ *           intercalados con los sintácticos en el orden en que se detectan.
+ * --ll1     analiza con el {@link TableParser} usando la tabla LL(1) generada
+ *           a partir de la gramática (--gramatica=fichero, por defecto
+ *           gramatica.txt); solo hay análisis sintáctico, sin tabla de
+ *           símbolos ni comprobación de tipos.
+ * --parse-bin además de parse.txt escribe out/parse.bin, las mismas reglas
+ *           en el formato binario compacto de {@link RuleLog}.
+ * --validar analiza sin construir el árbol ({@link Parser#validador}): mismos
+ *           errores, tabla de símbolos y parse.txt con menos memoria.
+ * --precedencia analiza las expresiones por ascenso de precedencia, con un
+ *           nodo por operador en lugar de la cadena E, R, U, V
+ *           ({@link Parser#setExpresionesCompactas}); las salidas no cambian.
+ * --semantica hace el análisis semántico en una pasada aparte sobre el árbol
+ *           ({@link SemanticAnalyzer}), con los cuerpos de las funciones en
+ *           paralelo; los errores salen ordenados por línea.
+ * --funciones-paralelo analiza en paralelo las funciones del nivel superior
+ *           ({@link Parser#enParalelo}) e implica --semantica, así que cambia
+ *           el orden de errores.txt: los mismos errores, pero ordenados por
+ *           línea en lugar de en el orden intercalado en que los detecta el
+ *           análisis. Con --stream las funciones no se analizan en paralelo,
+ *           porque hacen falta todos los tokens de antemano, pero la pasada
+ *           aparte y el orden por línea se mantienen.
+ * --preanalisis salta los cuerpos de las funciones ({@link Parser#setPreanalisis}):
+ *           la tabla de símbolos global y los errores de las sentencias
+ *           globales salen antes, sin nada de los cuerpos. No tiene efecto
+ *           con --semantica, que necesita el árbol completo.
+ * --tabla-json además de tabla_simbolos.txt escribe out/tabla_simbolos.json,
+ *           la misma tabla en JSON para otras herramientas.
+ * --ejecutar tras generar los ficheros compila el árbol a bytecode
+ *           ({@link BytecodeCompiler}) y lo ejecuta en la {@link VirtualMachine}
+ *           con la entrada y la salida estándar. Necesita el árbol, así que
+ *           anula --validar; con --ll1 o --preanalisis no se puede ejecutar.
+ *           Si el análisis ha detectado errores, el programa no se ejecuta.
+ * --jvm     como --ejecutar, pero compila el programa a una clase de la JVM
+ *           ({@link JvmCompiler}) en lugar de a bytecode propio, la escribe en
+ *           out/Programa.class y la ejecuta cargada en el propio proceso;
+ *           implica --ejecutar.
+ * --ir      genera el código de tres direcciones del árbol ({@link IRGenerator})
+ *           y lo optimiza con el {@link PassManager}: vuelca el código a
+ *           out/ir_*.txt tras cada pasada y el recuento de instrucciones a
+ *           out/ir_informe.txt. Como --ejecutar, necesita el árbol y un
+ *           programa sin errores.
  */
 @SuppressWarnings("unused")
 public class Main {
 
 	public static void main(String[] args) {
 		Path outDir = Paths.get("out");
-		Path fuente = args.length > 0
-				? Paths.get(args[0])
-				: Paths.get("programa.javascript");
+		Path fuente = Paths.get("programa.javascript");
+		boolean stream = false;
+		boolean parallel = false;
+		boolean ll1 = false;
+		boolean parseBin = false;
+		boolean validar = false;
+		boolean precedencia = false;
+		boolean semantica = false;
+		boolean funcionesParalelo = false;
+		boolean preanalisis = false;
+		boolean tablaJson = false;
+		boolean ejecutar = false;
+		boolean jvm = false;
+		boolean ir = false;
+		Path gramatica = Paths.get("gramatica.txt");
+		for (String arg : args) {
+			if (arg.equals("--stream"))
+				stream = true;
+			else if (arg.equals("--parallel"))
+				parallel = true;
+			else if (arg.equals("--ll1"))
+				ll1 = true;
+			else if (arg.equals("--parse-bin"))
+				parseBin = true;
+			else if (arg.equals("--validar"))
+				validar = true;
+			else if (arg.equals("--precedencia"))
+				precedencia = true;
+			else if (arg.equals("--semantica"))
+				semantica = true;
+			else if (arg.equals("--tabla-json"))
+				tablaJson = true;
+			else if (arg.equals("--ejecutar"))
+				ejecutar = true;
+			else if (arg.equals("--jvm"))
+				jvm = ejecutar = true;
+			else if (arg.equals("--ir"))
+				ir = true;
+			else if (arg.equals("--preanalisis"))
+				preanalisis = true;
+			else if (arg.equals("--funciones-paralelo"))
+				funcionesParalelo = semantica = true;
+			else if (arg.startsWith("--gramatica="))
+				gramatica = Paths.get(arg.substring("--gramatica=".length()));
+			else
+				fuente = Paths.get(arg);
+		}
 
 		try {
 			Files.createDirectories(outDir);
@@ -27,51 +126,160 @@ public class Main {
 			return;
 		}
 
-		String source;
+		// Gestor de errores compartido
+		ErrorManager errorManager = new ErrorManager();
+
+		// Analizador léxico (lee el fichero proyectado en memoria)
+		ByteBuffer source;
 		try {
-			source = Files.readString(fuente);
+			source = Lexer.mapFile(fuente);
 		} catch (IOException e) {
 			System.err.println("No se pudo leer el archivo fuente: " + fuente.toAbsolutePath());
 			return;
 		}
+		LL1Table table = null;
+		if (ll1) {
+			try {
+				table = new LL1Table(Grammar.load(gramatica));
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("No se pudo leer la gramática " + gramatica.toAbsolutePath() + ": " + e.getMessage());
+				return;
+			}
+		}
+		Lexer lexer = new Lexer(source, errorManager);
+		Path tokensPath = outDir.resolve("tokens.txt");
+		Parser parser = null;
+		TableParser tableParser = null;
+		ASTNode ast = null;
+		// La pasada semántica, la ejecución y el código intermedio necesitan el
+		// árbol, así que anulan --validar
+		boolean sinArbol = validar && !semantica && !ejecutar && !ir;
 
-		// Gestor de errores compartido
-		ErrorManager errorManager = new ErrorManager();
+		// Las reglas aplicadas se vuelcan a parse.txt durante el análisis; con
+		// --parse-bin se guardan enteras para escribir también parse.bin
+		Path reglasPath = outDir.resolve("parse.txt");
+		BufferedWriter reglasWriter = null;
+		RuleLog reglas = new RuleLog();
+		if (!parseBin) {
+			try {
+				reglasWriter = Files.newBufferedWriter(reglasPath);
+				reglas = new RuleLog(reglasWriter);
+			} catch (IOException e) {
+				System.err.println("No se pudo escribir el parse de reglas: " + e.getMessage());
+			}
+		}
 
-		// Analizador léxico
-		Lexer lexer = new Lexer(source, errorManager);
-		List<Token> tokens = lexer.tokenize();
+		if (stream) {
+			// Analizador sintáctico sobre el flujo de tokens; tokens.txt se vuelca
+			// a medida que el léxico reconoce cada token.
+			try (BufferedWriter writer = Files.newBufferedWriter(tokensPath)) {
+				lexer.setTokenListener(token -> {
+					try {
+						writer.write(token.toString());
+						writer.newLine();
+					} catch (IOException e) {
+						throw new java.io.UncheckedIOException(e);
+					}
+				});
+				if (ll1) {
+					tableParser = new TableParser(table, lexer, errorManager, reglas);
+					tableParser.parse();
+				} else {
+					parser = sinArbol ? Parser.validador(lexer, errorManager, reglas)
+							: new Parser(lexer, errorManager, reglas);
+					parser.setExpresionesCompactas(precedencia);
+					parser.setSemantica(!semantica);
+					parser.setPreanalisis(preanalisis && !semantica);
+					ast = parser.parseAST();
+				}
+				// El parser puede detenerse antes del final: se completa el fichero
+				while (!lexer.nextToken().is(TokenKind.FIN_FICH)) {
+					// solo se vuelcan los tokens restantes
+				}
+			} catch (IOException | java.io.UncheckedIOException e) {
+				System.err.println("No se pudo escribir tokens.txt: " + e.getMessage());
+				return;
+			}
+		} else {
+			// Con --parallel el fuente se analiza por trozos en varios hilos
+			TokenBuffer tokens = parallel ? ParallelLexer.tokenize(source, errorManager, lexer.getInterner())
+					: lexer.tokenizeToBuffer();
 
-		// Analizador sintáctico
-		Parser parser = new Parser(tokens, errorManager);
-		ASTNode ast = parser.parseAST();
+			// Analizador sintáctico
+			if (ll1) {
+				tableParser = new TableParser(table, tokens.stream(), errorManager, reglas);
+				tableParser.parse();
+			} else {
+				if (funcionesParalelo)
+					parser = Parser.enParalelo(tokens, errorManager, reglas, ForkJoinPool.commonPool());
+				else
+					parser = sinArbol ? Parser.validador(tokens.stream(), errorManager, reglas)
+							: new Parser(tokens.stream(), errorManager, reglas);
+				parser.setExpresionesCompactas(precedencia);
+				parser.setSemantica(!semantica);
+				parser.setPreanalisis(preanalisis && !semantica);
+				ast = parser.parseAST();
+			}
 
-		// --- GENERACIÓN DE FICHEROS ENTREGABLES ---
+			// --- GENERACIÓN DE FICHEROS ENTREGABLES ---
 
-		// 1. Fichero de tokens
-		Path tokensPath = outDir.resolve("tokens.txt");
-		try (java.io.BufferedWriter writer = Files.newBufferedWriter(tokensPath)) {
-			for (Token token : tokens) {
-				writer.write(token.toString());
-				writer.newLine();
+			// 1. Fichero de tokens
+			try (BufferedWriter writer = Files.newBufferedWriter(tokensPath)) {
+				tokens.writeTo(writer);
+			} catch (IOException e) {
+				System.err.println("No se pudo escribir tokens.txt: " + e.getMessage());
 			}
-		} catch (IOException e) {
-			System.err.println("No se pudo escribir tokens.txt: " + e.getMessage());
+		}
+
+		// Pasada semántica aparte
+		SemanticAnalyzer analizador = null;
+		if (semantica && ast != null) {
+			analizador = new SemanticAnalyzer(errorManager);
+			analizador.analizar(ast);
+			errorManager.ordenarPorLinea();
 		}
 
 		// 2. Fichero de Tabla de Símbolos
+		// (el análisis dirigido por tabla no construye la tabla de símbolos)
 		Path tablaPath = outDir.resolve("tabla_simbolos.txt");
-		try {
-			Files.writeString(tablaPath, parser.getTS().toString());
-		} catch (IOException e) {
-			System.err.println("No se pudo escribir tabla_simbolos.txt: " + e.getMessage());
+		// (se da formato a los símbolos a medida que se escriben)
+		if (parser != null) {
+			try (BufferedWriter writer = Files.newBufferedWriter(tablaPath)) {
+				if (analizador != null)
+					analizador.writeTablaSimbolos(writer);
+				else
+					parser.getTS().writeTo(writer);
+			} catch (IOException e) {
+				System.err.println("No se pudo escribir tabla_simbolos.txt: " + e.getMessage());
+			}
+			if (tablaJson) {
+				try (BufferedWriter writer = Files.newBufferedWriter(outDir.resolve("tabla_simbolos.json"))) {
+					if (analizador != null)
+						analizador.writeTablaJson(writer);
+					else
+						parser.getTS().writeJson(writer);
+				} catch (IOException e) {
+					System.err.println("No se pudo escribir tabla_simbolos.json: " + e.getMessage());
+				}
+			}
 		}
 
 		// 3. Fichero del parse (Reglas para VAST)
 		// Nota: parse_reglas.txt es el que pide la práctica como 'parse'
-		Path reglasPath = outDir.resolve("parse.txt");
 		try {
-			Files.writeString(reglasPath, parser.getReglasAplicadasLinea());
+			if (reglasWriter != null) {
+				reglas.finish();
+				reglasWriter.close();
+			} else {
+				try (BufferedWriter writer = Files.newBufferedWriter(reglasPath)) {
+					reglas.writeTo(writer);
+				}
+			}
+			if (parseBin) {
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outDir.resolve("parse.bin")))) {
+					reglas.writeBinary(out);
+				}
+			}
 		} catch (IOException e) {
 			System.err.println("No se pudo escribir el parse de reglas: " + e.getMessage());
 		}
@@ -92,7 +300,104 @@ public class Main {
 
 		System.out.println("\nFicheros generados en: " + outDir.toAbsolutePath());
 		System.out.println(" - tokens.txt");
-		System.out.println(" - tabla_simbolos.txt");
+		if (parser != null)
+			System.out.println(" - tabla_simbolos.txt");
+		if (parser != null && tablaJson)
+			System.out.println(" - tabla_simbolos.json");
 		System.out.println(" - parse.txt (Entrada para VASt)");
+		if (parseBin)
+			System.out.println(" - parse.bin");
+
+		// Los generadores de código confían en el análisis: un programa con
+		// errores no llega a ellos
+		if ((ir || ejecutar) && errorManager.hayErrores()) {
+			String omitido = !ejecutar ? "genera el código intermedio"
+					: ir ? "genera el código intermedio ni se ejecuta" : "ejecuta";
+			System.err.println("\nEl programa tiene errores: no se " + omitido);
+			return;
+		}
+		if (ir)
+			optimizarIR(ast, outDir);
+		if (ejecutar && jvm)
+			ejecutarEnJvm(ast, outDir.resolve("Programa.class"));
+		else if (ejecutar)
+			ejecutar(ast);
+	}
+
+	/** Genera el código de tres direcciones, lo optimiza y escribe los volcados y el informe. */
+	private static void optimizarIR(ASTNode ast, Path outDir) {
+		if (ast == null) {
+			System.err.println("No se puede generar el código intermedio: el análisis no ha construido el árbol");
+			return;
+		}
+		ThreeAddressCode codigo;
+		try {
+			codigo = IRGenerator.generar(ast);
+		} catch (IllegalArgumentException e) {
+			System.err.println("No se puede generar el código intermedio: " + e.getMessage());
+			return;
+		}
+		try {
+			System.out.println("\nCódigo intermedio en " + outDir.resolve("ir_*.txt") + ":");
+			for (String linea : PassManager.estandar().optimizar(codigo, outDir))
+				System.out.println(" - " + linea);
+		} catch (IOException e) {
+			System.err.println("No se pudo escribir el código intermedio: " + e.getMessage());
+		}
+	}
+
+	/** Compila el árbol a bytecode y lo ejecuta con la entrada y la salida estándar. */
+	private static void ejecutar(ASTNode ast) {
+		if (ast == null) {
+			System.err.println("No se puede ejecutar: el análisis no ha construido el árbol");
+			return;
+		}
+		Bytecode programa;
+		try {
+			programa = BytecodeCompiler.compilar(ast);
+		} catch (IllegalArgumentException e) {
+			System.err.println("No se puede ejecutar: " + e.getMessage());
+			return;
+		}
+		System.out.println();
+		Writer salida = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		Reader entrada = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+		try {
+			new VirtualMachine(programa, entrada, salida).ejecutar();
+		} catch (IllegalStateException e) {
+			System.err.println("Error de ejecución: " + e.getMessage());
+		} catch (IOException e) {
+			System.err.println("Error de entrada/salida durante la ejecución: " + e.getMessage());
+		}
+	}
+
+	/** Compila el árbol a la clase Programa, la guarda en {@code clasePath} y la ejecuta. */
+	private static void ejecutarEnJvm(ASTNode ast, Path clasePath) {
+		if (ast == null) {
+			System.err.println("No se puede ejecutar: el análisis no ha construido el árbol");
+			return;
+		}
+		byte[] clase;
+		try {
+			clase = JvmCompiler.compilar(ast, "Programa");
+		} catch (IllegalArgumentException e) {
+			System.err.println("No se puede ejecutar: " + e.getMessage());
+			return;
+		}
+		try {
+			Files.write(clasePath, clase);
+		} catch (IOException e) {
+			System.err.println("No se pudo escribir " + clasePath + ": " + e.getMessage());
+		}
+		System.out.println();
+		Writer salida = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		Reader entrada = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+		try {
+			JvmCompiler.ejecutar(JvmCompiler.cargar("Programa", clase), entrada, salida);
+		} catch (IllegalStateException e) {
+			System.err.println("Error de ejecución: " + e.getMessage());
+		} catch (IOException e) {
+			System.err.println("Error de entrada/salida durante la ejecución: " + e.getMessage());
+		}
 	}
 }
@@ -0,0 +1,121 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Análisis léxico en paralelo para fuentes grandes. El fuente se parte en
+ * trozos justo después de un salto de línea y cada trozo se analiza en el pool
+ * ForkJoin común con su propia tabla de nombres; sus errores quedan en su
+ * propio {@link TokenBuffer}.
+ * Después se unen en orden, de modo que tokens, líneas, columnas, índices de
+ * la tabla de símbolos y errores coinciden con los del análisis secuencial.
+ *
+ * Como los comentarios terminan en el salto de línea, lo único que puede
+ * atravesar un corte es una cadena. Un trozo que acaba con una cadena abierta
+ * invalida el análisis del siguiente, que se rehace desde el inicio de la
+ * cadena durante la unión.
+ */
+public final class ParallelLexer {
+	/** Tamaño mínimo de un trozo: por debajo no compensa repartir el trabajo. */
+	private static final int MIN_CHUNK = 1 << 20;
+
+	private ParallelLexer() {
+	}
+
+	/**
+	 * Analiza el fuente con tantos trozos como convenga al paralelismo del pool
+	 * común.
+	 *
+	 * @param source       fuente UTF-8 completo.
+	 * @param errorManager gestor donde se registrarán los errores léxicos.
+	 * @param interner     tabla de nombres donde se registran los identificadores.
+	 * @return tokens del fuente, terminados en finFich.
+	 */
+	public static TokenBuffer tokenize(ByteBuffer source, ErrorManager errorManager, Interner interner) {
+		int chunks = Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), source.limit() / MIN_CHUNK);
+		return tokenize(source, errorManager, interner, Math.max(1, chunks));
+	}
+
+	/**
+	 * Analiza el fuente partido en (como mucho) {@code chunks} trozos.
+	 *
+	 * @see #tokenize(ByteBuffer, ErrorManager, Interner)
+	 */
+	public static TokenBuffer tokenize(ByteBuffer source, ErrorManager errorManager, Interner interner, int chunks) {
+		int[] bounds = split(source, chunks);
+		int n = bounds.length - 1;
+
+		// Línea en la que empieza cada trozo: todo salto de línea cuenta, esté
+		// donde esté, así que no depende del análisis
+		int[] lines = new int[n];
+		IntStream.range(1, n).parallel().forEach(i -> lines[i] = countNewlines(source, bounds[i - 1], bounds[i]));
+		lines[0] = 1;
+		for (int i = 1; i < n; i++)
+			lines[i] += lines[i - 1];
+
+		// Cada trozo salvo el primero empieza tras un salto de línea fuera de
+		// cadena, donde el análisis secuencial deja la columna en 2
+		Lexer[] lexers = new Lexer[n];
+		TokenBuffer[] results = new TokenBuffer[n];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			lexers[i] = chunkLexer(source, errorManager, bounds[i], bounds[i + 1], lines[i], i == 0 ? 1 : 2);
+			results[i] = lexers[i].tokenizeRange();
+		});
+
+		TokenBuffer merged = new TokenBuffer(source, totalSize(results));
+		for (int i = 0; i < n; i++) {
+			Lexer lexer = lexers[i];
+			merged.append(results[i], interner.merge(lexer.getInterner()));
+			if (lexer.openString() >= 0) {
+				// La cadena sigue en el trozo siguiente: se reanaliza desde su inicio
+				Lexer redo = chunkLexer(source, errorManager, lexer.openString(), bounds[i + 2],
+						lexer.openStringLine(), lexer.openStringColumn());
+				lexers[i + 1] = redo;
+				results[i + 1] = redo.tokenizeRange();
+			}
+		}
+		merged.reportErrors(errorManager);
+		return merged;
+	}
+
+	private static Lexer chunkLexer(ByteBuffer source, ErrorManager errorManager, int from, int to, int line,
+			int column) {
+		return new Lexer(source, errorManager, new Interner(), from, to, line, column);
+	}
+
+	/** @return límites de los trozos: cada uno, salvo el primero, empieza tras un '\n'. */
+	private static int[] split(ByteBuffer source, int chunks) {
+		int length = source.limit();
+		int[] bounds = new int[chunks + 1];
+		int n = 0;
+		for (int i = 1; i < chunks; i++) {
+			int cut = Math.max((int) ((long) length * i / chunks), bounds[n] + 1);
+			while (cut < length && source.get(cut - 1) != '\n')
+				cut++;
+			if (cut >= length)
+				break;
+			bounds[++n] = cut;
+		}
+		bounds[++n] = length;
+		return Arrays.copyOf(bounds, n + 1);
+	}
+
+	private static int countNewlines(ByteBuffer source, int from, int to) {
+		int count = 0;
+		for (int p = from; p < to; p++) {
+			if (source.get(p) == '\n')
+				count++;
+		}
+		return count;
+	}
+
+	private static int totalSize(TokenBuffer[] results) {
+		long total = 0;
+		for (TokenBuffer result : results)
+			total += result.size();
+		return (int) Math.min(total, Integer.MAX_VALUE - 8);
+	}
+}
@@ -1,132 +1,335 @@
 package analizador;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import analizador.SymbolTable.Type;
 import analizador.SymbolTable.Category;
+import analizador.SymbolTable.SymbolInfo;
 
 /**
  * Analizador sintáctico descendente para la gramática proporcionada.
- * Solo depende de ASTNode y Token (sin Symbol ni TokenType).
+ * Solo depende de ASTNode (o FlatAST) y de un {@link TokenStream}; los tipos de token se comparan como
+ * {@link TokenKind} y los conjuntos FIRST son máscaras de bits.
+ *
+ * Cada método de no terminal devuelve su atributo sintetizado (tipo o lista de
+ * tipos) y recibe el nodo padre del que colgar el suyo. Los nodos se manejan
+ * por número: el índice en la lista de {@link ASTNode} o, si se analiza sobre
+ * una arena (ver {@link #enArena}), el nodo del {@link FlatAST}. En modo
+ * validación (ver {@link #validador}) no se crea ningún nodo: los padres son
+ * {@link #NINGUNO} y solo circulan los atributos, con los mismos errores,
+ * tabla de símbolos y reglas.
  */
 public class Parser {
-	private final List<Token> tokens;
-	private int current = 0;
+	// Conjuntos FIRST usados para elegir producción
+	private static final long FIRST_B = TokenKind.setOf(TokenKind.PR_LET, TokenKind.PR_IF, TokenKind.PR_FOR,
+			TokenKind.ID, TokenKind.PR_WRITE, TokenKind.PR_READ, TokenKind.PR_RETURN);
+	private static final long FIRST_C = FIRST_B & ~TokenKind.PR_RETURN.bit();
+	private static final long FIRST_T = TokenKind.setOf(TokenKind.PR_INT, TokenKind.PR_FLOAT, TokenKind.PR_BOOLEAN,
+			TokenKind.PR_STRING);
+	private static final long FIRST_E = TokenKind.setOf(TokenKind.ID, TokenKind.PAREN_IZQ, TokenKind.ENTERO,
+			TokenKind.REAL, TokenKind.CADENA, TokenKind.TRUE, TokenKind.FALSE);
+	private static final long FIRST_W = TokenKind.setOf(TokenKind.IGUAL, TokenKind.ASIG_DIV);
+
+	/*
+	 * Niveles de precedencia de las expresiones compactas, de menor a mayor:
+	 * 0 = opAnd (E), 1 = opIgual (R), 2 = opSuma (U). Por nivel, la regla que
+	 * lo abre, la que aplica un operador más y la lambda que lo cierra.
+	 */
+	private static final int NIVELES = 3;
+	private static final TokenKind[] OPERADOR = { TokenKind.OP_AND, TokenKind.OP_IGUAL, TokenKind.OP_SUMA };
+	private static final String[] ETIQUETA_OPERADOR = { "opAnd", "opIgual", "opSuma" };
+	private static final int[] REGLA_CABEZA = { 22, 25, 28 };
+	private static final int[] REGLA_OPERADOR = { 23, 26, 29 };
+	private static final int[] REGLA_FIN = { 24, 27, 30 };
+
+	private final TokenStream tokens;
 	private final ErrorManager errorManager;
-	private final List<Integer> reglasAplicadas = new ArrayList<>();
+	private final RuleLog reglasAplicadas;
+	/** Nodo inexistente: el padre de la raíz y todos los nodos sin árbol. */
+	private static final int NINGUNO = -1;
+
+	// Destino del árbol: objetos, arena o, si los dos son null, ninguno
+	private final List<ASTNode> nodos;
+	private final FlatAST arena;
+	private boolean compacto = false; // expresiones por precedencia
+	private boolean semantica = true; // false: no se informa de errores semánticos
+	private boolean preanalisis = false; // cuerpos de función saltados
+	// Funciones cuyo cuerpo se ha saltado, por nombre: token donde empiezan
+	private final Map<String, Integer> saltadas = new LinkedHashMap<>();
+	// Raíz del último subárbol suelto de una expresión compacta, aún sin padre
+	private int suelto = NINGUNO;
 	private final SymbolTable ts = new SymbolTable();
+	// Función cuyo cuerpo se analiza, para los return del cuerpo; null fuera
+	private Token funcionActual;
+	private Type retornoActual;
+	private int erroresSemanticos = 0; // notificados, para no repetirlos en las condiciones
+	// Claves para tokens que ocupan el lugar de un id sin serlo (recuperación de
+	// errores); las funciones analizadas en paralelo comparten el mapa
+	private Map<String, Integer> clavesSinId = new HashMap<>();
+	// Cuerpos de función analizados en paralelo (ver enParalelo)
+	private TokenBuffer buffer;
+	private ForkJoinPool pool;
+	private Funciones funciones;
+	private int posicion = 0; // índice en el flujo del token actual
 
 	public Parser(List<Token> tokens, ErrorManager errorManager) {
+		this(TokenStream.of(tokens), errorManager);
+	}
+
+	/**
+	 * Crea un parser que pide los tokens bajo demanda, por ejemplo
+	 * directamente al {@link Lexer}, sin materializar la lista completa.
+	 */
+	public Parser(TokenStream tokens, ErrorManager errorManager) {
+		this(tokens, errorManager, new RuleLog());
+	}
+
+	/**
+	 * Crea un parser que registra las reglas aplicadas en {@code reglas}, que
+	 * puede ir volcándolas a parse.txt durante el análisis.
+	 */
+	public Parser(TokenStream tokens, ErrorManager errorManager, RuleLog reglas) {
+		this(tokens, errorManager, reglas, new ArrayList<>(), null);
+	}
+
+	private Parser(TokenStream tokens, ErrorManager errorManager, RuleLog reglas, List<ASTNode> nodos,
+			FlatAST arena) {
 		this.tokens = tokens;
 		this.errorManager = errorManager;
+		this.reglasAplicadas = reglas;
+		this.nodos = nodos;
+		this.arena = arena;
+	}
+
+	/**
+	 * Crea un parser en modo validación: hace el análisis sintáctico y
+	 * semántico completo pero no construye el árbol, así que
+	 * {@link #parseAST()} devuelve null.
+	 */
+	public static Parser validador(TokenStream tokens, ErrorManager errorManager, RuleLog reglas) {
+		return new Parser(tokens, errorManager, reglas, null, null);
+	}
+
+	/**
+	 * Crea un parser que construye el árbol en {@code arena} en lugar de con
+	 * objetos {@link ASTNode}; la arena no se vacía, así que conviene llamar a
+	 * {@link FlatAST#clear()} antes de reutilizarla. {@link #parseAST()}
+	 * devuelve null y la raíz es {@link FlatAST#root()}.
+	 */
+	public static Parser enArena(TokenStream tokens, ErrorManager errorManager, RuleLog reglas, FlatAST arena) {
+		return new Parser(tokens, errorManager, reglas, null, arena);
+	}
+
+	/**
+	 * Crea un parser que analiza las funciones del nivel superior en paralelo
+	 * en {@code pool}. Antes de empezar, una pasada sobre el buffer localiza
+	 * cada "function" fuera de llaves y su extensión emparejando llaveIzq y
+	 * llaveDcha; cada función se analiza en una tarea con su propio registro
+	 * de reglas y de errores, y el análisis principal, al llegar al token
+	 * donde empieza una, cuelga su subárbol y añade sus reglas y errores en
+	 * lugar de analizarla. Como sin análisis semántico el análisis de F solo
+	 * depende de los tokens desde su inicio, el árbol, parse.txt y los errores
+	 * salen idénticos al análisis secuencial, aunque los errores sintácticos
+	 * descoloquen las llaves: una función encontrada por la pasada previa en
+	 * la que el análisis no entra no se usa.
+	 *
+	 * No hay análisis semántico durante el análisis ({@link #setSemantica}),
+	 * porque un cuerpo depende de lo declarado antes; se deja al
+	 * {@link SemanticAnalyzer}. Por lo mismo, los tipos anotados en el árbol
+	 * no son fiables.
+	 */
+	public static Parser enParalelo(TokenBuffer tokens, ErrorManager errorManager, RuleLog reglas,
+			ForkJoinPool pool) {
+		Parser parser = new Parser(tokens.stream(), errorManager, reglas);
+		parser.buffer = tokens;
+		parser.pool = pool;
+		parser.semantica = false;
+		return parser;
+	}
+
+	/**
+	 * Activa las expresiones compactas: E, R y U se analizan por ascenso de
+	 * precedencia y cada operador da un nodo binario ("opAnd", "opIgual",
+	 * "opSuma") cuyos hijos son los operandos, sin los nodos E, R, U, V ni las
+	 * lambdas E1, R1, U1. Los operandos son la hoja del literal o del id (con
+	 * los argumentos L colgando si es una llamada) y una expresión entre
+	 * paréntesis es un nodo "parentesis" con la expresión como único hijo,
+	 * para distinguir (a == b) == c de a == b == c. Tipos, errores y reglas
+	 * aplicadas no cambian.
+	 */
+	public void setExpresionesCompactas(boolean compacto) {
+		this.compacto = compacto;
+	}
+
+	/**
+	 * Con {@code false} el parser no informa de los errores semánticos (ni de
+	 * las llamadas y usos de id incorrectos, que salen como sintácticos), para
+	 * dejárselos a una pasada aparte como {@link SemanticAnalyzer}. El árbol se
+	 * construye igual y lleva en {@link ASTNode#getLinea()} las líneas que esa
+	 * pasada necesita.
+	 */
+	public void setSemantica(boolean semantica) {
+		this.semantica = semantica;
+	}
+
+	/**
+	 * Activa el preanálisis: de cada función solo se analiza la cabecera
+	 * (PRfun T id parenIzq Z parenDcha), que se da de alta en la tabla de
+	 * símbolos con sus parámetros, y el cuerpo se salta emparejando llaves,
+	 * sin reglas, nodos ni errores. Sirve para tener cuanto antes la tabla
+	 * global completa y los errores de las sentencias globales; el nodo F solo
+	 * lleva la cabecera. Un cuerpo se analiza después con
+	 * {@link #analizarFuncion} o, para la comprobación completa, analizando
+	 * de nuevo sin preanálisis. Si falta la llave que abre el cuerpo, la
+	 * función se analiza entera.
+	 */
+	public void setPreanalisis(boolean preanalisis) {
+		this.preanalisis = preanalisis;
+	}
+
+	/**
+	 * Analiza entera una función cuyo cuerpo saltó el preanálisis, sin
+	 * análisis semántico (como en {@link #enParalelo}); sus errores
+	 * sintácticos se añaden a los de este parser y sus reglas no se registran.
+	 *
+	 * @param tokens el buffer sobre el que se hizo el preanálisis.
+	 * @return subárbol F de la función, o null si no se saltó ninguna con ese
+	 *         nombre (si hay varias, la primera).
+	 */
+	public ASTNode analizarFuncion(TokenBuffer tokens, String nombre) {
+		Integer inicio = saltadas.get(nombre);
+		if (inicio == null)
+			return null;
+		Cuerpo cuerpo = analizarF(tokens, inicio);
+		errorManager.agregarTodos(cuerpo.errores);
+		return cuerpo.arbol;
+	}
+
+	/** @return nombres de las funciones cuyo cuerpo saltó el preanálisis, en orden. */
+	public Set<String> getFuncionesSaltadas() {
+		return saltadas.keySet();
 	}
 
+	/** @return raíz del árbol, o null en modo validación o sobre una arena. */
 	public ASTNode parseAST() {
-		return P1();
+		int root = P1();
+		return nodos != null ? nodos.get(root) : null;
 	}
 
+	/**
+	 * @return todas las reglas aplicadas en el formato de parse.txt.
+	 * @throws IllegalStateException si el parser se creó con un
+	 *                               {@link RuleLog} que se vuelca a un destino,
+	 *                               que no guarda las reglas ya escritas.
+	 */
 	public String getReglasAplicadasLinea() {
-		StringBuilder sb = new StringBuilder("descendente");
-		for (int r : reglasAplicadas) {
-			sb.append(" ").append(r);
-		}
-		return sb.toString();
+		return reglasAplicadas.toString();
+	}
+
+	/** @return registro de las reglas aplicadas. */
+	public RuleLog getReglas() {
+		return reglasAplicadas;
 	}
 
 	// 1: P1 -> P
-	private ASTNode P1() {
+	private int P1() {
 		reglasAplicadas.add(1);
 		ts.init();
-		ASTNode node = new ASTNode("P1");
-		node.addChild(P());
+		int node = nodo(NINGUNO, "P1");
+		if (buffer != null)
+			funciones = new Funciones(this);
+		P(node);
+		ts.publicar();
 		return node;
 	}
 
 	// 2: P -> B P | 3: P -> F P | 4: P -> lambda
-	private ASTNode P() {
-		ASTNode node = new ASTNode("P");
-		Type type;
-		if (checkAny("PRfun")) {
-			reglasAplicadas.add(3);
-			ASTNode fNode = F();
-			node.addChild(fNode);
-			ASTNode pNode = P();
-			node.addChild(pNode);
-			type = (fNode.getSemanticType() == Type.OK && pNode.getSemanticType() == Type.OK) ? Type.OK : Type.ERROR;
-		} else if (checkAny("PRlet", "PRif", "PRfor", "id", "PRwrite", "PRread", "PRreturn")) {
-			reglasAplicadas.add(2);
-			ASTNode bNode = B();
-			node.addChild(bNode);
-			ASTNode pNode = P();
-			node.addChild(pNode);
-			type = (bNode.getSemanticType() == Type.OK && pNode.getSemanticType() == Type.OK) ? Type.OK : Type.ERROR;
-		} else {
-			reglasAplicadas.add(4);
-			type = Type.OK;
-		}
-		if (type == Type.ERROR) {
-			// El error ya debería haber sido reportado en el punto de detección o se
-			// reportará al usar el valor propgado
+	// La recursión por la derecha se recorre con un bucle (ver siguiente())
+	private Type P(int padre) {
+		int node = nodo(padre, "P");
+		Cadena cadena = cadena(node);
+		boolean ok = true;
+		while (true) {
+			Type itemType;
+			if (check(TokenKind.PR_FUN)) {
+				reglasAplicadas.add(3);
+				Cuerpo cuerpo = funciones != null ? funciones.cuerpo(posicion) : null;
+				itemType = cuerpo != null ? coser(node, cuerpo) : F(node);
+			} else if (checkAny(FIRST_B)) {
+				reglasAplicadas.add(2);
+				itemType = B(node);
+			} else {
+				reglasAplicadas.add(4);
+				break;
+			}
+			ok &= itemType == Type.OK;
+			node = siguiente(node, cadena);
 		}
-		node.setSemanticType(type);
-		return node;
+		tiposSecuencia(cadena);
+		return ok ? Type.OK : Type.ERROR;
 	}
 
 	// 5: B -> PRlet T id puntoComa | 6: B -> PRif parenIzq E parenDcha S | 7: B ->
 	// PRfor ... | 8: B -> S
-	private ASTNode B() {
-		ASTNode node = new ASTNode("B");
+	private Type B(int padre) {
+		int node = nodo(padre, "B");
 		Type type = Type.ERROR;
-		if (match("PRlet")) {
+		if (match(TokenKind.PR_LET)) {
 			reglasAplicadas.add(5);
-			node.addChild(new ASTNode("PRlet"));
-			ASTNode tNode = T();
-			node.addChild(tNode);
-			Token idTok = consume("id", "Se esperaba identificador");
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-			consume("puntoComa", "Se esperaba ';' tras declaración");
-
-			if (!ts.existeLocal(idTok.getLexeme())) {
-				ts.anadirVar(idTok.getLexeme(), tNode.getSemanticType());
+			hoja(node, "PRlet");
+			Type tType = T(node);
+			Token idTok = consume(TokenKind.ID, "Se esperaba identificador");
+			int id = hojaId(node, idTok);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';' tras declaración");
+
+			if (!ts.existeLocal(simbolo(idTok))) {
+				ts.anadirVar(simbolo(idTok), idTok.getLexeme(), tType);
+				resolver(id, ts.buscar(simbolo(idTok)));
 				type = Type.OK;
 			} else {
 				errorSemantico(idTok, "Variable '" + idTok.getLexeme() + "' ya declarada");
 				type = Type.ERROR;
 			}
-		} else if (match("PRif")) {
+		} else if (match(TokenKind.PR_IF)) {
 			reglasAplicadas.add(6);
-			node.addChild(new ASTNode("PRif"));
-			consume("parenIzq", "Se esperaba '(' tras if");
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			consume("parenDcha", "Se esperaba ')' tras la condición");
-			ASTNode sNode = S();
-			node.addChild(sNode);
-			if (eNode.getSemanticType() == Type.BOOLEAN && sNode.getSemanticType() == Type.OK) {
+			hoja(node, "PRif");
+			expect(TokenKind.PAREN_IZQ, "Se esperaba '(' tras if");
+			int errores = erroresSemanticos;
+			Type eType = E(node);
+			boolean notificado = erroresSemanticos > errores;
+			expect(TokenKind.PAREN_DCHA, "Se esperaba ')' tras la condición");
+			Type sType = S(node);
+			if (eType == Type.BOOLEAN && sType == Type.OK) {
 				type = Type.OK;
 			} else {
-				if (eNode.getSemanticType() != Type.BOOLEAN) {
+				// Un ERROR ya notificado dentro de la condición no se repite
+				if (eType != Type.BOOLEAN && (eType != Type.ERROR || !notificado)) {
 					errorSemantico(previous(), "La condición del 'if' debe ser boolean");
 				}
 				type = Type.ERROR;
 			}
-		} else if (match("PRfor")) {
+		} else if (match(TokenKind.PR_FOR)) {
 			reglasAplicadas.add(7);
-			node.addChild(new ASTNode("PRfor"));
-			consume("parenIzq", "Se esperaba '(' tras for");
-			ASTNode f1Init = F1();
-			node.addChild(f1Init);
-			consume("puntoComa", "Se esperaba ';' tras inicialización de for");
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			consume("puntoComa", "Se esperaba ';' tras condición de for");
-			ASTNode f1Incr = F1();
-			node.addChild(f1Incr);
-			consume("parenDcha", "Se esperaba ')' tras incremento de for");
-			consume("llaveIzq", "Se esperaba '{' tras cabecera de for");
-			ASTNode cNode = C();
-			node.addChild(cNode);
-			consume("llaveDcha", "Se esperaba '}' al cerrar el for");
+			hoja(node, "PRfor");
+			expect(TokenKind.PAREN_IZQ, "Se esperaba '(' tras for");
+			Type f1Init = F1(node);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';' tras inicialización de for");
+			int errores = erroresSemanticos;
+			Type eType = E(node);
+			boolean notificado = erroresSemanticos > errores;
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';' tras condición de for");
+			Type f1Incr = F1(node);
+			expect(TokenKind.PAREN_DCHA, "Se esperaba ')' tras incremento de for");
+			expect(TokenKind.LLAVE_IZQ, "Se esperaba '{' tras cabecera de for");
+			Type cType = C(node);
+			expect(TokenKind.LLAVE_DCHA, "Se esperaba '}' al cerrar el for");
 			// B -> PRfor parenIzq F1 puntoComa E puntoComa F1 parenDcha llaveIzq C
 			// llaveDcha
 			// { if (F1.tipo == ok AND E.tipo == boolean AND A.tipo == ok AND C.tipo == ok)
@@ -138,410 +341,593 @@ public class Parser {
 			// == ok AND C.tipo == ok)
 			// I'll assume 'A' was a typo or refers to something else, maybe the first F1?
 			// I'll use both F1s and C.
-			if (f1Init.getSemanticType() == Type.OK && eNode.getSemanticType() == Type.BOOLEAN
-					&& f1Incr.getSemanticType() == Type.OK && cNode.getSemanticType() == Type.OK) {
+			if (f1Init == Type.OK && eType == Type.BOOLEAN && f1Incr == Type.OK && cType == Type.OK) {
 				type = Type.OK;
 			} else {
-				if (eNode.getSemanticType() != Type.BOOLEAN) {
+				if (eType != Type.BOOLEAN && (eType != Type.ERROR || !notificado)) {
 					errorSemantico(previous(), "La condición del 'for' debe ser boolean");
 				}
 				type = Type.ERROR;
 			}
 		} else {
 			reglasAplicadas.add(8);
-			ASTNode sNode = S();
-			node.addChild(sNode);
-			type = sNode.getSemanticType();
+			type = S(node);
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipoFin(node, type);
 	}
 
 	// 9: T -> PRint | 10: T -> PRfloat | 11: T -> PRboolean | 12: T -> PRstring
-	private ASTNode T() {
-		ASTNode node;
+	private Type T(int padre) {
+		String label;
 		Type type;
-		if (match("PRint")) {
-			reglasAplicadas.add(9);
-			node = new ASTNode("PRint");
-			type = Type.ENTERO;
-		} else if (match("PRfloat")) {
-			reglasAplicadas.add(10);
-			node = new ASTNode("PRfloat");
-			type = Type.REAL;
-		} else if (match("PRboolean")) {
-			reglasAplicadas.add(11);
-			node = new ASTNode("PRboolean");
-			type = Type.BOOLEAN;
-		} else if (match("PRstring")) {
-			reglasAplicadas.add(12);
-			node = new ASTNode("PRstring");
-			type = Type.CADENA;
-		} else {
-			error(peek(), "Tipo no válido"); // Sintáctico: token inesperado en lugar de tipo
-			node = new ASTNode("tipo_error");
-			type = Type.ERROR;
+		switch (peek().getKind()) {
+			case PR_INT:
+				advance();
+				reglasAplicadas.add(9);
+				label = "PRint";
+				type = Type.ENTERO;
+				break;
+			case PR_FLOAT:
+				advance();
+				reglasAplicadas.add(10);
+				label = "PRfloat";
+				type = Type.REAL;
+				break;
+			case PR_BOOLEAN:
+				advance();
+				reglasAplicadas.add(11);
+				label = "PRboolean";
+				type = Type.BOOLEAN;
+				break;
+			case PR_STRING:
+				advance();
+				reglasAplicadas.add(12);
+				label = "PRstring";
+				type = Type.CADENA;
+				break;
+			default:
+				error(peek(), "Tipo no válido"); // Sintáctico: token inesperado en lugar de tipo
+				label = "tipo_error";
+				type = Type.ERROR;
+				break;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(nodo(padre, label), type);
 	}
 
 	// 13: F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha
-	private ASTNode F() {
+	private Type F(int padre) {
+		int inicio = posicion;
 		reglasAplicadas.add(13);
-		ASTNode node = new ASTNode("F");
-		consume("PRfun", "Se esperaba 'function'");
-		node.addChild(new ASTNode("PRfun"));
-		ASTNode tNode = T();
-		node.addChild(tNode);
-		Token name = consume("id", "Se esperaba identificador de función");
-		node.addChild(new ASTNode("id(" + name.getLexeme() + ")"));
-
-		ts.anadirFunc(name.getLexeme(), tNode.getSemanticType());
+		int node = nodo(padre, "F");
+		expect(TokenKind.PR_FUN, "Se esperaba 'function'");
+		hoja(node, "PRfun");
+		Type tType = T(node);
+		Token name = consume(TokenKind.ID, "Se esperaba identificador de función");
+		int id = hojaId(node, name);
+
+		ts.anadirFunc(simbolo(name), name.getLexeme(), tType);
 		ts.entrarAmbito();
 
-		consume("parenIzq", "Se esperaba '(' en la cabecera");
-		ASTNode zNode = Z();
-		node.addChild(zNode);
-		consume("parenDcha", "Se esperaba ')' en la cabecera");
+		expect(TokenKind.PAREN_IZQ, "Se esperaba '(' en la cabecera");
+		List<Type> params = Z(node);
+		expect(TokenKind.PAREN_DCHA, "Se esperaba ')' en la cabecera");
+
+		ts.setParamsFunc(simbolo(name), params);
 
-		ts.setParamsFunc(name.getLexeme(), zNode.getListaTipos());
+		if (preanalisis && check(TokenKind.LLAVE_IZQ)) {
+			saltadas.putIfAbsent(name.getLexeme(), inicio);
+			saltarCuerpo();
+			ts.salirAmbito();
+			resolver(id, ts.buscar(simbolo(name)));
+			return tipo(node, Type.OK);
+		}
 
-		consume("llaveIzq", "Se esperaba '{' antes del cuerpo");
-		ASTNode cNode = C();
-		node.addChild(cNode);
-		ASTNode f2Node = F2();
-		node.addChild(f2Node);
-		consume("llaveDcha", "Se esperaba '}' tras el cuerpo");
+		expect(TokenKind.LLAVE_IZQ, "Se esperaba '{' antes del cuerpo");
+		funcionActual = name;
+		retornoActual = tType;
+		C(node);
+		funcionActual = null;
+		Type f2Type = F2(node);
+		expect(TokenKind.LLAVE_DCHA, "Se esperaba '}' tras el cuerpo");
 
 		Type type;
-		if (f2Node.getSemanticType() == tNode.getSemanticType()) {
+		if (f2Type == tType) {
 			type = Type.OK;
 		} else {
 			errorSemantico(name, "Retorno incorrecto en funcion " + name.getLexeme());
 			type = Type.ERROR;
 		}
 		ts.salirAmbito();
-		node.setSemanticType(type);
-		return node;
+		// Fuera ya de su ámbito, ningún parámetro la oculta
+		resolver(id, ts.buscar(simbolo(name)));
+		return tipo(node, type);
+	}
+
+	/**
+	 * Cuelga de {@code padre} una función analizada en otra tarea, añade sus
+	 * reglas y errores y salta sus tokens.
+	 */
+	private Type coser(int padre, Cuerpo cuerpo) {
+		reglasAplicadas.addAll(cuerpo.reglas);
+		errorManager.agregarTodos(cuerpo.errores);
+		nodos.get(padre).addChild(cuerpo.arbol);
+		while (posicion < cuerpo.fin)
+			advance();
+		return cuerpo.tipo;
+	}
+
+	/** Analiza en un parser propio cada función de {@code inicios[desde, hasta)}. */
+	private Cuerpo[] analizarLote(int[] inicios, int desde, int hasta) {
+		Cuerpo[] cuerpos = new Cuerpo[hasta - desde];
+		for (int i = desde; i < hasta; i++)
+			cuerpos[i - desde] = analizarF(buffer, inicios[i]);
+		return cuerpos;
+	}
+
+	/** Analiza sin análisis semántico, en un parser propio, la función que empieza en {@code inicio}. */
+	private Cuerpo analizarF(TokenBuffer tokens, int inicio) {
+		Cuerpo cuerpo = new Cuerpo();
+		Parser parser = new Parser(tokens.stream(inicio), cuerpo.errores, cuerpo.reglas);
+		parser.compacto = compacto;
+		parser.semantica = false;
+		parser.clavesSinId = clavesSinId;
+		parser.posicion = inicio;
+		parser.ts.init();
+		cuerpo.tipo = parser.F(NINGUNO);
+		cuerpo.arbol = parser.nodos.get(0);
+		cuerpo.fin = parser.posicion;
+		return cuerpo;
+	}
+
+	/** Resultado del análisis de una función en otra tarea. */
+	private static final class Cuerpo {
+		final RuleLog reglas = new RuleLog();
+		final ErrorManager errores = new ErrorManager();
+		ASTNode arbol;
+		Type tipo;
+		int fin; // token siguiente a la función
+	}
+
+	/**
+	 * Funciones del nivel superior que encuentra la pasada previa, por orden
+	 * de inicio, y las tareas que las analizan. Las funciones se reparten en
+	 * lotes de al menos LOTE tokens para que cada tarea compense su coste.
+	 */
+	private static final class Funciones {
+		private static final int LOTE = 4096;
+		private int[] inicios = new int[16];
+		private int[] lotes = new int[16]; // lote de cada función
+		private int size = 0;
+		private final List<Integer> primeras = new ArrayList<>(); // primera función de cada lote
+		private final List<ForkJoinTask<Cuerpo[]>> tareas = new ArrayList<>();
+
+		Funciones(Parser parser) {
+			TokenBuffer buffer = parser.buffer;
+			int n = buffer.size();
+			int profundidad = 0;
+			int desde = 0; // primera función del lote en curso
+			int tokensLote = 0;
+			for (int i = 0; i < n; i++) {
+				TokenKind kind = buffer.kind(i);
+				if (kind == TokenKind.LLAVE_IZQ) {
+					profundidad++;
+				} else if (kind == TokenKind.LLAVE_DCHA) {
+					if (profundidad > 0)
+						profundidad--;
+				} else if (kind == TokenKind.PR_FUN && profundidad == 0) {
+					int fin = extension(buffer, i);
+					anadir(i);
+					tokensLote += fin - i;
+					if (tokensLote >= LOTE) {
+						lanzar(parser, desde);
+						desde = size;
+						tokensLote = 0;
+					}
+					i = fin - 1;
+				}
+			}
+			if (desde < size)
+				lanzar(parser, desde);
+		}
+
+		private void anadir(int inicio) {
+			if (size == inicios.length) {
+				inicios = Arrays.copyOf(inicios, size * 2);
+				lotes = Arrays.copyOf(lotes, size * 2);
+			}
+			lotes[size] = tareas.size();
+			inicios[size++] = inicio;
+		}
+
+		private void lanzar(Parser parser, int desde) {
+			int[] funciones = inicios;
+			int hasta = size;
+			primeras.add(desde);
+			tareas.add(parser.pool.submit(() -> parser.analizarLote(funciones, desde, hasta)));
+		}
+
+		/**
+		 * @return token siguiente a la llaveDcha que cierra la función que
+		 *         empieza en {@code inicio}; si la cabecera no llega a abrir
+		 *         llave, el "function" o el fin de fichero donde se corta.
+		 */
+		private static int extension(TokenBuffer buffer, int inicio) {
+			int i = inicio + 1;
+			while (buffer.kind(i) != TokenKind.LLAVE_IZQ) {
+				if (buffer.kind(i) == TokenKind.PR_FUN || buffer.kind(i) == TokenKind.FIN_FICH)
+					return i;
+				i++;
+			}
+			int profundidad = 0;
+			for (; buffer.kind(i) != TokenKind.FIN_FICH; i++) {
+				if (buffer.kind(i) == TokenKind.LLAVE_IZQ)
+					profundidad++;
+				else if (buffer.kind(i) == TokenKind.LLAVE_DCHA && --profundidad == 0)
+					return i + 1;
+			}
+			return i;
+		}
+
+		/**
+		 * @return la función que empieza en el token {@code posicion}, esperando
+		 *         a que termine su tarea, o null si la pasada previa no encontró
+		 *         ninguna ahí.
+		 */
+		Cuerpo cuerpo(int posicion) {
+			int i = Arrays.binarySearch(inicios, 0, size, posicion);
+			if (i < 0)
+				return null;
+			return tareas.get(lotes[i]).join()[i - primeras.get(lotes[i])];
+		}
+	}
+
+	/** Salta desde la llaveIzq del cuerpo hasta la llaveDcha que la cierra. */
+	private void saltarCuerpo() {
+		int profundidad = 0;
+		do {
+			if (check(TokenKind.LLAVE_IZQ))
+				profundidad++;
+			else if (check(TokenKind.LLAVE_DCHA))
+				profundidad--;
+			else if (isAtEnd()) {
+				error(peek(), "Se esperaba '}' tras el cuerpo");
+				return;
+			}
+			advance();
+		} while (profundidad > 0);
 	}
 
 	// 14: F1 -> id W E | 15: F1 -> lambda
-	private ASTNode F1() {
-		ASTNode node = new ASTNode("F1");
+	private Type F1(int padre) {
+		int node = nodo(padre, "F1");
 		Type type;
-		if (checkAny("id")) {
+		if (check(TokenKind.ID)) {
 			reglasAplicadas.add(14);
-			Token idTok = consume("id", "Se esperaba identificador");
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-			ASTNode wNode = W();
-			node.addChild(wNode);
-			ASTNode eNode = E();
-			node.addChild(eNode);
-
-			Type tId = ts.buscarTipo(idTok.getLexeme());
-			if (tId == eNode.getSemanticType()) {
-				type = Type.OK;
-			} else {
-				errorSemantico(idTok, "Tipos incompatibles en asignación: " + tId + " y " + eNode.getSemanticType());
+			Token idTok = consume(TokenKind.ID, "Se esperaba identificador");
+			int id = hojaId(node, idTok);
+			boolean div = W(node);
+			Type eType = E(node);
+
+			SymbolInfo info = ts.buscar(simbolo(idTok));
+			resolver(id, info);
+			Type tId = SymbolTable.tipo(info);
+			if (SymbolTable.categoria(info) != Category.VARIABLE) {
+				errorSemantico(idTok, "'" + idTok.getLexeme() + "' no es una variable");
 				type = Type.ERROR;
+			} else if (tId != eType) {
+				errorSemantico(idTok, "Tipos incompatibles en asignación: " + tId + " y " + eType);
+				type = Type.ERROR;
+			} else if (div && tId != Type.ENTERO && tId != Type.REAL) {
+				errorSemantico(idTok, "'/=' no admite el tipo " + tId);
+				type = Type.ERROR;
+			} else {
+				type = Type.OK;
 			}
 		} else {
 			reglasAplicadas.add(15);
 			type = Type.OK;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
-	// 16: F2 -> S1 | 17: F2 -> lambda
-	private ASTNode F2() {
-		ASTNode node = new ASTNode("F2");
+	// 16: F2 -> S1 puntoComa | 17: F2 -> lambda
+	private Type F2(int padre) {
+		int node = nodo(padre, "F2");
 		Type type;
-		if (checkAny("PRreturn")) {
+		if (check(TokenKind.PR_RETURN)) {
 			reglasAplicadas.add(16);
-			ASTNode s1Node = S1();
-			node.addChild(s1Node);
-			consume("puntoComa", "Se esperaba ';' tras return");
-			type = s1Node.getSemanticType();
+			type = S1(node);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';' tras return");
 		} else {
 			reglasAplicadas.add(17);
 			type = Type.VOID;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 18: Z -> T id K | 19: Z -> lambda
-	private ASTNode Z() {
-		ASTNode node = new ASTNode("Z");
+	private List<Type> Z(int padre) {
+		int node = nodo(padre, "Z");
 		List<Type> lista = new ArrayList<>();
-		if (checkAny("PRint", "PRfloat", "PRboolean", "PRstring")) {
+		if (checkAny(FIRST_T)) {
 			reglasAplicadas.add(18);
-			ASTNode tNode = T();
-			node.addChild(tNode);
-			Token idTok = consume("id", "Se esperaba identificador de parámetro");
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-			ASTNode kNode = K();
-			node.addChild(kNode);
-
-			if (!ts.existeLocal(idTok.getLexeme())) {
-				ts.anadirVar(idTok.getLexeme(), tNode.getSemanticType());
-				lista.add(tNode.getSemanticType());
-				if (kNode.getListaTipos() != null) {
-					lista.addAll(kNode.getListaTipos());
-				}
+			Type tType = T(node);
+			Token idTok = consume(TokenKind.ID, "Se esperaba identificador de parámetro");
+			int id = hojaId(node, idTok);
+			List<Type> kLista = K(node);
+
+			if (!ts.existeLocal(simbolo(idTok))) {
+				ts.anadirVar(simbolo(idTok), idTok.getLexeme(), tType);
+				resolver(id, ts.buscar(simbolo(idTok)));
+				lista.add(tType);
+				lista.addAll(kLista);
 			} else {
-				// Error handled by returning null or empty? Specification says Z.listaTipos :=
-				// error
-				// I'll use null or a special list to represent error if needed.
+				errorSemantico(idTok, "Variable '" + idTok.getLexeme() + "' ya declarada");
 			}
 		} else {
 			reglasAplicadas.add(19);
 		}
-		node.setListaTipos(lista);
-		return node;
+		return listaTipos(node, lista);
 	}
 
 	// 20: K -> coma T id K | 21: K -> lambda
-	private ASTNode K() {
-		ASTNode node = new ASTNode("K");
-		List<Type> lista = new ArrayList<>();
-		if (match("coma")) {
+	private List<Type> K(int padre) {
+		int node = nodo(padre, "K");
+		Cadena cadena = cadena(node);
+		List<Token> ids = new ArrayList<>();
+		List<Integer> hojas = new ArrayList<>();
+		List<Type> tipos = new ArrayList<>();
+		while (match(TokenKind.COMA)) {
 			reglasAplicadas.add(20);
-			node.addChild(new ASTNode("coma"));
-			ASTNode tNode = T();
-			node.addChild(tNode);
-			Token idTok = consume("id", "Se esperaba identificador de parámetro");
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-			ASTNode kNode = K();
-			node.addChild(kNode);
-
-			if (!ts.existeLocal(idTok.getLexeme())) {
-				ts.anadirVar(idTok.getLexeme(), tNode.getSemanticType());
-				lista.add(tNode.getSemanticType());
-				if (kNode.getListaTipos() != null) {
-					lista.addAll(kNode.getListaTipos());
-				}
+			hoja(node, "coma");
+			tipos.add(T(node));
+			Token idTok = consume(TokenKind.ID, "Se esperaba identificador de parámetro");
+			hojas.add(hojaId(node, idTok));
+			ids.add(idTok);
+			node = siguiente(node, cadena);
+		}
+		reglasAplicadas.add(21);
+
+		// Los parámetros se declaran desde el último, como al volver de la
+		// recursión. La lista de cada K es su tipo seguido de la del K
+		// siguiente, o vacía si el parámetro está repetido: un tramo de tipos.
+		int fin = tipos.size();
+		listaTipos(node, tipos.subList(fin, fin));
+		for (int i = ids.size() - 1; i >= 0; i--) {
+			Token idTok = ids.get(i);
+			if (!ts.existeLocal(simbolo(idTok))) {
+				ts.anadirVar(simbolo(idTok), idTok.getLexeme(), tipos.get(i));
+				resolver(hojas.get(i), ts.buscar(simbolo(idTok)));
+			} else {
+				errorSemantico(idTok, "Variable '" + idTok.getLexeme() + "' ya declarada");
+				fin = i;
 			}
-		} else {
-			reglasAplicadas.add(21);
+			if (cadena != null)
+				listaTipos(cadena.get(i), tipos.subList(i, fin));
 		}
-		node.setListaTipos(lista);
-		return node;
+		return tipos.subList(0, fin);
 	}
 
 	// 22: E -> R E1
-	private ASTNode E() {
+	private Type E(int padre) {
+		if (compacto) {
+			Type type = expresion(0);
+			colgar(padre, suelto);
+			return type;
+		}
 		reglasAplicadas.add(22);
-		ASTNode node = new ASTNode("E");
-		ASTNode rNode = R();
-		node.addChild(rNode);
-		ASTNode e1Node = E1();
-		node.addChild(e1Node);
+		int node = nodo(padre, "E");
+		Type rType = R(node);
+		Type e1Type = E1(node);
 
 		Type type;
-		if (e1Node.getSemanticType() == null) {
-			type = rNode.getSemanticType();
-		} else if (rNode.getSemanticType() == Type.BOOLEAN && e1Node.getSemanticType() == Type.BOOLEAN) {
+		if (e1Type == null) {
+			type = rType;
+		} else if (rType == Type.BOOLEAN && e1Type == Type.BOOLEAN) {
 			type = Type.BOOLEAN;
 		} else {
 			type = Type.ERROR;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 23: E1 -> opAnd R E1 | 24: E1 -> lambda
-	private ASTNode E1() {
-		ASTNode node = new ASTNode("E1");
-		Type type;
-		if (match("opAnd")) {
+	private Type E1(int padre) {
+		int node = nodo(padre, "E1");
+		Cadena cadena = cadena(node);
+		// Plegado desde la cabeza: boolean si todos los operandos lo son
+		Type type = null;
+		while (match(TokenKind.OP_AND)) {
 			reglasAplicadas.add(23);
-			node.addChild(new ASTNode("opAnd"));
-			ASTNode rNode = R();
-			node.addChild(rNode);
-			ASTNode e1Node = E1();
-			node.addChild(e1Node);
-
-			if (rNode.getSemanticType() == Type.BOOLEAN
-					&& (e1Node.getSemanticType() == Type.BOOLEAN || e1Node.getSemanticType() == null)) {
-				type = Type.BOOLEAN;
-			} else {
-				type = Type.ERROR;
+			hoja(node, "opAnd");
+			Type rType = R(node);
+			type = (rType == Type.BOOLEAN && type != Type.ERROR) ? Type.BOOLEAN : Type.ERROR;
+			node = siguiente(node, cadena);
+		}
+		reglasAplicadas.add(24);
+
+		if (cadena != null) {
+			Type resto = null;
+			for (int i = cadena.size() - 2; i >= 0; i--) {
+				Type rType = operando(cadena.get(i));
+				resto = (rType == Type.BOOLEAN && (resto == Type.BOOLEAN || resto == null)) ? Type.BOOLEAN
+						: Type.ERROR;
+				tipo(cadena.get(i), resto);
 			}
-		} else {
-			reglasAplicadas.add(24);
-			type = null;
 		}
-		node.setSemanticType(type);
-		return node;
+		return type;
 	}
 
 	// 25: R -> U R1
-	private ASTNode R() {
+	private Type R(int padre) {
 		reglasAplicadas.add(25);
-		ASTNode node = new ASTNode("R");
-		ASTNode uNode = U();
-		node.addChild(uNode);
-		ASTNode r1Node = R1();
-		node.addChild(r1Node);
+		int node = nodo(padre, "R");
+		Type uType = U(node);
+		Type r1Type = R1(node);
 
 		Type type;
-		if (r1Node.getSemanticType() == null) {
-			type = uNode.getSemanticType();
-		} else if (uNode.getSemanticType() == r1Node.getSemanticType()) {
+		if (r1Type == null) {
+			type = uType;
+		} else if (uType == r1Type && uType != Type.ERROR) {
 			type = Type.BOOLEAN;
 		} else {
 			type = Type.ERROR;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 26: R1 -> opIgual U R1 | 27: R1 -> lambda
-	private ASTNode R1() {
-		ASTNode node = new ASTNode("R1");
-		Type type;
-		if (match("opIgual")) {
+	private Type R1(int padre) {
+		int node = nodo(padre, "R1");
+		Cadena cadena = cadena(node);
+		// Plegado desde la cabeza: el tipo común si todos los operandos lo comparten
+		Type type = null;
+		while (match(TokenKind.OP_IGUAL)) {
 			reglasAplicadas.add(26);
-			node.addChild(new ASTNode("opIgual"));
-			ASTNode uNode = U();
-			node.addChild(uNode);
-			ASTNode r1Node = R1();
-			node.addChild(r1Node);
-
-			if (uNode.getSemanticType() == r1Node.getSemanticType() || r1Node.getSemanticType() == null) {
-				type = uNode.getSemanticType();
-			} else {
-				type = Type.ERROR;
+			hoja(node, "opIgual");
+			type = mismoTipo(type, U(node));
+			node = siguiente(node, cadena);
+		}
+		reglasAplicadas.add(27);
+
+		if (cadena != null) {
+			Type resto = null;
+			for (int i = cadena.size() - 2; i >= 0; i--) {
+				Type uType = operando(cadena.get(i));
+				resto = (uType == resto || resto == null) ? uType : Type.ERROR;
+				tipo(cadena.get(i), resto);
 			}
-		} else {
-			reglasAplicadas.add(27);
-			type = null;
 		}
-		node.setSemanticType(type);
-		return node;
+		return type;
 	}
 
 	// 28: U -> V U1
-	private ASTNode U() {
+	private Type U(int padre) {
 		reglasAplicadas.add(28);
-		ASTNode node = new ASTNode("U");
-		ASTNode vNode = V();
-		node.addChild(vNode);
-		ASTNode u1Node = U1();
-		node.addChild(u1Node);
+		int node = nodo(padre, "U");
+		Type vType = V(node);
+		Type u1Type = U1(node);
 
 		Type type;
-		if (u1Node.getSemanticType() == null) {
-			type = vNode.getSemanticType();
-		} else if (vNode.getSemanticType() == u1Node.getSemanticType()
-				&& (vNode.getSemanticType() == Type.ENTERO || vNode.getSemanticType() == Type.REAL)) {
-			type = vNode.getSemanticType();
+		if (u1Type == null) {
+			type = vType;
+		} else if (vType == u1Type && (vType == Type.ENTERO || vType == Type.REAL)) {
+			type = vType;
 		} else {
 			type = Type.ERROR;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 29: U1 -> opSuma V U1 | 30: U1 -> lambda
-	private ASTNode U1() {
-		ASTNode node = new ASTNode("U1");
-		Type type;
-		if (match("opSuma")) {
+	private Type U1(int padre) {
+		int node = nodo(padre, "U1");
+		Cadena cadena = cadena(node);
+		Type type = null;
+		while (match(TokenKind.OP_SUMA)) {
 			reglasAplicadas.add(29);
-			node.addChild(new ASTNode("opSuma"));
-			ASTNode vNode = V();
-			node.addChild(vNode);
-			ASTNode u1Node = U1();
-			node.addChild(u1Node);
-
-			if (vNode.getSemanticType() == u1Node.getSemanticType() || u1Node.getSemanticType() == null) {
-				type = vNode.getSemanticType();
-			} else {
-				type = Type.ERROR;
+			hoja(node, "opSuma");
+			type = mismoTipo(type, V(node));
+			node = siguiente(node, cadena);
+		}
+		reglasAplicadas.add(30);
+
+		if (cadena != null) {
+			Type resto = null;
+			for (int i = cadena.size() - 2; i >= 0; i--) {
+				Type vType = operando(cadena.get(i));
+				resto = (vType == resto || resto == null) ? vType : Type.ERROR;
+				tipo(cadena.get(i), resto);
 			}
-		} else {
-			reglasAplicadas.add(30);
-			type = null;
 		}
-		node.setSemanticType(type);
-		return node;
+		return type;
 	}
 
 	// 31: V -> id V1 | 32: V -> parenIzq E parenDcha | 33: V -> entero | 34: V ->
 	// real | 35: V -> cadena | 36: V -> true | 37: V -> false
-	private ASTNode V() {
-		ASTNode node = new ASTNode("V");
+	private Type V(int padre) {
+		int node = nodo(padre, "V");
 		Type type = Type.ERROR;
-		if (match("id")) {
-			reglasAplicadas.add(31);
-			Token idTok = previous();
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-
-			Type tipoId = ts.buscarTipo(idTok.getLexeme());
-			Category catId = ts.buscarCategoria(idTok.getLexeme());
-
-			ASTNode v1Node = V1(tipoId, catId, idTok.getLexeme());
-			node.addChild(v1Node);
-			type = v1Node.getSemanticType();
-		} else if (match("parenIzq")) {
-			reglasAplicadas.add(32);
-			node.addChild(new ASTNode("parenIzq"));
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			consume("parenDcha", "Falta ')'");
-			type = eNode.getSemanticType();
-		} else if (match("entero")) {
-			reglasAplicadas.add(33);
-			node.addChild(new ASTNode("entero"));
-			type = Type.ENTERO;
-		} else if (match("real")) {
-			reglasAplicadas.add(34);
-			node.addChild(new ASTNode("real"));
-			type = Type.REAL;
-		} else if (match("cadena")) {
-			reglasAplicadas.add(35);
-			node.addChild(new ASTNode("cadena"));
-			type = Type.CADENA;
-		} else if (match("true")) {
-			reglasAplicadas.add(36);
-			node.addChild(new ASTNode("true"));
-			type = Type.BOOLEAN;
-		} else if (match("false")) {
-			reglasAplicadas.add(37);
-			node.addChild(new ASTNode("false"));
-			type = Type.BOOLEAN;
-		} else {
-			error(peek(), "Expresión no válida"); // Sintáctico
+		switch (peek().getKind()) {
+			case ID: {
+				advance();
+				Token idTok = previous();
+				reglasAplicadas.add(31);
+				SymbolInfo info = ts.buscar(simbolo(idTok));
+				resolver(hojaId(node, idTok), info);
+
+				type = V1(node, info, idTok);
+				break;
+			}
+			case PAREN_IZQ: {
+				advance();
+				reglasAplicadas.add(32);
+				hoja(node, "parenIzq");
+				type = E(node);
+				expect(TokenKind.PAREN_DCHA, "Falta ')'");
+				break;
+			}
+			case ENTERO:
+				advance();
+				reglasAplicadas.add(33);
+				literal(node, "entero");
+				type = Type.ENTERO;
+				break;
+			case REAL:
+				advance();
+				reglasAplicadas.add(34);
+				literal(node, "real");
+				type = Type.REAL;
+				break;
+			case CADENA:
+				advance();
+				reglasAplicadas.add(35);
+				literal(node, "cadena");
+				type = Type.CADENA;
+				break;
+			case TRUE:
+				advance();
+				reglasAplicadas.add(36);
+				hoja(node, "true");
+				type = Type.BOOLEAN;
+				break;
+			case FALSE:
+				advance();
+				reglasAplicadas.add(37);
+				hoja(node, "false");
+				type = Type.BOOLEAN;
+				break;
+			default:
+				error(peek(), "Expresión no válida"); // Sintáctico
+				break;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 38: V1 -> parenIzq L parenDcha | 39: V1 -> lambda
-	private ASTNode V1(Type h_tipoBase, Category h_categoria, String h_lexema) {
-		ASTNode node = new ASTNode("V1");
+	// En las expresiones compactas no hay nodo V1: los argumentos cuelgan del id
+	private Type V1(int padre, SymbolInfo h_simbolo, Token h_id) {
+		Type h_tipoBase = SymbolTable.tipo(h_simbolo);
+		Category h_categoria = SymbolTable.categoria(h_simbolo);
+		int node = compacto ? padre : nodo(padre, "V1");
 		Type type;
-		if (match("parenIzq")) {
+		if (match(TokenKind.PAREN_IZQ)) {
 			reglasAplicadas.add(38);
-			node.addChild(new ASTNode("parenIzq"));
-			ASTNode lNode = L();
-			node.addChild(lNode);
-			consume("parenDcha", "Falta ')'");
+			if (!compacto)
+				hoja(node, "parenIzq");
+			List<Type> args = L(node);
+			expect(TokenKind.PAREN_DCHA, "Falta ')'");
 
 			if (h_categoria == Category.FUNCION) {
-				List<Type> params = ts.buscarParams(h_lexema);
-				if (params != null && params.equals(lNode.getListaTipos())) {
+				List<Type> params = SymbolTable.params(h_simbolo);
+				if (params != null && params.equals(args)) {
 					type = h_tipoBase;
 				} else {
-					error(previous(), "Parámetros incorrectos en llamada a función '" + h_lexema + "'");
+					errorTipos(previous(), "Parámetros incorrectos en llamada a función '" + h_id.getLexeme() + "'");
 					type = Type.ERROR;
 				}
 			} else {
-				error(previous(), "'" + h_lexema + "' no es una función");
+				errorTipos(previous(), "'" + h_id.getLexeme() + "' no es una función");
 				type = Type.ERROR;
 			}
 		} else {
@@ -549,223 +935,569 @@ public class Parser {
 			if (h_categoria == Category.VARIABLE) {
 				type = h_tipoBase;
 			} else {
-				error(previous(), "'" + h_lexema + "' no es una variable");
+				errorSemantico(previous(), "'" + h_id.getLexeme() + "' no es una variable");
 				type = Type.ERROR;
 			}
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipoFin(node, type);
+	}
+
+	/*
+	 * Expresiones compactas. Ascenso de precedencia sobre los tres niveles:
+	 * tras un operando, cada operador de nivel n toma como operando derecho lo
+	 * que se analice con nivel mínimo n + 1, así que hay una llamada por
+	 * operando y no una por no terminal. Las reglas se registran en el mismo
+	 * orden que en el análisis descendente: al empezar se abren los niveles
+	 * (E -> R E1, R -> U R1, U -> V U1) y un nivel se cierra con su lambda
+	 * cuando llega un operador de menor precedencia o ninguno.
+	 *
+	 * Los tipos son los de E, R y U: opAnd y opSuma se pliegan de izquierda a
+	 * derecha, pero a == b == c es boolean si los tres operandos tienen el
+	 * mismo tipo, así que la cadena de opIgual guarda el tipo del primero y el
+	 * común al resto. Cada nodo binario lleva el tipo de la cadena hasta él.
+	 */
+
+	/**
+	 * Analiza una expresión con operadores de nivel {@code minimo} o mayor
+	 * y deja su raíz en {@link #suelto}.
+	 */
+	private Type expresion(int minimo) {
+		for (int n = minimo; n < NIVELES; n++)
+			reglasAplicadas.add(REGLA_CABEZA[n]);
+		Type type = operandoCompacto();
+		int node = suelto;
+		int nivel = NIVELES - 1; // nivel abierto más interno
+		Type primero = null; // cadena de opIgual: tipo del primer operando
+		Type comun = null; // y tipo común al resto
+		while (true) {
+			int op = nivelOperador(tokens.peekKind());
+			while (nivel >= minimo && nivel > op)
+				reglasAplicadas.add(REGLA_FIN[nivel--]);
+			if (nivel < minimo)
+				break;
+			advance();
+			reglasAplicadas.add(REGLA_OPERADOR[op]);
+			if (op == 1 && primero == null)
+				primero = type;
+			Type rType = expresion(op + 1);
+			switch (op) {
+				case 0:
+					type = (type == Type.BOOLEAN && rType == Type.BOOLEAN) ? Type.BOOLEAN : Type.ERROR;
+					break;
+				case 1:
+					comun = mismoTipo(comun, rType);
+					type = primero == comun && comun != Type.ERROR ? Type.BOOLEAN : Type.ERROR;
+					break;
+				default:
+					type = (type == rType && (rType == Type.ENTERO || rType == Type.REAL)) ? rType : Type.ERROR;
+					break;
+			}
+			int binario = nodo(NINGUNO, ETIQUETA_OPERADOR[op]);
+			colgar(binario, node);
+			colgar(binario, suelto);
+			node = binario;
+			tipo(node, type);
+		}
+		suelto = node;
+		return type;
+	}
+
+	/** @return nivel del operador, o -1 si el token no es un operador. */
+	private static int nivelOperador(TokenKind kind) {
+		for (int n = 0; n < NIVELES; n++) {
+			if (OPERADOR[n] == kind)
+				return n;
+		}
+		return -1;
+	}
+
+	/**
+	 * Operando de una expresión compacta: las producciones de V, con una hoja
+	 * suelta en lugar del nodo V. Deja la hoja en {@link #suelto}.
+	 */
+	private Type operandoCompacto() {
+		int node;
+		Type type;
+		switch (peek().getKind()) {
+			case ID: {
+				advance();
+				Token idTok = previous();
+				reglasAplicadas.add(31);
+				node = nodoId(NINGUNO, idTok);
+				SymbolInfo info = ts.buscar(simbolo(idTok));
+				resolver(node, info);
+				type = V1(node, info, idTok);
+				break;
+			}
+			case PAREN_IZQ:
+				advance();
+				reglasAplicadas.add(32);
+				node = nodo(NINGUNO, "parentesis");
+				type = expresion(0);
+				colgar(node, suelto);
+				expect(TokenKind.PAREN_DCHA, "Falta ')'");
+				break;
+			case ENTERO:
+				advance();
+				reglasAplicadas.add(33);
+				node = literal(NINGUNO, "entero");
+				type = Type.ENTERO;
+				break;
+			case REAL:
+				advance();
+				reglasAplicadas.add(34);
+				node = literal(NINGUNO, "real");
+				type = Type.REAL;
+				break;
+			case CADENA:
+				advance();
+				reglasAplicadas.add(35);
+				node = literal(NINGUNO, "cadena");
+				type = Type.CADENA;
+				break;
+			case TRUE:
+				advance();
+				reglasAplicadas.add(36);
+				node = nodo(NINGUNO, "true");
+				type = Type.BOOLEAN;
+				break;
+			case FALSE:
+				advance();
+				reglasAplicadas.add(37);
+				node = nodo(NINGUNO, "false");
+				type = Type.BOOLEAN;
+				break;
+			default:
+				error(peek(), "Expresión no válida"); // Sintáctico
+				node = nodo(NINGUNO, "V");
+				type = Type.ERROR;
+				break;
+		}
+		suelto = node;
+		return tipo(node, type);
 	}
 
 	// 40: L -> E Q | 41: L -> lambda
-	private ASTNode L() {
-		ASTNode node = new ASTNode("L");
+	private List<Type> L(int padre) {
+		int node = nodo(padre, "L");
 		List<Type> lista = new ArrayList<>();
-		if (checkAny("id", "parenIzq", "entero", "real", "cadena", "true", "false")) {
+		if (checkAny(FIRST_E)) {
 			reglasAplicadas.add(40);
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			ASTNode qNode = Q();
-			node.addChild(qNode);
-
-			lista.add(eNode.getSemanticType());
-			if (qNode.getListaTipos() != null) {
-				lista.addAll(qNode.getListaTipos());
-			}
+			lista.add(E(node));
+			lista.addAll(Q(node));
 		} else {
 			reglasAplicadas.add(41);
 		}
-		node.setListaTipos(lista);
-		return node;
+		return listaTipos(node, lista);
 	}
 
 	// 42: Q -> coma E Q | 43: Q -> lambda
-	private ASTNode Q() {
-		ASTNode node = new ASTNode("Q");
-		List<Type> lista = new ArrayList<>();
-		if (match("coma")) {
+	private List<Type> Q(int padre) {
+		int node = nodo(padre, "Q");
+		Cadena cadena = cadena(node);
+		List<Type> tipos = new ArrayList<>();
+		while (match(TokenKind.COMA)) {
 			reglasAplicadas.add(42);
-			node.addChild(new ASTNode("coma"));
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			ASTNode qNode = Q();
-			node.addChild(qNode);
-
-			lista.add(eNode.getSemanticType());
-			if (qNode.getListaTipos() != null) {
-				lista.addAll(qNode.getListaTipos());
-			}
-		} else {
-			reglasAplicadas.add(43);
+			hoja(node, "coma");
+			tipos.add(E(node));
+			node = siguiente(node, cadena);
 		}
-		node.setListaTipos(lista);
-		return node;
+		reglasAplicadas.add(43);
+
+		// La lista de cada Q es el tramo de tipos desde su argumento al final
+		if (cadena != null) {
+			for (int i = 0; i < cadena.size(); i++)
+				listaTipos(cadena.get(i), tipos.subList(i, tipos.size()));
+		}
+		return tipos;
 	}
 
 	// 44: S -> id S2 | 45: S -> PRwrite E puntoComa | 46: S -> PRread id puntoComa
 	// | 47: S -> S1 puntoComa
-	private ASTNode S() {
-		ASTNode node = new ASTNode("S");
+	private Type S(int padre) {
+		int node = nodo(padre, "S");
 		Type type = Type.ERROR;
-		if (match("id")) {
+		if (match(TokenKind.ID)) {
 			reglasAplicadas.add(44);
 			Token idTok = previous();
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
+			SymbolInfo info = ts.buscar(simbolo(idTok));
+			resolver(hojaId(node, idTok), info);
 
-			Type tipoId = ts.buscarTipo(idTok.getLexeme());
-			Category catId = ts.buscarCategoria(idTok.getLexeme());
-
-			ASTNode s2Node = S2(tipoId, catId, idTok.getLexeme());
-			node.addChild(s2Node);
-			type = s2Node.getSemanticType();
-		} else if (match("PRwrite")) {
+			type = S2(node, info, idTok);
+		} else if (match(TokenKind.PR_WRITE)) {
 			reglasAplicadas.add(45);
-			node.addChild(new ASTNode("PRwrite"));
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			consume("puntoComa", "Se esperaba ';'");
-			if (eNode.getSemanticType() != Type.ERROR) {
+			hoja(node, "PRwrite");
+			Type eType = E(node);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';'");
+			if (eType != Type.ERROR) {
 				type = Type.OK;
 			} else {
 				errorSemantico(previous(), "Error en expresión de 'write'");
 				type = Type.ERROR;
 			}
-		} else if (match("PRread")) {
+		} else if (match(TokenKind.PR_READ)) {
 			reglasAplicadas.add(46);
-			node.addChild(new ASTNode("PRread"));
-			Token idTok = consume("id", "Se esperaba identificador en read");
-			node.addChild(new ASTNode("id(" + idTok.getLexeme() + ")"));
-			consume("puntoComa", "Se esperaba ';'");
-			if (ts.existe(idTok.getLexeme())) {
+			hoja(node, "PRread");
+			Token idTok = consume(TokenKind.ID, "Se esperaba identificador en read");
+			int id = hojaId(node, idTok);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';'");
+			SymbolInfo info = ts.buscar(simbolo(idTok));
+			resolver(id, info);
+			Category categoria = SymbolTable.categoria(info);
+			if (categoria == Category.VARIABLE) {
 				type = Type.OK;
 			} else {
-				errorSemantico(idTok, "Variable '" + idTok.getLexeme() + "' no declarada");
+				errorSemantico(idTok, categoria == null ? "Variable '" + idTok.getLexeme() + "' no declarada"
+						: "'" + idTok.getLexeme() + "' no es una variable");
 				type = Type.ERROR;
 			}
-		} else if (checkAny("PRreturn")) {
+		} else if (check(TokenKind.PR_RETURN)) {
 			reglasAplicadas.add(47);
-			ASTNode s1Node = S1();
-			node.addChild(s1Node);
-			consume("puntoComa", "Se esperaba ';' tras return");
-			type = s1Node.getSemanticType();
+			type = S1(node);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';' tras return");
+			// El return final de una función (F2) lo comprueba F
+			if (funcionActual != null && type != retornoActual)
+				errorSemantico(previous(), "Retorno incorrecto en funcion " + funcionActual.getLexeme());
+			else if (funcionActual == null && type == Type.ERROR)
+				errorSemantico(previous(), "Error en expresión de 'return'");
 		} else {
 			error(peek(), "Sentencia no válida"); // Sintáctico
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipoFin(node, type);
 	}
 
 	// 48: S1 -> PRreturn X
-	private ASTNode S1() {
+	private Type S1(int padre) {
 		reglasAplicadas.add(48);
-		ASTNode node = new ASTNode("S1");
-		consume("PRreturn", "Se esperaba 'return'");
-		node.addChild(new ASTNode("PRreturn"));
-		ASTNode xNode = X();
-		node.addChild(xNode);
-		node.setSemanticType(xNode.getSemanticType());
-		return node;
+		int node = nodo(padre, "S1");
+		expect(TokenKind.PR_RETURN, "Se esperaba 'return'");
+		hoja(node, "PRreturn");
+		return tipo(node, X(node));
 	}
 
 	// 49: S2 -> W E puntoComa | 50: S2 -> parenIzq L parenDcha puntoComa
-	private ASTNode S2(Type h_tipoBase, Category h_categoria, String h_lexema) {
-		ASTNode node = new ASTNode("S2");
+	private Type S2(int padre, SymbolInfo h_simbolo, Token h_id) {
+		Type h_tipoBase = SymbolTable.tipo(h_simbolo);
+		Category h_categoria = SymbolTable.categoria(h_simbolo);
+		int node = nodo(padre, "S2");
 		Type type = Type.ERROR;
-		if (checkAny("igual", "asigDiv")) {
+		if (checkAny(FIRST_W)) {
 			reglasAplicadas.add(49);
-			node.addChild(W());
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			consume("puntoComa", "Se esperaba ';'");
+			boolean div = W(node);
+			Type eType = E(node);
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';'");
 
 			if (h_categoria == Category.VARIABLE) {
-				if (h_tipoBase == eNode.getSemanticType()) {
-					type = Type.OK;
-				} else {
-					errorSemantico(previous(),
-							"Tipos incompatibles en asignación: " + h_tipoBase + " y " + eNode.getSemanticType());
+				if (h_tipoBase != eType) {
+					errorSemantico(previous(), "Tipos incompatibles en asignación: " + h_tipoBase + " y " + eType);
 					type = Type.ERROR;
+				} else if (div && h_tipoBase != Type.ENTERO && h_tipoBase != Type.REAL) {
+					errorSemantico(previous(), "'/=' no admite el tipo " + h_tipoBase);
+					type = Type.ERROR;
+				} else {
+					type = Type.OK;
 				}
 			} else {
-				errorSemantico(previous(), "'" + h_lexema + "' no es una variable");
+				errorSemantico(previous(), "'" + h_id.getLexeme() + "' no es una variable");
 				type = Type.ERROR;
 			}
-		} else if (match("parenIzq")) {
+		} else if (match(TokenKind.PAREN_IZQ)) {
 			reglasAplicadas.add(50);
-			node.addChild(new ASTNode("parenIzq"));
-			ASTNode lNode = L();
-			node.addChild(lNode);
-			consume("parenDcha", "Se esperaba ')'");
-			consume("puntoComa", "Se esperaba ';'");
+			hoja(node, "parenIzq");
+			List<Type> args = L(node);
+			expect(TokenKind.PAREN_DCHA, "Se esperaba ')'");
+			expect(TokenKind.PUNTO_COMA, "Se esperaba ';'");
 
 			if (h_categoria == Category.FUNCION) {
-				List<Type> params = ts.buscarParams(h_lexema);
-				if (params != null && params.equals(lNode.getListaTipos())) {
+				List<Type> params = SymbolTable.params(h_simbolo);
+				if (params != null && params.equals(args)) {
 					type = Type.OK;
 				} else {
-					errorSemantico(previous(), "Parámetros incorrectos en llamada a función '" + h_lexema + "'");
+					errorSemantico(previous(), "Parámetros incorrectos en llamada a función '" + h_id.getLexeme() + "'");
 					type = Type.ERROR;
 				}
 			} else {
-				errorSemantico(previous(), "'" + h_lexema + "' no es una función");
+				errorSemantico(previous(), "'" + h_id.getLexeme() + "' no es una función");
 				type = Type.ERROR;
 			}
 		} else {
 			error(peek(), "Se esperaba asignación o llamada"); // Sintáctico
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipoFin(node, type);
 	}
 
 	// 51: W -> igual | 52: W -> asigDiv
-	private ASTNode W() {
-		ASTNode node = new ASTNode("W");
-		if (match("igual")) {
+	// Devuelve true si es '/='
+	private boolean W(int padre) {
+		int node = nodo(padre, "W");
+		if (match(TokenKind.IGUAL)) {
 			reglasAplicadas.add(51);
-			node.addChild(new ASTNode("igual"));
-		} else if (match("asigDiv")) {
+			hoja(node, "igual");
+		} else if (match(TokenKind.ASIG_DIV)) {
 			reglasAplicadas.add(52);
-			node.addChild(new ASTNode("asigDiv"));
+			hoja(node, "asigDiv");
+			return true;
 		} else {
 			error(peek(), "Se esperaba '=' o '/='");
 		}
-		return node;
+		return false;
 	}
 
 	// 53: X -> E | 54: X -> lambda
-	private ASTNode X() {
-		ASTNode node = new ASTNode("X");
+	private Type X(int padre) {
+		int node = nodo(padre, "X");
 		Type type;
-		if (checkAny("id", "parenIzq", "entero", "real", "cadena", "true", "false")) {
+		if (checkAny(FIRST_E)) {
 			reglasAplicadas.add(53);
-			ASTNode eNode = E();
-			node.addChild(eNode);
-			type = eNode.getSemanticType();
+			type = E(node);
 		} else {
 			reglasAplicadas.add(54);
 			type = Type.VOID;
 		}
-		node.setSemanticType(type);
-		return node;
+		return tipo(node, type);
 	}
 
 	// 55: C -> B C | 56: C -> lambda
-	private ASTNode C() {
-		ASTNode node = new ASTNode("C");
-		Type type;
-		if (checkAny("PRlet", "PRif", "PRfor", "id", "PRwrite", "PRread")) {
+	private Type C(int padre) {
+		int node = nodo(padre, "C");
+		Cadena cadena = cadena(node);
+		boolean ok = true;
+		while (checkAny(FIRST_C)) {
 			reglasAplicadas.add(55);
-			ASTNode bNode = B();
-			node.addChild(bNode);
-			ASTNode cNode = C();
-			node.addChild(cNode);
-			type = (bNode.getSemanticType() == Type.OK && cNode.getSemanticType() == Type.OK) ? Type.OK : Type.ERROR;
+			ok &= B(node) == Type.OK;
+			node = siguiente(node, cadena);
+		}
+		reglasAplicadas.add(56);
+		tiposSecuencia(cadena);
+		return ok ? Type.OK : Type.ERROR;
+	}
+
+	/*
+	 * Construcción del árbol. Sin árbol (modo validación) todos los nodos son
+	 * NINGUNO y estos métodos no hacen nada, así que las etiquetas como
+	 * "id(lexema)" ni siquiera se forman.
+	 */
+
+	/**
+	 * @return nodo nuevo colgado de {@code padre} (o suelto si es NINGUNO), o
+	 *         NINGUNO en modo validación.
+	 */
+	private int nodo(int padre, String label) {
+		if (arena != null)
+			return arena.add(padre, arena.kind(label));
+		if (nodos == null)
+			return NINGUNO;
+		ASTNode node = new ASTNode(label);
+		if (padre != NINGUNO)
+			nodos.get(padre).addChild(node);
+		nodos.add(node);
+		return nodos.size() - 1;
+	}
+
+	/** Cuelga de {@code node} una hoja para un terminal. */
+	private void hoja(int node, String label) {
+		if (node == NINGUNO)
+			return;
+		if (arena != null)
+			arena.add(node, arena.kind(label));
+		else
+			nodos.get(node).addChild(new ASTNode(label));
+	}
+
+	/**
+	 * Crea la hoja de un literal entero, real o cadena; en el árbol de objetos
+	 * lleva el lexema del token recién consumido.
+	 */
+	private int literal(int padre, String label) {
+		if (arena != null)
+			return arena.add(padre, arena.kind(label));
+		if (nodos == null)
+			return NINGUNO;
+		ASTNode node = new ASTNode(label);
+		node.setLexema(previous().getLexeme());
+		if (padre != NINGUNO)
+			nodos.get(padre).addChild(node);
+		nodos.add(node);
+		return nodos.size() - 1;
+	}
+
+	/**
+	 * Cuelga de {@code node} la hoja de un identificador.
+	 *
+	 * @return la hoja, o NINGUNO si no hay nodo
+	 */
+	private int hojaId(int node, Token id) {
+		return node != NINGUNO ? nodoId(node, id) : NINGUNO;
+	}
+
+	/**
+	 * Anota en la hoja de id el símbolo que declara o al que se refiere (ver
+	 * {@link ASTNode#getSimbolo()}). Solo con análisis semántico y en el árbol
+	 * de objetos; sin él, lo anota el {@link SemanticAnalyzer}.
+	 */
+	private void resolver(int hoja, SymbolInfo info) {
+		if (semantica && nodos != null && hoja != NINGUNO && info != null)
+			nodos.get(hoja).setSimbolo(info.simbolo);
+	}
+
+	/**
+	 * @return hoja nueva de un identificador, colgada de {@code padre} o suelta
+	 *         si es NINGUNO; NINGUNO en modo validación.
+	 */
+	private int nodoId(int padre, Token id) {
+		if (arena != null)
+			return arena.addId(padre, id);
+		if (nodos == null)
+			return NINGUNO;
+		ASTNode node = new ASTNode("id(" + id.getLexeme() + ")");
+		node.setLinea(id.getLine());
+		node.setClave(simbolo(id));
+		if (padre != NINGUNO)
+			nodos.get(padre).addChild(node);
+		nodos.add(node);
+		return nodos.size() - 1;
+	}
+
+	/** Cuelga como último hijo de {@code padre} un nodo suelto. */
+	private void colgar(int padre, int hijo) {
+		if (padre == NINGUNO || hijo == NINGUNO)
+			return;
+		if (arena != null)
+			arena.addChild(padre, hijo);
+		else
+			nodos.get(padre).addChild(nodos.get(hijo));
+	}
+
+	/** Anota el tipo en el nodo, si lo hay, y lo devuelve. */
+	private Type tipo(int node, Type type) {
+		if (node == NINGUNO)
+			return type;
+		if (arena != null)
+			arena.setSemanticType(node, type);
+		else
+			nodos.get(node).setSemanticType(type);
+		return type;
+	}
+
+	/**
+	 * Como {@link #tipo}, y además anota en el nodo la línea del último token
+	 * analizado (solo en el árbol de objetos).
+	 */
+	private Type tipoFin(int node, Type type) {
+		if (nodos != null && node != NINGUNO)
+			nodos.get(node).setLinea(previous().getLine());
+		return tipo(node, type);
+	}
+
+	/** Anota la lista de tipos en el nodo, si lo hay, y la devuelve. */
+	private List<Type> listaTipos(int node, List<Type> lista) {
+		if (node == NINGUNO)
+			return lista;
+		if (arena != null)
+			arena.setListaTipos(node, lista);
+		else
+			nodos.get(node).setListaTipos(lista);
+		return lista;
+	}
+
+	/** @return tipo del hijo {@code n} (desde 0) de un nodo que lo tiene. */
+	private Type tipoHijo(int node, int n) {
+		if (arena == null)
+			return nodos.get(node).getChildren().get(n).getSemanticType();
+		int child = arena.firstChild(node);
+		for (int i = 0; i < n; i++)
+			child = arena.nextSibling(child);
+		return arena.getSemanticType(child);
+	}
+
+	/** @return si un nodo que existe tiene hijos. */
+	private boolean tieneHijos(int node) {
+		return arena != null ? arena.firstChild(node) != NINGUNO : !nodos.get(node).getChildren().isEmpty();
+	}
+
+	/*
+	 * Las producciones recursivas por la derecha (P, C, K, Q, E1, R1, U1) se
+	 * analizan con un bucle en lugar de una llamada por elemento, para que la
+	 * longitud de una lista no dependa del tamaño de la pila. Cada vuelta
+	 * cuelga el nodo siguiente como último hijo del actual, así que el árbol
+	 * es el mismo que con la recursión. El atributo de la cabeza se pliega
+	 * durante el bucle; los de los nodos siguientes, si hay árbol, se calculan
+	 * después desde la cola, en el orden en que volverían las llamadas.
+	 */
+
+	/** Nodos de una lista, desde la cabeza. */
+	private static final class Cadena {
+		private int[] nodos = new int[8];
+		private int size = 0;
+
+		void add(int node) {
+			if (size == nodos.length)
+				nodos = Arrays.copyOf(nodos, size * 2);
+			nodos[size++] = node;
+		}
+
+		int get(int i) {
+			return nodos[i];
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	/** @return cadena con el primer nodo de una lista, o null sin árbol. */
+	private static Cadena cadena(int head) {
+		if (head == NINGUNO)
+			return null;
+		Cadena cadena = new Cadena();
+		cadena.add(head);
+		return cadena;
+	}
+
+	/** Cuelga de {@code node} su continuación en la lista y la devuelve. */
+	private int siguiente(int node, Cadena cadena) {
+		if (node == NINGUNO)
+			return NINGUNO;
+		int next;
+		if (arena != null) {
+			next = arena.add(node, arena.kind(node));
 		} else {
-			reglasAplicadas.add(56);
-			type = Type.OK;
+			ASTNode nuevo = new ASTNode(nodos.get(node).getLabel());
+			nodos.get(node).addChild(nuevo);
+			nodos.add(nuevo);
+			next = nodos.size() - 1;
+		}
+		cadena.add(next);
+		return next;
+	}
+
+	/** Tipo del operando (segundo hijo) de un nodo E1, R1 o U1 no vacío. */
+	private Type operando(int node) {
+		return tipoHijo(node, 1);
+	}
+
+	/**
+	 * Pliega un operando más de R1 o U1: el tipo común mientras todos
+	 * coincidan y error en cuanto uno difiera.
+	 */
+	private static Type mismoTipo(Type acumulado, Type operando) {
+		return acumulado == null || acumulado == operando ? operando : Type.ERROR;
+	}
+
+	/**
+	 * Tipos de una lista P o C: cada nodo es ok si su elemento y el resto de
+	 * la lista lo son; el nodo lambda final es ok.
+	 */
+	private void tiposSecuencia(Cadena cadena) {
+		if (cadena == null)
+			return;
+		Type resto = Type.OK;
+		for (int i = cadena.size() - 1; i >= 0; i--) {
+			int node = cadena.get(i);
+			if (tieneHijos(node))
+				resto = (tipoHijo(node, 0) == Type.OK && resto == Type.OK) ? Type.OK : Type.ERROR;
+			tipo(node, resto);
 		}
-		node.setSemanticType(type);
-		return node;
 	}
 
 	public String getErrores() {
@@ -776,49 +1508,70 @@ public class Parser {
 		return errorManager.hayErrores();
 	}
 
-	private boolean match(String... types) {
-		for (String type : types) {
-			if (checkAny(type)) {
-				advance();
-				return true;
-			}
+	private boolean match(TokenKind kind) {
+		if (check(kind)) {
+			advance();
+			return true;
 		}
 		return false;
 	}
 
-	private boolean checkAny(String... types) {
-		if (isAtEnd())
-			return false;
-		String currentType = peek().getType();
-		for (String type : types) {
-			if (currentType.equals(type)) {
-				return true;
-			}
-		}
-		return false;
+	private boolean check(TokenKind kind) {
+		return tokens.peekKind() == kind;
 	}
 
-	private Token advance() {
-		if (!isAtEnd())
-			current++;
-		return previous();
+	/** Comprueba el token actual contra un conjunto FIRST en forma de bits. */
+	private boolean checkAny(long first) {
+		return tokens.peekKind().in(first);
+	}
+
+	private void advance() {
+		if (!isAtEnd()) {
+			tokens.skip();
+			posicion++;
+		}
 	}
 
 	private boolean isAtEnd() {
-		return "finFich".equals(peek().getType());
+		return tokens.peekKind() == TokenKind.FIN_FICH;
 	}
 
 	private Token peek() {
-		return tokens.get(current);
+		return tokens.peek(0);
 	}
 
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.previous();
+	}
+
+	/**
+	 * @return clave del token en la tabla de símbolos: el id del {@link Interner}
+	 *         si es un identificador o, si la recuperación de errores ha dejado
+	 *         otro token en su lugar, una clave negativa propia de su lexema.
+	 */
+	private int simbolo(Token token) {
+		if (token.getSymbolIndex() != 0)
+			return token.getSymbolIndex();
+		synchronized (clavesSinId) {
+			return clavesSinId.computeIfAbsent(token.getLexeme(), key -> -(clavesSinId.size() + 1));
+		}
 	}
 
-	private Token consume(String type, String message) {
-		if (checkAny(type))
-			return advance();
+	/** Consume un token del tipo esperado y lo devuelve (para ids). */
+	private Token consume(TokenKind kind, String message) {
+		expect(kind, message);
+		return previous();
+	}
+
+	/**
+	 * Consume un token del tipo esperado; si no está, informa del error e
+	 * intenta recuperarse.
+	 */
+	private void expect(TokenKind kind, String message) {
+		if (check(kind)) {
+			advance();
+			return;
+		}
 
 		error(peek(), message);
 
@@ -827,11 +1580,11 @@ public class Parser {
 		// actual.
 		// Asumimos que el ';' falta y dejamos el '}' para que lo consuma la regla
 		// superior (cierre de bloque).
-		if (type.equals("puntoComa") && (checkAny("llaveDcha") || isAtEnd())) {
-			return peek(); // Devolvemos el token actual sin avanzar
+		if (kind == TokenKind.PUNTO_COMA && (check(TokenKind.LLAVE_DCHA) || isAtEnd())) {
+			return; // No avanzamos
 		}
 
-		return advance(); // Comportamiento por defecto: consumir para intentar avanzar
+		advance(); // Comportamiento por defecto: consumir para intentar avanzar
 	}
 
 	// Error genérico (usado principalmente para sintácticos en consume)
@@ -839,7 +1592,18 @@ public class Parser {
 		errorManager.agregarError("SINTÁCTICO", token.getLine(), message);
 	}
 
+	// Errores de tipos en los usos de id, que se informan como sintácticos
+	private void errorTipos(Token token, String message) {
+		if (semantica) {
+			erroresSemanticos++;
+			error(token, message);
+		}
+	}
+
 	private void errorSemantico(Token token, String message) {
+		if (!semantica)
+			return;
+		erroresSemanticos++;
 		errorManager.agregarError("SEMÁNTICO", token.getLine(), message);
 	}
 
@@ -0,0 +1,93 @@
+package analizador;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import analizador.ThreeAddressCode.Procedimiento;
+
+/**
+ * Ejecuta una secuencia de pasadas de optimización sobre un
+ * {@link ThreeAddressCode}, en rondas hasta que ninguna cambia nada (como
+ * mucho {@link #MAX_RONDAS}), porque lo que hace una abre oportunidades a
+ * las otras: la propagación de copias deja constantes que plegar y el
+ * plegado deja copias y saltos que eliminar.
+ *
+ * Tras cada pasada el código se vuelca a out/ir_N_pasada.txt (N es la
+ * posición de la pasada; la última ronda sobrescribe las anteriores) y el
+ * informe con las instrucciones antes y después de cada pasada queda en
+ * out/ir_informe.txt. El código sin optimizar está en out/ir_0_inicial.txt.
+ */
+public final class PassManager {
+
+	/** Pasada sobre el código de un procedimiento. */
+	public interface Pass {
+		String nombre();
+
+		/** @return true si ha cambiado el código de {@code p} */
+		boolean ejecutar(Procedimiento p);
+	}
+
+	public static final int MAX_RONDAS = 8;
+
+	private final List<Pass> pasadas;
+
+	public PassManager(List<Pass> pasadas) {
+		this.pasadas = List.copyOf(pasadas);
+	}
+
+	/** Plegado de constantes, propagación de copias, subexpresiones comunes y código muerto. */
+	public static PassManager estandar() {
+		return new PassManager(List.of(new IRPasses.PlegadoConstantes(), new IRPasses.PropagacionCopias(),
+				new IRPasses.SubexpresionesComunes(), new IRPasses.EliminacionCodigoMuerto()));
+	}
+
+	/**
+	 * Optimiza {@code codigo} en el sitio.
+	 *
+	 * @param outDir directorio de los volcados y el informe; null para no escribir nada
+	 * @return líneas del informe: instrucciones antes y después de cada pasada y en total
+	 */
+	public List<String> optimizar(ThreeAddressCode codigo, Path outDir) throws IOException {
+		List<String> informe = new ArrayList<>();
+		int inicial = codigo.instrucciones();
+		volcar(codigo, outDir, "ir_0_inicial.txt");
+		boolean cambios = true;
+		int ronda = 0;
+		while (cambios && ronda < MAX_RONDAS) {
+			cambios = false;
+			ronda++;
+			for (int i = 0; i < pasadas.size(); i++) {
+				Pass pasada = pasadas.get(i);
+				int antes = codigo.instrucciones();
+				for (Procedimiento p : codigo.procedimientos)
+					cambios |= pasada.ejecutar(p);
+				informe.add("ronda " + ronda + ", " + pasada.nombre() + ": " + antes + " -> "
+						+ codigo.instrucciones() + " instrucciones");
+				volcar(codigo, outDir, "ir_" + (i + 1) + "_" + fichero(pasada.nombre()) + ".txt");
+			}
+		}
+		informe.add("total: " + inicial + " -> " + codigo.instrucciones() + " instrucciones en " + ronda
+				+ (ronda == 1 ? " ronda" : " rondas"));
+		if (outDir != null)
+			Files.write(outDir.resolve("ir_informe.txt"), informe);
+		return informe;
+	}
+
+	private static void volcar(ThreeAddressCode codigo, Path outDir, String nombre) throws IOException {
+		if (outDir == null)
+			return;
+		try (BufferedWriter writer = Files.newBufferedWriter(outDir.resolve(nombre))) {
+			codigo.writeTo(writer);
+		}
+	}
+
+	/** "propagación de copias" -> "propagacion_de_copias" */
+	private static String fichero(String nombre) {
+		String sinTildes = Normalizer.normalize(nombre, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+		return sinTildes.replace(' ', '_');
+	}
+}
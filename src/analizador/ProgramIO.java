@@ -0,0 +1,75 @@
+package analizador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * {@code write} y {@code read} de los programas ejecutados, común a la
+ * {@link VirtualMachine} y a las clases de {@link JvmCompiler}, que lo llaman
+ * desde su propio ClassLoader (por eso es público).
+ *
+ * {@code write} escribe el valor y un salto de línea; {@code read} vacía antes
+ * la salida y lee una línea entera. Una línea que no es del tipo pedido o el
+ * final de la entrada lanzan IllegalStateException.
+ */
+public final class ProgramIO {
+	private ProgramIO() {
+	}
+
+	public static void escribir(Writer salida, int valor) throws IOException {
+		escribir(salida, Integer.toString(valor));
+	}
+
+	public static void escribir(Writer salida, float valor) throws IOException {
+		escribir(salida, Float.toString(valor));
+	}
+
+	public static void escribir(Writer salida, boolean valor) throws IOException {
+		escribir(salida, valor ? "true" : "false");
+	}
+
+	public static void escribir(Writer salida, String valor) throws IOException {
+		salida.write(valor);
+		salida.write('\n');
+	}
+
+	public static String leerCadena(BufferedReader entrada, Writer salida) throws IOException {
+		return leer(entrada, salida, "string");
+	}
+
+	public static int leerEntero(BufferedReader entrada, Writer salida) throws IOException {
+		String linea = leer(entrada, salida, "int").trim();
+		try {
+			return Short.parseShort(linea);
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException("'read' esperaba un int (de -32768 a 32767) y leyó '" + linea + "'");
+		}
+	}
+
+	public static float leerReal(BufferedReader entrada, Writer salida) throws IOException {
+		String linea = leer(entrada, salida, "float").trim();
+		try {
+			return Float.parseFloat(linea);
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException("'read' esperaba un float y leyó '" + linea + "'");
+		}
+	}
+
+	public static boolean leerBooleano(BufferedReader entrada, Writer salida) throws IOException {
+		String linea = leer(entrada, salida, "boolean").trim();
+		if (linea.equals("true"))
+			return true;
+		if (linea.equals("false"))
+			return false;
+		throw new IllegalStateException("'read' esperaba un boolean y leyó '" + linea + "'");
+	}
+
+	private static String leer(BufferedReader entrada, Writer salida, String tipo) throws IOException {
+		salida.flush();
+		String linea = entrada.readLine();
+		if (linea == null)
+			throw new IllegalStateException("'read' de un " + tipo + " sin más datos en la entrada");
+		return linea;
+	}
+}
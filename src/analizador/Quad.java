@@ -0,0 +1,195 @@
+package analizador;
+
+import java.util.Objects;
+import analizador.SymbolTable.Type;
+
+/**
+ * Instrucción del código de tres direcciones ({@link ThreeAddressCode}): una
+ * operación con hasta dos operandos y un resultado, una etiqueta o un salto.
+ * Es inmutable; las pasadas de optimización la sustituyen por otra.
+ */
+public final class Quad {
+
+	public enum Op {
+		COPIA, // res = a
+		SUMA, // res = a + b
+		DIVISION, // res = a / b
+		IGUAL, // res = a == b
+		Y, // res = a && b, con los dos ya evaluados
+		ETIQUETA, // etiqueta:
+		SALTO, // goto etiqueta
+		SI_FALSO, // if_false a goto etiqueta
+		PARAM, // param a
+		LLAMADA, // res = call etiqueta, n; sin res si el valor se descarta
+		RETORNO, // return a
+		ESCRIBIR, // write a
+		LEER, // read res
+		FIN // fin del programa
+	}
+
+	/** Temporal, variable o constante, con su tipo. */
+	public static final class Operando {
+		public enum Clase {
+			TEMPORAL, VARIABLE, CONSTANTE
+		}
+
+		public final Clase clase;
+		public final Type tipo;
+		public final String nombre; // temporales y variables
+		public final boolean global; // variables
+		public final Object valor; // constantes: Integer, Float, Boolean o String
+
+		private Operando(Clase clase, Type tipo, String nombre, boolean global, Object valor) {
+			this.clase = clase;
+			this.tipo = tipo;
+			this.nombre = nombre;
+			this.global = global;
+			this.valor = valor;
+		}
+
+		static Operando temporal(int n, Type tipo) {
+			return new Operando(Clase.TEMPORAL, tipo, "t" + n, false, null);
+		}
+
+		static Operando variable(String nombre, Type tipo, boolean global) {
+			return new Operando(Clase.VARIABLE, tipo, nombre, global, null);
+		}
+
+		static Operando constante(Type tipo, Object valor) {
+			return new Operando(Clase.CONSTANTE, tipo, null, false, valor);
+		}
+
+		public boolean esConstante() {
+			return clase == Clase.CONSTANTE;
+		}
+
+		/** @return true si es una variable global, que una llamada puede cambiar. */
+		public boolean esGlobal() {
+			return clase == Clase.VARIABLE && global;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Operando))
+				return false;
+			Operando otro = (Operando) o;
+			return clase == otro.clase && tipo == otro.tipo && global == otro.global
+					&& Objects.equals(nombre, otro.nombre) && Objects.equals(valor, otro.valor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(clase, nombre, valor);
+		}
+
+		@Override
+		public String toString() {
+			if (clase != Clase.CONSTANTE)
+				return nombre;
+			return tipo == Type.CADENA ? "'" + valor + "'" : String.valueOf(valor);
+		}
+	}
+
+	public final Op op;
+	public final Operando a;
+	public final Operando b;
+	public final Operando res;
+	public final String etiqueta; // etiquetas, saltos y nombre de la función llamada
+	public final int args; // llamadas
+
+	private Quad(Op op, Operando a, Operando b, Operando res, String etiqueta, int args) {
+		this.op = op;
+		this.a = a;
+		this.b = b;
+		this.res = res;
+		this.etiqueta = etiqueta;
+		this.args = args;
+	}
+
+	/** COPIA, SUMA, DIVISION, IGUAL o Y. */
+	static Quad operacion(Op op, Operando res, Operando a, Operando b) {
+		return new Quad(op, a, b, res, null, 0);
+	}
+
+	static Quad copia(Operando res, Operando a) {
+		return new Quad(Op.COPIA, a, null, res, null, 0);
+	}
+
+	static Quad etiqueta(String etiqueta) {
+		return new Quad(Op.ETIQUETA, null, null, null, etiqueta, 0);
+	}
+
+	static Quad salto(String etiqueta) {
+		return new Quad(Op.SALTO, null, null, null, etiqueta, 0);
+	}
+
+	static Quad siFalso(Operando a, String etiqueta) {
+		return new Quad(Op.SI_FALSO, a, null, null, etiqueta, 0);
+	}
+
+	static Quad llamada(Operando res, String funcion, int args) {
+		return new Quad(Op.LLAMADA, null, null, res, funcion, args);
+	}
+
+	/** PARAM, RETORNO o ESCRIBIR de {@code a}. */
+	static Quad uso(Op op, Operando a) {
+		return new Quad(op, a, null, null, null, 0);
+	}
+
+	static Quad leer(Operando res) {
+		return new Quad(Op.LEER, null, null, res, null, 0);
+	}
+
+	static Quad fin() {
+		return new Quad(Op.FIN, null, null, null, null, 0);
+	}
+
+	/** @return la misma instrucción con otros operandos. */
+	Quad conOperandos(Operando a, Operando b) {
+		return new Quad(op, a, b, res, etiqueta, args);
+	}
+
+	/** @return la misma instrucción con otro resultado. */
+	Quad conResultado(Operando res) {
+		return new Quad(op, a, b, res, etiqueta, args);
+	}
+
+	/** @return true si es una operación sobre a y b que solo asigna res. */
+	boolean esOperacion() {
+		return op.ordinal() <= Op.Y.ordinal();
+	}
+
+	@Override
+	public String toString() {
+		switch (op) {
+			case COPIA:
+				return res + " = " + a;
+			case SUMA:
+				return res + " = " + a + " + " + b;
+			case DIVISION:
+				return res + " = " + a + " / " + b;
+			case IGUAL:
+				return res + " = " + a + " == " + b;
+			case Y:
+				return res + " = " + a + " && " + b;
+			case ETIQUETA:
+				return etiqueta + ":";
+			case SALTO:
+				return "goto " + etiqueta;
+			case SI_FALSO:
+				return "if_false " + a + " goto " + etiqueta;
+			case PARAM:
+				return "param " + a;
+			case LLAMADA:
+				return (res != null ? res + " = " : "") + "call " + etiqueta + ", " + args;
+			case RETORNO:
+				return "return " + a;
+			case ESCRIBIR:
+				return "write " + a;
+			case LEER:
+				return "read " + res;
+			default:
+				return "fin";
+		}
+	}
+}
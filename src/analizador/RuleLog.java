@@ -0,0 +1,248 @@
+package analizador;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Secuencia de reglas aplicadas por el análisis sintáctico (el contenido de
+ * parse.txt) guardada en un array de enteros que crece, sin objetos por regla.
+ *
+ * Con un {@link Writer} de destino el registro no se guarda entero: cada vez
+ * que se llena el bloque se vuelca en formato texto y se reutiliza, así que la
+ * memoria no depende del tamaño del programa; por eso en ese modo no se puede
+ * consultar ni copiar (lanza IllegalStateException). Sin destino se conserva
+ * todo y puede escribirse al final en texto o en el formato binario de
+ * {@link #writeBinary(OutputStream)}.
+ */
+public final class RuleLog {
+	/** Prefijo de parse.txt que indica a VASt un análisis descendente. */
+	private static final String PREFIX = "descendente";
+	/** Cabecera del formato binario. */
+	private static final byte[] MAGIC = { 'P', 'R', 'S', '1' };
+	private static final int BLOCK = 8192;
+	/** Texto " n" de las reglas pequeñas, para no formatear cada número. */
+	private static final String[] TEXT = new String[128];
+
+	static {
+		for (int i = 0; i < TEXT.length; i++)
+			TEXT[i] = " " + i;
+	}
+
+	private final Writer sink;
+	private int[] rules;
+	private int size = 0;
+	private boolean started = false; // ya se ha escrito el prefijo en sink
+
+	/** Registro en memoria. */
+	public RuleLog() {
+		this.sink = null;
+		this.rules = new int[1024];
+	}
+
+	/**
+	 * Registro que se vuelca en formato texto sobre {@code sink} a medida que
+	 * crece; hay que llamar a {@link #finish()} al terminar el análisis.
+	 */
+	public RuleLog(Writer sink) {
+		this.sink = sink;
+		this.rules = new int[BLOCK];
+	}
+
+	/**
+	 * Añade una regla.
+	 *
+	 * @throws UncheckedIOException si falla la escritura en el destino.
+	 */
+	public void add(int rule) {
+		if (size == rules.length) {
+			if (sink != null)
+				flush();
+			else
+				rules = Arrays.copyOf(rules, size * 2);
+		}
+		rules[size++] = rule;
+	}
+
+	/**
+	 * Añade, en orden, las reglas guardadas en {@code otro}.
+	 *
+	 * @throws IllegalStateException si {@code otro} se vuelca a un destino.
+	 */
+	public void addAll(RuleLog otro) {
+		otro.enMemoria();
+		for (int i = 0; i < otro.size; i++)
+			add(otro.rules[i]);
+	}
+
+	/**
+	 * @return número de reglas registradas.
+	 * @throws IllegalStateException si el registro se vuelca a un destino.
+	 */
+	public int size() {
+		enMemoria();
+		return size;
+	}
+
+	/**
+	 * @return regla en la posición indicada.
+	 * @throws IllegalStateException     si el registro se vuelca a un destino.
+	 * @throws IndexOutOfBoundsException si no hay regla en esa posición.
+	 */
+	public int get(int index) {
+		enMemoria();
+		return rules[Objects.checkIndex(index, size)];
+	}
+
+	// Con destino solo queda en memoria el último bloque sin volcar
+	private void enMemoria() {
+		if (sink != null)
+			throw new IllegalStateException("El registro de reglas se vuelca a un destino y no se guarda entero");
+	}
+
+	/**
+	 * Escribe lo que quede pendiente en el destino (o el prefijo si no se ha
+	 * registrado ninguna regla) y lo vacía.
+	 */
+	public void finish() throws IOException {
+		if (sink == null)
+			return;
+		try {
+			flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		sink.flush();
+	}
+
+	private void flush() {
+		try {
+			if (!started) {
+				sink.write(PREFIX);
+				started = true;
+			}
+			writeRules(sink);
+			size = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Escribe el registro completo en el formato de parse.txt.
+	 *
+	 * @throws IllegalStateException si el registro se vuelca a un destino.
+	 */
+	public void writeTo(Writer out) throws IOException {
+		enMemoria();
+		out.write(PREFIX);
+		writeRules(out);
+	}
+
+	private void writeRules(Writer out) throws IOException {
+		for (int i = 0; i < size; i++) {
+			int rule = rules[i];
+			out.write(rule < TEXT.length ? TEXT[rule] : " " + rule);
+		}
+	}
+
+	/**
+	 * @return registro en el formato de parse.txt.
+	 * @throws IllegalStateException si el registro se vuelca a un destino.
+	 */
+	@Override
+	public String toString() {
+		enMemoria();
+		StringBuilder sb = new StringBuilder(PREFIX.length() + 3 * size).append(PREFIX);
+		for (int i = 0; i < size; i++)
+			sb.append(' ').append(rules[i]);
+		return sb.toString();
+	}
+
+	/**
+	 * Escribe el registro en binario: la cabecera "PRS1", el número de
+	 * reglas y después rachas de reglas iguales. Todos los enteros son varint
+	 * (7 bits por byte, el bit alto indica que sigue otro). Cada racha es
+	 * {@code regla << 1} si es de una sola regla, o {@code regla << 1 | 1}
+	 * seguido de su longitud; así una regla suelta ocupa un byte. Conviene
+	 * pasar un flujo con búfer.
+	 *
+	 * @throws IllegalStateException si el registro se vuelca a un destino.
+	 */
+	public void writeBinary(OutputStream out) throws IOException {
+		enMemoria();
+		out.write(MAGIC);
+		writeVarint(out, size);
+		int i = 0;
+		while (i < size) {
+			int rule = rules[i];
+			int run = 1;
+			while (i + run < size && rules[i + run] == rule)
+				run++;
+			if (run == 1) {
+				writeVarint(out, rule << 1);
+			} else {
+				writeVarint(out, rule << 1 | 1);
+				writeVarint(out, run);
+			}
+			i += run;
+		}
+	}
+
+	/**
+	 * Lee un registro escrito con {@link #writeBinary(OutputStream)}. El
+	 * número de reglas de la cabecera no se usa para reservar memoria: el
+	 * array crece a medida que se leen las rachas, así que un fichero truncado
+	 * o con una cabecera falsa no reserva más de lo que realmente contiene.
+	 *
+	 * @throws IOException si el contenido no tiene ese formato.
+	 */
+	public static RuleLog readBinary(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		byte[] magic = new byte[MAGIC.length];
+		data.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException("No es un registro de reglas binario");
+		int count = readVarint(data);
+		if (count < 0)
+			throw new IOException("Número de reglas no válido");
+		RuleLog log = new RuleLog();
+		while (log.size < count) {
+			int head = readVarint(data);
+			int run = (head & 1) != 0 ? readVarint(data) : 1;
+			if (run <= 0 || run > count - log.size)
+				throw new IOException("Racha fuera del registro");
+			if (log.size + run > log.rules.length) {
+				long capacidad = Math.max(log.size + run, 2L * log.rules.length);
+				log.rules = Arrays.copyOf(log.rules, (int) Math.min(count, capacidad));
+			}
+			Arrays.fill(log.rules, log.size, log.size + run, head >>> 1);
+			log.size += run;
+		}
+		return log;
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Varint demasiado largo");
+	}
+}
@@ -0,0 +1,201 @@
+package analizador;
+
+import java.util.Arrays;
+
+/**
+ * Tablas del autómata del analizador léxico: clase de cada carácter ASCII y
+ * transiciones entre estados. El {@link Lexer} recorre el fuente consultando
+ * solo estas tablas y recurre al camino lento (con decodificación UTF-8) en
+ * cuanto encuentra un byte no ASCII donde podría formar parte del token.
+ */
+final class ScannerTable {
+
+	// Clases de carácter
+	static final int C_OTHER = 0;
+	static final int C_WS = 1;
+	static final int C_NL = 2;
+	static final int C_LETTER = 3; // letras ASCII y '_'
+	static final int C_DIGIT = 4;
+	static final int C_DOT = 5;
+	static final int C_PLUS = 6;
+	static final int C_EQ = 7;
+	static final int C_AMP = 8;
+	static final int C_SLASH = 9;
+	static final int C_COMMA = 10;
+	static final int C_SEMI = 11;
+	static final int C_LPAREN = 12;
+	static final int C_RPAREN = 13;
+	static final int C_LBRACE = 14;
+	static final int C_RBRACE = 15;
+	static final int C_QUOTE = 16;
+	static final int C_NONASCII = 17;
+	static final int C_EOF = 18;
+	static final int NUM_CLASSES = 19;
+
+	// Estados
+	static final int S_START = 0;
+	static final int S_ID = 1;
+	static final int S_INT = 2;
+	static final int S_REAL = 3;
+	static final int S_PLUS = 4;
+	static final int S_EQ = 5;
+	static final int S_EQEQ = 6;
+	static final int S_AMP = 7;
+	static final int S_ANDAND = 8;
+	static final int S_SLASH = 9;
+	static final int S_ASIGDIV = 10;
+	static final int S_COMMENT = 11;
+	static final int S_COMMA = 12;
+	static final int S_SEMI = 13;
+	static final int S_LPAREN = 14;
+	static final int S_RPAREN = 15;
+	static final int S_LBRACE = 16;
+	static final int S_RBRACE = 17;
+	static final int S_STRING = 18;
+	static final int S_STRING_END = 19;
+	static final int S_OTHER = 20;
+	static final int NUM_STATES = 21;
+
+	/** El token termina antes del carácter actual, que no se consume. */
+	static final byte STOP = -1;
+	/** Byte no ASCII dentro del token: hay que reanalizarlo por el camino lento. */
+	static final byte SLOW = -2;
+
+	private static final byte[] CLASS = new byte[128];
+	private static final byte[] NEXT = new byte[NUM_STATES * NUM_CLASSES];
+	/** Transiciones indexadas directamente por byte: (estado << 8) | byte. */
+	private static final byte[] NEXT_BYTE = new byte[NUM_STATES << 8];
+	private static final TokenKind[] ACCEPT_KIND = new TokenKind[NUM_STATES];
+	private static final String[] ACCEPT_TEXT = new String[NUM_STATES];
+
+	static {
+		// Las clases se derivan de Character para coincidir con el camino lento
+		for (int c = 0; c < 128; c++) {
+			byte cls;
+			if (c == '\n')
+				cls = C_NL;
+			else if (Character.isWhitespace(c))
+				cls = C_WS;
+			else if (Character.isLetter(c) || c == '_')
+				cls = C_LETTER;
+			else if (Character.isDigit(c))
+				cls = C_DIGIT;
+			else
+				cls = C_OTHER;
+			CLASS[c] = cls;
+		}
+		CLASS['.'] = C_DOT;
+		CLASS['+'] = C_PLUS;
+		CLASS['='] = C_EQ;
+		CLASS['&'] = C_AMP;
+		CLASS['/'] = C_SLASH;
+		CLASS[','] = C_COMMA;
+		CLASS[';'] = C_SEMI;
+		CLASS['('] = C_LPAREN;
+		CLASS[')'] = C_RPAREN;
+		CLASS['{'] = C_LBRACE;
+		CLASS['}'] = C_RBRACE;
+		CLASS['\''] = C_QUOTE;
+
+		Arrays.fill(NEXT, STOP);
+
+		set(S_START, C_WS, S_START);
+		set(S_START, C_NL, S_START);
+		set(S_START, C_LETTER, S_ID);
+		set(S_START, C_DIGIT, S_INT);
+		set(S_START, C_DOT, S_OTHER);
+		set(S_START, C_OTHER, S_OTHER);
+		set(S_START, C_PLUS, S_PLUS);
+		set(S_START, C_EQ, S_EQ);
+		set(S_START, C_AMP, S_AMP);
+		set(S_START, C_SLASH, S_SLASH);
+		set(S_START, C_COMMA, S_COMMA);
+		set(S_START, C_SEMI, S_SEMI);
+		set(S_START, C_LPAREN, S_LPAREN);
+		set(S_START, C_RPAREN, S_RPAREN);
+		set(S_START, C_LBRACE, S_LBRACE);
+		set(S_START, C_RBRACE, S_RBRACE);
+		set(S_START, C_QUOTE, S_STRING);
+		set(S_START, C_NONASCII, SLOW);
+
+		set(S_ID, C_LETTER, S_ID);
+		set(S_ID, C_DIGIT, S_ID);
+		set(S_ID, C_NONASCII, SLOW);
+
+		set(S_INT, C_DIGIT, S_INT);
+		set(S_INT, C_DOT, S_REAL);
+		set(S_INT, C_NONASCII, SLOW);
+		set(S_REAL, C_DIGIT, S_REAL);
+		set(S_REAL, C_NONASCII, SLOW);
+
+		set(S_EQ, C_EQ, S_EQEQ);
+		set(S_AMP, C_AMP, S_ANDAND);
+		set(S_SLASH, C_EQ, S_ASIGDIV);
+		set(S_SLASH, C_SLASH, S_COMMENT);
+
+		for (int cls = 0; cls < NUM_CLASSES; cls++) {
+			set(S_COMMENT, cls, S_COMMENT);
+			set(S_STRING, cls, S_STRING);
+		}
+		set(S_COMMENT, C_NL, STOP);
+		set(S_COMMENT, C_EOF, STOP);
+		set(S_COMMENT, C_NONASCII, SLOW);
+		set(S_STRING, C_QUOTE, S_STRING_END);
+		set(S_STRING, C_EOF, STOP);
+		set(S_STRING, C_NONASCII, SLOW);
+
+		for (int state = 0; state < NUM_STATES; state++) {
+			for (int b = 0; b < 256; b++) {
+				int cls = b < 128 ? CLASS[b] : C_NONASCII;
+				NEXT_BYTE[(state << 8) | b] = NEXT[state * NUM_CLASSES + cls];
+			}
+		}
+
+		accept(S_PLUS, TokenKind.OP_SUMA, "+");
+		accept(S_EQ, TokenKind.IGUAL, "=");
+		accept(S_EQEQ, TokenKind.OP_IGUAL, "==");
+		accept(S_ANDAND, TokenKind.OP_AND, "&&");
+		accept(S_ASIGDIV, TokenKind.ASIG_DIV, "/=");
+		accept(S_COMMA, TokenKind.COMA, ",");
+		accept(S_SEMI, TokenKind.PUNTO_COMA, ";");
+		accept(S_LPAREN, TokenKind.PAREN_IZQ, "(");
+		accept(S_RPAREN, TokenKind.PAREN_DCHA, ")");
+		accept(S_LBRACE, TokenKind.LLAVE_IZQ, "{");
+		accept(S_RBRACE, TokenKind.LLAVE_DCHA, "}");
+	}
+
+	private ScannerTable() {
+	}
+
+	private static void set(int state, int cls, int next) {
+		NEXT[state * NUM_CLASSES + cls] = (byte) next;
+	}
+
+	private static void accept(int state, TokenKind kind, String text) {
+		ACCEPT_KIND[state] = kind;
+		ACCEPT_TEXT[state] = text;
+	}
+
+	/**
+	 * @param b byte leído del fuente, sin signo (0-255).
+	 * @return estado siguiente, {@link #STOP} o {@link #SLOW}.
+	 */
+	static int next(int state, int b) {
+		return NEXT_BYTE[(state << 8) | b];
+	}
+
+	/** @return estado siguiente al llegar al final de la entrada. */
+	static int nextAtEof(int state) {
+		return NEXT[state * NUM_CLASSES + C_EOF];
+	}
+
+	/** @return tipo de token de un estado de aceptación simple, o null. */
+	static TokenKind acceptKind(int state) {
+		return ACCEPT_KIND[state];
+	}
+
+	/** @return lexema fijo de un estado de aceptación simple. */
+	static String acceptText(int state) {
+		return ACCEPT_TEXT[state];
+	}
+}
@@ -0,0 +1,621 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Category;
+import analizador.SymbolTable.SymbolInfo;
+import analizador.SymbolTable.Type;
+
+/**
+ * Análisis semántico como pasada aparte sobre el árbol de un {@link Parser}
+ * con {@link Parser#setSemantica setSemantica(false)}. Sirve tanto para el
+ * árbol completo como para el de las expresiones compactas. Da los mismos
+ * errores y la misma tabla de símbolos que el análisis entrelazado con el
+ * sintáctico.
+ *
+ * Trabaja en dos fases:
+ * <ol>
+ * <li>Secuencial, en el orden del programa, sobre una {@link SymbolTable}.
+ * Declara las variables globales y las firmas de las funciones y comprueba
+ * las sentencias globales. De cada función declara también, en su ámbito,
+ * sus parámetros y variables locales, con los desplazamientos y los errores
+ * de declaración repetida, y guarda la instantánea del ámbito tras los
+ * parámetros.</li>
+ * <li>En paralelo, en el pool ForkJoin. Comprueba los tipos del cuerpo de
+ * cada función sobre su instantánea, que tiene como padre el ámbito global
+ * tal como estaba al declararla: cada función ve únicamente lo declarado
+ * antes que ella, como en el análisis secuencial, y sus locales se añaden a
+ * la instantánea según aparecen sus let.</li>
+ * </ol>
+ *
+ * Los símbolos se identifican por la clave de la hoja de id
+ * ({@link ASTNode#getClave()}). Como el parser con análisis semántico, anota
+ * en el árbol el símbolo de cada hoja de id ({@link ASTNode#getSimbolo()}) y
+ * el tipo de cada expresión, que es lo que usan los generadores de código.
+ * Los errores se añaden al {@link ErrorManager}
+ * ordenados por línea; para mezclarlos con los sintácticos ya registrados,
+ * llamar después a {@link ErrorManager#ordenarPorLinea()}.
+ */
+public final class SemanticAnalyzer {
+	private static final String SEMANTICO = "SEMÁNTICO";
+	private static final String SINTACTICO = "SINTÁCTICO";
+
+	private final ErrorManager errorManager;
+	private final SymbolTable ts = new SymbolTable();
+
+	/** Error a falta de mezclar, con la línea aparte para ordenar. */
+	private static final class Diagnostico {
+		final String tipo;
+		final int linea;
+		final String mensaje;
+
+		Diagnostico(String tipo, int linea, String mensaje) {
+			this.tipo = tipo;
+			this.linea = linea;
+			this.mensaje = mensaje;
+		}
+	}
+
+	/** Cuerpo de función pendiente de la segunda fase. */
+	private static final class Funcion {
+		final ASTNode node;
+		final Type retorno;
+		final SymbolSnapshot parametros; // con el global de entonces como padre
+		final Map<ASTNode, Simbolo> lets; // hoja de id de cada let declarado
+
+		Funcion(ASTNode node, Type retorno, SymbolSnapshot parametros, Map<ASTNode, Simbolo> lets) {
+			this.node = node;
+			this.retorno = retorno;
+			this.parametros = parametros;
+			this.lets = lets;
+		}
+	}
+
+	public SemanticAnalyzer(ErrorManager errorManager) {
+		this.errorManager = errorManager;
+	}
+
+	/** Analiza el programa usando el pool ForkJoin común. */
+	public void analizar(ASTNode raiz) {
+		analizar(raiz, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Analiza el programa que cuelga de {@code raiz} (el nodo P1) comprobando
+	 * los cuerpos de las funciones en {@code pool}.
+	 */
+	public void analizar(ASTNode raiz, ForkJoinPool pool) {
+		ts.init();
+		List<Diagnostico> diagnosticos = new ArrayList<>();
+		List<Funcion> funciones = new ArrayList<>();
+		Comprobador global = new Comprobador(null, diagnosticos);
+		for (ASTNode p = hijo(raiz, 0); hijos(p) > 0; p = hijo(p, 1)) {
+			ASTNode item = hijo(p, 0);
+			if (item.getLabel().equals("F"))
+				funciones.add(declararFuncion(item, diagnosticos));
+			else
+				global.sentencia(item);
+		}
+		ts.publicar();
+
+		List<List<Diagnostico>> resultados = pool
+				.submit(() -> funciones.parallelStream().map(this::comprobarFuncion).collect(Collectors.toList()))
+				.join();
+		for (List<Diagnostico> resultado : resultados)
+			diagnosticos.addAll(resultado);
+		diagnosticos.sort((a, b) -> Integer.compare(a.linea, b.linea));
+		for (Diagnostico d : diagnosticos)
+			errorManager.agregarError(d.tipo, d.linea, d.mensaje);
+	}
+
+	/** @return tabla de símbolos construida por {@link #analizar}. */
+	public SymbolTable getTS() {
+		return ts;
+	}
+
+	/** @return tabla de símbolos en el formato de tabla_simbolos.txt. */
+	public String getTablaSimbolos() {
+		StringWriter sw = new StringWriter();
+		try {
+			writeTablaSimbolos(sw);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sw.toString();
+	}
+
+	/** Escribe la tabla de símbolos en el formato de tabla_simbolos.txt. */
+	public void writeTablaSimbolos(Writer out) throws IOException {
+		ts.writeTo(out);
+	}
+
+	/** Escribe la tabla de símbolos en JSON (ver {@link SymbolTableWriter}). */
+	public void writeTablaJson(Writer out) throws IOException {
+		ts.writeJson(out);
+	}
+
+	/*
+	 * Primera fase.
+	 */
+
+	/**
+	 * F -> PRfun T id parenIzq Z parenDcha llaveIzq C F2 llaveDcha: declara la
+	 * función, sus parámetros y sus variables locales, como el {@link Parser}.
+	 */
+	private Funcion declararFuncion(ASTNode f, List<Diagnostico> diagnosticos) {
+		Type retorno = tipoT(hijo(f, 1));
+		ASTNode nombre = hijo(f, 2);
+		ts.anadirFunc(nombre.getClave(), nombre(nombre), retorno);
+		ts.entrarAmbito();
+
+		// Z -> T id K, K -> coma T id K: los parámetros de K se declaran desde
+		// el último y después el de Z; uno repetido no se declara y corta la
+		// lista de tipos
+		List<Type> params = new ArrayList<>();
+		ASTNode z = hijo(f, 3);
+		if (hijos(z) > 0) {
+			List<ASTNode> ids = new ArrayList<>();
+			List<Type> tipos = new ArrayList<>();
+			for (ASTNode k = hijo(z, 2); hijos(k) > 0; k = hijo(k, 3)) {
+				tipos.add(tipoT(hijo(k, 1)));
+				ids.add(hijo(k, 2));
+			}
+			int fin = tipos.size();
+			for (int i = ids.size() - 1; i >= 0; i--) {
+				ASTNode id = ids.get(i);
+				if (!ts.existeLocal(id.getClave())) {
+					ts.anadirVar(id.getClave(), nombre(id), tipos.get(i));
+					resolver(id);
+				} else {
+					diagnosticos.add(new Diagnostico(SEMANTICO, id.getLinea(), "Variable '" + nombre(id) + "' ya declarada"));
+					fin = i;
+				}
+			}
+			ASTNode id = hijo(z, 1);
+			if (!ts.existeLocal(id.getClave())) {
+				Type type = tipoT(hijo(z, 0));
+				ts.anadirVar(id.getClave(), nombre(id), type);
+				resolver(id);
+				params.add(type);
+				params.addAll(tipos.subList(0, fin));
+			} else {
+				diagnosticos.add(new Diagnostico(SEMANTICO, id.getLinea(), "Variable '" + nombre(id) + "' ya declarada"));
+			}
+		}
+		ts.setParamsFunc(nombre.getClave(), params);
+		ts.publicar();
+		SymbolSnapshot parametros = ts.getInstantanea();
+
+		Map<ASTNode, Simbolo> lets = new IdentityHashMap<>();
+		declararLocales(hijo(f, 4), lets, diagnosticos);
+		ts.salirAmbito();
+		// Fuera ya de su ámbito, ningún parámetro la oculta
+		resolver(nombre);
+		return new Funcion(f, retorno, parametros, lets);
+	}
+
+	/** Declara las variables de los let de una lista C, incluidos los de los for. */
+	private void declararLocales(ASTNode c, Map<ASTNode, Simbolo> lets, List<Diagnostico> diagnosticos) {
+		for (; hijos(c) > 0; c = hijo(c, 1)) {
+			ASTNode b = hijo(c, 0);
+			String primero = hijo(b, 0).getLabel();
+			if (primero.equals("PRlet")) {
+				ASTNode id = hijo(b, 2);
+				if (!ts.existeLocal(id.getClave())) {
+					ts.anadirVar(id.getClave(), nombre(id), tipoT(hijo(b, 1)));
+					lets.put(id, resolver(id));
+				} else {
+					diagnosticos.add(new Diagnostico(SEMANTICO, id.getLinea(), "Variable '" + nombre(id) + "' ya declarada"));
+				}
+			} else if (primero.equals("PRfor")) {
+				declararLocales(hijo(b, 4), lets, diagnosticos);
+			}
+		}
+	}
+
+	/*
+	 * Segunda fase.
+	 */
+
+	private List<Diagnostico> comprobarFuncion(Funcion f) {
+		List<Diagnostico> diagnosticos = new ArrayList<>();
+		Comprobador comprobador = new Comprobador(f, diagnosticos);
+		comprobador.lista(hijo(f.node, 4));
+		ASTNode f2 = hijo(f.node, 5);
+		Type f2Type = hijos(f2) > 0 ? comprobador.s1(hijo(f2, 0)) : Type.VOID;
+		if (f2Type != f.retorno) {
+			ASTNode id = hijo(f.node, 2);
+			diagnosticos.add(new Diagnostico(SEMANTICO, id.getLinea(), "Retorno incorrecto en funcion " + nombre(id)));
+		}
+		return diagnosticos;
+	}
+
+	/**
+	 * Comprobación de tipos de sentencias y expresiones, con las mismas reglas
+	 * que el {@link Parser}. Sin función trabaja sobre la tabla durante la
+	 * primera fase y sus let declaran variables globales; con función, sobre
+	 * una instantánea propia del ámbito local.
+	 */
+	private final class Comprobador {
+		private final Funcion funcion;
+		private SymbolSnapshot local; // null en el ámbito global
+		private final List<Diagnostico> diagnosticos;
+
+		Comprobador(Funcion funcion, List<Diagnostico> diagnosticos) {
+			this.funcion = funcion;
+			this.local = funcion != null ? funcion.parametros : null;
+			this.diagnosticos = diagnosticos;
+		}
+
+		/**
+		 * @return símbolo visible para la hoja de id, que queda anotado en
+		 *         ella, o null si no hay ninguno.
+		 */
+		private Simbolo buscar(ASTNode id) {
+			Simbolo simbolo;
+			if (local != null) {
+				simbolo = local.buscar(id.getClave());
+			} else {
+				SymbolInfo info = ts.buscar(id.getClave());
+				simbolo = info != null ? info.simbolo : null;
+			}
+			id.setSimbolo(simbolo);
+			return simbolo;
+		}
+
+		private void error(String tipo, int linea, String mensaje) {
+			diagnosticos.add(new Diagnostico(tipo, linea, mensaje));
+		}
+
+		/** C -> B C: sentencias de una lista. */
+		void lista(ASTNode c) {
+			for (; hijos(c) > 0; c = hijo(c, 1))
+				sentencia(hijo(c, 0));
+		}
+
+		/** B: let, if, for o S. */
+		void sentencia(ASTNode b) {
+			String primero = hijo(b, 0).getLabel();
+			if (primero.equals("PRlet")) {
+				ASTNode id = hijo(b, 2);
+				if (funcion != null) {
+					// Declarada en la primera fase: desde aquí es visible
+					Simbolo simbolo = funcion.lets.get(id);
+					if (simbolo != null)
+						local = local.con(simbolo);
+				} else if (!ts.existeLocal(id.getClave())) {
+					ts.anadirVar(id.getClave(), nombre(id), tipoT(hijo(b, 1)));
+					resolver(id);
+				} else {
+					error(SEMANTICO, id.getLinea(), "Variable '" + nombre(id) + "' ya declarada");
+				}
+			} else if (primero.equals("PRif")) {
+				int errores = diagnosticos.size();
+				Type eType = expresion(hijo(b, 1));
+				boolean notificado = diagnosticos.size() > errores;
+				s(hijo(b, 2));
+				if (eType != Type.BOOLEAN && (eType != Type.ERROR || !notificado))
+					error(SEMANTICO, b.getLinea(), "La condición del 'if' debe ser boolean");
+			} else if (primero.equals("PRfor")) {
+				f1(hijo(b, 1));
+				int errores = diagnosticos.size();
+				Type eType = expresion(hijo(b, 2));
+				boolean notificado = diagnosticos.size() > errores;
+				f1(hijo(b, 3));
+				lista(hijo(b, 4));
+				if (eType != Type.BOOLEAN && (eType != Type.ERROR || !notificado))
+					error(SEMANTICO, b.getLinea(), "La condición del 'for' debe ser boolean");
+			} else {
+				s(hijo(b, 0));
+			}
+		}
+
+		/** F1 -> id W E | lambda */
+		private void f1(ASTNode f1) {
+			if (hijos(f1) == 0)
+				return;
+			ASTNode id = hijo(f1, 0);
+			Type eType = expresion(hijo(f1, 2));
+			Simbolo simbolo = buscar(id);
+			if (simbolo == null || simbolo.category != Category.VARIABLE)
+				error(SEMANTICO, id.getLinea(), "'" + nombre(id) + "' no es una variable");
+			else if (simbolo.type != eType)
+				error(SEMANTICO, id.getLinea(), "Tipos incompatibles en asignación: " + simbolo.type + " y " + eType);
+			else if (division(hijo(f1, 1)) && !numerico(simbolo.type))
+				error(SEMANTICO, id.getLinea(), "'/=' no admite el tipo " + simbolo.type);
+		}
+
+		/** S -> id S2 | PRwrite E | PRread id | S1 */
+		private void s(ASTNode s) {
+			if (hijos(s) == 0)
+				return;
+			ASTNode primero = hijo(s, 0);
+			switch (primero.getLabel()) {
+				case "PRwrite":
+					if (expresion(hijo(s, 1)) == Type.ERROR)
+						error(SEMANTICO, s.getLinea(), "Error en expresión de 'write'");
+					break;
+				case "PRread": {
+					ASTNode id = hijo(s, 1);
+					Simbolo simbolo = buscar(id);
+					if (simbolo == null)
+						error(SEMANTICO, id.getLinea(), "Variable '" + nombre(id) + "' no declarada");
+					else if (simbolo.category != Category.VARIABLE)
+						error(SEMANTICO, id.getLinea(), "'" + nombre(id) + "' no es una variable");
+					break;
+				}
+				case "S1": {
+					// El return final de una función (F2) se comprueba aparte
+					Type type = s1(primero);
+					if (funcion != null && type != funcion.retorno)
+						error(SEMANTICO, s.getLinea(), "Retorno incorrecto en funcion " + nombre(hijo(funcion.node, 2)));
+					else if (funcion == null && type == Type.ERROR)
+						error(SEMANTICO, s.getLinea(), "Error en expresión de 'return'");
+					break;
+				}
+				default:
+					s2(hijo(s, 1), primero);
+					break;
+			}
+		}
+
+		/** S2 -> W E puntoComa | parenIzq L parenDcha puntoComa */
+		private void s2(ASTNode s2, ASTNode id) {
+			if (hijos(s2) == 0)
+				return;
+			String nombre = nombre(id);
+			Simbolo simbolo = buscar(id);
+			Type tipoId = simbolo != null ? simbolo.type : Type.ERROR;
+			Category categoria = simbolo != null ? simbolo.category : null;
+			if (hijo(s2, 0).getLabel().equals("W")) {
+				Type eType = expresion(hijo(s2, 1));
+				if (categoria != Category.VARIABLE)
+					error(SEMANTICO, s2.getLinea(), "'" + nombre + "' no es una variable");
+				else if (tipoId != eType)
+					error(SEMANTICO, s2.getLinea(), "Tipos incompatibles en asignación: " + tipoId + " y " + eType);
+				else if (division(hijo(s2, 0)) && !numerico(tipoId))
+					error(SEMANTICO, s2.getLinea(), "'/=' no admite el tipo " + tipoId);
+			} else {
+				List<Type> args = argumentos(hijo(s2, 1));
+				if (categoria != Category.FUNCION)
+					error(SEMANTICO, s2.getLinea(), "'" + nombre + "' no es una función");
+				else if (!simbolo.params.equals(args))
+					error(SEMANTICO, s2.getLinea(), "Parámetros incorrectos en llamada a función '" + nombre + "'");
+			}
+		}
+
+		/** S1 -> PRreturn X, X -> E | lambda */
+		Type s1(ASTNode s1) {
+			ASTNode x = hijo(s1, 1);
+			return hijos(x) > 0 ? expresion(hijo(x, 0)) : Type.VOID;
+		}
+
+		/** L -> E Q, Q -> coma E Q: tipos de los argumentos. */
+		private List<Type> argumentos(ASTNode l) {
+			List<Type> tipos = new ArrayList<>();
+			if (hijos(l) == 0)
+				return tipos;
+			tipos.add(expresion(hijo(l, 0)));
+			for (ASTNode q = hijo(l, 1); hijos(q) > 0; q = hijo(q, 2))
+				tipos.add(expresion(hijo(q, 1)));
+			return tipos;
+		}
+
+		/**
+		 * Tipo de una expresión: un nodo E o un nodo de una expresión compacta
+		 * (binario, paréntesis u operando), que queda anotado en él.
+		 */
+		private Type expresion(ASTNode e) {
+			switch (e.getLabel()) {
+				case "E":
+					return e(e);
+				case "opAnd":
+				case "opIgual":
+				case "opSuma":
+					return operador(e);
+				case "parentesis":
+					return tipo(e, expresion(hijo(e, 0)));
+				default:
+					return tipo(e, operando(e, e));
+			}
+		}
+
+		/*
+		 * Árbol completo. Las cadenas E1, R1 y U1 se pliegan desde la cabeza
+		 * como en el Parser.
+		 */
+
+		private Type e(ASTNode e) {
+			Type type = r(hijo(e, 0));
+			Type resto = null;
+			for (ASTNode e1 = hijo(e, 1); hijos(e1) > 0; e1 = hijo(e1, 2)) {
+				Type rType = r(hijo(e1, 1));
+				resto = (rType == Type.BOOLEAN && resto != Type.ERROR) ? Type.BOOLEAN : Type.ERROR;
+			}
+			if (resto == null)
+				return tipo(e, type);
+			return tipo(e, (type == Type.BOOLEAN && resto == Type.BOOLEAN) ? Type.BOOLEAN : Type.ERROR);
+		}
+
+		private Type r(ASTNode r) {
+			Type type = u(hijo(r, 0));
+			Type comun = null;
+			for (ASTNode r1 = hijo(r, 1); hijos(r1) > 0; r1 = hijo(r1, 2))
+				comun = mismoTipo(comun, u(hijo(r1, 1)));
+			if (comun == null)
+				return tipo(r, type);
+			return tipo(r, type == comun && comun != Type.ERROR ? Type.BOOLEAN : Type.ERROR);
+		}
+
+		private Type u(ASTNode u) {
+			Type type = v(hijo(u, 0));
+			Type comun = null;
+			for (ASTNode u1 = hijo(u, 1); hijos(u1) > 0; u1 = hijo(u1, 2))
+				comun = mismoTipo(comun, v(hijo(u1, 1)));
+			if (comun == null)
+				return tipo(u, type);
+			return tipo(u, (type == comun && numerico(type)) ? type : Type.ERROR);
+		}
+
+		/** V -> id V1 | parenIzq E parenDcha | literal */
+		private Type v(ASTNode v) {
+			if (hijos(v) == 0)
+				return tipo(v, Type.ERROR);
+			ASTNode primero = hijo(v, 0);
+			if (primero.getLabel().equals("parenIzq"))
+				return tipo(v, expresion(hijo(v, 1)));
+			if (hijos(v) == 2) {
+				// id V1: la llamada, si la hay, y la línea están en V1
+				ASTNode v1 = hijo(v, 1);
+				return tipo(v, uso(primero, hijos(v1) > 0 ? hijo(v1, 1) : null, v1.getLinea()));
+			}
+			return tipo(v, operando(primero, primero));
+		}
+
+		/*
+		 * Expresiones compactas. Las cadenas de un mismo operador cuelgan por la
+		 * izquierda; se recorren sin recursión y se pliegan como E, R y U.
+		 */
+
+		private Type operador(ASTNode op) {
+			String label = op.getLabel();
+			List<ASTNode> binarios = new ArrayList<>();
+			ASTNode izquierdo = op;
+			while (izquierdo.getLabel().equals(label)) {
+				binarios.add(izquierdo);
+				izquierdo = hijo(izquierdo, 0);
+			}
+			Type type = expresion(izquierdo);
+			Type primero = type;
+			Type comun = null;
+			for (int i = binarios.size() - 1; i >= 0; i--) {
+				Type rType = expresion(hijo(binarios.get(i), 1));
+				switch (label) {
+					case "opAnd":
+						type = (type == Type.BOOLEAN && rType == Type.BOOLEAN) ? Type.BOOLEAN : Type.ERROR;
+						break;
+					case "opIgual":
+						comun = mismoTipo(comun, rType);
+						type = primero == comun && comun != Type.ERROR ? Type.BOOLEAN : Type.ERROR;
+						break;
+					default:
+						type = (type == rType && numerico(rType)) ? rType : Type.ERROR;
+						break;
+				}
+				tipo(binarios.get(i), type);
+			}
+			return type;
+		}
+
+		/** Hoja de literal o de id (con L si es una llamada) de ambos árboles. */
+		private Type operando(ASTNode hoja, ASTNode linea) {
+			switch (hoja.getLabel()) {
+				case "entero":
+					return Type.ENTERO;
+				case "real":
+					return Type.REAL;
+				case "cadena":
+					return Type.CADENA;
+				case "true":
+				case "false":
+					return Type.BOOLEAN;
+				case "V":
+					return Type.ERROR;
+				default:
+					return uso(hoja, hijos(hoja) > 0 ? hijo(hoja, 0) : null, linea.getLinea());
+			}
+		}
+
+		/**
+		 * V1 -> parenIzq L parenDcha | lambda: uso de un id como variable o, si
+		 * {@code l} no es null, llamada con esos argumentos.
+		 */
+		private Type uso(ASTNode id, ASTNode l, int linea) {
+			String nombre = nombre(id);
+			Simbolo simbolo = buscar(id);
+			Category categoria = simbolo != null ? simbolo.category : null;
+			if (l != null) {
+				List<Type> args = argumentos(l);
+				if (categoria != Category.FUNCION) {
+					error(SINTACTICO, linea, "'" + nombre + "' no es una función");
+					return Type.ERROR;
+				}
+				if (!simbolo.params.equals(args)) {
+					error(SINTACTICO, linea, "Parámetros incorrectos en llamada a función '" + nombre + "'");
+					return Type.ERROR;
+				}
+				return simbolo.type;
+			}
+			if (categoria != Category.VARIABLE) {
+				error(SEMANTICO, linea, "'" + nombre + "' no es una variable");
+				return Type.ERROR;
+			}
+			return simbolo.type;
+		}
+	}
+
+	/** Anota el tipo en el nodo y lo devuelve. */
+	private static Type tipo(ASTNode node, Type type) {
+		node.setSemanticType(type);
+		return type;
+	}
+
+	private static boolean numerico(Type type) {
+		return type == Type.ENTERO || type == Type.REAL;
+	}
+
+	/** W -> igual | asigDiv: true si es '/='. */
+	private static boolean division(ASTNode w) {
+		return hijo(w, 0).getLabel().equals("asigDiv");
+	}
+
+	private static Type mismoTipo(Type acumulado, Type operando) {
+		return acumulado == null || acumulado == operando ? operando : Type.ERROR;
+	}
+
+	/** T -> PRint | PRfloat | PRboolean | PRstring */
+	private static Type tipoT(ASTNode t) {
+		switch (t.getLabel()) {
+			case "PRint":
+				return Type.ENTERO;
+			case "PRfloat":
+				return Type.REAL;
+			case "PRboolean":
+				return Type.BOOLEAN;
+			case "PRstring":
+				return Type.CADENA;
+			default:
+				return Type.ERROR;
+		}
+	}
+
+	/** Anota en la hoja de id el símbolo que acaba de declarar en la tabla. */
+	private Simbolo resolver(ASTNode id) {
+		Simbolo simbolo = ts.buscar(id.getClave()).simbolo;
+		id.setSimbolo(simbolo);
+		return simbolo;
+	}
+
+	/** @return lexema de una hoja "id(lexema)", para los mensajes y el volcado. */
+	private static String nombre(ASTNode id) {
+		String label = id.getLabel();
+		return label.substring(3, label.length() - 1);
+	}
+
+	private static ASTNode hijo(ASTNode node, int i) {
+		return node.getChildren().get(i);
+	}
+
+	private static int hijos(ASTNode node) {
+		return node.getChildren().size();
+	}
+}
@@ -0,0 +1,224 @@
+package analizador;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import analizador.SymbolTable.Category;
+import analizador.SymbolTable.SymbolInfo;
+import analizador.SymbolTable.Type;
+
+/**
+ * Instantánea inmutable de un ámbito de la {@link SymbolTable}, con la de su
+ * ámbito exterior como padre. Como nada cambia tras crearla, cualquier número
+ * de hilos puede consultarla sin cerrojos mientras el parser sigue
+ * modificando la tabla.
+ *
+ * Los símbolos están en un trie de 32 hijos por nodo indexado como la tabla
+ * (ver {@link SymbolTable#indice}): añadir un símbolo copia solo el camino
+ * hasta su hoja y comparte el resto con la versión anterior, así que la tabla
+ * puede guardar una versión por declaración sin copiar el ámbito entero.
+ * Un ámbito cerrado ya no cambia, así que se guarda compactado
+ * ({@link #compactar}): solo sus símbolos, en arrays y sin padre, para no
+ * retener una versión del ámbito global por cada ámbito cerrado.
+ */
+public final class SymbolSnapshot {
+	private static final int BITS = 5;
+	private static final int ANCHO = 1 << BITS;
+	private static final int MASCARA = ANCHO - 1;
+
+	/** Ámbito sin símbolos ni padre. */
+	static final SymbolSnapshot VACIA = new SymbolSnapshot(new Object[ANCHO], 0, 0, null, null);
+
+	/** Un símbolo tal como estaba al tomar la instantánea. */
+	public static final class Simbolo {
+		public final int id;
+		public final String lexeme;
+		public final Type type;
+		public final Category category;
+		public final List<Type> params;
+		public final int desplazamiento;
+
+		Simbolo(int id, SymbolInfo info) {
+			this.id = id;
+			this.lexeme = info.lexeme;
+			this.type = info.type;
+			this.category = info.category;
+			this.params = info.params.isEmpty() ? List.of()
+					: Collections.unmodifiableList(new ArrayList<>(info.params));
+			this.desplazamiento = info.desplazamiento;
+		}
+	}
+
+	// Ids en orden de declaración, el último primero
+	private static final class Orden {
+		final int id;
+		final Orden anterior;
+
+		Orden(int id, Orden anterior) {
+			this.id = id;
+			this.anterior = anterior;
+		}
+	}
+
+	private final Object[] raiz; // nodos internos: Object[]; hojas: Simbolo
+	private final int altura; // bits de índice por debajo de la raíz
+	private final int size;
+	private final Orden orden;
+	private final SymbolSnapshot padre;
+	// Ámbito compactado (raiz == null): claves ordenadas con su símbolo y
+	// símbolos en orden de declaración
+	private final int[] claves;
+	private final Simbolo[] porClave;
+	private final List<Simbolo> enOrden;
+
+	private SymbolSnapshot(Object[] raiz, int altura, int size, Orden orden, SymbolSnapshot padre) {
+		this.raiz = raiz;
+		this.altura = altura;
+		this.size = size;
+		this.orden = orden;
+		this.padre = padre;
+		this.claves = null;
+		this.porClave = null;
+		this.enOrden = null;
+	}
+
+	private SymbolSnapshot(int[] claves, Simbolo[] porClave, List<Simbolo> enOrden, SymbolSnapshot padre) {
+		this.raiz = null;
+		this.altura = 0;
+		this.size = enOrden.size();
+		this.orden = null;
+		this.padre = padre;
+		this.claves = claves;
+		this.porClave = porClave;
+		this.enOrden = enOrden;
+	}
+
+	/**
+	 * @return versión con el símbolo añadido, o sustituido si ya había uno con
+	 *         su id; conserva el padre.
+	 */
+	SymbolSnapshot con(Simbolo simbolo) {
+		if (raiz == null)
+			throw new IllegalStateException("Un ámbito compactado no admite cambios");
+		int clave = SymbolTable.indice(simbolo.id);
+		Object[] nueva = raiz;
+		int alt = altura;
+		while (clave >>> alt >= ANCHO) {
+			// La clave no cabe: la raíz pasa a ser el primer hijo de otra
+			Object[] mayor = new Object[ANCHO];
+			mayor[0] = nueva;
+			nueva = mayor;
+			alt += BITS;
+		}
+		nueva = nueva.clone();
+		Object[] nodo = nueva;
+		for (int nivel = alt; nivel > 0; nivel -= BITS) {
+			int i = (clave >>> nivel) & MASCARA;
+			Object[] hijo = (Object[]) nodo[i];
+			hijo = hijo == null ? new Object[ANCHO] : hijo.clone();
+			nodo[i] = hijo;
+			nodo = hijo;
+		}
+		boolean nuevo = nodo[clave & MASCARA] == null;
+		nodo[clave & MASCARA] = simbolo;
+		return new SymbolSnapshot(nueva, alt, nuevo ? size + 1 : size, nuevo ? new Orden(simbolo.id, orden) : orden,
+				padre);
+	}
+
+	/** @return la misma versión del ámbito con otro ámbito exterior. */
+	SymbolSnapshot conPadre(SymbolSnapshot padre) {
+		if (raiz == null)
+			return new SymbolSnapshot(claves, porClave, enOrden, padre);
+		return new SymbolSnapshot(raiz, altura, size, orden, padre);
+	}
+
+	/**
+	 * @return el mismo ámbito, sin padre, guardado en arrays: ocupa menos que
+	 *         el trie y busca por búsqueda binaria, pero ya no admite
+	 *         {@link #con}.
+	 */
+	SymbolSnapshot compactar() {
+		List<Simbolo> simbolos = simbolos();
+		Simbolo[] porClave = simbolos.toArray(new Simbolo[0]);
+		Arrays.sort(porClave, Comparator.comparingInt(simbolo -> SymbolTable.indice(simbolo.id)));
+		int[] claves = new int[porClave.length];
+		for (int i = 0; i < claves.length; i++)
+			claves[i] = SymbolTable.indice(porClave[i].id);
+		return new SymbolSnapshot(claves, porClave, simbolos, null);
+	}
+
+	/** @return ámbito exterior, o null si es el global. */
+	public SymbolSnapshot getPadre() {
+		return padre;
+	}
+
+	/** @return número de símbolos del ámbito, sin contar los del padre. */
+	public int size() {
+		return size;
+	}
+
+	/** @return símbolo del propio ámbito con ese id, o null. */
+	public Simbolo buscarLocal(int id) {
+		int clave = SymbolTable.indice(id);
+		if (raiz == null) {
+			int i = Arrays.binarySearch(claves, clave);
+			return i >= 0 ? porClave[i] : null;
+		}
+		if (clave >>> altura >= ANCHO)
+			return null;
+		Object[] nodo = raiz;
+		for (int nivel = altura; nivel > 0; nivel -= BITS) {
+			nodo = (Object[]) nodo[(clave >>> nivel) & MASCARA];
+			if (nodo == null)
+				return null;
+		}
+		return (Simbolo) nodo[clave & MASCARA];
+	}
+
+	/** @return símbolo visible con ese id, aquí o en un ámbito exterior, o null. */
+	public Simbolo buscar(int id) {
+		for (SymbolSnapshot ambito = this; ambito != null; ambito = ambito.padre) {
+			Simbolo simbolo = ambito.buscarLocal(id);
+			if (simbolo != null)
+				return simbolo;
+		}
+		return null;
+	}
+
+	/** @return tipo del símbolo visible, o ERROR si no existe. */
+	public Type tipo(int id) {
+		Simbolo simbolo = buscar(id);
+		return simbolo != null ? simbolo.type : Type.ERROR;
+	}
+
+	/** @return categoría del símbolo visible, o null si no existe. */
+	public Category categoria(int id) {
+		Simbolo simbolo = buscar(id);
+		return simbolo != null ? simbolo.category : null;
+	}
+
+	/** @return parámetros del símbolo visible, o null si no existe. */
+	public List<Type> params(int id) {
+		Simbolo simbolo = buscar(id);
+		return simbolo != null ? simbolo.params : null;
+	}
+
+	/** @return desplazamiento de la variable visible, o -1 si no existe. */
+	public int desplazamiento(int id) {
+		Simbolo simbolo = buscar(id);
+		return simbolo != null ? simbolo.desplazamiento : -1;
+	}
+
+	/** @return símbolos del propio ámbito en orden de declaración. */
+	public List<Simbolo> simbolos() {
+		if (raiz == null)
+			return enOrden;
+		Simbolo[] simbolos = new Simbolo[size];
+		int i = size;
+		for (Orden o = orden; o != null; o = o.anterior)
+			simbolos[--i] = buscarLocal(o.id);
+		return List.of(simbolos);
+	}
+}
@@ -1,12 +1,25 @@
 package analizador;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
 
+/**
+ * Tabla de símbolos por ámbitos. Los símbolos se identifican por el id que el
+ * {@link Interner} asignó a su nombre, así que buscar no requiere hashear ni
+ * comparar cadenas; el lexema solo se guarda para el volcado.
+ *
+ * Además de la tabla de trabajo, que el parser modifica, cada ámbito abierto
+ * tiene una versión persistente ({@link SymbolSnapshot}) que se actualiza en
+ * cada declaración. Al cerrar un ámbito y al llamar a {@link #publicar()} se
+ * publican instantáneas que otros hilos pueden consultar sin cerrojos
+ * mientras sigue el análisis: {@link #getInstantanea()} y
+ * {@link #getAmbitosCerrados()}.
+ */
 public class SymbolTable {
 	public enum Type {
 		ENTERO, REAL, BOOLEAN, CADENA, VOID, ERROR, OK
@@ -22,6 +35,12 @@ public class SymbolTable {
 		public Category category;
 		public List<Type> params;
 		public int desplazamiento;
+		// Posición en la tabla de símbolos (la mantiene SymbolTable)
+		int id;
+		int nivel;
+		int posicion; // en el registro de declaraciones
+		SymbolInfo sombra; // símbolo del mismo nombre al que oculta
+		SymbolSnapshot.Simbolo simbolo; // versión actual, la de las instantáneas
 
 		public SymbolInfo(String lexeme, Type type, Category category) {
 			this.lexeme = lexeme;
@@ -32,138 +51,267 @@ public class SymbolTable {
 		}
 	}
 
-	private Stack<Map<String, SymbolInfo>> scopes;
-	private Map<String, SymbolInfo> globalTable;
-	private StringBuilder log;
+	/*
+	 * Una sola tabla para todos los ámbitos, indexada directamente por el id
+	 * del símbolo (ver indice()): en cada posición está el símbolo visible con
+	 * ese nombre, que apunta al que oculta (su sombra). Declarar y buscar
+	 * cuestan lo mismo sea cual sea el anidamiento. Los símbolos se apuntan
+	 * además, en orden de declaración, en un registro que sirve para volcar el
+	 * ámbito y para deshacer sus declaraciones al salir de él.
+	 */
+	private SymbolInfo[] visibles = new SymbolInfo[256];
+	private final List<SymbolInfo> declarados = new ArrayList<>();
+	private int[] inicios = new int[8]; // posición en declarados donde empieza cada ámbito
+	private int nivel = 0; // 0 = ámbito global
 	private int currentOffset = 0;
+	// Versión persistente de cada ámbito abierto y lo ya publicado
+	private SymbolSnapshot[] versiones = new SymbolSnapshot[8];
+	private volatile SymbolSnapshot instantanea;
+	private volatile Cerrado cerrados; // el último cerrado primero
+
+	// Lista inmutable de ámbitos cerrados
+	private static final class Cerrado {
+		final SymbolSnapshot ambito;
+		final Cerrado anterior;
+		final int size;
+
+		Cerrado(SymbolSnapshot ambito, Cerrado anterior) {
+			this.ambito = ambito;
+			this.anterior = anterior;
+			this.size = anterior == null ? 1 : anterior.size + 1;
+		}
+	}
 
 	public SymbolTable() {
-		scopes = new Stack<>();
-		globalTable = new HashMap<>();
-		log = new StringBuilder();
 		init();
 	}
 
 	public void init() {
-		scopes.clear();
-		globalTable.clear();
-		log.setLength(0);
-		scopes.push(new LinkedHashMap<>());
+		Arrays.fill(visibles, null);
+		declarados.clear();
+		nivel = 0;
 		currentOffset = 0;
+		versiones[0] = SymbolSnapshot.VACIA;
+		instantanea = SymbolSnapshot.VACIA;
+		cerrados = null;
 	}
 
 	public void entrarAmbito() {
-		scopes.push(new LinkedHashMap<>());
+		if (++nivel == inicios.length) {
+			inicios = Arrays.copyOf(inicios, nivel * 2);
+			versiones = Arrays.copyOf(versiones, nivel * 2);
+		}
+		inicios[nivel] = declarados.size();
+		versiones[nivel] = SymbolSnapshot.VACIA;
 	}
 
 	public void salirAmbito() {
-		if (scopes.size() > 1) {
-			Map<String, SymbolInfo> scope = scopes.peek();
-			// log.append("--- Tabla de Simbolos (Ambito Local) ---\n");
-			logScope(scope, log);
-			// log.append("----------------------------------------\n\n");
-			scopes.pop();
+		if (nivel > 0) {
+			List<SymbolInfo> scope = declarados.subList(inicios[nivel], declarados.size());
+			// Se deshacen las declaraciones del ámbito, de la última a la primera
+			for (int i = scope.size() - 1; i >= 0; i--) {
+				SymbolInfo info = scope.get(i);
+				visibles[indice(info.id)] = info.sombra;
+			}
+			scope.clear();
+			// El ámbito cerrado se guarda solo, sin una versión del exterior
+			// que lo retenga: el volcado no la necesita
+			cerrados = new Cerrado(versiones[nivel].compactar(), cerrados);
+			versiones[nivel--] = null;
+			instantanea = congelar(nivel);
 		}
 	}
 
-	public boolean existeLocal(String id) {
-		return scopes.peek().containsKey(id);
+	/** @return instantánea del ámbito {@code n} con sus exteriores como padres. */
+	private SymbolSnapshot congelar(int n) {
+		return versiones[n].conPadre(n > 0 ? congelar(n - 1) : null);
 	}
 
-	public boolean existe(String id) {
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(id)) {
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * Publica el estado actual como {@link #getInstantanea()}; el parser lo
+	 * llama al terminar el análisis.
+	 */
+	public void publicar() {
+		instantanea = congelar(nivel);
+	}
+
+	/**
+	 * @return la última instantánea publicada del ámbito en curso (con los
+	 *         exteriores como padres): la de cuando se cerró el último ámbito o
+	 *         se llamó a {@link #publicar()}. Se puede llamar desde cualquier
+	 *         hilo.
+	 */
+	public SymbolSnapshot getInstantanea() {
+		return instantanea;
 	}
 
-	public void anadirVar(String id, Type type) {
-		SymbolInfo info = new SymbolInfo(id, type, Category.VARIABLE);
+	/**
+	 * @return instantáneas de los ámbitos ya cerrados, en el orden en que se
+	 *         cerraron, con solo sus propios símbolos (sin padre). Se puede
+	 *         llamar desde cualquier hilo.
+	 */
+	public List<SymbolSnapshot> getAmbitosCerrados() {
+		Cerrado ultimo = cerrados;
+		if (ultimo == null)
+			return List.of();
+		SymbolSnapshot[] ambitos = new SymbolSnapshot[ultimo.size];
+		for (Cerrado c = ultimo; c != null; c = c.anterior)
+			ambitos[c.size - 1] = c.ambito;
+		return List.of(ambitos);
+	}
+
+	/**
+	 * @return posición del símbolo en {@link #visibles}: los ids del
+	 *         {@link Interner} son positivos y las claves propias del parser,
+	 *         negativas, así que se intercalan.
+	 */
+	static int indice(int id) {
+		return id >= 0 ? id << 1 : (-id << 1) - 1;
+	}
+
+	/**
+	 * Busca un símbolo con una sola consulta; el resultado sirve como
+	 * referencia al símbolo para leer su tipo, categoría y parámetros.
+	 *
+	 * @return símbolo visible con ese id, o null si no hay ninguno.
+	 */
+	public SymbolInfo buscar(int id) {
+		int i = indice(id);
+		return i < visibles.length ? visibles[i] : null;
+	}
+
+	public boolean existeLocal(int id) {
+		SymbolInfo info = buscar(id);
+		return info != null && info.nivel == nivel;
+	}
+
+	public boolean existe(int id) {
+		return buscar(id) != null;
+	}
+
+	public void anadirVar(int id, String lexeme, Type type) {
+		SymbolInfo info = new SymbolInfo(lexeme, type, Category.VARIABLE);
 		info.desplazamiento = currentOffset;
+		currentOffset += tamano(type);
+		declarar(id, info);
+	}
+
+	/** @return espacio que ocupa una variable del tipo dado. */
+	static int tamano(Type type) {
 		switch (type) {
 			case ENTERO:
-				currentOffset += 2;
-				break;
+				return 2;
 			case REAL:
-				currentOffset += 4;
-				break;
+				return 4;
 			case CADENA:
-				currentOffset += 64;
-				break;
+				return 64;
 			case BOOLEAN:
-				currentOffset += 1;
-				break;
+				return 1;
 			default:
-				currentOffset += 1;
-				break;
+				return 1;
 		}
-		scopes.peek().put(id, info);
 	}
 
-	public void anadirFunc(String id, Type type) {
-		SymbolInfo info = new SymbolInfo(id, type, Category.FUNCION);
-		scopes.peek().put(id, info);
+	public void anadirFunc(int id, String lexeme, Type type) {
+		SymbolInfo info = new SymbolInfo(lexeme, type, Category.FUNCION);
+		declarar(id, info);
 		// Functions added to current scope.
 	}
 
-	public void setParamsFunc(String id, List<Type> params) {
-		SymbolInfo info = buscarSimbolo(id);
+	/**
+	 * Da de alta el símbolo en el ámbito actual. Si ya había uno con ese id en
+	 * el mismo ámbito, lo sustituye en su sitio del volcado.
+	 */
+	private void declarar(int id, SymbolInfo info) {
+		int i = indice(id);
+		if (i >= visibles.length)
+			visibles = Arrays.copyOf(visibles, Math.max(i + 1, visibles.length * 2));
+		SymbolInfo anterior = visibles[i];
+		info.id = id;
+		info.nivel = nivel;
+		if (anterior != null && anterior.nivel == nivel) {
+			info.sombra = anterior.sombra;
+			info.posicion = anterior.posicion;
+			declarados.set(info.posicion, info);
+		} else {
+			info.sombra = anterior;
+			info.posicion = declarados.size();
+			declarados.add(info);
+		}
+		visibles[i] = info;
+		info.simbolo = new SymbolSnapshot.Simbolo(id, info);
+		versiones[nivel] = versiones[nivel].con(info.simbolo);
+	}
+
+	public void setParamsFunc(int id, List<Type> params) {
+		SymbolInfo info = buscar(id);
 		if (info != null && info.category == Category.FUNCION) {
 			info.params = new ArrayList<>(params);
+			info.simbolo = new SymbolSnapshot.Simbolo(id, info);
+			versiones[info.nivel] = versiones[info.nivel].con(info.simbolo);
 		}
 	}
 
-	private SymbolInfo buscarSimbolo(String id) {
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(id)) {
-				return scopes.get(i).get(id);
-			}
-		}
-		return null;
+	public Type buscarTipo(int id) {
+		return tipo(buscar(id));
+	}
+
+	public Category buscarCategoria(int id) {
+		return categoria(buscar(id));
+	}
+
+	public List<Type> buscarParams(int id) {
+		return params(buscar(id));
 	}
 
-	public Type buscarTipo(String id) {
-		SymbolInfo info = buscarSimbolo(id);
+	/** @return tipo de un símbolo devuelto por {@link #buscar}, o ERROR si no existe. */
+	public static Type tipo(SymbolInfo info) {
 		return info != null ? info.type : Type.ERROR;
 	}
 
-	public Category buscarCategoria(String id) {
-		SymbolInfo info = buscarSimbolo(id);
+	/** @return categoría de un símbolo devuelto por {@link #buscar}, o null si no existe. */
+	public static Category categoria(SymbolInfo info) {
 		return info != null ? info.category : null;
 	}
 
-	public List<Type> buscarParams(String id) {
-		SymbolInfo info = buscarSimbolo(id);
+	/** @return parámetros de un símbolo devuelto por {@link #buscar}, o null si no existe. */
+	public static List<Type> params(SymbolInfo info) {
 		return info != null ? info.params : null;
 	}
 
-	private void logScope(Map<String, SymbolInfo> scope, StringBuilder target) {
-		for (SymbolInfo info : scope.values()) {
-			target.append("LEXEMA: '").append(info.lexeme).append("'\n");
-			if (info.category == Category.VARIABLE) {
-				target.append("  TIPO: ").append(info.type).append("\n");
-				target.append("  DESPLAZAMIENTO: ").append(info.desplazamiento).append("\n");
-			} else if (info.category == Category.FUNCION) {
-				target.append("  TIPO: FUNCION\n");
-				target.append("  RETORNO: ").append(info.type).append("\n");
-				target.append("  NUM_PARAMS: ").append(info.params.size()).append("\n");
-				target.append("  TIPOS_PARAMS: ").append(info.params).append("\n");
-			}
-			target.append("------------------------------------------\n");
-		}
+	/**
+	 * @return ámbitos en el orden del volcado: los cerrados según se cerraron
+	 *         y el global, tal como está ahora, al final.
+	 */
+	private List<List<SymbolSnapshot.Simbolo>> ambitosVolcado() {
+		List<List<SymbolSnapshot.Simbolo>> ambitos = new ArrayList<>();
+		for (SymbolSnapshot ambito : getAmbitosCerrados())
+			ambitos.add(ambito.simbolos());
+		ambitos.add(versiones[0].simbolos());
+		return ambitos;
+	}
+
+	/**
+	 * Escribe la tabla en el formato de tabla_simbolos.txt. Los ámbitos
+	 * cerrados se guardan como símbolos y solo se les da formato aquí.
+	 */
+	public void writeTo(Writer out) throws IOException {
+		SymbolTableWriter.texto(ambitosVolcado(), out);
+	}
+
+	/** Escribe la tabla en JSON (ver {@link SymbolTableWriter}). */
+	public void writeJson(Writer out) throws IOException {
+		SymbolTableWriter.json(ambitosVolcado(), out);
 	}
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append(log);
-		if (!scopes.isEmpty()) {
-			// sb.append("--- Tabla de Simbolos (Ambito Global/Actual) ---\n");
-			logScope(scopes.get(0), sb);
-			// sb.append("----------------------------------------------\n");
+		StringWriter sw = new StringWriter();
+		try {
+			writeTo(sw);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return sb.toString();
+		return sw.toString();
 	}
 }
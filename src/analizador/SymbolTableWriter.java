@@ -0,0 +1,97 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import analizador.SymbolSnapshot.Simbolo;
+import analizador.SymbolTable.Category;
+import analizador.SymbolTable.Type;
+
+/**
+ * Escribe una tabla de símbolos ámbito a ámbito, dando formato a cada símbolo
+ * en el momento de escribirlo, en el texto de tabla_simbolos.txt o en JSON.
+ * Los ámbitos van en el orden del volcado: los locales según se cerraron y el
+ * global al final.
+ *
+ * El JSON es un objeto con la lista "ambitos"; cada ámbito lleva "global" y
+ * sus "simbolos", y cada símbolo su "lexema", su "categoria" y, si es una
+ * variable, "tipo" y "desplazamiento" o, si es una función, "retorno" y
+ * "params".
+ */
+final class SymbolTableWriter {
+	private static final String SEPARADOR = "------------------------------------------\n";
+
+	private SymbolTableWriter() {
+	}
+
+	/** Escribe los ámbitos en el formato de tabla_simbolos.txt. */
+	static void texto(Iterable<? extends Iterable<Simbolo>> ambitos, Writer out) throws IOException {
+		for (Iterable<Simbolo> ambito : ambitos) {
+			for (Simbolo simbolo : ambito) {
+				out.write("LEXEMA: '");
+				out.write(simbolo.lexeme);
+				out.write("'\n");
+				if (simbolo.category == Category.VARIABLE) {
+					out.write("  TIPO: " + simbolo.type + "\n");
+					out.write("  DESPLAZAMIENTO: " + simbolo.desplazamiento + "\n");
+				} else if (simbolo.category == Category.FUNCION) {
+					out.write("  TIPO: FUNCION\n");
+					out.write("  RETORNO: " + simbolo.type + "\n");
+					out.write("  NUM_PARAMS: " + simbolo.params.size() + "\n");
+					out.write("  TIPOS_PARAMS: " + simbolo.params + "\n");
+				}
+				out.write(SEPARADOR);
+			}
+		}
+	}
+
+	/** Escribe los ámbitos en JSON; el último es el global. */
+	static void json(List<? extends Iterable<Simbolo>> ambitos, Writer out) throws IOException {
+		out.write("{\"ambitos\":[");
+		for (int i = 0; i < ambitos.size(); i++) {
+			if (i > 0)
+				out.write(',');
+			out.write("\n{\"global\":" + (i == ambitos.size() - 1) + ",\"simbolos\":[");
+			boolean primero = true;
+			for (Simbolo simbolo : ambitos.get(i)) {
+				if (!primero)
+					out.write(',');
+				primero = false;
+				out.write("\n{\"lexema\":");
+				cadena(simbolo.lexeme, out);
+				out.write(",\"categoria\":\"" + simbolo.category + "\"");
+				if (simbolo.category == Category.VARIABLE) {
+					out.write(",\"tipo\":\"" + simbolo.type + "\"");
+					out.write(",\"desplazamiento\":" + simbolo.desplazamiento);
+				} else {
+					out.write(",\"retorno\":\"" + simbolo.type + "\",\"params\":[");
+					for (int p = 0; p < simbolo.params.size(); p++) {
+						Type tipo = simbolo.params.get(p);
+						out.write((p > 0 ? ",\"" : "\"") + tipo + "\"");
+					}
+					out.write(']');
+				}
+				out.write('}');
+			}
+			out.write("]}");
+		}
+		out.write("\n]}\n");
+	}
+
+	// La recuperación de errores puede dejar como nombre cualquier lexema
+	private static void cadena(String texto, Writer out) throws IOException {
+		out.write('"');
+		for (int i = 0; i < texto.length(); i++) {
+			char c = texto.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if (c < 0x20) {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+}
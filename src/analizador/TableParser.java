@@ -0,0 +1,91 @@
+package analizador;
+
+import java.util.Arrays;
+
+/**
+ * Analizador sintáctico LL(1) dirigido por una {@link LL1Table}. Usa una pila
+ * explícita de símbolos en lugar de la pila de Java, así que la profundidad del
+ * programa no está limitada por -Xss, y elige cada producción con un único
+ * acceso a la tabla.
+ *
+ * Solo hace el análisis sintáctico: registra las reglas aplicadas (el mismo
+ * parse.txt que el {@link Parser}) y los errores sintácticos, sin tipos ni
+ * tabla de símbolos. La recuperación es la del {@link Parser}: un terminal que
+ * no coincide se da por consumido avanzando un token, salvo un ';' ante '}' o
+ * el final, y un no terminal sin producción aplicable se abandona sin avanzar.
+ */
+public final class TableParser {
+	private final LL1Table table;
+	private final TokenStream tokens;
+	private final ErrorManager errorManager;
+	private final RuleLog reglas;
+
+	public TableParser(LL1Table table, TokenStream tokens, ErrorManager errorManager) {
+		this(table, tokens, errorManager, new RuleLog());
+	}
+
+	/** Crea un analizador que registra las reglas aplicadas en {@code reglas}. */
+	public TableParser(LL1Table table, TokenStream tokens, ErrorManager errorManager, RuleLog reglas) {
+		this.table = table;
+		this.tokens = tokens;
+		this.errorManager = errorManager;
+		this.reglas = reglas;
+	}
+
+	/** Analiza desde el axioma hasta vaciar la pila. */
+	public void parse() {
+		Grammar grammar = table.grammar();
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = -(grammar.axiom() + 1);
+		TokenKind kind = tokens.peekKind();
+		while (top > 0) {
+			int symbol = stack[--top];
+			if (symbol >= 0) {
+				if (kind.ordinal() != symbol) {
+					error("Se esperaba '" + grammar.symbolName(symbol) + "'");
+					// Un ';' que falta antes de '}' o del final no se lleva el token
+					if (symbol == TokenKind.PUNTO_COMA.ordinal()
+							&& (kind == TokenKind.LLAVE_DCHA || kind == TokenKind.FIN_FICH))
+						continue;
+				}
+				if (kind != TokenKind.FIN_FICH) {
+					tokens.skip();
+					kind = tokens.peekKind();
+				}
+				continue;
+			}
+			int nt = -symbol - 1;
+			int p = table.predict(nt, kind.ordinal());
+			if (p == 0) {
+				error("Token inesperado '" + tokens.peek(0).getLexeme() + "' en " + grammar.nonTerminal(nt));
+				continue;
+			}
+			reglas.add(p);
+			int[] rhs = grammar.rhs(p);
+			if (top + rhs.length > stack.length)
+				stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + rhs.length));
+			for (int i = rhs.length - 1; i >= 0; i--)
+				stack[top++] = rhs[i];
+		}
+	}
+
+	/**
+	 * @return todas las reglas aplicadas en el formato de parse.txt.
+	 * @throws IllegalStateException si el parser se creó con un
+	 *                               {@link RuleLog} que se vuelca a un destino,
+	 *                               que no guarda las reglas ya escritas.
+	 */
+	public String getReglasAplicadasLinea() {
+		return reglas.toString();
+	}
+
+	/** @return registro de las reglas aplicadas. */
+	public RuleLog getReglas() {
+		return reglas;
+	}
+
+	private void error(String message) {
+		errorManager.agregarError("SINTÁCTICO", tokens.peek(0).getLine(), message);
+	}
+}
@@ -0,0 +1,115 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import analizador.Quad.Operando;
+import analizador.SymbolTable.Type;
+
+/**
+ * Representación intermedia de un programa en código de tres direcciones,
+ * generada por {@link IRGenerator}: las variables globales y un
+ * {@link Procedimiento} por función, más el principal con las sentencias
+ * globales. Las expresiones usan temporales (t1, t2...) y el control de flujo
+ * de if, for y && etiquetas (L1, L2...) y saltos. Los int son de 16 bits, y
+ * las constantes que pliegan los pases también.
+ */
+public final class ThreeAddressCode {
+
+	/** Código de una función o del programa principal. */
+	public static final class Procedimiento {
+		public final String nombre; // en las llamadas; null en el principal
+		public final Type retorno;
+		public final List<Operando> params;
+		public final List<Operando> locales; // variables de los let
+		List<Quad> codigo;
+
+		Procedimiento(String nombre, Type retorno, List<Operando> params, List<Operando> locales, List<Quad> codigo) {
+			this.nombre = nombre;
+			this.retorno = retorno;
+			this.params = params;
+			this.locales = locales;
+			this.codigo = codigo;
+		}
+
+		public List<Quad> getCodigo() {
+			return codigo;
+		}
+
+		/** @return instrucciones, sin contar las etiquetas. */
+		public int instrucciones() {
+			int n = 0;
+			for (Quad q : codigo) {
+				if (q.op != Quad.Op.ETIQUETA)
+					n++;
+			}
+			return n;
+		}
+	}
+
+	final List<Operando> globales;
+	final List<Procedimiento> procedimientos; // funciones en orden y el principal al final
+
+	ThreeAddressCode(List<Operando> globales, List<Procedimiento> procedimientos) {
+		this.globales = globales;
+		this.procedimientos = procedimientos;
+	}
+
+	public List<Procedimiento> getProcedimientos() {
+		return procedimientos;
+	}
+
+	/** @return instrucciones de todo el programa, sin contar las etiquetas. */
+	public int instrucciones() {
+		int n = 0;
+		for (Procedimiento p : procedimientos)
+			n += p.instrucciones();
+		return n;
+	}
+
+	/** Escribe el código, un procedimiento tras otro, con una instrucción por línea. */
+	public void writeTo(Writer out) throws IOException {
+		out.write("globales:");
+		escribirVariables(globales, out);
+		out.write("\n");
+		for (Procedimiento p : procedimientos) {
+			out.write("\n");
+			if (p.nombre == null) {
+				out.write("principal:\n");
+			} else {
+				out.write("function " + p.retorno + " " + p.nombre + "(");
+				for (int i = 0; i < p.params.size(); i++)
+					out.write((i > 0 ? ", " : "") + p.params.get(i).tipo + " " + p.params.get(i));
+				out.write("):\n");
+				if (!p.locales.isEmpty()) {
+					out.write("  locales:");
+					escribirVariables(p.locales, out);
+					out.write("\n");
+				}
+			}
+			for (Quad q : p.codigo) {
+				out.write(q.op == Quad.Op.ETIQUETA ? "" : "    ");
+				out.write(q.toString());
+				out.write("\n");
+			}
+		}
+	}
+
+	private static void escribirVariables(List<Operando> variables, Writer out) throws IOException {
+		for (Operando v : variables)
+			out.write(" " + v.tipo + " " + v);
+	}
+
+	@Override
+	public String toString() {
+		StringWriter sw = new StringWriter();
+		try {
+			writeTo(sw);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sw.toString();
+	}
+}
@@ -1,28 +1,27 @@
 package analizador;
 
 /**
- * Representa un token léxico con su tipo textual, lexema y ubicación.
+ * Representa un token léxico con su tipo, lexema y ubicación.
  */
 public class Token {
-	private final String type;
+	private final TokenKind kind;
 	private final String lexeme;
-	private final Integer symbolIndex; // opcional, solo para ids
+	private final int symbolIndex; // id del Interner, solo para ids (0 si no)
 	private final int line;
 	private final int colStart;
 	private final int colEnd;
 
 	/**
-	 * @param type        tipo lógico del token (por ejemplo "id", "int", "&&",
-	 *                    "return"...)
+	 * @param kind        tipo del token (terminal de la gramática)
 	 * @param lexeme      texto asociado al token
 	 * @param line        línea donde se encontró
 	 * @param colStart    columna inicial
 	 * @param colEnd      columna final
-	 * @param symbolIndex posición del lexema en la tabla de símbolos (solo para
-	 *                    ids, puede ser null)
+	 * @param symbolIndex id del lexema en el {@link Interner}, que es su posición
+	 *                    en la tabla de símbolos (solo para ids, 0 si no)
 	 */
-	public Token(String type, String lexeme, int line, int colStart, int colEnd, Integer symbolIndex) {
-		this.type = type;
+	public Token(TokenKind kind, String lexeme, int line, int colStart, int colEnd, int symbolIndex) {
+		this.kind = kind;
 		this.lexeme = lexeme;
 		this.symbolIndex = symbolIndex;
 		this.line = line;
@@ -30,14 +29,24 @@ public class Token {
 		this.colEnd = colEnd;
 	}
 
+	public TokenKind getKind() {
+		return kind;
+	}
+
+	/** @return nombre del terminal, tal y como se escribe en tokens.txt. */
 	public String getType() {
-		return type;
+		return kind.getNombre();
 	}
 
 	public String getLexeme() {
 		return lexeme;
 	}
 
+	/** @return id del identificador en el {@link Interner}, o 0 si no es un id. */
+	public int getSymbolIndex() {
+		return symbolIndex;
+	}
+
 	public int getLine() {
 		return line;
 	}
@@ -50,15 +59,15 @@ public class Token {
 		return colEnd;
 	}
 
-	public boolean isType(String expected) {
-		return type.equals(expected);
+	public boolean is(TokenKind expected) {
+		return kind == expected;
 	}
 
 	@Override
 	public String toString() {
-		if ("id".equals(type) && symbolIndex != null) {
+		if (kind == TokenKind.ID && symbolIndex != 0) {
 			return "<" + lexeme + "," + symbolIndex + ">";
 		}
-		return "<" + type + ", " + lexeme + ">";
+		return "<" + kind.getNombre() + ", " + lexeme + ">";
 	}
 }
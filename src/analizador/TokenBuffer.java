@@ -0,0 +1,428 @@
+package analizador;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Almacén compacto de tokens: en lugar de un objeto {@link Token} por token,
+ * guarda tipo, desplazamientos en el fuente, línea, columna e índice en la
+ * tabla de símbolos en arrays paralelos de primitivos. Los lexemas no se
+ * copian: se extraen del fuente solo cuando alguien los pide (mensajes de
+ * error, tokens.txt...).
+ *
+ * La capacidad libre de los arrays forma un hueco que normalmente está al
+ * final, pero que puede moverse para reescribir un tramo de tokens en su sitio
+ * (véase {@link Lexer#relex}). Las posiciones y líneas de los tokens que
+ * quedan tras el hueco se guardan sin el desplazamiento pendiente
+ * {@code shiftPos}/{@code shiftLine}, de modo que desplazar toda la cola tras
+ * una edición cuesta O(1).
+ */
+public class TokenBuffer {
+	private static final TokenKind[] KINDS = TokenKind.values();
+
+	private ByteBuffer source;
+	private byte[] kinds;
+	private int[] starts; // primer byte del lexema
+	private int[] ends; // byte siguiente al último del lexema
+	private int[] lines; // línea al terminar el token
+	private int[] columns;
+	private int[] symbols; // 0 si el token no es un id
+	private int gapStart = 0; // tokens antes del hueco
+	private int gapEnd; // primer token tras el hueco (posición física)
+	private int shiftPos = 0; // desplazamiento pendiente de los tokens tras el hueco
+	private int shiftLine = 0;
+	private final List<LexError> errors = new ArrayList<>(); // errores léxicos, en orden
+	private int errorInsert = 0; // donde se insertan los errores nuevos
+
+	/** Error léxico anclado al byte donde empieza el lexema que lo produjo. */
+	private static final class LexError {
+		int anchor;
+		int line;
+		final String message;
+
+		LexError(int anchor, int line, String message) {
+			this.anchor = anchor;
+			this.line = line;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * @param source           fuente UTF-8 del que se extraerán los lexemas.
+	 * @param expectedCapacity número estimado de tokens.
+	 */
+	public TokenBuffer(ByteBuffer source, int expectedCapacity) {
+		int capacity = Math.max(16, expectedCapacity);
+		this.source = source;
+		this.kinds = new byte[capacity];
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
+		this.lines = new int[capacity];
+		this.columns = new int[capacity];
+		this.symbols = new int[capacity];
+		this.gapEnd = capacity;
+	}
+
+	/**
+	 * Añade un token en el hueco (al final, salvo durante una reescritura).
+	 *
+	 * @param symbolIndex posición en la tabla de símbolos, o 0 si no es un id.
+	 */
+	public void add(TokenKind kind, int start, int end, int line, int column, int symbolIndex) {
+		if (gapStart == gapEnd)
+			grow(size() + 1);
+		int i = gapStart++;
+		kinds[i] = (byte) kind.ordinal();
+		starts[i] = start;
+		ends[i] = end;
+		lines[i] = line;
+		columns[i] = column;
+		symbols[i] = symbolIndex;
+	}
+
+	/**
+	 * Añade al final los tokens y errores de otro buffer sobre el mismo fuente,
+	 * traduciendo sus índices de símbolo.
+	 *
+	 * @param symbolMap id que corresponde aquí a cada id de {@code other}.
+	 */
+	void append(TokenBuffer other, int[] symbolMap) {
+		moveGap(size());
+		other.moveGap(other.size());
+		int n = other.gapStart;
+		if (gapEnd - gapStart < n)
+			grow(size() + n);
+		System.arraycopy(other.kinds, 0, kinds, gapStart, n);
+		System.arraycopy(other.starts, 0, starts, gapStart, n);
+		System.arraycopy(other.ends, 0, ends, gapStart, n);
+		System.arraycopy(other.lines, 0, lines, gapStart, n);
+		System.arraycopy(other.columns, 0, columns, gapStart, n);
+		for (int i = 0; i < n; i++) {
+			int symbol = other.symbols[i];
+			symbols[gapStart + i] = symbol != 0 ? symbolMap[symbol] : 0;
+		}
+		gapStart += n;
+		errors.addAll(other.errors);
+		errorInsert = errors.size();
+	}
+
+	/** Amplía los arrays dejando el hueco donde estaba. */
+	private void grow(int minCapacity) {
+		int oldCapacity = kinds.length;
+		int capacity = Math.max(minCapacity, oldCapacity + (oldCapacity >> 1));
+		int tail = oldCapacity - gapEnd;
+		int newGapEnd = capacity - tail;
+		kinds = regrow(kinds, capacity, newGapEnd, tail);
+		starts = regrow(starts, capacity, newGapEnd, tail);
+		ends = regrow(ends, capacity, newGapEnd, tail);
+		lines = regrow(lines, capacity, newGapEnd, tail);
+		columns = regrow(columns, capacity, newGapEnd, tail);
+		symbols = regrow(symbols, capacity, newGapEnd, tail);
+		gapEnd = newGapEnd;
+	}
+
+	private byte[] regrow(byte[] array, int capacity, int newGapEnd, int tail) {
+		byte[] result = Arrays.copyOf(array, capacity);
+		System.arraycopy(array, gapEnd, result, newGapEnd, tail);
+		return result;
+	}
+
+	private int[] regrow(int[] array, int capacity, int newGapEnd, int tail) {
+		int[] result = Arrays.copyOf(array, capacity);
+		System.arraycopy(array, gapEnd, result, newGapEnd, tail);
+		return result;
+	}
+
+	/**
+	 * Mueve el hueco para que quede delante del token {@code index}. Los tokens
+	 * que cruzan el hueco ganan o pierden el desplazamiento pendiente.
+	 */
+	void moveGap(int index) {
+		if (index < gapStart) {
+			int n = gapStart - index;
+			int to = gapEnd - n;
+			moveBlock(index, to, n);
+			for (int i = to; i < gapEnd; i++) {
+				starts[i] -= shiftPos;
+				ends[i] -= shiftPos;
+				lines[i] -= shiftLine;
+			}
+			gapStart = index;
+			gapEnd = to;
+		} else if (index > gapStart) {
+			int n = index - gapStart;
+			moveBlock(gapEnd, gapStart, n);
+			for (int i = gapStart; i < index; i++) {
+				starts[i] += shiftPos;
+				ends[i] += shiftPos;
+				lines[i] += shiftLine;
+			}
+			gapStart = index;
+			gapEnd += n;
+		}
+		if (gapEnd == kinds.length) {
+			shiftPos = 0;
+			shiftLine = 0;
+		}
+	}
+
+	private void moveBlock(int from, int to, int n) {
+		System.arraycopy(kinds, from, kinds, to, n);
+		System.arraycopy(starts, from, starts, to, n);
+		System.arraycopy(ends, from, ends, to, n);
+		System.arraycopy(lines, from, lines, to, n);
+		System.arraycopy(columns, from, columns, to, n);
+		System.arraycopy(symbols, from, symbols, to, n);
+	}
+
+	/** @return posición física en los arrays del token {@code i}. */
+	private int at(int i) {
+		return i < gapStart ? i : i + (gapEnd - gapStart);
+	}
+
+	public int size() {
+		return kinds.length - (gapEnd - gapStart);
+	}
+
+	public TokenKind kind(int i) {
+		return KINDS[kinds[at(i)]];
+	}
+
+	public int line(int i) {
+		int p = at(i);
+		return p < gapEnd ? lines[p] : lines[p] + shiftLine;
+	}
+
+	public int column(int i) {
+		return columns[at(i)];
+	}
+
+	public int symbolIndex(int i) {
+		return symbols[at(i)];
+	}
+
+	/** @return primer byte del lexema (sin la comilla, en las cadenas). */
+	int start(int i) {
+		int p = at(i);
+		return p < gapEnd ? starts[p] : starts[p] + shiftPos;
+	}
+
+	/** @return byte siguiente al último del lexema. */
+	int end(int i) {
+		int p = at(i);
+		return p < gapEnd ? ends[p] : ends[p] + shiftPos;
+	}
+
+	/** @return primer byte del token en el fuente, comillas incluidas. */
+	int rawStart(int i) {
+		return kind(i) == TokenKind.CADENA ? start(i) - 1 : start(i);
+	}
+
+	/** @return byte siguiente al token en el fuente, comillas incluidas. */
+	int rawEnd(int i) {
+		return kind(i) == TokenKind.CADENA ? end(i) + 1 : end(i);
+	}
+
+	/**
+	 * @return línea donde empieza el token; solo difiere de {@link #line(int)}
+	 *         en las cadenas que ocupan varias líneas.
+	 */
+	int startLine(int i) {
+		int line = line(i);
+		if (kind(i) == TokenKind.CADENA) {
+			for (int p = start(i); p < end(i); p++) {
+				if (source.get(p) == '\n')
+					line--;
+			}
+		}
+		return line;
+	}
+
+	/** @return lexema del token, extraído del fuente en este momento. */
+	public String lexeme(int i) {
+		return Lexer.slice(source, start(i), end(i));
+	}
+
+	/** @return token {@code i} como objeto, para quien necesite la API de Token. */
+	public Token token(int i) {
+		String lexeme = lexeme(i);
+		int column = column(i);
+		int colEnd = column + lexeme.length() - 1;
+		if (kind(i) == TokenKind.FIN_FICH)
+			colEnd = column;
+		return new Token(kind(i), lexeme, line(i), column, colEnd, symbolIndex(i));
+	}
+
+	/**
+	 * Escribe los tokens con el mismo formato que {@link Token#toString()}, una
+	 * línea por token, sin crear objetos Token.
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		for (int i = 0; i < size(); i++) {
+			writer.write('<');
+			int symbol = symbolIndex(i);
+			if (symbol != 0) {
+				writer.write(lexeme(i));
+				writer.write(',');
+				writer.write(Integer.toString(symbol));
+			} else {
+				writer.write(kind(i).getNombre());
+				writer.write(", ");
+				writer.write(lexeme(i));
+			}
+			writer.write('>');
+			writer.write(System.lineSeparator());
+		}
+	}
+
+	// ---- Errores léxicos ----
+
+	/** Registra un error léxico del lexema que empieza en {@code anchor}. */
+	void addError(int anchor, int line, String message) {
+		errors.add(errorInsert++, new LexError(anchor, line, message));
+	}
+
+	/** Pasa los errores léxicos registrados, en orden, al gestor de errores. */
+	public void reportErrors(ErrorManager errorManager) {
+		for (LexError error : errors)
+			errorManager.agregarError("LÉXICO", error.line, error.message);
+	}
+
+	// ---- Reescritura de un tramo (análisis incremental) ----
+
+	/**
+	 * @return índice del último token que termina antes de {@code offset}
+	 *         (comillas incluidas), o -1 si no hay ninguno.
+	 */
+	int lastEndingBefore(int offset) {
+		int lo = 0;
+		int hi = size() - 1;
+		int result = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (rawEnd(mid) < offset) {
+				result = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Prepara la reescritura a partir del token {@code index}, que empieza en el
+	 * byte {@code restart}: los tokens siguientes quedan tras el hueco como
+	 * tokens antiguos, y los nuevos se insertarán delante de ellos.
+	 */
+	void beginRewrite(int index, int restart, ByteBuffer newSource) {
+		moveGap(index);
+		source = newSource;
+		errorInsert = 0;
+		while (errorInsert < errors.size() && errors.get(errorInsert).anchor < restart)
+			errorInsert++;
+	}
+
+	/** @return índice del primer token antiguo (el último nuevo es el anterior). */
+	int firstOld() {
+		return gapStart;
+	}
+
+	/** @return true si queda algún token antiguo tras el hueco. */
+	boolean hasOld() {
+		return gapEnd < kinds.length;
+	}
+
+	/** Descarta el primer token antiguo tras el hueco. */
+	void dropOld() {
+		gapEnd++;
+	}
+
+	/** Descarta el último token nuevo añadido en el hueco. */
+	void dropLast() {
+		gapStart--;
+	}
+
+	/**
+	 * Termina la reescritura: los tokens antiguos que quedan se desplazan y se
+	 * sustituyen los errores antiguos desde el inicio de la reescritura hasta
+	 * {@code oldSync}, en coordenadas antiguas.
+	 */
+	void endRewrite(int oldSync, int posDelta, int lineDelta) {
+		shiftPos += posDelta;
+		shiftLine += lineDelta;
+		int from = errorInsert;
+		int to = from;
+		while (to < errors.size() && errors.get(to).anchor < oldSync)
+			to++;
+		errors.subList(from, to).clear();
+		for (int i = from; i < errors.size(); i++) {
+			LexError error = errors.get(i);
+			error.anchor += posDelta;
+			error.line += lineDelta;
+		}
+		errorInsert = errors.size();
+		if (gapEnd == kinds.length) {
+			shiftPos = 0;
+			shiftLine = 0;
+		}
+	}
+
+	/** @return flujo que recorre el buffer para el parser. */
+	public TokenStream stream() {
+		return new Cursor(0);
+	}
+
+	/**
+	 * @return flujo que empieza en el token {@code desde}; {@code previous()}
+	 *         sigue viendo los tokens anteriores. Varios flujos pueden recorrer
+	 *         a la vez el mismo buffer mientras nadie lo modifique.
+	 */
+	TokenStream stream(int desde) {
+		return new Cursor(desde);
+	}
+
+	/**
+	 * Recorrido del buffer por índices; solo crea objetos Token cuando el parser
+	 * pide uno concreto.
+	 */
+	private class Cursor implements TokenStream {
+		private int current;
+
+		Cursor(int desde) {
+			current = desde;
+		}
+
+		@Override
+		public TokenKind peekKind() {
+			return KINDS[kinds[at(current)]];
+		}
+
+		@Override
+		public Token peek(int k) {
+			return token(Math.min(current + k, size() - 1));
+		}
+
+		@Override
+		public void skip() {
+			if (kinds[at(current)] != TokenKind.FIN_FICH.ordinal())
+				current++;
+		}
+
+		@Override
+		public Token nextToken() {
+			Token token = token(current);
+			skip();
+			return token;
+		}
+
+		@Override
+		public Token previous() {
+			return token(current - 1);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package analizador;
+
+/**
+ * Tipos de token del lenguaje, uno por cada terminal de la gramática.
+ * El parser compara tipos por identidad y usa conjuntos FIRST como bits
+ * de un {@code long}, así que no hay comparaciones de cadenas en el bucle
+ * principal.
+ */
+public enum TokenKind {
+	PR_BOOLEAN("PRboolean"),
+	PR_FLOAT("PRfloat"),
+	PR_FOR("PRfor"),
+	PR_FUN("PRfun"),
+	PR_IF("PRif"),
+	PR_INT("PRint"),
+	PR_LET("PRlet"),
+	PR_READ("PRread"),
+	PR_WRITE("PRwrite"),
+	PR_RETURN("PRreturn"),
+	PR_STRING("PRstring"),
+	REAL("real"),
+	ENTERO("entero"),
+	CADENA("cadena"),
+	ID("id"),
+	ASIG_DIV("asigDiv"),
+	IGUAL("igual"),
+	COMA("coma"),
+	PUNTO_COMA("puntoComa"),
+	PAREN_IZQ("parenIzq"),
+	PAREN_DCHA("parenDcha"),
+	LLAVE_IZQ("llaveIzq"),
+	LLAVE_DCHA("llaveDcha"),
+	OP_SUMA("opSuma"),
+	OP_AND("opAnd"),
+	OP_IGUAL("opIgual"),
+	FALSE("false"),
+	TRUE("true"),
+	FIN_FICH("finFich");
+
+	private final String nombre;
+
+	TokenKind(String nombre) {
+		this.nombre = nombre;
+	}
+
+	/** @return nombre del terminal tal y como aparece en la gramática. */
+	public String getNombre() {
+		return nombre;
+	}
+
+	/** @return bit que representa este tipo dentro de un conjunto. */
+	public long bit() {
+		return 1L << ordinal();
+	}
+
+	/** @return true si este tipo pertenece al conjunto de bits indicado. */
+	public boolean in(long set) {
+		return (set & (1L << ordinal())) != 0;
+	}
+
+	/**
+	 * Construye un conjunto de tipos representado como máscara de bits.
+	 * Pensado para inicializar constantes, no para el bucle del parser.
+	 */
+	public static long setOf(TokenKind... kinds) {
+		long set = 0;
+		for (TokenKind kind : kinds) {
+			set |= kind.bit();
+		}
+		return set;
+	}
+
+	@Override
+	public String toString() {
+		return nombre;
+	}
+}
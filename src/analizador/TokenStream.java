@@ -0,0 +1,41 @@
+package analizador;
+
+import java.util.List;
+
+/**
+ * Fuente de tokens que el parser consume bajo demanda.
+ * Puede ser el propio {@link Lexer} (modo flujo), un {@link TokenBuffer} o
+ * una lista ya generada.
+ */
+public interface TokenStream {
+
+	/**
+	 * @param k distancia de lectura adelantada (0 es el siguiente token).
+	 * @return token situado {@code k} posiciones por delante, sin consumirlo.
+	 */
+	Token peek(int k);
+
+	/**
+	 * Consume y devuelve el siguiente token. Al llegar al final se sigue
+	 * devolviendo el token finFich.
+	 */
+	Token nextToken();
+
+	/** @return último token consumido. */
+	Token previous();
+
+	/** @return tipo del siguiente token, sin consumirlo. */
+	default TokenKind peekKind() {
+		return peek(0).getKind();
+	}
+
+	/** Consume el siguiente token sin necesidad de devolverlo. */
+	default void skip() {
+		nextToken();
+	}
+
+	/** @return flujo que recorre una lista de tokens terminada en finFich. */
+	static TokenStream of(List<Token> tokens) {
+		return new ListTokenStream(tokens);
+	}
+}
@@ -0,0 +1,284 @@
+package analizador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static analizador.Bytecode.*;
+
+/**
+ * Máquina de pila que ejecuta un {@link Bytecode}: un bucle con un switch
+ * sobre el código de operación, con el contador de programa y las cimas de las
+ * pilas en variables locales. Cada marco de llamada ocupa en la pila numérica
+ * y en la de cadenas los parámetros (que ya dejó allí el llamante), los locales
+ * y las profundidades máximas calculadas al compilar, así que solo se
+ * comprueba el espacio al llamar, no en cada operación.
+ *
+ * {@code write} y {@code read} son los de {@link ProgramIO}; la salida se vacía
+ * también al terminar. Los errores de ejecución (división entera por cero, los
+ * de read o más de {@link #MAX_LLAMADAS} llamadas anidadas) lanzan
+ * IllegalStateException.
+ */
+public final class VirtualMachine {
+	private static final String VACIA = "";
+	/** Llamadas anidadas como máximo, para que una recursión sin fin no agote la memoria. */
+	static final int MAX_LLAMADAS = 1 << 20;
+
+	private final Bytecode programa;
+	private final BufferedReader entrada;
+	private final Writer salida;
+	private long instrucciones = 0;
+
+	// Tabla de funciones en arrays para la llamada
+	private final int[] entradas;
+	private final int[] paramsNum;
+	private final int[] paramsCad;
+	private final int[] localesNum;
+	private final int[] localesCad;
+	private final int[] marcoNum;
+	private final int[] marcoCad;
+
+	public VirtualMachine(Bytecode programa, Reader entrada, Writer salida) {
+		this.programa = programa;
+		this.entrada = entrada instanceof BufferedReader ? (BufferedReader) entrada : new BufferedReader(entrada);
+		this.salida = salida;
+		int n = programa.funciones.length;
+		entradas = new int[n];
+		paramsNum = new int[n];
+		paramsCad = new int[n];
+		localesNum = new int[n];
+		localesCad = new int[n];
+		marcoNum = new int[n];
+		marcoCad = new int[n];
+		for (int i = 0; i < n; i++) {
+			Bytecode.Funcion f = programa.funciones[i];
+			entradas[i] = f.entrada;
+			paramsNum[i] = f.paramsNum;
+			paramsCad[i] = f.paramsCad;
+			localesNum[i] = f.localesNum;
+			localesCad[i] = f.localesCad;
+			marcoNum[i] = f.localesNum + f.pilaNum;
+			marcoCad[i] = f.localesCad + f.pilaCad;
+		}
+	}
+
+	/** @return operaciones ejecutadas en total por {@link #ejecutar}. */
+	public long getInstrucciones() {
+		return instrucciones;
+	}
+
+	/**
+	 * Ejecuta el programa desde el principio hasta HALT.
+	 *
+	 * @throws IllegalStateException si hay un error de ejecución
+	 * @throws IOException           si falla la entrada o la salida
+	 */
+	public void ejecutar() throws IOException {
+		final int[] codigo = programa.codigo;
+		final String[] constantes = programa.constantes;
+		int[] globales = new int[programa.globalesNum];
+		String[] globalesCad = new String[programa.globalesCad];
+		Arrays.fill(globalesCad, VACIA);
+
+		int[] pila = new int[Math.max(64, programa.pilaNum)];
+		String[] cadenas = new String[Math.max(64, programa.pilaCad)];
+		int[] marcos = new int[48]; // por llamada: retorno, base numérica y base de cadenas
+		int pc = 0;
+		int sp = 0; // primera posición libre
+		int csp = 0;
+		int bp = 0; // primer hueco del marco actual
+		int cbp = 0;
+		int fp = 0;
+		long n = 0;
+		try {
+			while (true) {
+				n++;
+				switch (codigo[pc++]) {
+					case HALT:
+						return;
+					case ICONST:
+					case FCONST:
+						pila[sp++] = codigo[pc++];
+						break;
+					case SCONST:
+						cadenas[csp++] = constantes[codigo[pc++]];
+						break;
+					case ILOAD:
+						pila[sp++] = pila[bp + codigo[pc++]];
+						break;
+					case ISTORE:
+						pila[bp + codigo[pc++]] = pila[--sp];
+						break;
+					case SLOAD:
+						cadenas[csp++] = cadenas[cbp + codigo[pc++]];
+						break;
+					case SSTORE:
+						cadenas[cbp + codigo[pc++]] = cadenas[--csp];
+						break;
+					case GILOAD:
+						pila[sp++] = globales[codigo[pc++]];
+						break;
+					case GISTORE:
+						globales[codigo[pc++]] = pila[--sp];
+						break;
+					case GSLOAD:
+						cadenas[csp++] = globalesCad[codigo[pc++]];
+						break;
+					case GSSTORE:
+						globalesCad[codigo[pc++]] = cadenas[--csp];
+						break;
+					case IADD:
+						sp--;
+						pila[sp - 1] = (short) (pila[sp - 1] + pila[sp]);
+						break;
+					case FADD:
+						sp--;
+						pila[sp - 1] = Float.floatToRawIntBits(real(pila[sp - 1]) + real(pila[sp]));
+						break;
+					case IDIV:
+						sp--;
+						if (pila[sp] == 0)
+							throw new IllegalStateException("División entera por cero");
+						pila[sp - 1] = (short) (pila[sp - 1] / pila[sp]);
+						break;
+					case FDIV:
+						sp--;
+						pila[sp - 1] = Float.floatToRawIntBits(real(pila[sp - 1]) / real(pila[sp]));
+						break;
+					case IEQ:
+						sp--;
+						pila[sp - 1] = pila[sp - 1] == pila[sp] ? 1 : 0;
+						break;
+					case FEQ:
+						sp--;
+						pila[sp - 1] = real(pila[sp - 1]) == real(pila[sp]) ? 1 : 0;
+						break;
+					case SEQ:
+						csp -= 2;
+						pila[sp++] = cadenas[csp].equals(cadenas[csp + 1]) ? 1 : 0;
+						break;
+					case IEQC:
+						sp--;
+						if (pila[sp - 2] != pila[sp])
+							pila[sp - 1] = 0;
+						break;
+					case FEQC:
+						sp--;
+						if (real(pila[sp - 2]) != real(pila[sp]))
+							pila[sp - 1] = 0;
+						break;
+					case SEQC:
+						csp--;
+						if (!cadenas[csp - 1].equals(cadenas[csp]))
+							pila[sp - 1] = 0;
+						break;
+					case NIP:
+						sp--;
+						pila[sp - 1] = pila[sp];
+						break;
+					case POP:
+						sp--;
+						break;
+					case SPOP:
+						cadenas[--csp] = null;
+						break;
+					case JMP:
+						pc = codigo[pc];
+						break;
+					case JMPF:
+						pc = pila[--sp] == 0 ? codigo[pc] : pc + 1;
+						break;
+					case JFK:
+						if (pila[sp - 1] == 0) {
+							pc = codigo[pc];
+						} else {
+							sp--;
+							pc++;
+						}
+						break;
+					case CALL: {
+						int f = codigo[pc++];
+						if (fp + 3 > marcos.length) {
+							if (fp >= 3 * MAX_LLAMADAS)
+								throw new IllegalStateException("Más de " + MAX_LLAMADAS + " llamadas anidadas");
+							marcos = Arrays.copyOf(marcos, marcos.length * 2);
+						}
+						marcos[fp++] = pc;
+						marcos[fp++] = bp;
+						marcos[fp++] = cbp;
+						bp = sp - paramsNum[f];
+						cbp = csp - paramsCad[f];
+						if (bp + marcoNum[f] > pila.length)
+							pila = Arrays.copyOf(pila, Math.max(pila.length * 2, bp + marcoNum[f]));
+						if (cbp + marcoCad[f] > cadenas.length)
+							cadenas = Arrays.copyOf(cadenas, Math.max(cadenas.length * 2, cbp + marcoCad[f]));
+						sp = bp + localesNum[f];
+						csp = cbp + localesCad[f];
+						Arrays.fill(pila, bp + paramsNum[f], sp, 0);
+						Arrays.fill(cadenas, cbp + paramsCad[f], csp, VACIA);
+						pc = entradas[f];
+						break;
+					}
+					case RET: {
+						int valor = pila[sp - 1];
+						sp = bp;
+						Arrays.fill(cadenas, cbp, csp, null);
+						csp = cbp;
+						pila[sp++] = valor;
+						cbp = marcos[--fp];
+						bp = marcos[--fp];
+						pc = marcos[--fp];
+						break;
+					}
+					case SRET: {
+						String valor = cadenas[csp - 1];
+						sp = bp;
+						Arrays.fill(cadenas, cbp, csp, null);
+						csp = cbp;
+						cadenas[csp++] = valor;
+						cbp = marcos[--fp];
+						bp = marcos[--fp];
+						pc = marcos[--fp];
+						break;
+					}
+					case WRITEI:
+						ProgramIO.escribir(salida, pila[--sp]);
+						break;
+					case WRITEF:
+						ProgramIO.escribir(salida, real(pila[--sp]));
+						break;
+					case WRITEB:
+						ProgramIO.escribir(salida, pila[--sp] != 0);
+						break;
+					case WRITES:
+						ProgramIO.escribir(salida, cadenas[--csp]);
+						cadenas[csp] = null;
+						break;
+					case READI:
+						pila[sp++] = ProgramIO.leerEntero(entrada, salida);
+						break;
+					case READF:
+						pila[sp++] = Float.floatToRawIntBits(ProgramIO.leerReal(entrada, salida));
+						break;
+					case READB:
+						pila[sp++] = ProgramIO.leerBooleano(entrada, salida) ? 1 : 0;
+						break;
+					case READS:
+						cadenas[csp++] = ProgramIO.leerCadena(entrada, salida);
+						break;
+					default:
+						throw new IllegalStateException("Operación desconocida " + codigo[pc - 1] + " en " + (pc - 1));
+				}
+			}
+		} finally {
+			instrucciones += n;
+			salida.flush();
+		}
+	}
+
+	private static float real(int bits) {
+		return Float.intBitsToFloat(bits);
+	}
+}
@@ -0,0 +1,38 @@
+#!/bin/bash
+
+# Pruebas del procesador: compila src y test en test-bin y ejecuta cada
+# clase *Test de test/analizador, que termina con código 1 si algo falla.
+
+cd "$(dirname "$0")"
+rm -rf test-bin
+mkdir -p test-bin
+
+echo "Compilando..."
+javac -encoding UTF-8 -d test-bin src/analizador/*.java test/analizador/*.java
+
+if [ $? -ne 0 ]; then
+    echo "Error de compilación."
+    exit 1
+fi
+
+fallos=0
+for prueba in test/analizador/*Test.java; do
+    clase=$(basename "$prueba" .java)
+    echo "== $clase"
+    java -cp test-bin analizador.$clase || fallos=1
+done
+
+# El programa de ejemplo, ejecutado con Main en la VM y en la JVM; se copia a
+# un directorio temporal para que los ficheros de out/ no ensucien el árbol.
+ejemplo=$(mktemp -d)
+cp programa.javascript "$ejemplo"
+for opcion in --ejecutar --jvm; do
+    echo "== programa.javascript $opcion"
+    salida=$(cd "$ejemplo" && java -cp "$OLDPWD/test-bin" analizador.Main $opcion | tail -n 1)
+    if [ "$salida" != "Hola Mundo" ]; then
+        echo "FALLO la última línea es '$salida' y se esperaba 'Hola Mundo'"
+        fallos=1
+    fi
+done
+rm -rf "$ejemplo"
+exit $fallos
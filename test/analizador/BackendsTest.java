@@ -0,0 +1,127 @@
+package analizador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pruebas de regresión de los generadores de código: cada programa de
+ * test/programas (X.javascript, con su entrada en X.entrada si lee algo) se
+ * analiza con la semántica intercalada y con {@link SemanticAnalyzer}, con el
+ * árbol completo y con expresiones compactas, y su salida tiene que ser
+ * X.salida en la {@link VirtualMachine}, en la clase de {@link JvmCompiler} y
+ * en el código intermedio antes y después del {@link PassManager}
+ * (ejecutado con {@link IRInterpreter}).
+ *
+ * Uso: {@code java -cp test-bin analizador.BackendsTest [directorio]};
+ * test.sh lo compila y lo ejecuta. Termina con código 1 si falla alguna.
+ */
+public final class BackendsTest {
+
+	private static int pruebas = 0;
+	private static final List<String> fallos = new ArrayList<>();
+
+	private BackendsTest() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path dir = Paths.get(args.length > 0 ? args[0] : "test/programas");
+		List<Path> programas = new ArrayList<>();
+		try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(dir, "*.javascript")) {
+			ficheros.forEach(programas::add);
+		}
+		programas.sort(null);
+		for (Path programa : programas)
+			probar(programa);
+		for (String fallo : fallos)
+			System.out.println("FALLO " + fallo);
+		System.out.println(programas.size() + " programas, " + pruebas + " pruebas, " + fallos.size() + " fallos");
+		if (!fallos.isEmpty() || programas.isEmpty())
+			System.exit(1);
+	}
+
+	private static void probar(Path programa) throws IOException {
+		String nombre = programa.getFileName().toString().replaceFirst("\\.javascript$", "");
+		String fuente = Files.readString(programa);
+		Path entradaPath = programa.resolveSibling(nombre + ".entrada");
+		String entrada = Files.exists(entradaPath) ? Files.readString(entradaPath) : "";
+		String esperada = Files.readString(programa.resolveSibling(nombre + ".salida"));
+		for (boolean separada : new boolean[] { false, true }) {
+			for (boolean compactas : new boolean[] { false, true }) {
+				String caso = nombre + (separada ? " --semantica" : "") + (compactas ? " --precedencia" : "");
+				ASTNode ast;
+				try {
+					ast = analizar(fuente, separada, compactas);
+				} catch (IllegalStateException e) {
+					fallos.add(caso + ": " + e.getMessage());
+					continue;
+				}
+				comprobar(caso + " (vm)", esperada, () -> vm(ast, entrada));
+				comprobar(caso + " (jvm)", esperada, () -> jvm(ast, entrada));
+				comprobar(caso + " (ir)", esperada, () -> ir(ast, entrada, false));
+				comprobar(caso + " (ir optimizado)", esperada, () -> ir(ast, entrada, true));
+			}
+		}
+	}
+
+	/** Árbol anotado del programa, como el de Main con o sin --semantica y --precedencia. */
+	private static ASTNode analizar(String fuente, boolean separada, boolean compactas) {
+		ErrorManager errores = new ErrorManager();
+		TokenBuffer tokens = new Lexer(fuente, errores).tokenizeToBuffer();
+		Parser parser = new Parser(tokens.stream(), errores, new RuleLog());
+		parser.setExpresionesCompactas(compactas);
+		parser.setSemantica(!separada);
+		ASTNode ast = parser.parseAST();
+		if (separada && ast != null)
+			new SemanticAnalyzer(errores).analizar(ast);
+		if (errores.hayErrores())
+			throw new IllegalStateException("errores en el análisis:\n" + errores.getErroresString());
+		return ast;
+	}
+
+	private interface Ejecucion {
+		String salida() throws IOException;
+	}
+
+	private static void comprobar(String caso, String esperada, Ejecucion ejecucion) {
+		pruebas++;
+		String salida;
+		try {
+			salida = ejecucion.salida();
+		} catch (IOException | RuntimeException e) {
+			fallos.add(caso + ": " + e);
+			return;
+		}
+		if (!salida.equals(esperada))
+			fallos.add(caso + ": la salida es\n" + salida + "y se esperaba\n" + esperada);
+	}
+
+	private static String vm(ASTNode ast, String entrada) throws IOException {
+		StringWriter salida = new StringWriter();
+		new VirtualMachine(BytecodeCompiler.compilar(ast), new StringReader(entrada), salida).ejecutar();
+		return salida.toString();
+	}
+
+	private static String jvm(ASTNode ast, String entrada) throws IOException {
+		StringWriter salida = new StringWriter();
+		Class<?> clase = JvmCompiler.cargar("Programa", JvmCompiler.compilar(ast, "Programa"));
+		JvmCompiler.ejecutar(clase, new StringReader(entrada), salida);
+		return salida.toString();
+	}
+
+	private static String ir(ASTNode ast, String entrada, boolean optimizado) throws IOException {
+		ThreeAddressCode codigo = IRGenerator.generar(ast);
+		if (optimizado)
+			PassManager.estandar().optimizar(codigo, null);
+		StringWriter salida = new StringWriter();
+		IRInterpreter.ejecutar(codigo, new BufferedReader(new StringReader(entrada)), salida);
+		return salida.toString();
+	}
+}
@@ -0,0 +1,213 @@
+package analizador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import analizador.Quad.Operando;
+import analizador.SymbolTable.Type;
+import analizador.ThreeAddressCode.Procedimiento;
+
+/**
+ * Ejecuta un {@link ThreeAddressCode} con la semántica de la
+ * {@link VirtualMachine}, para comprobar que las pasadas de optimización no
+ * cambian lo que hace el programa: int de 16 bits, variables sin asignar a
+ * 0, 0.0, false o '', la división entera por cero lanza
+ * IllegalStateException y el {@code write} y el {@code read} son los de
+ * {@link ProgramIO}.
+ */
+final class IRInterpreter {
+
+	/** El programa ha terminado con un return fuera de las funciones. */
+	private static final class Fin extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Fin() {
+			super(null, null, false, false);
+		}
+	}
+
+	private final Map<String, Procedimiento> procedimientos = new HashMap<>();
+	private final Map<String, Map<String, Integer>> etiquetas = new HashMap<>();
+	private final Map<Operando, Object> globales = new HashMap<>();
+	private final Deque<Object> params = new ArrayDeque<>();
+	private final BufferedReader entrada;
+	private final Writer salida;
+	private Procedimiento principal;
+	private int llamadas = 0;
+
+	private IRInterpreter(ThreeAddressCode codigo, BufferedReader entrada, Writer salida) {
+		this.entrada = entrada;
+		this.salida = salida;
+		for (Procedimiento p : codigo.procedimientos) {
+			if (p.nombre == null)
+				principal = p;
+			else
+				procedimientos.put(p.nombre, p);
+		}
+		for (Operando v : codigo.globales)
+			globales.put(v, valorInicial(v.tipo));
+	}
+
+	/** Ejecuta {@code codigo} hasta el fin del programa y vacía la salida. */
+	static void ejecutar(ThreeAddressCode codigo, BufferedReader entrada, Writer salida) throws IOException {
+		IRInterpreter interprete = new IRInterpreter(codigo, entrada, salida);
+		try {
+			interprete.ejecutar(interprete.principal, List.of());
+		} catch (Fin fin) {
+			// return fuera de las funciones
+		}
+		salida.flush();
+	}
+
+	private Object ejecutar(Procedimiento p, List<Object> args) throws IOException {
+		if (++llamadas > VirtualMachine.MAX_LLAMADAS)
+			throw new IllegalStateException("Demasiadas llamadas anidadas");
+		Map<Operando, Object> marco = new HashMap<>();
+		for (int i = 0; i < args.size(); i++)
+			marco.put(p.params.get(i), args.get(i));
+		for (Operando v : p.locales)
+			marco.put(v, valorInicial(v.tipo));
+		Map<String, Integer> saltos = etiquetas.computeIfAbsent(p.nombre, n -> posiciones(p.codigo));
+		List<Quad> codigo = p.codigo;
+		for (int pc = 0; pc < codigo.size(); pc++) {
+			Quad q = codigo.get(pc);
+			switch (q.op) {
+				case COPIA:
+					guardar(marco, q.res, valor(marco, q.a));
+					break;
+				case SUMA:
+				case DIVISION:
+				case IGUAL:
+				case Y:
+					guardar(marco, q.res, operar(q, valor(marco, q.a), valor(marco, q.b)));
+					break;
+				case ETIQUETA:
+					break;
+				case SALTO:
+					pc = saltos.get(q.etiqueta);
+					break;
+				case SI_FALSO:
+					if (!(Boolean) valor(marco, q.a))
+						pc = saltos.get(q.etiqueta);
+					break;
+				case PARAM:
+					params.push(valor(marco, q.a));
+					break;
+				case LLAMADA: {
+					Object[] valores = new Object[q.args];
+					for (int i = q.args - 1; i >= 0; i--)
+						valores[i] = params.pop();
+					Object resultado = ejecutar(procedimientos.get(q.etiqueta), List.of(valores));
+					if (q.res != null)
+						guardar(marco, q.res, resultado);
+					break;
+				}
+				case RETORNO:
+					llamadas--;
+					return valor(marco, q.a);
+				case ESCRIBIR:
+					escribir(q.a.tipo, valor(marco, q.a));
+					break;
+				case LEER:
+					guardar(marco, q.res, leer(q.res.tipo));
+					break;
+				default:
+					throw new Fin();
+			}
+		}
+		throw new IllegalStateException("El procedimiento " + p.nombre + " acaba sin return");
+	}
+
+	private static Object operar(Quad q, Object a, Object b) {
+		switch (q.op) {
+			case SUMA:
+				if (q.res.tipo == Type.ENTERO)
+					return (int) (short) ((Integer) a + (Integer) b);
+				return (Float) a + (Float) b;
+			case DIVISION:
+				if (q.res.tipo != Type.ENTERO)
+					return (Float) a / (Float) b;
+				if ((Integer) b == 0)
+					throw new IllegalStateException("División entera por cero");
+				return (int) (short) ((Integer) a / (Integer) b);
+			case IGUAL:
+				// Como la VM: los float con ==, que distingue NaN y no el signo del cero
+				return q.a.tipo == Type.REAL ? (Object) ((float) (Float) a == (float) (Float) b) : a.equals(b);
+			default:
+				return (Boolean) a && (Boolean) b;
+		}
+	}
+
+	private Object valor(Map<Operando, Object> marco, Operando x) {
+		if (x.esConstante())
+			return x.valor;
+		Object valor = x.esGlobal() ? globales.get(x) : marco.get(x);
+		if (valor == null)
+			throw new IllegalStateException("'" + x + "' se lee sin valor");
+		return valor;
+	}
+
+	private void guardar(Map<Operando, Object> marco, Operando x, Object valor) {
+		if (x.esGlobal())
+			globales.put(x, valor);
+		else
+			marco.put(x, valor);
+	}
+
+	private void escribir(Type tipo, Object valor) throws IOException {
+		switch (tipo) {
+			case ENTERO:
+				ProgramIO.escribir(salida, (int) (Integer) valor);
+				break;
+			case REAL:
+				ProgramIO.escribir(salida, (float) (Float) valor);
+				break;
+			case BOOLEAN:
+				ProgramIO.escribir(salida, (boolean) (Boolean) valor);
+				break;
+			default:
+				ProgramIO.escribir(salida, (String) valor);
+				break;
+		}
+	}
+
+	private Object leer(Type tipo) throws IOException {
+		switch (tipo) {
+			case ENTERO:
+				return ProgramIO.leerEntero(entrada, salida);
+			case REAL:
+				return ProgramIO.leerReal(entrada, salida);
+			case BOOLEAN:
+				return ProgramIO.leerBooleano(entrada, salida);
+			default:
+				return ProgramIO.leerCadena(entrada, salida);
+		}
+	}
+
+	private static Map<String, Integer> posiciones(List<Quad> codigo) {
+		Map<String, Integer> posiciones = new HashMap<>();
+		for (int i = 0; i < codigo.size(); i++) {
+			if (codigo.get(i).op == Quad.Op.ETIQUETA)
+				posiciones.put(codigo.get(i).etiqueta, i);
+		}
+		return posiciones;
+	}
+
+	private static Object valorInicial(Type tipo) {
+		switch (tipo) {
+			case ENTERO:
+				return 0;
+			case REAL:
+				return 0f;
+			case BOOLEAN:
+				return false;
+			default:
+				return "";
+		}
+	}
+}
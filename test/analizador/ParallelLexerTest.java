@@ -0,0 +1,123 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pruebas de {@link ParallelLexer}: con fuentes pequeñas partidas en muchos
+ * trozos, para que los cortes caigan en todos los sitios que en un fuente real
+ * solo se ven por encima de los megabytes, los tokens (tipo, lexema, posición,
+ * línea, columna y nombre) y los errores tienen que coincidir uno a uno con
+ * los de {@link Lexer#tokenizeToBuffer()}. Los casos cubren trozos que
+ * empiezan con un token en la columna 1, cadenas abiertas a través de uno o
+ * varios cortes, caracteres UTF-8 de varios bytes junto a los cortes y
+ * fuentes aleatorias con semilla fija.
+ *
+ * Uso: {@code java -cp test-bin analizador.ParallelLexerTest [fuentes] [semilla]};
+ * test.sh lo compila y lo ejecuta. Termina con código 1 si falla alguna.
+ */
+public final class ParallelLexerTest {
+
+	/** Trozos con los que se arman las fuentes aleatorias. */
+	private static final String[] TROZOS = { "let int a;", "a = a + 1;", "'", "'cadena'", "'dos\nlíneas'", "\n",
+			"\n\n", " ", "\t", "// comentario", "/* bloque */", "/*", "*/", "ñandú", "'ñ€𝄞'", "€", "x1", "42",
+			"3.5", "==", "&&", "{", "}", "#", "write s;", "function int f() { return 0; }" };
+
+	private static int pruebas = 0;
+	private static final List<String> fallos = new ArrayList<>();
+
+	private ParallelLexerTest() {
+	}
+
+	public static void main(String[] args) {
+		int fuentes = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		long semilla = args.length > 1 ? Long.parseLong(args[1]) : 8L;
+		StringBuilder columnas = new StringBuilder();
+		for (int i = 0; i < 40; i++)
+			columnas.append("a").append(i).append(" = ").append(i).append(";\nwrite a").append(i).append(";\n");
+		probar("columna 1 tras cada salto", columnas.toString());
+		probar("saltos seguidos", "a = 1;\n\n\n\nb = 2;\n\n\nc\n\n");
+		StringBuilder cadenas = new StringBuilder("let string s;\n");
+		for (int i = 0; i < 20; i++)
+			cadenas.append("s = 'abierta ").append(i).append("\n\nsigue\n").append("';\nwrite s;\n");
+		probar("cadenas a través de los cortes", cadenas.toString());
+		probar("cadena sin cerrar hasta el final", "a = 1;\nb = 2;\ns = 'abierta\nc = 3;\nd = 4;\ne = 5;\n");
+		probar("cadena abierta en el último trozo", "a = 1;\nb = 2;\nc = 3;\nd = 4;\ns = 'abierta\n");
+		StringBuilder utf8 = new StringBuilder();
+		for (int i = 0; i < 30; i++)
+			utf8.append("ñ€𝄞 = 'año ").append(i).append(" €'; // ñ\n€ñ\n'𝄞'\n");
+		probar("UTF-8 junto a los cortes", utf8.toString());
+		probar("'/*' a través de los cortes, que no abre comentario",
+				"a = 1;\n/* uno\ndos\ntres\n*/ b = 2;\nc = 3;\n");
+		aleatorias(fuentes, semilla);
+		for (String fallo : fallos)
+			System.out.println("FALLO " + fallo);
+		System.out.println(pruebas + " pruebas, " + fallos.size() + " fallos");
+		if (!fallos.isEmpty())
+			System.exit(1);
+	}
+
+	private static void aleatorias(int fuentes, long semilla) {
+		Random random = new Random(semilla);
+		for (int i = 0; i < fuentes; i++) {
+			StringBuilder texto = new StringBuilder();
+			for (int j = random.nextInt(60); j >= 0; j--)
+				texto.append(TROZOS[random.nextInt(TROZOS.length)]);
+			probar("fuente " + i + " (semilla " + semilla + ")", texto.toString());
+		}
+	}
+
+	/** Compara el análisis secuencial con el paralelo en 1 a 40 trozos. */
+	private static void probar(String caso, String texto) {
+		ErrorManager erroresSecuencial = new ErrorManager();
+		Interner nombresSecuencial = new Interner();
+		TokenBuffer secuencial = new Lexer(utf8(texto), erroresSecuencial, nombresSecuencial).tokenizeToBuffer();
+		for (int trozos = 1; trozos <= 40; trozos++) {
+			pruebas++;
+			ErrorManager errores = new ErrorManager();
+			Interner nombres = new Interner();
+			TokenBuffer paralelo;
+			try {
+				paralelo = ParallelLexer.tokenize(utf8(texto), errores, nombres, trozos);
+			} catch (RuntimeException e) {
+				fallos.add(caso + ", " + trozos + " trozos: " + e);
+				continue;
+			}
+			String diferencia = diferencia(paralelo, nombres, secuencial, nombresSecuencial);
+			if (diferencia == null && !errores.getErrores().equals(erroresSecuencial.getErrores()))
+				diferencia = "los errores son\n" + errores.getErroresString() + "y se esperaban\n"
+						+ erroresSecuencial.getErroresString();
+			if (diferencia != null)
+				fallos.add(caso + ", " + trozos + " trozos: " + diferencia);
+		}
+	}
+
+	/** @return la primera diferencia entre los dos análisis, o null si coinciden. */
+	private static String diferencia(TokenBuffer paralelo, Interner nombres, TokenBuffer secuencial,
+			Interner nombresSecuencial) {
+		int n = Math.min(paralelo.size(), secuencial.size());
+		for (int i = 0; i < n; i++) {
+			String a = describir(paralelo, nombres, i);
+			String b = describir(secuencial, nombresSecuencial, i);
+			if (!a.equals(b))
+				return "el token " + i + " es " + a + " y se esperaba " + b;
+		}
+		if (paralelo.size() != secuencial.size())
+			return paralelo.size() + " tokens y se esperaban " + secuencial.size();
+		return null;
+	}
+
+	private static String describir(TokenBuffer tokens, Interner nombres, int i) {
+		int simbolo = tokens.symbolIndex(i);
+		return tokens.kind(i) + " '" + tokens.lexeme(i) + "' " + tokens.start(i) + "-" + tokens.end(i) + " línea "
+				+ tokens.line(i) + " columna " + tokens.column(i) + " símbolo " + simbolo
+				+ (simbolo == 0 ? "" : " " + nombres.name(simbolo));
+	}
+
+	private static ByteBuffer utf8(String texto) {
+		return ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+	}
+}
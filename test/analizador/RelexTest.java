@@ -0,0 +1,197 @@
+package analizador;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pruebas del análisis incremental: tras cada edición, {@link Lexer#relex}
+ * sobre los tokens anteriores (y el hueco y los desplazamientos de
+ * {@link TokenBuffer} que usa) tiene que dar los mismos tokens y errores que
+ * {@link Lexer#tokenizeToBuffer()} sobre el fuente editado con
+ * {@link Lexer#applyEdit}. Primero, ediciones elegidas a mano: dentro de
+ * cadenas y comentarios, a través de saltos de línea, al principio y al final;
+ * después, miles de ediciones aleatorias encadenadas con semilla fija.
+ *
+ * Uso: {@code java -cp test-bin analizador.RelexTest [ediciones] [semilla]};
+ * test.sh lo compila y lo ejecuta. Termina con código 1 si falla alguna.
+ */
+public final class RelexTest {
+
+	private static final String PROGRAMA = "// Programa de prueba\n"
+			+ "let int a;\n"
+			+ "let string s;\n"
+			+ "a = 12 + 3;\n"
+			+ "s = 'Hola, año';\n"
+			+ "/* comentario\n   de bloque */\n"
+			+ "function boolean f(int x, float y) {\n"
+			+ "\tif (x == 1) return true;\n"
+			+ "\tfor (a = 1; a == 5; a = a + 1) { y /= 2.5; }\n"
+			+ "\treturn x == a && true;\n"
+			+ "}\n"
+			+ "write s; // fin";
+
+	/** Trozos que se insertan en las ediciones aleatorias. */
+	private static final String[] TROZOS = { "", "'", "\n", "//", "/*", "*/", "*", "/", " ", "\t", "a", "x1",
+			"ñ", "'ñá'", "42", "3.5", ".", "=", "==", "+", "+=", "&&", "&", ";", "{", "}", "(", ")", "let int z;\n",
+			"function", "return", "true", "#", "\"" };
+
+	private static int pruebas = 0;
+	private static final List<String> fallos = new ArrayList<>();
+
+	private RelexTest() {
+	}
+
+	public static void main(String[] args) {
+		int ediciones = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		long semilla = args.length > 1 ? Long.parseLong(args[1]) : 20240611L;
+		editadasAMano();
+		aleatorias(ediciones, semilla);
+		for (String fallo : fallos)
+			System.out.println("FALLO " + fallo);
+		System.out.println(pruebas + " pruebas, " + fallos.size() + " fallos");
+		if (!fallos.isEmpty())
+			System.exit(1);
+	}
+
+	private static void editadasAMano() {
+		int cadena = PROGRAMA.indexOf("Hola");
+		int comentario = PROGRAMA.indexOf("comentario");
+		int linea = PROGRAMA.indexOf("let int a;") - 1;
+		int fin = PROGRAMA.length();
+		// Dentro de una cadena: cambiar su texto, cerrarla antes o abrir otra
+		editar("cadena, texto", PROGRAMA, cadena, 0, "Adiós ");
+		editar("cadena, cerrada antes", PROGRAMA, cadena + 4, 0, "' + '");
+		editar("cadena, comilla borrada", PROGRAMA, cadena - 1, 1, "");
+		editar("cadena, salto de línea", PROGRAMA, cadena + 2, 0, "\n");
+		editar("cadena abierta", PROGRAMA, PROGRAMA.indexOf("a = 12"), 0, "'");
+		// Dentro de un comentario: de bloque y de línea
+		editar("comentario, texto", PROGRAMA, comentario, 10, "nota");
+		editar("comentario, cierre borrado", PROGRAMA, PROGRAMA.indexOf("*/"), 2, "");
+		editar("comentario, cierre insertado", PROGRAMA, comentario, 0, "*/ a = 1; /*");
+		editar("comentario de línea, abierto", PROGRAMA, PROGRAMA.indexOf("a = 12"), 0, "//");
+		editar("comentario de línea, salto", PROGRAMA, 5, 0, "\n");
+		// A través de saltos de línea
+		editar("salto borrado", PROGRAMA, linea, 1, "");
+		editar("salto reemplazado", PROGRAMA, linea - 3, 5, " ");
+		editar("saltos insertados", PROGRAMA, linea, 0, "\n\n\n");
+		editar("líneas borradas", PROGRAMA, linea, PROGRAMA.indexOf("s = ") - linea, "");
+		// Al principio y al final
+		editar("principio, inserción", PROGRAMA, 0, 0, "let int b;\n");
+		editar("principio, borrado", PROGRAMA, 0, 3, "");
+		editar("principio, comentario", PROGRAMA, 0, 0, "/*");
+		editar("final, inserción", PROGRAMA, fin, 0, "\nwrite a;");
+		editar("final, borrado", PROGRAMA, fin - 4, 4, "");
+		editar("final, cadena abierta", PROGRAMA, fin, 0, "\n'sin cerrar");
+		editar("todo borrado", PROGRAMA, 0, fin, "");
+		editar("desde vacío", "", 0, 0, PROGRAMA);
+	}
+
+	/** Ediciones encadenadas: cada una parte de los tokens que dejó la anterior. */
+	private static void aleatorias(int ediciones, long semilla) {
+		Random random = new Random(semilla);
+		String texto = PROGRAMA;
+		Interner interner = new Interner();
+		TokenBuffer tokens = new Lexer(utf8(texto), new ErrorManager(), interner).tokenizeToBuffer();
+		for (int i = 0; i < ediciones; i++) {
+			if (texto.length() > 4 * PROGRAMA.length()) {
+				texto = PROGRAMA;
+				interner = new Interner();
+				tokens = new Lexer(utf8(texto), new ErrorManager(), interner).tokenizeToBuffer();
+			}
+			int desde;
+			switch (random.nextInt(8)) {
+				case 0:
+					desde = 0;
+					break;
+				case 1:
+					desde = texto.length();
+					break;
+				default:
+					desde = random.nextInt(texto.length() + 1);
+					break;
+			}
+			int borrados = random.nextInt(3) == 0 ? 0 : random.nextInt(Math.min(8, texto.length() - desde) + 1);
+			String insertado = TROZOS[random.nextInt(TROZOS.length)];
+			String caso = "edición " + i + " (semilla " + semilla + ")";
+			tokens = comprobar(caso, texto, tokens, interner, desde, borrados, insertado);
+			texto = texto.substring(0, desde) + insertado + texto.substring(desde + borrados);
+		}
+	}
+
+	private static void editar(String caso, String texto, int desde, int borrados, String insertado) {
+		Interner interner = new Interner();
+		TokenBuffer tokens = new Lexer(utf8(texto), new ErrorManager(), interner).tokenizeToBuffer();
+		comprobar(caso, texto, tokens, interner, desde, borrados, insertado);
+	}
+
+	/**
+	 * Reemplaza {@code borrados} caracteres de {@code texto} desde
+	 * {@code desde} por {@code insertado} y compara el análisis incremental
+	 * con uno completo.
+	 *
+	 * @return tokens del texto editado, los del análisis incremental.
+	 */
+	private static TokenBuffer comprobar(String caso, String texto, TokenBuffer tokens, Interner interner, int desde,
+			int borrados, String insertado) {
+		pruebas++;
+		ByteBuffer fuente = utf8(texto);
+		int offset = bytes(texto.substring(0, desde));
+		int removed = bytes(texto.substring(desde, desde + borrados));
+		ByteBuffer editado = Lexer.applyEdit(fuente, offset, removed, insertado);
+		String esperado = texto.substring(0, desde) + insertado + texto.substring(desde + borrados);
+		if (!editado.equals(utf8(esperado))) {
+			fallos.add(caso + ": applyEdit no da el texto editado");
+			return new Lexer(utf8(esperado), new ErrorManager(), interner).tokenizeToBuffer();
+		}
+		ErrorManager erroresRelex = new ErrorManager();
+		TokenBuffer relex = new Lexer(editado, erroresRelex, interner).relex(tokens, offset, removed,
+				bytes(insertado));
+		ErrorManager erroresCompleto = new ErrorManager();
+		Interner nombres = new Interner();
+		TokenBuffer completo = new Lexer(utf8(esperado), erroresCompleto, nombres).tokenizeToBuffer();
+		String diferencia = diferencia(relex, interner, completo, nombres);
+		if (diferencia == null && !erroresRelex.getErrores().equals(erroresCompleto.getErrores()))
+			diferencia = "los errores son\n" + erroresRelex.getErroresString() + "y se esperaban\n"
+					+ erroresCompleto.getErroresString();
+		if (diferencia != null)
+			fallos.add(caso + ": " + describir(texto, desde, borrados, insertado) + ": " + diferencia);
+		return relex;
+	}
+
+	/** @return la primera diferencia entre los dos análisis, o null si coinciden. */
+	private static String diferencia(TokenBuffer relex, Interner interner, TokenBuffer completo, Interner nombres) {
+		int n = Math.min(relex.size(), completo.size());
+		for (int i = 0; i < n; i++) {
+			String a = describir(relex, interner, i);
+			String b = describir(completo, nombres, i);
+			if (!a.equals(b))
+				return "el token " + i + " es " + a + " y se esperaba " + b;
+		}
+		if (relex.size() != completo.size())
+			return relex.size() + " tokens y se esperaban " + completo.size();
+		return null;
+	}
+
+	private static String describir(TokenBuffer tokens, Interner interner, int i) {
+		int simbolo = tokens.symbolIndex(i);
+		String nombre = simbolo == 0 ? "" : " " + interner.name(simbolo);
+		return tokens.kind(i) + " '" + tokens.lexeme(i) + "' " + tokens.start(i) + "-" + tokens.end(i) + " línea "
+				+ tokens.line(i) + " columna " + tokens.column(i) + nombre;
+	}
+
+	private static String describir(String texto, int desde, int borrados, String insertado) {
+		return "en " + desde + " de " + texto.length() + " caracteres, " + borrados + " borrados por '"
+				+ insertado.replace("\n", "\\n") + "'";
+	}
+
+	private static ByteBuffer utf8(String texto) {
+		return ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static int bytes(String texto) {
+		return texto.getBytes(StandardCharsets.UTF_8).length;
+	}
+}
@@ -0,0 +1,176 @@
+package analizador;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pruebas de {@link RuleLog}: lo que escribe
+ * {@link RuleLog#writeBinary} lo lee igual {@link RuleLog#readBinary}; un
+ * contenido truncado o corrupto se rechaza con IOException, sin otras
+ * excepciones ni reservas enormes; y un registro que se vuelca a un destino
+ * lanza IllegalStateException en todo lo que necesita el registro entero.
+ *
+ * Uso: {@code java -cp test-bin analizador.RuleLogTest}; test.sh lo compila y
+ * lo ejecuta. Termina con código 1 si falla alguna.
+ */
+public final class RuleLogTest {
+
+	private static int pruebas = 0;
+	private static final List<String> fallos = new ArrayList<>();
+
+	private RuleLogTest() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		idaYVuelta();
+		truncados();
+		corruptos();
+		volcado();
+		for (String fallo : fallos)
+			System.out.println("FALLO " + fallo);
+		System.out.println(pruebas + " pruebas, " + fallos.size() + " fallos");
+		if (!fallos.isEmpty())
+			System.exit(1);
+	}
+
+	private static void idaYVuelta() throws IOException {
+		Random random = new Random(13);
+		int[] largo = new int[20000];
+		for (int i = 0; i < largo.length; i++)
+			largo[i] = random.nextInt(4) == 0 && i > 0 ? largo[i - 1] : random.nextInt(200);
+		int[][] casos = { {}, { 0 }, { 1, 2, 3 }, { 7, 7, 7, 7, 7 }, { 127, 128, 128, 16383, 16384 },
+				{ (1 << 30) - 1, (1 << 30) - 1, 0 }, largo };
+		for (int[] reglas : casos) {
+			String caso = "ida y vuelta de " + reglas.length + " reglas";
+			RuleLog log = registro(reglas);
+			byte[] binario = binario(log);
+			RuleLog leido = RuleLog.readBinary(new ByteArrayInputStream(binario));
+			comprobar(caso + ": size", leido.size() == reglas.length);
+			comprobar(caso + ": reglas", Arrays.equals(reglas(leido), reglas));
+			comprobar(caso + ": texto", leido.toString().equals(log.toString()));
+			comprobar(caso + ": se reescribe igual", Arrays.equals(binario(leido), binario));
+		}
+		// Las rachas ocupan poco: 20000 reglas iguales caben en unos bytes
+		int[] iguales = new int[20000];
+		Arrays.fill(iguales, 5);
+		comprobar("racha larga compacta", binario(registro(iguales)).length < 16);
+	}
+
+	/** Cada prefijo propio de un registro válido tiene que rechazarse. */
+	private static void truncados() throws IOException {
+		byte[] binario = binario(registro(new int[] { 3, 3, 3, 200, 9, 9, 70000, 1 }));
+		for (int n = 0; n < binario.length; n++)
+			rechazado("truncado a " + n + " de " + binario.length + " bytes", Arrays.copyOf(binario, n));
+	}
+
+	private static void corruptos() throws IOException {
+		rechazado("cabecera distinta", new byte[] { 'P', 'R', 'S', '2', 0 });
+		rechazado("sin cabecera", new byte[] { 1, 2, 3, 4, 5, 6 });
+		// Número de reglas negativo: varint de 5 bytes con el bit de signo
+		rechazado("número de reglas negativo", new byte[] { 'P', 'R', 'S', '1', (byte) 0x80, (byte) 0x80,
+				(byte) 0x80, (byte) 0x80, 0x08 });
+		rechazado("varint demasiado largo", new byte[] { 'P', 'R', 'S', '1', (byte) 0x80, (byte) 0x80, (byte) 0x80,
+				(byte) 0x80, (byte) 0x80, 0x01 });
+		rechazado("racha de longitud 0", new byte[] { 'P', 'R', 'S', '1', 2, 5 << 1 | 1, 0 });
+		rechazado("racha más larga que el registro", new byte[] { 'P', 'R', 'S', '1', 2, 5 << 1 | 1, 3 });
+		// Una cabecera que anuncia 2^31-1 reglas no reserva memoria para ellas
+		rechazado("número de reglas falso", new byte[] { 'P', 'R', 'S', '1', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x07, 5 << 1 | 1, 100 });
+		// Bytes cambiados al azar: o se lee algo o IOException, nunca otra cosa
+		Random random = new Random(7);
+		byte[] valido = binario(registro(new int[] { 1, 1, 1, 1, 300, 2, 2, 45, 45, 45, 90000, 0 }));
+		for (int i = 0; i < 2000; i++) {
+			byte[] corrupto = valido.clone();
+			for (int j = random.nextInt(3); j >= 0; j--)
+				corrupto[4 + random.nextInt(corrupto.length - 4)] = (byte) random.nextInt(256);
+			pruebas++;
+			try {
+				RuleLog.readBinary(new ByteArrayInputStream(corrupto));
+			} catch (IOException e) {
+				// rechazado
+			} catch (RuntimeException | OutOfMemoryError e) {
+				fallos.add("bytes cambiados " + Arrays.toString(corrupto) + ": " + e);
+			}
+		}
+	}
+
+	/** Con destino solo se puede añadir y terminar; lo demás lanza IllegalStateException. */
+	private static void volcado() throws IOException {
+		int[] reglas = new int[20000]; // más de un bloque, para que se vuelque antes de finish
+		for (int i = 0; i < reglas.length; i++)
+			reglas[i] = i % 150;
+		StringWriter texto = new StringWriter();
+		RuleLog log = new RuleLog(texto);
+		for (int regla : reglas)
+			log.add(regla);
+		rechaza("size", log::size);
+		rechaza("get", () -> log.get(0));
+		rechaza("toString", log::toString);
+		rechaza("writeTo", () -> log.writeTo(new StringWriter()));
+		rechaza("writeBinary", () -> log.writeBinary(new ByteArrayOutputStream()));
+		rechaza("addAll desde él", () -> new RuleLog().addAll(log));
+		log.finish();
+		comprobar("volcado: texto", texto.toString().equals(registro(reglas).toString()));
+		StringWriter vacio = new StringWriter();
+		new RuleLog(vacio).finish();
+		comprobar("volcado: vacío", vacio.toString().equals(new RuleLog().toString()));
+	}
+
+	private interface Llamada {
+		void ejecutar() throws IOException;
+	}
+
+	private static void rechaza(String caso, Llamada llamada) throws IOException {
+		pruebas++;
+		try {
+			llamada.ejecutar();
+			fallos.add("volcado: " + caso + " no lanza IllegalStateException");
+		} catch (IllegalStateException e) {
+			// como está documentado
+		}
+	}
+
+	private static void rechazado(String caso, byte[] binario) {
+		pruebas++;
+		try {
+			RuleLog.readBinary(new ByteArrayInputStream(binario));
+			fallos.add(caso + ": se ha leído sin error");
+		} catch (IOException e) {
+			// rechazado
+		} catch (RuntimeException | OutOfMemoryError e) {
+			fallos.add(caso + ": " + e + " en lugar de IOException");
+		}
+	}
+
+	private static void comprobar(String caso, boolean correcto) {
+		pruebas++;
+		if (!correcto)
+			fallos.add(caso);
+	}
+
+	private static RuleLog registro(int[] reglas) {
+		RuleLog log = new RuleLog();
+		for (int regla : reglas)
+			log.add(regla);
+		return log;
+	}
+
+	private static int[] reglas(RuleLog log) {
+		int[] reglas = new int[log.size()];
+		for (int i = 0; i < reglas.length; i++)
+			reglas[i] = log.get(i);
+		return reglas;
+	}
+
+	private static byte[] binario(RuleLog log) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		log.writeBinary(out);
+		return out.toByteArray();
+	}
+}